@@ -64,6 +64,14 @@ public class BrackitConnection {
 		send('b');
 	}
 
+	/**
+	 * Begins a new transaction. A read-only transaction must not perform any
+	 * updates but commits without writing any log records.
+	 */
+	public void begin(boolean readOnly) throws BrackitException {
+		send((readOnly) ? 'B' : 'b');
+	}
+
 	public void commit() throws BrackitException {
 		send('c');
 	}
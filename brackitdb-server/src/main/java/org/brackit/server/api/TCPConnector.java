@@ -46,9 +46,11 @@ import org.brackit.server.session.Session;
 import org.brackit.server.session.SessionID;
 import org.brackit.server.session.SessionMgr;
 import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.locking.ValidationException;
 import org.brackit.server.xquery.DBCompileChain;
 import org.brackit.xquery.QueryException;
 import org.brackit.xquery.XQuery;
+import org.brackit.xquery.util.Cfg;
 import org.brackit.xquery.util.log.Logger;
 
 /**
@@ -60,6 +62,13 @@ public class TCPConnector implements Runnable {
 
 	private static final Logger log = Logger.getLogger(TCPConnector.class);
 
+	/**
+	 * Number of transparent retries of an auto-committed updating query
+	 * which failed in optimistic validation.
+	 */
+	public static final int OPTIMISTIC_RETRIES = Cfg.asInt(
+			"org.brackit.server.api.optimisticRetries", 3);
+
 	final SessionMgr sm;
 
 	final MetaDataMgr mdm;
@@ -161,6 +170,10 @@ public class TCPConnector implements Runnable {
 							session.begin(false);
 							writeString(to, "begin");
 							break;
+						case 'B':
+							session.begin(true);
+							writeString(to, "begin");
+							break;
 						case 'c':
 							session.commit();
 							writeString(to, "commit");
@@ -209,23 +222,55 @@ public class TCPConnector implements Runnable {
 		}
 
 		private void query(InputStream from, OutputStream to) throws Throwable {
+			String query = readString(from);
+
+			if (log.isTraceEnabled()) {
+				log.trace("Query: " + query);
+			}
+
+			for (int retries = OPTIMISTIC_RETRIES; !query(query, to,
+					(retries > 0)); retries--) {
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("Retrying query after failed "
+							+ "validation (%s retries left).", retries - 1));
+				}
+			}
+		}
+
+		private boolean query(String query, OutputStream to, boolean mayRetry)
+				throws Throwable {
+			boolean implicitTx = (session.checkTX() == null);
 			Tx tx = session.getTX();
+			ByteArrayOutputStream buffer = null;
 
 			try {
-				String query = readString(from);
+				DBCompileChain chain = new DBCompileChain(mdm, tx);
+				XQuery xq = new XQuery(chain, query);
 
-				if (log.isTraceEnabled()) {
-					log.trace("Query: " + query);
+				if ((implicitTx) && (DBCompileChain.DETECT_READ_ONLY)
+						&& (!chain.isUpdating())) {
+					tx.markReadOnly();
+				}
+				if ((implicitTx) && (mayRetry) && (chain.isUpdating())) {
+					// hold back the result until the commit succeeded
+					buffer = new ByteArrayOutputStream();
 				}
-
-				XQuery xq = new XQuery(new DBCompileChain(mdm, tx), query);
 				TXQueryContext ctx = new TXQueryContext(tx, mdm);
-				xq.serialize(ctx, new PrintStream(to));
+				xq.serialize(ctx, new PrintStream((buffer != null) ? buffer
+						: to));
 
 				if (session.isAutoCommit()) {
 					session.commit();
 				}
+				if (buffer != null) {
+					buffer.writeTo(to);
+				}
+				return true;
 			} catch (Throwable e) {
+				if ((buffer != null) && (ValidationException.isCause(e))) {
+					// tx was already rolled back by the failed commit
+					return false;
+				}
 				log.error(e);
 				try {
 					if (session.isAutoCommit()) {
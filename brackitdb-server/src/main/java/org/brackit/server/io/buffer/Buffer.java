@@ -77,6 +77,12 @@ public interface Buffer {
 
 	public Handle fixPage(Tx tx, PageID pageID) throws BufferException;
 
+	/**
+	 * Hints that the page will be fixed soon. If it is not buffered yet, it
+	 * is loaded asynchronously in the background. Failures are ignored.
+	 */
+	public void prefetchPage(PageID pageID);
+
 	public void unfixPage(Handle handle) throws BufferException;
 
 	public void clear() throws BufferException;
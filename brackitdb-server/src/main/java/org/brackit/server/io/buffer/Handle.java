@@ -65,6 +65,8 @@ public class Handle extends SyncLatch {
 
 	private boolean modified;
 
+	private long modCount;
+
 	private PageID pageID;
 
 	private boolean safe;
@@ -103,6 +105,19 @@ public class Handle extends SyncLatch {
 	public synchronized void setModified(boolean modified) {
 		this.modified = modified;
 		this.redoLSN = Long.MAX_VALUE;
+
+		if (modified) {
+			modCount++;
+		}
+	}
+
+	/**
+	 * Returns the number of modifications of the page in this frame, which
+	 * is increased by each {@link #setModified(boolean) setModified(true)},
+	 * regardless of whether the modification was logged or not.
+	 */
+	public synchronized long getModCount() {
+		return modCount;
 	}
 
 	public void setRedoLSN(long LSN) {
@@ -182,4 +197,15 @@ public class Handle extends SyncLatch {
 	public void setCache(Object cache) {
 		this.cache.compareAndSet(null, cache);
 	}
+
+	/**
+	 * Replaces the attached cache iff it is still the expected one.
+	 */
+	public boolean replaceCache(Object expected, Object cache) {
+		return this.cache.compareAndSet(expected, cache);
+	}
+
+	public void resetCache() {
+		this.cache.set(null);
+	}
 }
@@ -40,6 +40,9 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.brackit.server.ServerException;
 import org.brackit.server.io.buffer.Buffer;
@@ -74,6 +77,8 @@ import org.brackit.xquery.util.log.Logger;
 public abstract class AbstractBuffer implements Buffer, InfoContributor {
 	private static final Logger log = Logger.getLogger(AbstractBuffer.class);
 
+	private static ExecutorService prefetcher;
+
 	protected static abstract class Frame extends Handle {
 
 		public Frame(int pageSize) {
@@ -393,6 +398,49 @@ public abstract class AbstractBuffer implements Buffer, InfoContributor {
 		return requested;
 	}
 
+	@Override
+	public void prefetchPage(final PageID pageID) {
+		synchronized (this) {
+			if (pageNoToFrame.containsKey(pageID)) {
+				return;
+			}
+		}
+
+		getPrefetcher().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					prefetch(pageID);
+				} catch (BufferException e) {
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("Prefetch of page %s failed.",
+								pageID), e);
+					}
+				}
+			}
+		});
+	}
+
+	private synchronized void prefetch(PageID pageID) throws BufferException {
+		if (!pageNoToFrame.containsKey(pageID)) {
+			load(pageID);
+		}
+	}
+
+	private static synchronized ExecutorService getPrefetcher() {
+		if (prefetcher == null) {
+			prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "BufferPrefetcher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return prefetcher;
+	}
+
 	@Override
 	public synchronized void redoAllocation(Tx tx, PageID pageID, int unitID,
 			long LSN) throws BufferException {
@@ -61,6 +61,7 @@ import org.brackit.server.store.blob.impl.IndexBlobStore;
 import org.brackit.server.tx.PostCommitHook;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxMgr;
+import org.brackit.server.tx.locking.protocol.TaDOM3Plus;
 import org.brackit.server.tx.locking.services.MetaLockService;
 import org.brackit.server.tx.locking.services.UnifiedMetaLockService;
 import org.brackit.xquery.atomic.QNm;
@@ -133,8 +134,8 @@ public class MetaDataMgrImpl implements MetaDataMgr {
 		defaultDictionary = new DictionaryMgr03(bufferMgr);
 		int maxTransactions = Cfg.asInt(TxMgr.MAX_TX, 100);
 		int maxLocks = Cfg.asInt(TxMgr.MAX_LOCKS, 200000);
-		mls = new UnifiedMetaLockService("DocumentLockService", maxLocks,
-				maxTransactions);
+		mls = new UnifiedMetaLockService<TaDOM3Plus.Mode>(new TaDOM3Plus(),
+				"DocumentLockService", maxLocks, maxTransactions);
 		bracketStore = new BracketStore(bufferMgr, defaultDictionary, mls);
 		blobStore = new IndexBlobStore(bufferMgr);
 	}
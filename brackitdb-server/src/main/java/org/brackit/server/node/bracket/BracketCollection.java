@@ -28,17 +28,23 @@
 package org.brackit.server.node.bracket;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.metadata.pathSynopsis.manager.PathSynopsisMgr;
 import org.brackit.server.node.DocID;
+import org.brackit.server.node.el.ElRecordAccess;
 import org.brackit.server.node.index.IndexController;
 import org.brackit.server.node.txnode.StorageSpec;
 import org.brackit.server.node.txnode.TXCollection;
 import org.brackit.server.store.OpenMode;
 import org.brackit.server.store.index.IndexAccessException;
 import org.brackit.server.store.index.bracket.InsertController;
+import org.brackit.server.store.index.bracket.filter.ValueFilter;
+import org.brackit.server.store.page.bracket.RecordInterpreter;
 import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.locking.services.MetaLockService;
+import org.brackit.server.util.Calc;
 import org.brackit.xquery.atomic.QNm;
 import org.brackit.xquery.atomic.Una;
 import org.brackit.xquery.node.parser.CollectionParser;
@@ -59,21 +65,51 @@ public class BracketCollection extends TXCollection<BracketNode> {
 
 	public static final QNm PATHSYNOPSIS_ID_ATTRIBUTE = new QNm("pathSynopsis");
 
+	public static final QNm LOCK_PROTOCOL_ATTRIBUTE = new QNm("lockProtocol");
+
+	public static final QNm VALUE_DICTIONARY_ATTRIBUTE = new QNm(
+			"valueDictionary");
+
+	public static final QNm VALUE_COMPRESSION_ATTRIBUTE = new QNm(
+			"valueCompression");
+
+	private static final class LockProtocol {
+		final String name;
+
+		final MetaLockService<?> nls;
+
+		LockProtocol(String name, MetaLockService<?> nls) {
+			this.name = name;
+			this.nls = nls;
+		}
+	}
+
 	protected PathSynopsisMgr pathSynopsis;
 
 	protected final BracketStore store;
 
 	protected final BracketIndexController indexController;
 
+	// shared by all tx copies of this collection
+	private final AtomicReference<LockProtocol> lockProtocol;
+
+	// shared by all tx copies of this collection (null if never enabled)
+	private final AtomicReference<ValueDictionary> valueDictionary;
+
 	public BracketCollection(Tx tx, BracketStore bracketStore) {
 		super(tx);
 		this.store = bracketStore;
 		this.indexController = new BracketIndexController(this);
+		this.lockProtocol = new AtomicReference<LockProtocol>(
+				new LockProtocol(null, bracketStore.mls));
+		this.valueDictionary = new AtomicReference<ValueDictionary>();
 	}
 
 	protected BracketCollection(BracketCollection collection, Tx tx) {
 		super(collection, tx);
 		this.store = collection.store;
+		this.lockProtocol = collection.lockProtocol;
+		this.valueDictionary = collection.valueDictionary;
 		this.pathSynopsis = collection.pathSynopsis.copyFor(tx);
 		this.indexController = new BracketIndexController(this);
 	}
@@ -98,6 +134,12 @@ public class BracketCollection extends TXCollection<BracketNode> {
 			collID = rootPageID.value();
 			name = spec.getDocumentName();
 			dictionary = spec.getDictionary();
+			if (spec.isValueCompression()) {
+				createValueDictionary();
+			} else {
+				// drop a stale entry of a collection that used this root page
+				store.valueDictionaries.remove(rootPageID);
+			}
 			pathSynopsis = store.pathSynopsisMgrFactory.create(tx,
 					spec.getDictionary(), spec.getContainerID());
 
@@ -152,6 +194,17 @@ public class BracketCollection extends TXCollection<BracketNode> {
 		Node<?> root = super.materialize();
 		root.setAttribute(PATHSYNOPSIS_ID_ATTRIBUTE,
 				new Una(Integer.toString(pathSynopsis.getPathSynopsisNo())));
+		String protocol = lockProtocol.get().name;
+		if (protocol != null) {
+			root.setAttribute(LOCK_PROTOCOL_ATTRIBUTE, new Una(protocol));
+		}
+		ValueDictionary valueDict = valueDictionary.get();
+		if (valueDict != null) {
+			root.setAttribute(VALUE_DICTIONARY_ATTRIBUTE, new Una(valueDict
+					.getRootPageID().toString()));
+			root.setAttribute(VALUE_COMPRESSION_ATTRIBUTE, new Una(Boolean
+					.toString(valueDict.isCoding())));
+		}
 		return root;
 	}
 
@@ -167,6 +220,22 @@ public class BracketCollection extends TXCollection<BracketNode> {
 			pathSynopsis = store.pathSynopsisMgrFactory.load(tx, dictionary,
 					psID);
 		}
+
+		Node<?> valueDict = root.getAttribute(VALUE_DICTIONARY_ATTRIBUTE);
+		if ((valueDict != null) && (valueDictionary.get() == null)) {
+			PageID valueDictID = PageID.fromString(valueDict.getValue()
+					.stringValue());
+			Node<?> coding = root.getAttribute(VALUE_COMPRESSION_ATTRIBUTE);
+			loadValueDictionary(valueDictID, (coding == null)
+					|| (Boolean.parseBoolean(coding.getValue().stringValue())));
+		}
+
+		Node<?> protocol = root.getAttribute(LOCK_PROTOCOL_ATTRIBUTE);
+		if (protocol != null) {
+			String name = protocol.getValue().stringValue();
+			lockProtocol.set(new LockProtocol(name, store
+					.getLockService(name)));
+		}
 	}
 
 	@Override
@@ -175,6 +244,26 @@ public class BracketCollection extends TXCollection<BracketNode> {
 			store.index.dropIndex(tx, new PageID(collID));
 			store.stdIndex.dropIndex(tx,
 					new PageID(pathSynopsis.getPathSynopsisNo()));
+			ValueDictionary valueDict = valueDictionary.get();
+			if (valueDict != null) {
+				valueDict.drop(tx);
+				store.valueDictionaries.remove(new PageID(collID), valueDict);
+			}
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+	}
+
+	/**
+	 * Merges sparsely filled leaves of the document index, e.g. after heavy
+	 * deletions.
+	 * 
+	 * @return the number of released leaves
+	 */
+	public int reorganize(float minOccupancyRate) throws DocumentException {
+		try {
+			return store.index.reorganize(tx, new PageID(collID),
+					minOccupancyRate);
 		} catch (IndexAccessException e) {
 			throw new DocumentException(e);
 		}
@@ -193,6 +282,126 @@ public class BracketCollection extends TXCollection<BracketNode> {
 		return pathSynopsis;
 	}
 
+	/**
+	 * Returns the lock service of the concurrency control protocol used for
+	 * the documents of this collection.
+	 */
+	public MetaLockService<?> getNls() {
+		return lockProtocol.get().nls;
+	}
+
+	public String getLockProtocol() {
+		String name = lockProtocol.get().name;
+		return (name != null) ? name : BracketStore.PROTOCOL_TADOM3PLUS;
+	}
+
+	/**
+	 * Switches the concurrency control protocol of this collection. The
+	 * change is made durable with the next {@link #persist()} and should
+	 * only be performed while no other transactions access the collection.
+	 */
+	public void setLockProtocol(String protocol) throws DocumentException {
+		MetaLockService<?> nls = store.getLockService(protocol);
+		lockProtocol.set(new LockProtocol(protocol, nls));
+	}
+
+	/**
+	 * Enables or disables the coding of frequent values. The value dictionary
+	 * of the collection is created when the coding is enabled for the first
+	 * time. The change is made durable with the next {@link #persist()}.
+	 * Records that are already coded remain readable after the coding was
+	 * disabled.
+	 */
+	public void setValueCompression(boolean enabled) throws DocumentException {
+		synchronized (valueDictionary) {
+			ValueDictionary valueDict = valueDictionary.get();
+			if (valueDict != null) {
+				valueDict.setCoding(enabled);
+			} else if (enabled) {
+				createValueDictionary();
+			}
+		}
+	}
+
+	public boolean isValueCompression() {
+		ValueDictionary valueDict = valueDictionary.get();
+		return ((valueDict != null) && (valueDict.isCoding()));
+	}
+
+	/**
+	 * Returns the value dictionary of this collection or <code>null</code>
+	 * if value compression was never enabled.
+	 */
+	public ValueDictionary getValueDictionary() {
+		return valueDictionary.get();
+	}
+
+	private void createValueDictionary() throws DocumentException {
+		PageID rootPageID = new PageID(collID);
+		ValueDictionary valueDict = ValueDictionary.create(tx,
+				store.stdIndex, rootPageID.getContainerNo());
+		store.valueDictionaries.put(rootPageID, valueDict);
+		valueDictionary.set(valueDict);
+	}
+
+	private void loadValueDictionary(PageID valueDictID, boolean coding)
+			throws DocumentException {
+		PageID rootPageID = new PageID(collID);
+		ValueDictionary valueDict = store.valueDictionaries.get(rootPageID);
+		if ((valueDict == null)
+				|| (!valueDict.getRootPageID().equals(valueDictID))) {
+			valueDict = ValueDictionary.load(tx, store.stdIndex, valueDictID);
+			store.valueDictionaries.put(rootPageID, valueDict);
+		}
+		valueDict.setCoding(coding);
+		valueDictionary.set(valueDict);
+	}
+
+	/**
+	 * Creates the physical record of a node. If value compression is enabled,
+	 * frequent values are replaced by their dictionary code.
+	 */
+	public byte[] createRecord(int PCR, byte type, String value)
+			throws DocumentException {
+		ValueDictionary valueDict = valueDictionary.get();
+		if ((valueDict == null) || (value == null)) {
+			return ElRecordAccess.createRecord(PCR, type, value);
+		}
+		return valueDict.createRecord(tx, PCR, type, value);
+	}
+
+	/**
+	 * Creates a filter for nodes with the given value, which compares coded
+	 * values without decoding them.
+	 */
+	public ValueFilter createValueFilter(String value) {
+		ValueDictionary valueDict = valueDictionary.get();
+		if (valueDict == null) {
+			// no record of this collection is coded
+			return new ValueFilter(value, -1);
+		}
+		return valueDict.createValueFilter(value);
+	}
+
+	/**
+	 * Replaces the code of a dictionary-coded record by the value it stands
+	 * for. Uncoded records are returned as they are.
+	 */
+	public byte[] decodeRecord(byte[] record) throws DocumentException {
+		if (!RecordInterpreter.isCoded(record)) {
+			return record;
+		}
+		ValueDictionary valueDict = valueDictionary.get();
+		if (valueDict == null) {
+			throw new DocumentException(
+					"Collection %s has no value dictionary to decode a record.",
+					collID);
+		}
+		String value = valueDict.resolve(RecordInterpreter.getCode(record));
+		return RecordInterpreter.decode(record, 0, record.length, Calc
+				.fromString(value));
+	}
+
 	@Override
 	public BracketNode getDocument() throws DocumentException {
 		return new BracketNode(this, 0);
@@ -177,8 +177,8 @@ public class BracketDocIndexListener extends DefaultListener<BracketNode>
 	private void insertText(BracketNode node) throws DocumentException {
 		checkForPendingElement(node);
 
-		byte[] textRecord = ElRecordAccess.createRecord(node.getPCR(),
-				node.getKind().ID, node.getValue().stringValue());
+		byte[] textRecord = node.getLocator().collection.createRecord(
+				node.getPCR(), node.getKind().ID, node.getValue().stringValue());
 		insertRecord(node, textRecord);
 	}
 
@@ -205,8 +205,8 @@ public class BracketDocIndexListener extends DefaultListener<BracketNode>
 	private void insertAttribute(BracketNode node) throws DocumentException {
 		checkForPendingElement(node);
 
-		byte[] attributeRecord = ElRecordAccess.createRecord(node.getPCR(),
-				Kind.ATTRIBUTE.ID, node.getValue().stringValue());
+		byte[] attributeRecord = node.getLocator().collection.createRecord(
+				node.getPCR(), Kind.ATTRIBUTE.ID, node.getValue().stringValue());
 		insertRecord(node, attributeRecord);
 	}
 
@@ -91,6 +91,7 @@ public class BracketLocator {
 				return new BracketNode(collection, deweyID.docID.getDocNumber());
 			}
 
+			record = collection.decodeRecord(record);
 			int pcr = ElRecordAccess.getPCR(record);
 			PSNode psn = pathSynopsis.get(pcr);
 			int dist = deweyID.getLevel() - psn.getLevel();
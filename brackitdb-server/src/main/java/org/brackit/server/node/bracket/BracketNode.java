@@ -158,7 +158,7 @@ public class BracketNode extends TXNode<BracketNode> {
 
 	@Override
 	public MetaLockService<?> getNls() {
-		return locator.collection.store.mls;
+		return locator.collection.getNls();
 	}
 
 	public int getPCR() {
@@ -240,8 +240,8 @@ public class BracketNode extends TXNode<BracketNode> {
 					childPsNode);
 			value = null;
 		} else {
-			physicalRecord = ElRecordAccess.createRecord(psNode.getPCR(),
-					kind.ID, value.stringValue());
+			physicalRecord = coll.createRecord(psNode.getPCR(), kind.ID, value
+					.stringValue());
 			node = new BracketNode(locator, childDeweyID, type, value, psNode);
 		}
 
@@ -311,7 +311,7 @@ public class BracketNode extends TXNode<BracketNode> {
 			RecordInterpreter oldRecord = iterator.getRecord();
 			int PCR = oldRecord.getPCR();
 
-			byte[] physicalRecord = ElRecordAccess.createRecord(PCR, type,
+			byte[] physicalRecord = locator.collection.createRecord(PCR, type,
 					value.stringValue());
 
 			// delete old entry from all indexes
@@ -544,7 +544,8 @@ public class BracketNode extends TXNode<BracketNode> {
 				locator, deweyID, hintPageInfo, filter, false, true);
 
 		try {
-			while (it.next() != null)
+			// the filter collects the text; no need to load the nodes
+			while (it.moveNext())
 				;
 		} finally {
 			it.close();
@@ -620,6 +621,35 @@ public class BracketNode extends TXNode<BracketNode> {
 				deweyID, hintPageInfo, filter, self, true);
 	}
 
+	/**
+	 * Returns the descendants of this node, which are scanned by several
+	 * threads in parallel. The subtree is read-locked as a whole in advance.
+	 */
+	public Stream<? extends BracketNode> getDescendantsPartitioned(
+			boolean self, BracketFilter filter, boolean ordered)
+			throws DocumentException {
+		Tx tx = getTX();
+		if ((tx.getLockDepth() > 0)
+				&& (tx.getIsolationLevel().useReadLocks())) {
+			getNls().lockTreeShared(tx, deweyID,
+					tx.getIsolationLevel().lockClass(false), false);
+		}
+		return locator.collection.store.index.openPartitionedSubtreeStream(
+				locator, deweyID, filter, self, true, ordered);
+	}
+
+	/**
+	 * Returns the descendant elements of this node with the given name (or
+	 * all descendant elements if <code>name</code> is <code>null</code>) in
+	 * arbitrary order. Used for order-insensitive aggregations.
+	 */
+	public Stream<? extends BracketNode> getDescendantElementsPartitioned(
+			QNm name) throws DocumentException {
+		BracketFilter filter = (name != null) ? createFilter(name)
+				: new ElementFilter(getPathSynopsis(), null, null);
+		return getDescendantsPartitioned(false, filter, false);
+	}
+
 	public Stream<? extends Node<?>> performStep(Axis axis, NodeType test)
 			throws DocumentException {
 		if (!OPTIMIZE) {
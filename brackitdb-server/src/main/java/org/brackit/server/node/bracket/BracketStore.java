@@ -27,6 +27,12 @@
  */
 package org.brackit.server.node.bracket;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.metadata.pathSynopsis.manager.PathSynopsisMgrFactory;
 import org.brackit.server.metadata.vocabulary.DictionaryMgr;
@@ -40,7 +46,16 @@ import org.brackit.server.store.index.Index;
 import org.brackit.server.store.index.aries.BPlusIndex;
 import org.brackit.server.store.index.bracket.BracketIndex;
 import org.brackit.server.store.index.bracket.BracketIndexImpl;
+import org.brackit.server.tx.TxMgr;
+import org.brackit.server.tx.locking.protocol.IRIX;
+import org.brackit.server.tx.locking.protocol.RIX;
+import org.brackit.server.tx.locking.protocol.TaDOM3Plus;
+import org.brackit.server.tx.locking.protocol.URIX;
 import org.brackit.server.tx.locking.services.MetaLockService;
+import org.brackit.server.tx.locking.services.OptimisticMetaLockService;
+import org.brackit.server.tx.locking.services.UnifiedMetaLockService;
+import org.brackit.xquery.util.Cfg;
+import org.brackit.xquery.xdm.DocumentException;
 
 
 /**
@@ -49,10 +64,28 @@ import org.brackit.server.tx.locking.services.MetaLockService;
  */
 public class BracketStore {
 	
+	public static final String PROTOCOL_TADOM3PLUS = "tadom3+";
+
+	public static final String PROTOCOL_RIX = "rix";
+
+	public static final String PROTOCOL_URIX = "urix";
+
+	public static final String PROTOCOL_IRIX = "irix";
+
+	public static final String PROTOCOL_OPTIMISTIC = "optimistic";
+
 	protected final MetaLockService<?> mls;
 
+	private final Map<String, MetaLockService<?>> lockServices;
+
 	protected final DictionaryMgr dictionary;
 
+	/**
+	 * Value dictionaries of the collections mapped by the root page of their
+	 * document index.
+	 */
+	protected final ConcurrentMap<PageID, ValueDictionary> valueDictionaries;
+
 	protected final BracketIndex index;
 	
 	protected final Index stdIndex;
@@ -70,7 +103,8 @@ public class BracketStore {
 	public BracketStore(BufferMgr bufferMgr, DictionaryMgr dictionary,
 			MetaLockService<?> mls) {
 		this.dictionary = dictionary;
-		this.index = new BracketIndexImpl(bufferMgr);
+		this.valueDictionaries = new ConcurrentHashMap<PageID, ValueDictionary>();
+		this.index = new BracketIndexImpl(bufferMgr, valueDictionaries);
 		this.stdIndex = new BPlusIndex(bufferMgr);
 		this.bufferMgr = bufferMgr;
 		this.pathSynopsisMgrFactory = new PathSynopsisMgrFactory(bufferMgr);
@@ -78,5 +112,49 @@ public class BracketStore {
 		this.pathIndex = new PathIndexImpl<BracketNode>(bufferMgr);
 		this.casIndex = new CASIndexImpl<BracketNode>(bufferMgr);
 		this.mls = mls;
+		this.lockServices = new HashMap<String, MetaLockService<?>>();
+	}
+
+	/**
+	 * Returns the lock service for the given concurrency control protocol.
+	 * The default lock service is returned for <code>null</code>. All other
+	 * lock services are created on first use and shared by all collections
+	 * using the same protocol.
+	 */
+	public synchronized MetaLockService<?> getLockService(String protocol)
+			throws DocumentException {
+		if ((protocol == null) || (protocol.equals(PROTOCOL_TADOM3PLUS))) {
+			return mls;
+		}
+
+		MetaLockService<?> ls = lockServices.get(protocol);
+
+		if (ls == null) {
+			String name = mls.getName() + "#" + protocol;
+			int maxLocks = Cfg.asInt(TxMgr.MAX_LOCKS, TxMgr.DEFAULT_MAX_LOCKS);
+			int maxTx = Cfg.asInt(TxMgr.MAX_TX, TxMgr.DEFAULT_MAX_TX);
+
+			if (protocol.equals(PROTOCOL_RIX)) {
+				ls = new UnifiedMetaLockService<RIX.Mode>(new RIX(), name,
+						maxLocks, maxTx);
+			} else if (protocol.equals(PROTOCOL_URIX)) {
+				ls = new UnifiedMetaLockService<URIX.Mode>(new URIX(), name,
+						maxLocks, maxTx);
+			} else if (protocol.equals(PROTOCOL_IRIX)) {
+				ls = new UnifiedMetaLockService<IRIX.Mode>(new IRIX(), name,
+						maxLocks, maxTx);
+			} else if (protocol.equals(PROTOCOL_OPTIMISTIC)) {
+				ls = new OptimisticMetaLockService<TaDOM3Plus.Mode>(name,
+						new UnifiedMetaLockService<TaDOM3Plus.Mode>(
+								new TaDOM3Plus(), name + "#write", maxLocks,
+								maxTx));
+			} else {
+				throw new DocumentException("Unknown lock protocol: %s",
+						protocol);
+			}
+			lockServices.put(protocol, ls);
+		}
+
+		return ls;
 	}
 }
@@ -64,6 +64,7 @@ public class BracketSubtreeBuilderOpt implements SubtreeHandler {
 	private final BracketKey currentKey;
 	private boolean updateDeweyID;
 
+	private final BracketCollection collection;
 	private final DictionaryMgr dictionary;
 	private final PathSynopsisMgr psMgr;
 	private final Tx tx;
@@ -85,6 +86,7 @@ public class BracketSubtreeBuilderOpt implements SubtreeHandler {
 		this.updateDeweyID = false;
 
 		this.tx = collection.getTX();
+		this.collection = collection;
 		this.dictionary = collection.getDictionary();
 		this.psMgr = collection.pathSynopsis.spawnBulkPsManager();
 		if (parentPCR != -1) {
@@ -122,7 +124,7 @@ public class BracketSubtreeBuilderOpt implements SubtreeHandler {
 		updateDeweyID();
 
 		// create record
-		byte[] textRecord = ElRecordAccess.createRecord(getParentPCR(),
+		byte[] textRecord = collection.createRecord(getParentPCR(),
 				text ? Kind.TEXT.ID : Kind.COMMENT.ID, content.stringValue());
 
 		// insert
@@ -156,7 +158,7 @@ public class BracketSubtreeBuilderOpt implements SubtreeHandler {
 				Kind.PROCESSING_INSTRUCTION.ID, null);
 
 		// create record
-		byte[] record = ElRecordAccess.createRecord(psNode.getPCR(),
+		byte[] record = collection.createRecord(psNode.getPCR(),
 				Kind.PROCESSING_INSTRUCTION.ID, content.stringValue());
 
 		// insert
@@ -235,7 +237,7 @@ public class BracketSubtreeBuilderOpt implements SubtreeHandler {
 				null);
 
 		// create record
-		byte[] attributeRecord = ElRecordAccess.createRecord(psNode.getPCR(),
+		byte[] attributeRecord = collection.createRecord(psNode.getPCR(),
 				Kind.ATTRIBUTE.ID, value.stringValue());
 
 		// insert
@@ -0,0 +1,272 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.node.bracket;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.metadata.vocabulary.ConcurrentVocIDMapping;
+import org.brackit.server.metadata.vocabulary.VocIDMapping;
+import org.brackit.server.node.el.ElRecordAccess;
+import org.brackit.server.store.Field;
+import org.brackit.server.store.OpenMode;
+import org.brackit.server.store.SearchMode;
+import org.brackit.server.store.index.Index;
+import org.brackit.server.store.index.IndexAccessException;
+import org.brackit.server.store.index.IndexIterator;
+import org.brackit.server.store.index.bracket.filter.ValueFilter;
+import org.brackit.server.store.page.bracket.RecordInterpreter;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.util.Calc;
+import org.brackit.xquery.util.Cfg;
+import org.brackit.xquery.xdm.DocumentException;
+
+/**
+ * Replaces frequent values of a collection by codes. Each collection has its
+ * own dictionary, which is stored in a separate index and holds at most
+ * {@link #MAX_SIZE} values. A value is added to the dictionary after it was
+ * stored {@link #THRESHOLD} times; values already contained in the
+ * dictionary are always coded. Coded records are decoded transparently when
+ * they are read (see {@link RecordInterpreter#resolve()}).
+ */
+public class ValueDictionary {
+
+	public static final String THRESHOLD = "org.brackit.server.node.bracket.valueDictionary.threshold";
+
+	public static final String MAX_VALUE_LENGTH = "org.brackit.server.node.bracket.valueDictionary.maxValueLength";
+
+	public static final String MAX_CANDIDATES = "org.brackit.server.node.bracket.valueDictionary.maxCandidates";
+
+	public static final String MAX_SIZE = "org.brackit.server.node.bracket.valueDictionary.maxSize";
+
+	private final Index index;
+
+	private final PageID rootPageID;
+
+	private final VocIDMapping values;
+
+	private final int threshold;
+
+	private final int maxValueLength;
+
+	private final int maxCandidates;
+
+	private final int maxSize;
+
+	/**
+	 * Indicates whether new records are coded. Records that are already coded
+	 * are decoded regardless of this setting.
+	 */
+	private volatile boolean coding;
+
+	/**
+	 * Number of occurrences of values that are not coded yet.
+	 */
+	private final ConcurrentMap<String, AtomicInteger> candidates;
+
+	private ValueDictionary(Index index, PageID rootPageID) {
+		this.index = index;
+		this.rootPageID = rootPageID;
+		this.values = new ConcurrentVocIDMapping(256);
+		this.threshold = Math.max(1, Cfg.asInt(THRESHOLD, 3));
+		this.maxValueLength = Cfg.asInt(MAX_VALUE_LENGTH, 64);
+		this.maxCandidates = Cfg.asInt(MAX_CANDIDATES, 100000);
+		this.maxSize = Cfg.asInt(MAX_SIZE, 65536);
+		this.candidates = new ConcurrentHashMap<String, AtomicInteger>();
+		this.coding = true;
+	}
+
+	/**
+	 * Creates a new, empty dictionary in the given container.
+	 */
+	public static ValueDictionary create(Tx tx, Index index, int containerNo)
+			throws DocumentException {
+		try {
+			PageID rootPageID = index.createIndex(tx, containerNo,
+					Field.UINTEGER, Field.STRING, true, true);
+			return new ValueDictionary(index, rootPageID);
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+	}
+
+	/**
+	 * Loads the dictionary stored in index <code>rootPageID</code>.
+	 */
+	public static ValueDictionary load(Tx tx, Index index, PageID rootPageID)
+			throws DocumentException {
+		ValueDictionary dictionary = new ValueDictionary(index, rootPageID);
+		try {
+			IndexIterator iterator = index.open(tx, rootPageID,
+					SearchMode.FIRST, null, null, OpenMode.READ);
+			try {
+				if (iterator.getKey() != null) {
+					do {
+						int code = Calc.toUIntVar(iterator.getKey());
+						String value = Calc.toString(iterator.getValue());
+						if (dictionary.values.add(value) != code) {
+							throw new DocumentException(
+									"Value dictionary %s is corrupted at "
+											+ "code %s.", rootPageID, code);
+						}
+					} while (iterator.next());
+				}
+			} finally {
+				iterator.close();
+			}
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+		return dictionary;
+	}
+
+	public void drop(Tx tx) throws DocumentException {
+		try {
+			index.dropIndex(tx, rootPageID);
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+	}
+
+	public PageID getRootPageID() {
+		return rootPageID;
+	}
+
+	public boolean isCoding() {
+		return coding;
+	}
+
+	public void setCoding(boolean coding) {
+		this.coding = coding;
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	/**
+	 * Creates a record for the given value, which is coded if it is frequent.
+	 */
+	public byte[] createRecord(Tx tx, int PCR, byte type, String value)
+			throws DocumentException {
+		int code = ((coding) && (value != null)) ? getCode(tx, value) : -1;
+		return (code >= 0) ? RecordInterpreter.createCodedRecord(PCR, type,
+				code) : ElRecordAccess.createRecord(PCR, type, value);
+	}
+
+	/**
+	 * Returns the code for the given value or -1 if the value is not (yet)
+	 * frequent enough to be coded.
+	 */
+	public int getCode(Tx tx, String value) throws DocumentException {
+		if (value.length() > maxValueLength) {
+			return -1;
+		}
+
+		int code = values.translate(value);
+		if ((code < 0) && (isFrequent(value))) {
+			code = add(tx, value);
+		}
+
+		// a code is only worth it, if it is shorter than the stored value
+		if ((code < 0) || (Calc.fromUIntVar(code).length >= Calc
+				.fromString(value).length)) {
+			return -1;
+		}
+		return code;
+	}
+
+	/**
+	 * Creates a filter for nodes with the given value. If the value has a
+	 * code, the filter compares the codes of coded records without decoding
+	 * them. The lookup does not count as an occurrence of the value.
+	 */
+	public ValueFilter createValueFilter(String value) {
+		int code = (value.length() <= maxValueLength) ? values
+				.translate(value) : -1;
+		return new ValueFilter(value, code);
+	}
+
+	/**
+	 * Returns the value of the given code.
+	 */
+	public String resolve(int code) throws DocumentException {
+		String value = values.resolve(code);
+		if (value == null) {
+			throw new DocumentException("Unknown code %s in value dictionary "
+					+ "%s.", code, rootPageID);
+		}
+		return value;
+	}
+
+	/**
+	 * Adds the value to the dictionary, unless it is full. The new entry is
+	 * stored immediately and survives a rollback, because records of other
+	 * transactions may use the code already.
+	 */
+	private synchronized int add(Tx tx, String value)
+			throws DocumentException {
+		int code = values.translate(value);
+		if ((code >= 0) || (values.size() >= maxSize)) {
+			return code;
+		}
+
+		code = values.size();
+		try {
+			index.insertPersistent(tx, rootPageID, Calc.fromUIntVar(code),
+					Calc.fromString(value));
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+		values.add(value);
+		return code;
+	}
+
+	private boolean isFrequent(String value) {
+		AtomicInteger count = candidates.get(value);
+		if (count == null) {
+			if (candidates.size() >= maxCandidates) {
+				// forget infrequent values
+				candidates.clear();
+			}
+			count = new AtomicInteger();
+			AtomicInteger other = candidates.putIfAbsent(value, count);
+			if (other != null) {
+				count = other;
+			}
+		}
+
+		if (count.incrementAndGet() >= threshold) {
+			candidates.remove(value);
+			return true;
+		}
+		return false;
+	}
+}
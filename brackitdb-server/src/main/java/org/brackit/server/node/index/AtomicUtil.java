@@ -58,26 +58,26 @@ public class AtomicUtil {
 			throw new DocumentException("%s is not a built-in type", type);
 		}
 		if (type.instanceOf(Type.STR)) {
-			return Field.STRING;
+			return Field.NSTRING;
 		}
 		if (type.isNumeric()) {
 			if (type.instanceOf(Type.DBL)) {
-				return Field.DOUBLE;
+				return Field.NDOUBLE;
 			}
 			if (type.instanceOf(Type.FLO)) {
-				return Field.FLOAT;
+				return Field.NFLOAT;
 			}
 			if (type.instanceOf(Type.INT)) {
-				return Field.INTEGER;
+				return Field.NINTEGER;
 			}
 			if (type.instanceOf(Type.LON)) {
-				return Field.LONG;
+				return Field.NLONG;
 			}
 			if (type.instanceOf(Type.INR)) {
-				return Field.BIGDECIMAL;
+				return Field.NBIGDECIMAL;
 			}
 			if (type.instanceOf(Type.DEC)) {
-				return Field.BIGDECIMAL;
+				return Field.NBIGDECIMAL;
 			}
 		}
 		throw new DocumentException("Unsupported type: %s", type);
@@ -105,22 +105,27 @@ public class AtomicUtil {
 		}
 		if (type.isNumeric()) {
 			if (type.instanceOf(Type.DBL)) {
-				return Calc.fromDouble(((Numeric) atomic).doubleValue());
+				return Calc.fromNormalizedDouble(((Numeric) atomic)
+						.doubleValue());
 			}
 			if (type.instanceOf(Type.FLO)) {
-				return Calc.fromFloat(((Numeric) atomic).floatValue());
+				return Calc.fromNormalizedFloat(((Numeric) atomic)
+						.floatValue());
 			}
 			if (type.instanceOf(Type.INT)) {
-				return Calc.fromInt(((Numeric) atomic).intValue());
+				return Calc.fromNormalizedInt(((Numeric) atomic).intValue());
 			}
 			if (type.instanceOf(Type.LON)) {
-				return Calc.fromLong(((Numeric) atomic).longValue());
+				return Calc.fromNormalizedLong(((Numeric) atomic)
+						.longValue());
 			}
 			if (type.instanceOf(Type.INR)) {
-				return Calc.fromBigDecimal(((Numeric) atomic).decimalValue());
+				return Calc.fromNormalizedBigDecimal(((Numeric) atomic)
+						.decimalValue());
 			}
 			if (type.instanceOf(Type.DEC)) {
-				return Calc.fromBigDecimal(((Numeric) atomic).decimalValue());
+				return Calc.fromNormalizedBigDecimal(((Numeric) atomic)
+						.decimalValue());
 			}
 		}
 		throw new DocumentException("Unsupported type: %s", type);
@@ -136,22 +141,22 @@ public class AtomicUtil {
 		}
 		if (type.isNumeric()) {
 			if (type.instanceOf(Type.DBL)) {
-				return new Dbl(Calc.toDouble(b));
+				return new Dbl(Calc.toNormalizedDouble(b));
 			}
 			if (type.instanceOf(Type.FLO)) {
-				return new Flt(Calc.toFloat(b));
+				return new Flt(Calc.toNormalizedFloat(b));
 			}
 			if (type.instanceOf(Type.INT)) {
-				return new Int32(Calc.toInt(b));
+				return new Int32(Calc.toNormalizedInt(b));
 			}
 			if (type.instanceOf(Type.LON)) {
-				return new Int64(Calc.toLong(b));
+				return new Int64(Calc.toNormalizedLong(b));
 			}
 			if (type.instanceOf(Type.INR)) {
-				return new Int(Calc.toBigDecimal(b));
+				return new Int(Calc.toNormalizedBigDecimal(b));
 			}
 			if (type.instanceOf(Type.DEC)) {
-				return new Dec(Calc.toBigDecimal(b));
+				return new Dec(Calc.toNormalizedBigDecimal(b));
 			}
 		}
 		throw new DocumentException("Unsupported type: %s", type);
@@ -0,0 +1,106 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.node.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.store.Field;
+import org.brackit.server.store.index.Index;
+import org.brackit.server.store.index.IndexAccessException;
+import org.brackit.server.tx.Tx;
+
+/**
+ * Collects the entries an index listener inserts during a single update and
+ * passes them to {@link Index#insert(Tx, PageID, byte[][], byte[][])} in
+ * one call. The entries are sorted by key and value first, so that entries
+ * falling into the same leaf are inserted without a new descent.
+ * 
+ */
+public class IndexInsertBuffer {
+
+	private final Index index;
+
+	private final PageID rootPageID;
+
+	private final Comparator<byte[][]> order;
+
+	private final List<byte[][]> entries = new ArrayList<byte[][]>();
+
+	public IndexInsertBuffer(Index index, PageID rootPageID,
+			final Field keyType, final Field valueType) {
+		this.index = index;
+		this.rootPageID = rootPageID;
+		this.order = new Comparator<byte[][]>() {
+			@Override
+			public int compare(byte[][] o1, byte[][] o2) {
+				int res = keyType.compare(o1[0], o2[0]);
+				return (res != 0) ? res : valueType.compare(o1[1], o2[1]);
+			}
+		};
+	}
+
+	public void add(byte[] key, byte[] value) {
+		entries.add(new byte[][] { key, value });
+	}
+
+	public void flush(Tx tx) throws IndexAccessException {
+		int size = entries.size();
+
+		if (size == 0) {
+			return;
+		}
+
+		try {
+			if (size == 1) {
+				byte[][] entry = entries.get(0);
+				index.insert(tx, rootPageID, entry[0], entry[1]);
+				return;
+			}
+
+			Collections.sort(entries, order);
+			byte[][] keys = new byte[size][];
+			byte[][] values = new byte[size][];
+			for (int i = 0; i < size; i++) {
+				byte[][] entry = entries.get(i);
+				keys[i] = entry[0];
+				values[i] = entry[1];
+			}
+			index.insert(tx, rootPageID, keys, values);
+		} finally {
+			entries.clear();
+		}
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+}
@@ -34,10 +34,7 @@ import org.brackit.server.ServerException;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.node.index.definition.IndexDef;
 import org.brackit.server.node.txnode.IndexEncoder;
-import org.brackit.server.store.OpenMode;
-import org.brackit.server.store.SearchMode;
 import org.brackit.server.store.index.Index;
-import org.brackit.server.store.index.IndexIterator;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.util.sort.MergeSort;
 import org.brackit.server.util.sort.Sort;
@@ -115,33 +112,7 @@ class CASIndexBuilder<E extends Node<E>> extends DefaultListener<E> implements
 
 			PageID rootPageID = index.createIndex(tx, containerNo, encoder
 					.getKeyType(), encoder.getValueType(), false, true);
-			IndexIterator iterator = index.open(tx, rootPageID,
-					SearchMode.FIRST, null, null, OpenMode.LOAD);
-			iterator.triggerStatistics();
-
-			SortItem first = null;
-			SortItem last = null;
-
-			int i = 0;
-			SortItem item;
-			while ((item = sorted.next()) != null) {
-				if (first == null) {
-					first = item;
-				}
-				last = item;
-				iterator.insert(item.getKey(), item.getValue());
-				iterator.next();
-				i++;
-			}
-
-			iterator.close();
-			String minKey = (first != null) ? encoder.getKeyType().toString(
-					first.getKey()) : null;
-			String maxKey = (last != null) ? encoder.getKeyType().toString(
-					last.getKey()) : null;
-			indexDef.setIndexStatistics(iterator.getStatistics());
-			indexDef.getIndexStatistics().setMinKey(minKey);
-			indexDef.getIndexStatistics().setMaxKey(maxKey);
+			indexDef.setIndexStatistics(index.load(tx, rootPageID, sorted));
 
 			long end = System.nanoTime();
 
@@ -27,6 +27,11 @@
  */
 package org.brackit.server.node.index.cas.impl;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.node.index.AtomicUtil;
@@ -34,18 +39,21 @@ import org.brackit.server.node.index.cas.CASIndex;
 import org.brackit.server.node.index.definition.IndexDef;
 import org.brackit.server.node.txnode.IndexEncoder;
 import org.brackit.server.node.txnode.IndexEncoderHelper;
+import org.brackit.server.store.Field;
 import org.brackit.server.store.OpenMode;
 import org.brackit.server.store.SearchMode;
 import org.brackit.server.store.index.Index;
 import org.brackit.server.store.index.IndexAccessException;
 import org.brackit.server.store.index.IndexIterator;
 import org.brackit.server.store.index.aries.BPlusIndex;
+import org.brackit.server.store.index.aries.BPlusIndexSampler;
 import org.brackit.server.store.index.aries.visitor.IndexStatisticsVisitor;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.locking.services.KVLLockService;
 import org.brackit.xquery.atomic.Atomic;
 import org.brackit.xquery.node.parser.ListenMode;
 import org.brackit.xquery.node.parser.SubtreeListener;
+import org.brackit.xquery.node.stream.EmptyStream;
 import org.brackit.xquery.node.stream.filter.Filter;
 import org.brackit.xquery.xdm.DocumentException;
 import org.brackit.xquery.xdm.Node;
@@ -60,18 +68,32 @@ import org.brackit.xquery.xdm.Type;
 public class CASIndexImpl<E extends Node<E>> implements CASIndex<E> {
 	private final Index index;
 
+	/**
+	 * Indexes whose stored key type matches the current key encoding of
+	 * {@link AtomicUtil}.
+	 */
+	private final Set<PageID> checkedIndexes = Collections
+			.newSetFromMap(new ConcurrentHashMap<PageID, Boolean>());
+
 	public CASIndexImpl(BufferMgr bufferMgr) {
 		this.index = new BPlusIndex(bufferMgr, new KVLLockService(
-				CASIndex.class.getSimpleName()));
+				CASIndex.class.getSimpleName()), BPlusIndex.KEY_FILTERS);
 	}
 
 	@Override
 	public void calculateStatistics(Tx tx, IndexDef idxDef)
 			throws DocumentException {
 		try {
-			IndexStatisticsVisitor visitor = new IndexStatisticsVisitor();
-			index.traverse(tx, new PageID(idxDef.getID()), visitor);
-			idxDef.setIndexStatistics(visitor.getIndexStatistics());
+			PageID rootPageID = new PageID(idxDef.getID());
+
+			if (BPlusIndexSampler.SAMPLE_STATISTICS) {
+				idxDef.setIndexStatistics(index.sample(tx, rootPageID,
+						BPlusIndexSampler.ERROR_BOUND));
+			} else {
+				IndexStatisticsVisitor visitor = new IndexStatisticsVisitor();
+				index.traverse(tx, rootPageID, visitor);
+				idxDef.setIndexStatistics(visitor.getIndexStatistics());
+			}
 		} catch (IndexAccessException e) {
 			throw new DocumentException(e);
 		}
@@ -90,8 +112,17 @@ public class CASIndexImpl<E extends Node<E>> implements CASIndex<E> {
 			Filter<? super E> filter) throws DocumentException {
 		try {
 			PageID rootPageID = new PageID(idxNo);
+			checkKeyType(tx, rootPageID, AtomicUtil.map(type));
 			byte[] minByteKey = AtomicUtil.toBytes(minSearchKey, type);
 			byte[] maxByteKey = AtomicUtil.toBytes(maxSearchKey, type);
+
+			if ((includeMin) && (includeMax) && (minByteKey != null)
+					&& (Arrays.equals(minByteKey, maxByteKey))
+					&& (!index.mayContain(tx, rootPageID, minByteKey))) {
+				// equality probe for a missing key
+				return new EmptyStream<E>();
+			}
+
 			IndexIterator iterator = index.open(tx, rootPageID, searchMode,
 					minByteKey, null, OpenMode.READ);
 			IndexEncoder<E> encoder = helper.getCasIndexEncoder(type, iterator
@@ -107,11 +138,49 @@ public class CASIndexImpl<E extends Node<E>> implements CASIndex<E> {
 	public SubtreeListener<? super E> createListener(Tx tx,
 			IndexEncoder<E> encoder, Filter<? super E> filter, ListenMode mode,
 			IndexDef idxDef) throws DocumentException {
+		checkKeyType(tx, new PageID(idxDef.getID()), encoder.getKeyType());
 		return new CASIndexListener<E>(tx, index, idxDef, encoder, filter, mode);
 	}
 
+	/**
+	 * Numeric keys used to be stored with encodings that are not
+	 * byte-comparable and string keys used to be compared signed, i.e., not
+	 * in code point order. The key type is recorded in the index when it is
+	 * created, so indexes built with an outdated encoding are detected here
+	 * and refused instead of being searched or updated with keys they
+	 * cannot compare.
+	 */
+	private void checkKeyType(Tx tx, PageID rootPageID, Field keyType)
+			throws DocumentException {
+		if (checkedIndexes.contains(rootPageID)) {
+			return;
+		}
+
+		Field storedKeyType;
+		try {
+			IndexIterator iterator = index.open(tx, rootPageID,
+					SearchMode.FIRST, null, null, OpenMode.READ);
+			try {
+				storedKeyType = iterator.getKeyType();
+			} finally {
+				iterator.close();
+			}
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+
+		if (storedKeyType != keyType) {
+			throw new DocumentException(
+					"CAS index %s uses the outdated key type %s instead of %s. "
+							+ "Drop and recreate the index.", rootPageID,
+					storedKeyType, keyType);
+		}
+		checkedIndexes.add(rootPageID);
+	}
+
 	@Override
 	public void drop(Tx tx, int idxNo) throws DocumentException {
+		checkedIndexes.remove(new PageID(idxNo));
 		try {
 			index.dropIndex(tx, new PageID(idxNo));
 		} catch (IndexAccessException e) {
@@ -29,6 +29,7 @@ package org.brackit.server.node.index.cas.impl;
 
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.node.index.IndexInsertBuffer;
 import org.brackit.server.node.index.definition.IndexDef;
 import org.brackit.server.node.txnode.IndexEncoder;
 import org.brackit.server.store.index.Index;
@@ -57,6 +58,8 @@ public class CASIndexListener<E extends Node<E>> extends DefaultListener<E>
 
 	private final Tx tx;
 
+	private final IndexInsertBuffer pending;
+
 	public CASIndexListener(Tx tx, Index index, IndexDef indexDef,
 			IndexEncoder<E> encoder, Filter<? super E> filter, ListenMode mode) {
 		this.tx = tx;
@@ -65,6 +68,23 @@ public class CASIndexListener<E extends Node<E>> extends DefaultListener<E>
 		this.indexNo = new PageID(indexDef.getID());
 		this.encoder = encoder;
 		this.filter = filter;
+		this.pending = new IndexInsertBuffer(index, indexNo, encoder
+				.getKeyType(), encoder.getValueType());
+	}
+
+	@Override
+	public void end() throws DocumentException {
+		// insert the entries of this update with a single batch
+		try {
+			pending.flush(tx);
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+	}
+
+	@Override
+	public void fail() throws DocumentException {
+		pending.clear();
 	}
 
 	@Override
@@ -116,12 +136,7 @@ public class CASIndexListener<E extends Node<E>> extends DefaultListener<E>
 
 			byte[] key = encoder.encodeKey(node);
 			byte[] value = encoder.encodeValue(node);
-
-			try {
-				index.insert(tx, indexNo, key, value);
-			} catch (IndexAccessException e) {
-				throw new DocumentException(e);
-			}
+			pending.add(key, value);
 		}
 	}
 }
\ No newline at end of file
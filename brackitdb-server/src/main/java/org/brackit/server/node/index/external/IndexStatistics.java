@@ -27,6 +27,8 @@
  */
 package org.brackit.server.node.index.external;
 
+import java.util.ArrayList;
+
 import org.brackit.server.metadata.materialize.Materializable;
 import org.brackit.xquery.atomic.Int64;
 import org.brackit.xquery.atomic.QNm;
@@ -34,6 +36,7 @@ import org.brackit.xquery.atomic.Str;
 import org.brackit.xquery.node.parser.FragmentHelper;
 import org.brackit.xquery.xdm.DocumentException;
 import org.brackit.xquery.xdm.Node;
+import org.brackit.xquery.xdm.Stream;
 
 /**
  * 
@@ -61,6 +64,12 @@ public class IndexStatistics implements Materializable {
 
 	private static final QNm MAXKEY_ATTR = new QNm("maxKey");
 
+	private static final QNm DISTINCT_ATTR = new QNm("distinct");
+
+	private static final QNm BUCKET_TAG = new QNm("bucket");
+
+	private static final QNm UPPER_ATTR = new QNm("upper");
+
 	private long idxSize;
 
 	private long pageCount;
@@ -77,6 +86,12 @@ public class IndexStatistics implements Materializable {
 
 	private String maxKey;
 
+	private long distinctKeys = -1;
+
+	private String[] histogramBounds;
+
+	private long[] histogramCounts;
+
 	public IndexStatistics() {
 	}
 
@@ -106,6 +121,37 @@ public class IndexStatistics implements Materializable {
 		minKey = (attr != null) ? attr.getValue().stringValue() : null;
 		attr = root.getAttribute(MAXKEY_ATTR);
 		maxKey = (attr != null) ? attr.getValue().stringValue() : null;
+		attr = root.getAttribute(DISTINCT_ATTR);
+		distinctKeys = (attr != null) ? Long.parseLong(attr.getValue()
+				.stringValue()) : -1;
+
+		ArrayList<String> bounds = new ArrayList<String>();
+		ArrayList<Long> counts = new ArrayList<Long>();
+		Stream<? extends Node<?>> children = root.getChildren();
+		try {
+			Node<?> child;
+			while ((child = children.next()) != null) {
+				if (child.getName().equals(BUCKET_TAG)) {
+					bounds.add(child.getAttribute(UPPER_ATTR).getValue()
+							.stringValue());
+					counts.add(Long.parseLong(child.getAttribute(CARD_ATTR)
+							.getValue().stringValue()));
+				}
+			}
+		} finally {
+			children.close();
+		}
+
+		if (!bounds.isEmpty()) {
+			histogramBounds = bounds.toArray(new String[bounds.size()]);
+			histogramCounts = new long[counts.size()];
+			for (int i = 0; i < histogramCounts.length; i++) {
+				histogramCounts[i] = counts.get(i);
+			}
+		} else {
+			histogramBounds = null;
+			histogramCounts = null;
+		}
 	}
 
 	@Override
@@ -125,6 +171,19 @@ public class IndexStatistics implements Materializable {
 			helper.attribute(MAXKEY_ATTR, new Str(maxKey));
 		}
 
+		if (distinctKeys >= 0) {
+			helper.attribute(DISTINCT_ATTR, new Int64(distinctKeys));
+		}
+
+		if (histogramBounds != null) {
+			for (int i = 0; i < histogramBounds.length; i++) {
+				helper.openElement(BUCKET_TAG);
+				helper.attribute(UPPER_ATTR, new Str(histogramBounds[i]));
+				helper.attribute(CARD_ATTR, new Int64(histogramCounts[i]));
+				helper.closeElement();
+			}
+		}
+
 		helper.closeElement();
 
 		return helper.getRoot();
@@ -182,6 +241,38 @@ public class IndexStatistics implements Materializable {
 		this.maxKey = maxKey;
 	}
 
+	/**
+	 * Returns the (estimated) number of distinct keys or -1 if unknown.
+	 */
+	public long getDistinctKeys() {
+		return distinctKeys;
+	}
+
+	public void setDistinctKeys(long distinctKeys) {
+		this.distinctKeys = distinctKeys;
+	}
+
+	/**
+	 * Returns the inclusive upper bounds of the buckets of an equi-depth
+	 * histogram over the keys or <code>null</code> if no histogram is
+	 * available.
+	 */
+	public String[] getHistogramBounds() {
+		return histogramBounds;
+	}
+
+	/**
+	 * Returns the (estimated) number of entries per histogram bucket.
+	 */
+	public long[] getHistogramCounts() {
+		return histogramCounts;
+	}
+
+	public void setHistogram(String[] histogramBounds, long[] histogramCounts) {
+		this.histogramBounds = histogramBounds;
+		this.histogramCounts = histogramCounts;
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer buf = new StringBuffer();
@@ -195,6 +286,10 @@ public class IndexStatistics implements Materializable {
 		buf.append("Min Key " + minKey + "\n");
 		buf.append("Max key " + maxKey);
 
+		if (distinctKeys >= 0) {
+			buf.append("\nDistinct keys " + distinctKeys);
+		}
+
 		return buf.toString();
 	}
 
@@ -223,6 +318,14 @@ public class IndexStatistics implements Materializable {
 		this.indexPointers += statistics.indexPointers;
 		this.indexTuples += statistics.indexTuples;
 		this.pageCount += statistics.pageCount;
+		if ((this.distinctKeys >= 0) && (statistics.distinctKeys >= 0)) {
+			this.distinctKeys += statistics.distinctKeys;
+		} else {
+			this.distinctKeys = -1;
+		}
+		// histograms of different key ranges cannot be merged
+		this.histogramBounds = null;
+		this.histogramCounts = null;
 	}
 
 	public long getIndexPageCount() {
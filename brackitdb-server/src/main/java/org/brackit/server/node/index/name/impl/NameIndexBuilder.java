@@ -177,31 +177,19 @@ class NameIndexBuilder<E extends TXNode<E>> extends DefaultListener<E>
 						nodeRefIndex.encoder.getKeyType(),
 						nodeRefIndex.encoder.getValueType(), true, true);
 
-				IndexIterator iterator = index.open(tx, rootPageID,
-						SearchMode.FIRST, null, null, OpenMode.LOAD);
-				iterator.triggerStatistics();
-
-				int i = 0;
-				SortItem item;
-				while ((item = sorted.next()) != null) {
-					iterator.insert(item.getKey(), item.getValue());
-					iterator.next();
-					i++;
-				}
-
-				iterator.close();
+				IndexStatistics loaded = index.load(tx, rootPageID, sorted);
 				if (indexStatistics == null)
-					indexStatistics = iterator.getStatistics();
+					indexStatistics = loaded;
 				else
-					indexStatistics.add(iterator.getStatistics(), false);
+					indexStatistics.add(loaded, false);
 
 				long end = System.nanoTime();
 
 				if (log.isDebugEnabled()) {
 					log.debug("Building node reference index for vocID "
-							+ nodeRefIndex.qVocID + " with " + i
-							+ " items took " + ((end - start) / 1000000)
-							+ " ms");
+							+ nodeRefIndex.qVocID + " with "
+							+ loaded.getIndexTuples() + " items took "
+							+ ((end - start) / 1000000) + " ms");
 				}
 
 				nodeRefIndex.linkValue = nameDirEncoder
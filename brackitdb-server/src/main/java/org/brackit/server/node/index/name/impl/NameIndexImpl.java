@@ -44,6 +44,7 @@ import org.brackit.server.store.index.Index;
 import org.brackit.server.store.index.IndexAccessException;
 import org.brackit.server.store.index.IndexIterator;
 import org.brackit.server.store.index.aries.BPlusIndex;
+import org.brackit.server.store.index.aries.BPlusIndexSampler;
 import org.brackit.server.store.index.aries.visitor.SizeCounterVisitor;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.locking.services.KVLLockService;
@@ -63,7 +64,7 @@ public class NameIndexImpl<E extends TXNode<E>> implements NameIndex<E> {
 
 	public NameIndexImpl(BufferMgr bufferMgr) {
 		this.index = new BPlusIndex(bufferMgr, new KVLLockService(
-				NameIndex.class.getSimpleName()));
+				NameIndex.class.getSimpleName()), BPlusIndex.KEY_FILTERS);
 		this.nameDirEncoder = new NameDirectoryEncoderImpl();
 	}
 
@@ -88,14 +89,29 @@ public class NameIndexImpl<E extends TXNode<E>> implements NameIndex<E> {
 					byte[] value = iterator.getValue();
 					PageID nodeReferenceIdxNo = nameDirEncoder
 							.decodePageID(value);
-					SizeCounterVisitor scv = new SizeCounterVisitor();
-					index.traverse(tx, nodeReferenceIdxNo, scv);
-					idxSize = scv.getIndexSize();
-					pageNo += scv.getIndexPageCount();
-					indexHeight = Math.max(indexHeight, scv.getIndexHeight());
-					indexLeaveCount += scv.getIndexLeaveCount();
-					indexTuples += scv.getIndexTuples();
-					indexPointers += scv.getIndexPointers();
+
+					if (BPlusIndexSampler.SAMPLE_STATISTICS) {
+						IndexStatistics is = index.sample(tx,
+								nodeReferenceIdxNo,
+								BPlusIndexSampler.ERROR_BOUND);
+						idxSize += is.getIdxSize();
+						pageNo += is.getIndexPageCount();
+						indexHeight = Math.max(indexHeight, (int) is
+								.getIndexHeight());
+						indexLeaveCount += is.getIndexLeaveCount();
+						indexTuples += is.getIndexTuples();
+						indexPointers += is.getIndexPointers();
+					} else {
+						SizeCounterVisitor scv = new SizeCounterVisitor();
+						index.traverse(tx, nodeReferenceIdxNo, scv);
+						idxSize += scv.getIndexSize();
+						pageNo += scv.getIndexPageCount();
+						indexHeight = Math.max(indexHeight, scv
+								.getIndexHeight());
+						indexLeaveCount += scv.getIndexLeaveCount();
+						indexTuples += scv.getIndexTuples();
+						indexPointers += scv.getIndexPointers();
+					}
 				} while (iterator.next());
 			}
 		} catch (IndexAccessException e) {
@@ -33,10 +33,7 @@ import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.node.index.definition.IndexDef;
 import org.brackit.server.node.index.path.PathIndex;
 import org.brackit.server.node.txnode.IndexEncoder;
-import org.brackit.server.store.OpenMode;
-import org.brackit.server.store.SearchMode;
 import org.brackit.server.store.index.Index;
-import org.brackit.server.store.index.IndexIterator;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.util.sort.MergeSort;
 import org.brackit.server.util.sort.Sort;
@@ -120,17 +117,7 @@ public class PathIndexBuilder<E extends Node<E>> extends DefaultListener<E>
 			PageID rootPageID = index.createIndex(tx, containerNo, encoder
 					.getKeyType(), encoder.getValueType(), true, true);
 
-			IndexIterator iterator = index.open(tx, rootPageID,
-					SearchMode.FIRST, null, null, OpenMode.LOAD);
-			iterator.triggerStatistics();
-
-			SortItem item;
-			while ((item = sorted.next()) != null) {
-				iterator.insert(item.getKey(), item.getValue());
-				iterator.next();
-			}
-			iterator.close();
-			indexDef.setIndexStatistics(iterator.getStatistics());
+			indexDef.setIndexStatistics(index.load(tx, rootPageID, sorted));
 
 			long end = System.nanoTime();
 
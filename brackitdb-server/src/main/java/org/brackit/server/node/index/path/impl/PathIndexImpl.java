@@ -39,6 +39,7 @@ import org.brackit.server.store.index.Index;
 import org.brackit.server.store.index.IndexAccessException;
 import org.brackit.server.store.index.IndexIterator;
 import org.brackit.server.store.index.aries.BPlusIndex;
+import org.brackit.server.store.index.aries.BPlusIndexSampler;
 import org.brackit.server.store.index.aries.visitor.IndexStatisticsVisitor;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.locking.services.KVLLockService;
@@ -65,9 +66,16 @@ public class PathIndexImpl<E extends Node<E>> implements PathIndex<E> {
 	public void calculateStatistics(Tx tx, IndexDef idxDef)
 			throws DocumentException {
 		try {
-			IndexStatisticsVisitor visitor = new IndexStatisticsVisitor();
-			index.traverse(tx, new PageID(idxDef.getID()), visitor);
-			idxDef.setIndexStatistics(visitor.getIndexStatistics());
+			PageID rootPageID = new PageID(idxDef.getID());
+
+			if (BPlusIndexSampler.SAMPLE_STATISTICS) {
+				idxDef.setIndexStatistics(index.sample(tx, rootPageID,
+						BPlusIndexSampler.ERROR_BOUND));
+			} else {
+				IndexStatisticsVisitor visitor = new IndexStatisticsVisitor();
+				index.traverse(tx, rootPageID, visitor);
+				idxDef.setIndexStatistics(visitor.getIndexStatistics());
+			}
 		} catch (IndexAccessException e) {
 			throw new DocumentException(e);
 		}
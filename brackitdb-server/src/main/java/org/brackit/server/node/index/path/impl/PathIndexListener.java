@@ -29,6 +29,7 @@ package org.brackit.server.node.index.path.impl;
 
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.node.index.IndexInsertBuffer;
 import org.brackit.server.node.index.definition.IndexDef;
 import org.brackit.server.node.txnode.IndexEncoder;
 import org.brackit.server.store.index.Index;
@@ -56,6 +57,8 @@ public class PathIndexListener<E extends Node<E>> extends DefaultListener<E>
 	private final Filter<? super E> filter;
 	private final Tx tx;
 
+	private final IndexInsertBuffer pending;
+
 	public PathIndexListener(Tx tx, Index index, IndexDef indexDef,
 			ListenMode mode, IndexEncoder<E> encoder, Filter<? super E> filter) {
 		this.tx = tx;
@@ -65,6 +68,23 @@ public class PathIndexListener<E extends Node<E>> extends DefaultListener<E>
 		this.indexNo = new PageID(indexDef.getID());
 		this.encoder = encoder;
 		this.filter = filter;
+		this.pending = new IndexInsertBuffer(index, indexNo, encoder
+				.getKeyType(), encoder.getValueType());
+	}
+
+	@Override
+	public void end() throws DocumentException {
+		// insert the entries of this update with a single batch
+		try {
+			pending.flush(tx);
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+	}
+
+	@Override
+	public void fail() throws DocumentException {
+		pending.clear();
 	}
 
 	@Override
@@ -102,12 +122,7 @@ public class PathIndexListener<E extends Node<E>> extends DefaultListener<E>
 
 			byte[] key = encoder.encodeKey(node);
 			byte[] value = encoder.encodeValue(node);
-
-			try {
-				index.insert(tx, indexNo, key, value);
-			} catch (IndexAccessException e) {
-				throw new DocumentException(e);
-			}
+			pending.add(key, value);
 		}
 	}
 
@@ -44,6 +44,8 @@ public class StorageSpec {
 
 	private boolean collectStatistics = false;
 
+	private boolean valueCompression = false;
+
 	public StorageSpec(String documentName, DictionaryMgr dictionary) {
 		this.documentName = documentName;
 		this.dictionary = dictionary;
@@ -73,6 +75,14 @@ public class StorageSpec {
 		this.collectStatistics = collectStatistics;
 	}
 
+	public boolean isValueCompression() {
+		return valueCompression;
+	}
+
+	public void setValueCompression(boolean valueCompression) {
+		this.valueCompression = valueCompression;
+	}
+
 	public String getDocumentName() {
 		return documentName;
 	}
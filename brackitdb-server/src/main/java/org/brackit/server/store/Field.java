@@ -120,6 +120,37 @@ public class Field {
 
 	public static final CollectionDeweyIDPCRField COLLECTIONDEWEYIDPCR = new CollectionDeweyIDPCRField();
 
+	/**
+	 * {@link Integer} (4 bytes, normalized)
+	 */
+	public static final NormalizedIntegerField NINTEGER = new NormalizedIntegerField();
+
+	/**
+	 * {@link Long} (8 bytes, normalized)
+	 */
+	public static final NormalizedLongField NLONG = new NormalizedLongField();
+
+	/**
+	 * {@link Float} (4 bytes, normalized)
+	 */
+	public static final NormalizedFloatField NFLOAT = new NormalizedFloatField();
+
+	/**
+	 * {@link Double} (8 bytes, normalized)
+	 */
+	public static final NormalizedDoubleField NDOUBLE = new NormalizedDoubleField();
+
+	/**
+	 * {@link java.math.BigDecimal} (variable length, normalized)
+	 */
+	public static final NormalizedBigDecimalField NBIGDECIMAL = new NormalizedBigDecimalField();
+
+	/**
+	 * {@link String} (UTF-8, compared bytewise unsigned, i.e., in code point
+	 * order)
+	 */
+	public static final NormalizedStringField NSTRING = new NormalizedStringField();
+
 	/**
 	 * Positive {@link Integer} (1 - 4 bytes)
 	 */
@@ -264,6 +295,17 @@ public class Field {
 		public int compareAsPrefix(byte[] v1, byte[] v2) {
 			return Calc.compareAsPrefix(v1, v2);
 		}
+
+		@Override
+		public byte[] shortestSeparator(byte[] left, byte[] right) {
+			int length = distinguishingPrefixLength(left, right);
+			// do not cut multi-byte characters
+			while ((length > 0) && (length < right.length)
+					&& ((right[length] & 0xC0) == 0x80)) {
+				length++;
+			}
+			return checkSeparator(left, right, length);
+		}
 	}
 
 	/**
@@ -292,6 +334,12 @@ public class Field {
 		public int compareAsPrefix(byte[] v1, byte[] v2) {
 			return Calc.compareAsPrefix(v1, v2);
 		}
+
+		@Override
+		public byte[] shortestSeparator(byte[] left, byte[] right) {
+			return checkSeparator(left, right, distinguishingPrefixLength(
+					left, right));
+		}
 	}
 
 	public static final class PageIDField extends Field {
@@ -329,6 +377,14 @@ public class Field {
 		public int compareAsPrefix(byte[] v1, byte[] v2) {
 			return Calc.compareUAsPrefix(v1, v2);
 		}
+
+		@Override
+		public byte[] shortestSeparator(byte[] left, byte[] right) {
+			XTCdeweyID separator = separatorDeweyID(new XTCdeweyID(null, left),
+					new XTCdeweyID(null, right));
+			return (separator != null) ? checkSeparator(left, right, separator
+					.toBytes()) : left;
+		}
 	}
 
 	public static final class FullDeweyIDField extends Field {
@@ -377,6 +433,14 @@ public class Field {
 				return 0;
 			}
 		}
+
+		@Override
+		public byte[] shortestSeparator(byte[] left, byte[] right) {
+			XTCdeweyID separator = separatorDeweyID(decodeDeweyID(left),
+					decodeDeweyID(right));
+			return (separator != null) ? checkSeparator(left, right,
+					encode(separator)) : left;
+		}
 	}
 
 	/**
@@ -501,6 +565,14 @@ public class Field {
 				return 0;
 			}
 		}
+
+		@Override
+		public byte[] shortestSeparator(byte[] left, byte[] right) {
+			XTCdeweyID separator = separatorDeweyID(decode(0, left), decode(0,
+					right));
+			return (separator != null) ? checkSeparator(left, right,
+					encode(separator)) : left;
+		}
 	}
 
 	public static final class DeweyIDPCRField extends Field {
@@ -810,6 +882,95 @@ public class Field {
 		}
 	}
 
+	/**
+	 * Fields with an order-preserving encoding. Values are compared bytewise
+	 * unsigned and never decoded for comparison.
+	 */
+	public static abstract class NormalizedField extends Field {
+		@Override
+		public final int compare(byte[] v1, byte[] v2) {
+			return Calc.compareU(v1, v2);
+		}
+	}
+
+	public static final class NormalizedIntegerField extends NormalizedField {
+		public byte[] fromInt(int i) {
+			return Calc.fromNormalizedInt(i);
+		}
+
+		@Override
+		public String toString(byte[] value) {
+			if (value == null) {
+				return null;
+			}
+			return Integer.toString(Calc.toNormalizedInt(value));
+		}
+	}
+
+	public static final class NormalizedLongField extends NormalizedField {
+		@Override
+		public String toString(byte[] value) {
+			if (value == null) {
+				return null;
+			}
+			return Long.toString(Calc.toNormalizedLong(value));
+		}
+	}
+
+	public static final class NormalizedFloatField extends NormalizedField {
+		@Override
+		public String toString(byte[] value) {
+			if (value == null) {
+				return null;
+			}
+			return Float.toString(Calc.toNormalizedFloat(value));
+		}
+	}
+
+	public static final class NormalizedDoubleField extends NormalizedField {
+		@Override
+		public String toString(byte[] value) {
+			if (value == null) {
+				return null;
+			}
+			return Double.toString(Calc.toNormalizedDouble(value));
+		}
+	}
+
+	public static final class NormalizedBigDecimalField extends NormalizedField {
+		@Override
+		public String toString(byte[] value) {
+			if (value == null) {
+				return null;
+			}
+			return Calc.toNormalizedBigDecimal(value).toString();
+		}
+	}
+
+	public static final class NormalizedStringField extends NormalizedField {
+		public byte[] fromString(String s) {
+			return Calc.fromString(s);
+		}
+
+		@Override
+		public String toString(byte[] value) {
+			if (value == null) {
+				return null;
+			}
+			return Calc.toString(value);
+		}
+
+		@Override
+		public int compareAsPrefix(byte[] v1, byte[] v2) {
+			return Calc.compareUAsPrefix(v1, v2);
+		}
+
+		@Override
+		public byte[] shortestSeparator(byte[] left, byte[] right) {
+			return STRING.shortestSeparator(left, right);
+		}
+	}
+
 	private static Field[] mapping;
 
 	private static int idSequence;
@@ -819,7 +980,8 @@ public class Field {
 				BIGINTEGER, BIGDECIMAL, STRING, QVOCID, BYTEARRAY, PAGEID,
 				DEWEYID, FULLDEWEYID, DEWEYIDPCR, FULLDEWEYIDPCR, PCRDEWEYID,
 				PCRFULLDEWEYID, EL_REC, PS_REC, COLLECTIONDEWEYID,
-				PCRCOLLECTIONDEWEYID, COLLECTIONDEWEYIDPCR };
+				PCRCOLLECTIONDEWEYID, COLLECTIONDEWEYIDPCR, NINTEGER, NLONG,
+				NFLOAT, NDOUBLE, NBIGDECIMAL, NSTRING };
 		for (int i = 0; i < mapping.length; i++) {
 			if (mapping[i].ID != i)
 				throw new RuntimeException("Field: " + mapping[i].getClass()
@@ -862,6 +1024,70 @@ public class Field {
 						+ getClass().getSimpleName());
 	}
 
+	/**
+	 * Returns a key <code>s</code> with <code>left &lt;= s &lt; right</code>
+	 * that is as short as possible. Index structures post it as separator
+	 * instead of <code>left</code> when they split a leaf (suffix
+	 * truncation). By default, no truncation is applied and <code>left</code>
+	 * is returned.
+	 */
+	public byte[] shortestSeparator(byte[] left, byte[] right) {
+		return left;
+	}
+
+	/**
+	 * Returns the length of the shortest prefix of <code>right</code> that
+	 * differs from <code>left</code> or -1 if there is none.
+	 */
+	protected static int distinguishingPrefixLength(byte[] left, byte[] right) {
+		int len = Math.min(left.length, right.length);
+		int pos = 0;
+		while ((pos < len) && (left[pos] == right[pos])) {
+			pos++;
+		}
+		return (pos < right.length) ? pos + 1 : -1;
+	}
+
+	protected final byte[] checkSeparator(byte[] left, byte[] right,
+			int prefixLength) {
+		if ((prefixLength < 0) || (prefixLength >= right.length)) {
+			return left;
+		}
+		return checkSeparator(left, right, Arrays.copyOf(right, prefixLength));
+	}
+
+	protected final byte[] checkSeparator(byte[] left, byte[] right,
+			byte[] separator) {
+		if ((separator.length < left.length)
+				&& (compare(left, separator) <= 0)
+				&& (compare(separator, right) < 0)) {
+			return separator;
+		}
+		return left;
+	}
+
+	/**
+	 * Returns the ancestor of <code>right</code> directly below the LCA of
+	 * both DeweyIDs. It follows <code>left</code> in document order and is
+	 * thus a separator that is cut at a division boundary. Returns
+	 * <code>null</code> if there is no such ancestor.
+	 */
+	protected static XTCdeweyID separatorDeweyID(XTCdeweyID left,
+			XTCdeweyID right) {
+		if ((left.docID != null) ? !left.docID.equals(right.docID)
+				: (right.docID != null)) {
+			return null;
+		}
+		if (left.isDocument() || right.isDocument()) {
+			return null;
+		}
+		int lcaLevel = left.calcLCALevel(right);
+		if (lcaLevel + 1 >= right.getLevel()) {
+			return null;
+		}
+		return right.getAncestor(lcaLevel + 1);
+	}
+
 	@Override
 	public String toString() {
 		return getClass().getSimpleName();
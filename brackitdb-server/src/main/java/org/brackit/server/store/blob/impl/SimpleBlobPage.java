@@ -126,6 +126,13 @@ public class SimpleBlobPage extends BasePage implements BufferedPage {
 		return content;
 	}
 
+	byte[] getChunk(int maxLength) {
+		int length = Math.min(getUsedSpace(), maxLength);
+		byte[] content = new byte[length];
+		System.arraycopy(handle.page, getStartOffset(), content, 0, length);
+		return content;
+	}
+
 	void setChunk(byte[] content, int length) {
 		System.arraycopy(content, 0, handle.page, getStartOffset(), length);
 		setUsedSpace(length);
@@ -184,6 +184,51 @@ public class SimpleBlobStore implements BlobStore {
 		}
 	}
 
+	/**
+	 * Reads at most <code>length</code> bytes from the beginning of the blob.
+	 * Only the first page of the blob is accessed, so the result may be
+	 * shorter than requested even if the blob is larger.
+	 */
+	public byte[] readPrefix(Tx tx, PageID pageID, int length)
+			throws BlobStoreAccessException {
+		try {
+			Buffer buffer = bufferMgr.getBuffer(pageID);
+			Handle overflowHandle = buffer.fixPage(tx, pageID);
+			overflowHandle.latchS();
+			SimpleBlobPage page = new SimpleBlobPage(buffer, overflowHandle);
+			try {
+				return page.getChunk(length);
+			} finally {
+				page.cleanup();
+			}
+		} catch (BufferException e) {
+			throw new BlobStoreAccessException(e, "Error reading overflow %s.",
+					pageID);
+		}
+	}
+
+	/**
+	 * Returns the LSN of the first page of the blob. As the allocation of a
+	 * blob page is logged, the LSN distinguishes a blob from later blobs
+	 * that reuse the same page.
+	 */
+	public long getLSN(Tx tx, PageID pageID) throws BlobStoreAccessException {
+		try {
+			Buffer buffer = bufferMgr.getBuffer(pageID);
+			Handle handle = buffer.fixPage(tx, pageID);
+			handle.latchS();
+			try {
+				return handle.getLSN();
+			} finally {
+				handle.unlatch();
+				buffer.unfixPage(handle);
+			}
+		} catch (BufferException e) {
+			throw new BlobStoreAccessException(e, "Error reading overflow %s.",
+					pageID);
+		}
+	}
+
 	public byte[] read(Tx tx, PageID pageID) throws BlobStoreAccessException {
 		InputStream in = readStream(tx, pageID);
 		int position = 0;
@@ -30,10 +30,13 @@ package org.brackit.server.store.index;
 import java.io.PrintStream;
 
 import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.node.index.external.IndexStatistics;
 import org.brackit.server.store.Field;
 import org.brackit.server.store.OpenMode;
 import org.brackit.server.store.SearchMode;
 import org.brackit.server.tx.Tx;
+import org.brackit.server.util.sort.SortItem;
+import org.brackit.xquery.xdm.Stream;
 
 /**
  * Interface of a key/value-based index.
@@ -84,6 +87,31 @@ public interface Index {
 	public void insert(Tx transaction, PageID rootPageID, byte[] key,
 			byte[] value) throws IndexAccessException;
 
+	/**
+	 * Inserts the entries with the given <code>keys</code> and the given
+	 * <code>values</code> into index <code>rootPageID</code> like
+	 * {@link #insert(Tx, PageID, byte[], byte[])}. Entries that are in
+	 * ascending order and fall into the same leaf are inserted without a new
+	 * descent.
+	 * 
+	 * @param transaction
+	 *            transaction that wants to open the index
+	 * @param rootPageID
+	 *            number of the root page
+	 * @param keys
+	 *            keys of the entries that should be inserted, preferably
+	 *            sorted
+	 * @param values
+	 *            values of the entries that should be inserted
+	 * @throws DuplicateKeyException
+	 *             if this is a unique index and there is already an entry with
+	 *             one of the keys
+	 * @throws IndexAccessException
+	 *             if an error occurred while accessing the index
+	 */
+	public void insert(Tx transaction, PageID rootPageID, byte[][] keys,
+			byte[][] values) throws IndexAccessException;
+
 	/**
 	 * Inserts an entry with the given <code>key</code> and the given
 	 * <code>value</code> into index <code>rootPageID</code>. The insertion is
@@ -288,6 +316,30 @@ public interface Index {
 			Field valueType, boolean unique, boolean compression)
 			throws IndexAccessException;
 
+	/**
+	 * Bulk loads the given entries into the empty index
+	 * <code>rootPageID</code>. The entries must be sorted by key and value,
+	 * e.g., by a {@link org.brackit.server.util.sort.MergeSort MergeSort}.
+	 * The load itself is not logged, but the index is flushed when the
+	 * transaction commits.
+	 * 
+	 * @param transaction
+	 *            transaction that wants to load the index
+	 * @param rootPageID
+	 *            number of the root page
+	 * @param entries
+	 *            sorted stream of entries
+	 * @return statistics of the loaded index
+	 * @throws DuplicateKeyException
+	 *             if the entries contain the same key twice in a unique index
+	 *             or the same entry twice in a non-unique index
+	 * @throws IndexAccessException
+	 *             iff the index is not empty, the entries are not sorted, or
+	 *             an error occurred during the load
+	 */
+	public IndexStatistics load(Tx transaction, PageID rootPageID,
+			Stream<? extends SortItem> entries) throws IndexAccessException;
+
 	/**
 	 * Traverses the index.
 	 * 
@@ -303,6 +355,43 @@ public interface Index {
 	public void traverse(Tx transaction, PageID rootPageID, IndexVisitor visitor)
 			throws IndexAccessException;
 
+	/**
+	 * Checks whether the index may contain an entry with the given key. If
+	 * the index maintains a key filter, probes for missing keys are mostly
+	 * answered without accessing the index. A missing key is locked like it
+	 * would be by a read of the key.
+	 * 
+	 * @param transaction
+	 *            transaction that wants to probe the index
+	 * @param rootPageID
+	 *            number if the root page
+	 * @param key
+	 *            key to probe
+	 * @return <code>false</code> iff the index definitely does not contain
+	 *         an entry with the given key
+	 * @throws IndexAccessException
+	 *             iff an error occurs during the probe
+	 */
+	public boolean mayContain(Tx transaction, PageID rootPageID, byte[] key)
+			throws IndexAccessException;
+
+	/**
+	 * Estimates the statistics of the index from a random sample of
+	 * root-to-leaf paths and leaves instead of traversing the whole index.
+	 * 
+	 * @param transaction
+	 *            transaction that wants to sample the index
+	 * @param rootPageID
+	 *            number if the root page
+	 * @param errorBound
+	 *            relative standard error the estimates should not exceed
+	 * @return estimated statistics of the index
+	 * @throws IndexAccessException
+	 *             iff an error occurs during sampling
+	 */
+	public IndexStatistics sample(Tx transaction, PageID rootPageID,
+			double errorBound) throws IndexAccessException;
+
 	/**
 	 * Dumps the content of the index.
 	 * 
@@ -28,11 +28,13 @@
 package org.brackit.server.store.index.aries;
 
 import java.io.PrintStream;
+import java.util.Random;
 
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.BufferMgr;
+import org.brackit.server.node.index.external.IndexStatistics;
 import org.brackit.server.store.Field;
 import org.brackit.server.store.OpenMode;
 import org.brackit.server.store.SearchMode;
@@ -42,7 +44,10 @@ import org.brackit.server.store.index.IndexIterator;
 import org.brackit.server.store.index.IndexVisitor;
 import org.brackit.server.store.index.aries.page.PageContext;
 import org.brackit.server.tx.Tx;
+import org.brackit.server.util.sort.SortItem;
+import org.brackit.xquery.util.Cfg;
 import org.brackit.xquery.util.log.Logger;
+import org.brackit.xquery.xdm.Stream;
 
 /**
  * A B+-tree index following the ARIES approach for concurrency control.
@@ -52,21 +57,53 @@ import org.brackit.xquery.util.log.Logger;
 public class BPlusIndex implements Index {
 	private static final Logger log = Logger.getLogger(BPlusIndex.class);
 
+	/**
+	 * Deliver the entries of read-only scans leaf-wise in batches.
+	 */
+	public static final boolean BATCH_SCAN = Cfg.asBool(
+			"org.brackit.server.store.index.aries.batchScan", true);
+
+	/**
+	 * Answer equality probes for missing keys with Bloom filters over the
+	 * keys of an index.
+	 */
+	public static final boolean KEY_FILTERS = Cfg.asBool(
+			"org.brackit.server.store.index.aries.keyFilters", false);
+
+	public static final double KEY_FILTER_FALSE_POSITIVES = Cfg.asDouble(
+			"org.brackit.server.store.index.aries.keyFilterFalsePositives",
+			0.01);
+
+	private static final int MIN_KEY_FILTER_SIZE = 1024;
+
 	protected final BPlusTree tree;
 
 	protected final BufferMgr bufferMgr;
 
+	protected final boolean useKeyFilters;
+
 	public BPlusIndex(BufferMgr bufferMgr) {
 		this(bufferMgr, null);
 	}
 
 	public BPlusIndex(BufferMgr bufferMgr, IndexLockService lockService) {
-		this(new BPlusTree(bufferMgr, lockService), bufferMgr);
+		this(bufferMgr, lockService, false);
+	}
+
+	public BPlusIndex(BufferMgr bufferMgr, IndexLockService lockService,
+			boolean useKeyFilters) {
+		this(new BPlusTree(bufferMgr, lockService), bufferMgr, useKeyFilters);
 	}
 
 	protected BPlusIndex(BPlusTree tree, BufferMgr bufferMgr) {
+		this(tree, bufferMgr, false);
+	}
+
+	protected BPlusIndex(BPlusTree tree, BufferMgr bufferMgr,
+			boolean useKeyFilters) {
 		this.tree = tree;
 		this.bufferMgr = bufferMgr;
+		this.useKeyFilters = useKeyFilters;
 	}
 
 	public PageID createIndex(Tx transaction, int containerNo, Field keyType,
@@ -87,6 +124,8 @@ public class BPlusIndex implements Index {
 					compression, true);
 			PageID rootPageID = root.getPageID();
 			root.cleanup();
+			// discard stale filter of a dropped index with same root
+			BPlusTree.keyFilters.remove(rootPageID);
 
 			return rootPageID;
 		} catch (IndexOperationException e) {
@@ -95,6 +134,12 @@ public class BPlusIndex implements Index {
 		}
 	}
 
+	@Override
+	public IndexStatistics load(Tx transaction, PageID rootPageID,
+			Stream<? extends SortItem> entries) throws IndexAccessException {
+		return new BulkLoader(transaction, rootPageID, tree).load(entries);
+	}
+
 	@Override
 	public void dropIndex(Tx tx, PageID rootPageID)
 			throws IndexAccessException {
@@ -113,6 +158,7 @@ public class BPlusIndex implements Index {
 			
 			// drop unit
 			buffer.dropUnitDeferred(tx, unitID);
+			BPlusTree.keyFilters.remove(rootPageID);
 			
 		} catch (IndexOperationException e) {
 			throw new IndexAccessException(e);
@@ -134,6 +180,140 @@ public class BPlusIndex implements Index {
 		}
 	}
 
+	@Override
+	public boolean mayContain(Tx transaction, PageID rootPageID, byte[] key)
+			throws IndexAccessException {
+		if (!useKeyFilters) {
+			return true;
+		}
+
+		KeyFilter filter = BPlusTree.keyFilters.get(rootPageID);
+
+		if ((filter != null) && (filter.ready)
+				&& (filter.getCount() > 2 * filter.getCapacity())) {
+			// filter is overloaded: rebuild it
+			BPlusTree.keyFilters.remove(rootPageID, filter);
+			filter = null;
+		}
+		if (filter == null) {
+			filter = buildKeyFilter(transaction, rootPageID);
+		}
+		if ((!filter.ready) || (filter.mightContain(key))) {
+			return true;
+		}
+
+		if (tree.lockService != null) {
+			/*
+			 * Lock the missing key to prevent a phantom insert. An insert that
+			 * held the lock before has added the key to the filter already.
+			 */
+			try {
+				tree.lockService.lockRead(transaction, filter.unitID,
+						rootPageID, key, null, false);
+			} catch (IndexOperationException e) {
+				throw new IndexAccessException(e,
+						"Could not lock missing key in index %s.", rootPageID);
+			}
+		}
+
+		/*
+		 * Check again with the currently registered filter. Our filter may
+		 * have been replaced by a rebuild in the meantime, which means that
+		 * inserts in between did not add their keys to it.
+		 */
+		filter = BPlusTree.keyFilters.get(rootPageID);
+		return ((filter == null) || (!filter.ready) || (filter
+				.mightContain(key)));
+	}
+
+	private KeyFilter buildKeyFilter(Tx transaction, PageID rootPageID)
+			throws IndexAccessException {
+		IndexStatistics statistics = sample(transaction, rootPageID,
+				BPlusIndexSampler.ERROR_BOUND);
+		PageContext root = null;
+		int unitID;
+
+		try {
+			root = tree.getPage(transaction, rootPageID, false, false);
+			unitID = root.getUnitID();
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Could not build key filter for index %s.", rootPageID);
+		} finally {
+			if (root != null) {
+				root.cleanup();
+			}
+		}
+
+		long expectedEntries = Math.max(MIN_KEY_FILTER_SIZE,
+				2 * statistics.getIndexTuples());
+		final KeyFilter filter = new KeyFilter(unitID, expectedEntries,
+				KEY_FILTER_FALSE_POSITIVES);
+		KeyFilter registered = BPlusTree.keyFilters.putIfAbsent(rootPageID,
+				filter);
+
+		if (registered != null) {
+			// concurrently built by someone else
+			return registered;
+		}
+
+		try {
+			/*
+			 * Inserts add their keys after they stored them in a leaf. Thus,
+			 * each key inserted concurrently is either added to the
+			 * registered filter or already present when we visit its leaf.
+			 */
+			traverse(transaction, rootPageID, new IndexVisitor() {
+				@Override
+				public void start() {
+				}
+
+				@Override
+				public void end() {
+				}
+
+				@Override
+				public void visitTreePage(PageContext page) {
+				}
+
+				@Override
+				public void visitLeafPage(PageContext page, boolean overflow)
+						throws IndexOperationException {
+					if (page.moveFirst()) {
+						do {
+							filter.add(page.getKey());
+						} while (page.hasNext());
+					}
+				}
+			});
+		} catch (IndexAccessException e) {
+			BPlusTree.keyFilters.remove(rootPageID, filter);
+			throw e;
+		}
+
+		filter.ready = true;
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Built key filter for %s keys of "
+					+ "index %s.", filter.getCount(), rootPageID));
+		}
+
+		return filter;
+	}
+
+	@Override
+	public IndexStatistics sample(Tx transaction, PageID rootPageID,
+			double errorBound) throws IndexAccessException {
+		try {
+			tree.getTreeLatch().latchS(rootPageID);
+			BPlusIndexSampler sampler = new BPlusIndexSampler(transaction,
+					tree, rootPageID, errorBound, new Random());
+			return sampler.sample();
+		} finally {
+			tree.getTreeLatch().unlatch(rootPageID);
+		}
+	}
+
 	@Override
 	public void dump(Tx transaction, PageID rootPageID, PrintStream out)
 			throws IndexAccessException {
@@ -182,6 +362,14 @@ public class BPlusIndex implements Index {
 
 		byte[] value = null;
 
+		if (!mayContain(transaction, rootPageID, key)) {
+			if (log.isTraceEnabled()) {
+				log.trace("End read (key filter)");
+			}
+
+			return null;
+		}
+
 		PageContext leaf = tree.descendToPosition(transaction, rootPageID,
 				SearchMode.GREATER_OR_EQUAL, key, null, false, false);
 		leaf = tree.readFromLeaf(transaction, rootPageID, leaf, key, value);
@@ -209,6 +397,72 @@ public class BPlusIndex implements Index {
 		insertInternal(transaction, rootPageID, key, value, -1);
 	}
 
+	public void insert(Tx transaction, PageID rootPageID, byte[][] keys,
+			byte[][] values) throws IndexAccessException {
+		if (log.isTraceEnabled()) {
+			log.trace(String.format("Begin insert of %s entries", keys.length));
+		}
+
+		PageContext leaf = null;
+
+		try {
+			for (int i = 0; i < keys.length; i++) {
+				byte[] key = keys[i];
+				byte[] value = values[i];
+
+				if ((leaf == null)
+						|| (!positionInLeaf(leaf, keys[i - 1], values[i - 1],
+								key, value))) {
+					if (leaf != null) {
+						leaf.cleanup();
+						leaf = null;
+					}
+					leaf = tree.descendToPosition(transaction, rootPageID,
+							SearchMode.GREATER_OR_EQUAL, key, value, true,
+							true);
+				}
+				PageContext page = leaf;
+				leaf = null;
+				leaf = tree.insertIntoLeaf(transaction, rootPageID, page, key,
+						value, false, true, -1);
+			}
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Error inserting into index page.");
+		} finally {
+			if (leaf != null) {
+				leaf.cleanup();
+			}
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace("End insert");
+		}
+	}
+
+	/**
+	 * Positions the leaf, which contains the previous entry of a batch, at
+	 * the given entry if it is guaranteed to belong into this leaf, i.e., if
+	 * it follows the previous entry and the leaf contains a greater entry.
+	 */
+	private boolean positionInLeaf(PageContext leaf, byte[] previousKey,
+			byte[] previousValue, byte[] key, byte[] value)
+			throws IndexOperationException {
+		if ((!leaf.isSafe()) || (leaf.getPageType() != PageType.INDEX_LEAF)) {
+			return false;
+		}
+
+		int cmp = leaf.getKeyType().compare(previousKey, key);
+
+		if ((cmp > 0)
+				|| ((cmp == 0) && (value != null) && (leaf.getValueType()
+						.compare(previousValue, value) > 0))) {
+			return false;
+		}
+
+		return (leaf.search(SearchMode.GREATER_OR_EQUAL, key, value) == 0);
+	}
+
 	public void insertPersistent(Tx transaction, PageID rootPageID, byte[] key,
 			byte[] value) throws IndexAccessException {
 		long prevLSN = transaction.checkPrevLSN();
@@ -293,6 +547,12 @@ public class BPlusIndex implements Index {
 			PageID hintPageID, long LSN) throws IndexAccessException {
 		PageContext leaf = tree.openInternal(transaction, rootPageID,
 				searchMode, key, value, openMode, hintPageID, LSN);
+
+		if ((BATCH_SCAN) && (openMode == OpenMode.READ)) {
+			return new BPlusIndexBatchIterator(transaction, tree, rootPageID,
+					leaf, openMode);
+		}
+
 		return new BPlusIndexIterator(transaction, tree, rootPageID, leaf,
 				openMode);
 	}
@@ -0,0 +1,137 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.aries;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.store.OpenMode;
+import org.brackit.server.store.index.IndexAccessException;
+import org.brackit.server.store.index.aries.page.PageContext;
+import org.brackit.server.tx.Tx;
+
+/**
+ * Read-only iterator that copies the entries of the current leaf in one go
+ * into a reusable batch and serves subsequent calls of {@link #next()} from
+ * it without touching the leaf. While the batch is consumed, the next leaf is
+ * prefetched in the background. The leaf itself stays latched as in
+ * {@link BPlusIndexIterator} and is only repositioned lazily, when the batch
+ * is exhausted or the iterator moves backwards.
+ */
+public class BPlusIndexBatchIterator extends BPlusIndexIterator {
+	private static final int INITIAL_BATCH_SIZE = 64;
+
+	private byte[][] batchKeys = new byte[INITIAL_BATCH_SIZE][];
+
+	private byte[][] batchValues = new byte[INITIAL_BATCH_SIZE][];
+
+	private int batchSize;
+
+	private int batchPos;
+
+	private int basePosition;
+
+	private boolean filled;
+
+	public BPlusIndexBatchIterator(Tx transaction, BPlusTree tree,
+			PageID rootPageID, PageContext page, OpenMode openMode)
+			throws IndexAccessException {
+		super(transaction, tree, rootPageID, page, openMode);
+	}
+
+	@Override
+	public boolean next() throws IndexAccessException {
+		if ((!filled) && (key != null)) {
+			fill();
+		}
+
+		if (batchPos < batchSize) {
+			key = batchKeys[batchPos];
+			value = batchValues[batchPos];
+			batchPos++;
+			return true;
+		}
+
+		// batch is exhausted: let the tree proceed to the next leaf
+		reposition();
+		return super.next();
+	}
+
+	@Override
+	public boolean previous() throws IndexAccessException {
+		reposition();
+		return super.previous();
+	}
+
+	@Override
+	public void close() {
+		clear();
+		super.close();
+	}
+
+	private void fill() throws IndexAccessException {
+		int remaining = page.getEntryCount() - page.getPosition();
+
+		if (remaining > batchKeys.length) {
+			batchKeys = new byte[remaining][];
+			batchValues = new byte[remaining][];
+		}
+
+		try {
+			basePosition = page.getPosition();
+			batchSize = tree.readAhead(transaction, rootPageID, page,
+					batchKeys, batchValues);
+			batchPos = 0;
+			filled = true;
+		} catch (IndexAccessException e) {
+			page = null;
+			throw e;
+		}
+	}
+
+	private void reposition() throws IndexAccessException {
+		if ((filled) && (batchPos > 0)) {
+			try {
+				page.moveTo(basePosition + batchPos);
+			} catch (IndexOperationException e) {
+				close();
+				throw new IndexAccessException(e,
+						"Error repositioning iterator.");
+			}
+		}
+		clear();
+	}
+
+	private void clear() {
+		for (int i = 0; i < batchSize; i++) {
+			batchKeys[i] = null;
+			batchValues[i] = null;
+		}
+		batchSize = 0;
+		batchPos = 0;
+		filled = false;
+	}
+}
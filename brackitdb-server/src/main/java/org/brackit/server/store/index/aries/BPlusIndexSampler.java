@@ -0,0 +1,391 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.aries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.node.index.external.IndexStatistics;
+import org.brackit.server.store.Field;
+import org.brackit.server.store.index.IndexAccessException;
+import org.brackit.server.store.index.aries.page.PageContext;
+import org.brackit.server.tx.Tx;
+import org.brackit.xquery.util.Cfg;
+import org.brackit.xquery.util.log.Logger;
+
+/**
+ * Estimates the {@link IndexStatistics} of an index from random root-to-leaf
+ * probes instead of visiting every page like {@link BPlusIndexWalker}.
+ * 
+ * In each probe, the child pointer at each tree level is chosen uniformly, and
+ * each page on the path is weighted with the product of the fanouts above it
+ * (Knuth's estimator). This makes the estimates of page count, leaf count,
+ * size and pointers unbiased. The reached leaf and a few of its right
+ * neighbors along the leaf chain are sampled to estimate the number of entries,
+ * the number of distinct keys, and an equi-depth key histogram. Probing stops
+ * as soon as the relative standard error of the entry estimate is within the
+ * requested error bound.
+ */
+public class BPlusIndexSampler {
+	private static final Logger log = Logger.getLogger(BPlusIndexSampler.class);
+
+	/**
+	 * Use sampling instead of full traversals to calculate index statistics.
+	 */
+	public static final boolean SAMPLE_STATISTICS = Cfg.asBool(
+			"org.brackit.server.store.index.aries.sample.enabled", true);
+
+	/**
+	 * Default bound for the relative standard error of the estimates.
+	 */
+	public static final double ERROR_BOUND = Cfg.asDouble(
+			"org.brackit.server.store.index.aries.sample.errorBound", 0.05);
+
+	public static final int MIN_PROBES = Cfg.asInt(
+			"org.brackit.server.store.index.aries.sample.minProbes", 32);
+
+	public static final int MAX_PROBES = Cfg.asInt(
+			"org.brackit.server.store.index.aries.sample.maxProbes", 2048);
+
+	/**
+	 * Number of right neighbors of a probed leaf to sample.
+	 */
+	public static final int CHAIN_LENGTH = Cfg.asInt(
+			"org.brackit.server.store.index.aries.sample.chainLength", 2);
+
+	public static final int HISTOGRAM_BUCKETS = Cfg.asInt(
+			"org.brackit.server.store.index.aries.sample.histogramBuckets", 16);
+
+	private final BPlusTree tree;
+
+	private final Tx transaction;
+
+	private final PageID rootPageID;
+
+	private final double errorBound;
+
+	private final Random random;
+
+	private Field keyType;
+
+	private boolean unique;
+
+	private int height;
+
+	private int probes;
+
+	private double pageCount;
+
+	private double leaveCount;
+
+	private double idxSize;
+
+	private double pointers;
+
+	private double tuples;
+
+	private double tuplesSquare;
+
+	private double distinct;
+
+	private final ArrayList<byte[]> keys = new ArrayList<byte[]>();
+
+	private final ArrayList<Double> keyWeights = new ArrayList<Double>();
+
+	public BPlusIndexSampler(Tx transaction, BPlusTree tree,
+			PageID rootPageID, double errorBound, Random random) {
+		this.tree = tree;
+		this.transaction = transaction;
+		this.rootPageID = rootPageID;
+		this.errorBound = errorBound;
+		this.random = random;
+	}
+
+	public IndexStatistics sample() throws IndexAccessException {
+		while (probes < MAX_PROBES) {
+			probe();
+			probes++;
+
+			if (height == 1) {
+				// root is the only leaf: first probe was exact
+				break;
+			}
+			if ((probes >= MIN_PROBES) && (relativeError() <= errorBound)) {
+				break;
+			}
+		}
+
+		long estTuples = Math.round(tuples / probes);
+		long estDistinct = (unique) ? estTuples : Math.min(estTuples, Math
+				.round(distinct / probes));
+		String minKey = toString(edgeKey(true));
+		String maxKey = toString(edgeKey(false));
+
+		IndexStatistics is = new IndexStatistics();
+		is.setIdxSize(Math.round(idxSize / probes));
+		is.setPageCount(Math.round(pageCount / probes));
+		is.setIndexHeight(height);
+		is.setIndexLeaveCount(Math.round(leaveCount / probes));
+		is.setIndexTuples(estTuples);
+		is.setIndexPointers(Math.round(pointers / probes));
+		is.setDistinctKeys(estDistinct);
+		is.setMinKey(minKey);
+		is.setMaxKey(maxKey);
+		buildHistogram(is, estTuples, maxKey);
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Sampled index %s with %s probes "
+					+ "(relative error %2.4f):\n%s", rootPageID, probes,
+					relativeError(), is));
+		}
+
+		return is;
+	}
+
+	private double relativeError() {
+		double mean = tuples / probes;
+
+		if (mean == 0) {
+			return 0;
+		}
+
+		double variance = Math.max(0, (tuplesSquare / probes) - mean * mean);
+		return Math.sqrt(variance / probes) / mean;
+	}
+
+	private void probe() throws IndexAccessException {
+		PageContext page = null;
+
+		try {
+			page = tree.getPage(transaction, rootPageID, false, false);
+			double weight = 1;
+			int level = 1;
+
+			while (page.getPageType() == PageType.INDEX_TREE) {
+				int fanout = page.getEntryCount() + 1;
+				pageCount += weight;
+				idxSize += weight * page.getUsedSpace();
+				pointers += weight * page.getEntryCount();
+
+				int child = random.nextInt(fanout);
+				PageID childPageID;
+				if (child == 0) {
+					page.moveFirst();
+					childPageID = page.getBeforePageID();
+				} else {
+					page.moveTo(child);
+					childPageID = page.getAfterPageID();
+				}
+
+				PageContext next = tree.getPage(transaction, childPageID,
+						false, false);
+				page.cleanup();
+				page = next;
+				weight *= fanout;
+				level++;
+			}
+
+			keyType = page.getKeyType();
+			unique = page.isUnique();
+			height = Math.max(height, level);
+			pageCount += weight;
+			idxSize += weight * page.getUsedSpace();
+			leaveCount += weight;
+
+			int firstKey = keys.size();
+			int sampled = 0;
+			long entries = 0;
+			long distinctKeys = 0;
+			byte[] prevKey = null;
+
+			while (true) {
+				int entryCount = page.getEntryCount();
+				sampled++;
+				entries += entryCount;
+
+				if (entryCount > 0) {
+					page.moveTo(1 + random.nextInt(entryCount));
+					keys.add(page.getKey());
+					keyWeights.add(Double.valueOf(entryCount));
+
+					if (!unique) {
+						page.moveFirst();
+						do {
+							byte[] key = page.getKey();
+							if ((prevKey == null)
+									|| (keyType.compare(prevKey, key) != 0)) {
+								distinctKeys++;
+							}
+							prevKey = key;
+						} while (page.hasNext());
+					}
+				}
+
+				if ((sampled > CHAIN_LENGTH) || (!page.hasNextPageID())) {
+					break;
+				}
+
+				PageContext next = tree.getPage(transaction, page
+						.getNextPageID(), false, false);
+				page.cleanup();
+				page = next;
+			}
+
+			double scale = weight / sampled;
+			double estTuples = scale * entries;
+			tuples += estTuples;
+			tuplesSquare += estTuples * estTuples;
+			distinct += scale * distinctKeys;
+
+			for (int i = firstKey; i < keys.size(); i++) {
+				keyWeights.set(i, keyWeights.get(i) * scale);
+			}
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Error while sampling index %s.", rootPageID);
+		} finally {
+			if (page != null) {
+				page.cleanup();
+			}
+		}
+	}
+
+	private byte[] edgeKey(boolean first) throws IndexAccessException {
+		PageContext page = null;
+
+		try {
+			page = tree.getPage(transaction, rootPageID, false, false);
+
+			while (page.getPageType() == PageType.INDEX_TREE) {
+				PageID childPageID;
+				if (first) {
+					page.moveFirst();
+					childPageID = page.getBeforePageID();
+				} else {
+					page.moveLast();
+					childPageID = page.getAfterPageID();
+				}
+
+				PageContext next = tree.getPage(transaction, childPageID,
+						false, false);
+				page.cleanup();
+				page = next;
+			}
+
+			if (page.getEntryCount() == 0) {
+				return null;
+			}
+
+			if (first) {
+				page.moveFirst();
+			} else {
+				page.moveLast();
+			}
+
+			return page.getKey();
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Error while sampling index %s.", rootPageID);
+		} finally {
+			if (page != null) {
+				page.cleanup();
+			}
+		}
+	}
+
+	private void buildHistogram(IndexStatistics is, long estTuples,
+			String maxKey) {
+		int buckets = Math.min(HISTOGRAM_BUCKETS, keys.size());
+
+		if (buckets == 0) {
+			return;
+		}
+
+		Integer[] order = new Integer[keys.size()];
+		double total = 0;
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			total += keyWeights.get(i);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return keyType.compare(keys.get(o1), keys.get(o2));
+			}
+		});
+
+		ArrayList<String> bounds = new ArrayList<String>(buckets);
+		ArrayList<Double> weights = new ArrayList<Double>(buckets);
+		double cumulated = 0;
+		double bucketWeight = 0;
+		int boundary = 0;
+		byte[] lastBound = null;
+
+		for (int i = 0; i < order.length; i++) {
+			byte[] key = keys.get(order[i]);
+			cumulated += keyWeights.get(order[i]);
+			bucketWeight += keyWeights.get(order[i]);
+
+			if ((i < order.length - 1)
+					&& (cumulated < total * (boundary + 1) / buckets)) {
+				continue;
+			}
+
+			if ((lastBound != null) && (keyType.compare(lastBound, key) == 0)) {
+				// equal bounds: merge with previous bucket
+				int last = weights.size() - 1;
+				weights.set(last, weights.get(last) + bucketWeight);
+			} else {
+				bounds.add(keyType.toString(key));
+				weights.add(bucketWeight);
+				lastBound = key;
+			}
+			bucketWeight = 0;
+			boundary++;
+		}
+
+		if (maxKey != null) {
+			// last bucket must cover all keys
+			bounds.set(bounds.size() - 1, maxKey);
+		}
+
+		long[] counts = new long[weights.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = Math.round(estTuples * weights.get(i) / total);
+		}
+		is.setHistogram(bounds.toArray(new String[bounds.size()]), counts);
+	}
+
+	private String toString(byte[] key) {
+		return ((key != null) && (keyType != null)) ? keyType.toString(key)
+				: null;
+	}
+}
@@ -27,6 +27,9 @@
  */
 package org.brackit.server.store.index.aries;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.brackit.xquery.util.Cfg;
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.BufferMgr;
@@ -51,11 +54,22 @@ public class BPlusTree extends PageContextFactory {
 
 	protected static boolean VERIFY_ACTION = false;
 
+	/**
+	 * Post shortest separators instead of complete high keys for leaf splits.
+	 */
+	public static final boolean SUFFIX_TRUNCATION = Cfg.asBool(
+			"org.brackit.server.store.index.aries.suffixTruncation", true);
+
 	/**
 	 * Globally shared tree latch container for all B* indexes.
 	 */
 	protected static final TreeLatch treeLatch = new TreeLatch();
 
+	/**
+	 * Globally shared key filters of B* indexes.
+	 */
+	protected static final ConcurrentHashMap<PageID, KeyFilter> keyFilters = new ConcurrentHashMap<PageID, KeyFilter>();
+
 	protected static final RewindException REWIND_EXCEPTION = new RewindException();
 
 	protected final IndexLockService lockService;
@@ -234,8 +248,30 @@ public class BPlusTree extends PageContextFactory {
 		}
 
 		try {
-			page = getPage(tx, pageID, forUpdate, forUpdate);
+			/*
+			 * Tree pages are only read during a descent. Thus, writers latch
+			 * them shared like readers and latch exclusively only the leaf
+			 * they are going to modify. This avoids that concurrent writers
+			 * serialize on the update latches of the root and the upper
+			 * levels.
+			 */
+			page = getPage(tx, pageID, false, false);
+
+			if ((forUpdate) && (page.getPageType() == PageType.INDEX_LEAF)) {
+				// re-fetch leaf exclusively while the parent is still latched
+				page.cleanup();
+				page = null;
+				page = getPage(tx, pageID, true, false);
+
+				if (page.getPageType() != PageType.INDEX_LEAF) {
+					// root was split in between
+					page.downS();
+				}
+			}
 		} catch (IndexOperationException e) {
+			if (page != null) {
+				page.cleanup();
+			}
 			throw new IndexAccessException(e, "Error fetching index page %s.",
 					pageID);
 		} finally {
@@ -255,7 +291,7 @@ public class BPlusTree extends PageContextFactory {
 
 				// release page to avoid deadlock and
 				// wait for end of structure modification
-				if (forUpdate) {
+				if (page.isLatchedX()) {
 					page.downS();
 				}
 				page.cleanup();
@@ -273,9 +309,6 @@ public class BPlusTree extends PageContextFactory {
 					log.trace(page.dump("leaf page"));
 				}
 
-				if (forUpdate) {
-					page.upX();
-				}
 				return page;
 			} else if (pageType == PageType.INDEX_TREE) {
 				if (log.isTraceEnabled()) {
@@ -285,9 +318,6 @@ public class BPlusTree extends PageContextFactory {
 					log.trace(page.dump("tree page"));
 				}
 
-				if (forUpdate) {
-					page.downS();
-				}
 				PageID childPageID = page.determineNextChildPageID(searchMode,
 						key);
 				return descendToChild(tx, rootPageID, page, childPageID,
@@ -295,7 +325,7 @@ public class BPlusTree extends PageContextFactory {
 			} else {
 				log.error(page.dump(String.format("Page with invalid type %s",
 						pageType)));
-				if (forUpdate) {
+				if (page.isLatchedX()) {
 					page.downS();
 				}
 				page.cleanup();
@@ -685,11 +715,11 @@ public class BPlusTree extends PageContextFactory {
 			// lock key or EOF
 			if ((lockService != null) && (openMode != OpenMode.LOAD)) {
 				if (openMode.forUpdate()) {
-					updateLockEntry(tx, rootPageID, page, page.getKey(),
-							page.getValue());
+					updateLockEntry(tx, rootPageID, next, next.getKey(),
+							next.getValue());
 				} else {
-					readLockEntry(tx, rootPageID, page, page.getKey(),
-							page.getValue());
+					readLockEntry(tx, rootPageID, next, next.getKey(),
+							next.getValue());
 				}
 			}
 
@@ -705,6 +735,66 @@ public class BPlusTree extends PageContextFactory {
 		}
 	}
 
+	/**
+	 * Adds an inserted key to the filter of the index. The key must already be
+	 * stored in the leaf: If no filter is registered yet, a filter registered
+	 * afterwards will find the key when it is filled from the leaves. The key
+	 * must be added before the key lock is released so that probes waiting
+	 * for the lock will find it.
+	 */
+	protected void addToKeyFilter(PageID rootPageID, byte[] key) {
+		KeyFilter filter = keyFilters.get(rootPageID);
+
+		if (filter != null) {
+			filter.add(key);
+		}
+	}
+
+	/**
+	 * Copies the entries following the current position of the read-latched
+	 * leaf into <code>keys</code> and <code>values</code> without moving the
+	 * leaf. Each entry is read locked before it is copied. The read-ahead stops
+	 * at the first entry that cannot be locked without waiting, which is then
+	 * left to {@link #moveNext(Tx, PageID, PageContext, OpenMode)}. If the
+	 * read-ahead reaches the end of the leaf, a prefetch of the next leaf is
+	 * issued.
+	 * 
+	 * @return number of copied entries
+	 */
+	protected int readAhead(Tx tx, PageID rootPageID, PageContext page,
+			byte[][] keys, byte[][] values) throws IndexAccessException {
+		try {
+			int position = page.getPosition();
+			int count = 0;
+
+			while ((count < keys.length) && (page.hasNext())) {
+				byte[] key = page.getKey();
+				byte[] value = page.getValue();
+
+				if ((lockService != null)
+						&& (!lockService.lockRead(tx, page.getUnitID(),
+								rootPageID, key, value, true))) {
+					break;
+				}
+
+				keys[count] = key;
+				values[count] = value;
+				count++;
+			}
+
+			if ((page.getPosition() == page.getEntryCount())
+					&& (page.hasNextPageID())) {
+				prefetchPage(page.getNextPageID());
+			}
+
+			page.moveTo(position);
+			return count;
+		} catch (IndexOperationException e) {
+			page.cleanup();
+			throw new IndexAccessException(e, "Could not read ahead in leaf");
+		}
+	}
+
 	protected PageContext movePrevious(Tx tx, PageID rootPageID,
 			PageContext page, OpenMode openMode) throws IndexAccessException {
 		byte[] currentKey = null;
@@ -763,11 +853,11 @@ public class BPlusTree extends PageContextFactory {
 
 			if ((lockService != null) && (openMode != OpenMode.LOAD)) {
 				if (openMode.forUpdate()) {
-					updateLockEntry(tx, rootPageID, page, page.getKey(),
-							page.getValue());
+					updateLockEntry(tx, rootPageID, previous, previous
+							.getKey(), previous.getValue());
 				} else {
-					readLockEntry(tx, rootPageID, page, page.getKey(),
-							page.getValue());
+					readLockEntry(tx, rootPageID, previous, previous
+							.getKey(), previous.getValue());
 				}
 			}
 
@@ -831,6 +921,7 @@ public class BPlusTree extends PageContextFactory {
 
 				leaf.setSafe(true);
 				tx.getStatistics().increment(TxStats.BTREE_INSERTS);
+				addToKeyFilter(rootPageID, key);
 
 				return leaf;
 			}
@@ -858,8 +949,11 @@ public class BPlusTree extends PageContextFactory {
 
 			leaf.setSafe(true);
 
-			return insertIntoPage(tx, rootPageID, leaf, key, value, false,
+			leaf = insertIntoPage(tx, rootPageID, leaf, key, value, false,
 					compact, logged, undoNextLSN);
+			addToKeyFilter(rootPageID, key);
+
+			return leaf;
 		} catch (IndexOperationException e) {
 			leaf.cleanup();
 			throw new IndexAccessException(e, "Error inserting into index %s.",
@@ -1795,8 +1889,9 @@ public class BPlusTree extends PageContextFactory {
 			int splitPosition = chooseSplitPosition(left, insertPosition,
 					insertKey, insertValue, compact);
 			left.moveTo(splitPosition - 1);
-			byte[] separatorKey = ((insertPosition == splitPosition) && (insertPosition <= left
-					.getEntryCount())) ? insertKey : left.getKey();
+			boolean insertAtSplit = ((insertPosition == splitPosition) && (insertPosition <= left
+					.getEntryCount()));
+			byte[] separatorKey = (insertAtSplit) ? insertKey : left.getKey();
 			left.moveNext();
 
 			int leftPageType = left.getPageType();
@@ -1808,6 +1903,11 @@ public class BPlusTree extends PageContextFactory {
 					rootPageID, keyType, valueType, left.isUnique(),
 					left.isCompressed(), logged);
 
+			if ((leftPageType == PageType.INDEX_LEAF) && (!insertAtSplit)) {
+				separatorKey = leafSeparator(keyType, separatorKey, (!left
+						.isAfterLast()) ? left.getKey() : insertKey);
+			}
+
 			if (leftPageType == PageType.INDEX_TREE) {
 				// skip current record and set before page of right page
 				right.setBeforePageID(left.getAfterPageID(), logged, -1);
@@ -1917,6 +2017,18 @@ public class BPlusTree extends PageContextFactory {
 		}
 	}
 
+	/**
+	 * Returns the separator key that is posted to the parent when a leaf is
+	 * split between the entries with <code>highKey</code> and
+	 * <code>lowKey</code>. With suffix truncation enabled, this is the
+	 * shortest key that still separates both leaves.
+	 */
+	protected byte[] leafSeparator(Field keyType, byte[] highKey,
+			byte[] lowKey) {
+		return (SUFFIX_TRUNCATION) ? keyType.shortestSeparator(highKey, lowKey)
+				: highKey;
+	}
+
 	protected int chooseSplitPosition(PageContext splitPage,
 			int insertPosition, byte[] insertKey, byte[] insertValue,
 			boolean compact) throws IndexOperationException {
@@ -1978,10 +2090,16 @@ public class BPlusTree extends PageContextFactory {
 			int splitPosition = chooseSplitPosition(root, insertPosition,
 					insertKey, insertValue, compact);
 			root.moveTo(splitPosition - 1);
-			byte[] separatorKey = ((insertPosition == splitPosition) && (insertPosition <= root
-					.getEntryCount())) ? insertKey : root.getKey();
+			boolean insertAtSplit = ((insertPosition == splitPosition) && (insertPosition <= root
+					.getEntryCount()));
+			byte[] separatorKey = (insertAtSplit) ? insertKey : root.getKey();
 			root.moveNext();
 
+			if ((rootPageType == PageType.INDEX_LEAF) && (!insertAtSplit)) {
+				separatorKey = leafSeparator(keyType, separatorKey, (!root
+						.isAfterLast()) ? root.getKey() : insertKey);
+			}
+
 			if (rootPageType == PageType.INDEX_TREE) {
 				// skip current record and set before pages
 				right.setBeforePageID(root.getAfterPageID(), logged, -1);
@@ -0,0 +1,379 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.aries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.node.index.external.IndexStatistics;
+import org.brackit.server.store.Field;
+import org.brackit.server.store.index.DuplicateKeyException;
+import org.brackit.server.store.index.IndexAccessException;
+import org.brackit.server.store.index.aries.page.PageContext;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxStats;
+import org.brackit.server.util.sort.SortItem;
+import org.brackit.xquery.util.Cfg;
+import org.brackit.xquery.util.log.Logger;
+import org.brackit.xquery.xdm.DocumentException;
+import org.brackit.xquery.xdm.Stream;
+
+/**
+ * Bottom-up bulk loader for an empty {@link BPlusTree}. The sorted entries
+ * are appended to sequentially allocated leaves, which are filled up to the
+ * configured fill factor. Separators are not posted top-down, but appended to
+ * the rightmost tree page of each level, which is allocated on demand. When
+ * the load is finished, the content of the single page at the top level is
+ * copied into the root page, which thus keeps its page number.
+ * <p>
+ * No entry is logged. Only the page allocations are logged as usual and the
+ * container is flushed when the transaction commits.
+ */
+final class BulkLoader {
+	private static final Logger log = Logger.getLogger(BulkLoader.class);
+
+	public static final String FILL_FACTOR = "org.brackit.server.store.index.aries.bulkFillFactor";
+
+	private final Tx tx;
+
+	private final PageID rootPageID;
+
+	private final BPlusTree tree;
+
+	private final float fillFactor;
+
+	/**
+	 * Rightmost tree page of each level (index 0 is the level above the
+	 * leaves).
+	 */
+	private final List<PageContext> levels;
+
+	/**
+	 * Leftmost page of each level (index 0 is the leaf level).
+	 */
+	private final List<PageID> leftmost;
+
+	private PageContext root;
+
+	private PageContext current;
+
+	private Field keyType;
+
+	private Field valueType;
+
+	private boolean unique;
+
+	private boolean compressed;
+
+	private int unitID;
+
+	private byte[] firstKey;
+
+	private byte[] lastKey;
+
+	private byte[] lastValue;
+
+	private long tuples;
+
+	private int leaves;
+
+	private int branches;
+
+	BulkLoader(Tx tx, PageID rootPageID, BPlusTree tree) {
+		this.tx = tx;
+		this.rootPageID = rootPageID;
+		this.tree = tree;
+		this.fillFactor = (float) Math.min(1.0, Math.max(0.5, Cfg.asDouble(
+				FILL_FACTOR, 1.0)));
+		this.levels = new ArrayList<PageContext>();
+		this.leftmost = new ArrayList<PageID>();
+	}
+
+	/**
+	 * Loads all entries of the given stream, which must be sorted by key
+	 * (and value), into the index and returns the statistics of the built
+	 * index.
+	 */
+	public IndexStatistics load(Stream<? extends SortItem> entries)
+			throws IndexAccessException {
+		try {
+			open();
+			SortItem entry;
+			while ((entry = entries.next()) != null) {
+				insert(entry.getKey(), entry.getValue());
+			}
+			close();
+			return getStatistics();
+		} catch (DocumentException e) {
+			throw new IndexAccessException(e, "Error reading load input.");
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e, "Error during bulk load of %s.",
+					rootPageID);
+		} finally {
+			cleanup();
+		}
+	}
+
+	private void open() throws IndexOperationException, IndexAccessException {
+		root = tree.getPage(tx, rootPageID, true, false);
+
+		if ((root.getPageType() != PageType.INDEX_LEAF)
+				|| (root.getEntryCount() > 0) || (root.hasNextPageID())) {
+			throw new IndexAccessException(
+					"Bulk load requires an empty index, but index %s is not.",
+					rootPageID);
+		}
+
+		keyType = root.getKeyType();
+		valueType = root.getValueType();
+		unique = root.isUnique();
+		compressed = root.isCompressed();
+		unitID = root.getUnitID();
+		root.moveFirst();
+		current = root;
+		leaves = 1;
+		tx.addFlushHook(rootPageID.getContainerNo());
+	}
+
+	private void insert(byte[] key, byte[] value)
+			throws IndexOperationException, IndexAccessException {
+		if (lastKey != null) {
+			int cmp = keyType.compare(lastKey, key);
+
+			int valueCmp = ((cmp == 0) && (!unique)) ? valueType.compare(
+					lastValue, value) : 0;
+
+			if ((cmp > 0) || (valueCmp > 0)) {
+				throw new IndexAccessException(
+						"Load input is not sorted: (%s, %s) follows (%s, %s).",
+						keyType.toString(key), valueType.toString(value),
+						keyType.toString(lastKey), valueType
+								.toString(lastValue));
+			}
+			if ((cmp == 0) && ((unique) || (valueCmp == 0))) {
+				throw new DuplicateKeyException(
+						"%s index %s already contains an entry (%s, %s).",
+						(unique) ? "Unique" : "Non-unique", rootPageID,
+						keyType.toString(key), valueType.toString(value));
+			}
+		} else {
+			firstKey = key;
+		}
+
+		if ((current.getUsedSpace() >= fillFactor * current.getSize())
+				|| (!current.hasEnoughSpaceForInsert(key, value))
+				|| (!current.insert(key, value, false, false, -1))) {
+			append(key);
+
+			if (!current.insert(key, value, false, false, -1)) {
+				throw new IndexOperationException(
+						"Entry does not fit into empty leaf page.");
+			}
+		}
+
+		tree.addToKeyFilter(rootPageID, key);
+		current.moveNext();
+		lastKey = key;
+		lastValue = value;
+		tuples++;
+	}
+
+	/**
+	 * Allocates a new leaf, chains it with the current one and posts the
+	 * separator between the high key of the current leaf and the low key of
+	 * the new one.
+	 */
+	private void append(byte[] lowKey) throws IndexOperationException {
+		if (current == root) {
+			relocateRoot();
+		}
+
+		PageContext next = allocate(PageType.INDEX_LEAF);
+		leaves++;
+
+		current.setNextPageID(next.getPageID(), false, -1);
+		next.setPreviousPageID(current.getPageID(), false, -1);
+		current.cleanup();
+		current = next;
+
+		addSeparator(1, tree.leafSeparator(keyType, lastKey, lowKey), current
+				.getPageID());
+	}
+
+	/**
+	 * Moves the content of the root leaf to a newly allocated leaf, which
+	 * becomes the leftmost leaf of the tree. The root page is kept latched
+	 * and converted to a tree page when the load is finished.
+	 */
+	private void relocateRoot() throws IndexOperationException {
+		PageContext first = allocate(PageType.INDEX_LEAF);
+
+		root.moveFirst();
+		while (!root.isAfterLast()) {
+			first.insert(root.getKey(), root.getValue(), true, false, -1);
+			first.moveNext();
+			root.delete(true, false, -1);
+		}
+
+		leftmost.add(first.getPageID());
+		current = first;
+	}
+
+	/**
+	 * Appends a separator entry pointing to <code>childPageID</code> to the
+	 * rightmost tree page of the given height.
+	 */
+	private void addSeparator(int height, byte[] separatorKey,
+			PageID childPageID) throws IndexOperationException {
+		if (levels.size() < height) {
+			PageContext page = allocate(PageType.INDEX_TREE);
+			page.setBeforePageID(leftmost.get(height - 1), false, -1);
+			levels.add(page);
+			leftmost.add(page.getPageID());
+		}
+
+		PageContext page = levels.get(height - 1);
+		byte[] value = childPageID.getBytes();
+
+		if ((page.getEntryCount() > 1)
+				&& ((page.getUsedSpace() >= fillFactor * page.getSize()) || (!page
+						.hasEnoughSpaceForInsert(separatorKey, value)))) {
+			// Tree page is full: Move the last entry up to the next level
+			// and turn its child into the before page of a new right page
+			// (same layout as after a tree page split).
+			PageContext right = allocate(PageType.INDEX_TREE);
+			page.moveLast();
+			byte[] promotedKey = page.getKey();
+			right.setBeforePageID(page.getAfterPageID(), false, -1);
+			page.delete(true, false, -1);
+			page.cleanup();
+			levels.set(height - 1, right);
+			page = right;
+			addSeparator(height + 1, promotedKey, right.getPageID());
+		}
+
+		if (!page.insert(separatorKey, value, true, false, -1)) {
+			throw new IndexOperationException(
+					"Separator does not fit into tree page %s.", page
+							.getPageID());
+		}
+		page.moveNext();
+	}
+
+	private PageContext allocate(int pageType) throws IndexOperationException {
+		PageContext page = tree.allocate(tx, -1, unitID, pageType, rootPageID,
+				keyType, (pageType == PageType.INDEX_LEAF) ? valueType
+						: Field.PAGEID, unique, compressed, false);
+		if (pageType == PageType.INDEX_LEAF) {
+			tx.getStatistics().increment(TxStats.BTREE_LEAF_ALLOCATIONS);
+		} else {
+			tx.getStatistics().increment(TxStats.BTREE_BRANCH_ALLOCATE_COUNT);
+			branches++;
+		}
+		page.moveFirst();
+		return page;
+	}
+
+	/**
+	 * Finishes the load and turns the root into a tree page if more than one
+	 * leaf was filled.
+	 */
+	private void close() throws IndexOperationException {
+		if (current == root) {
+			// everything fits into the root leaf
+			return;
+		}
+
+		current.cleanup();
+		current = null;
+
+		// copy top level into root page
+		int height = levels.size();
+		PageContext top = levels.remove(height - 1);
+		try {
+			root.format(PageType.INDEX_TREE, rootPageID, keyType, Field.PAGEID,
+					unique, compressed, false, -1);
+			root.moveFirst();
+			root.setBeforePageID(top.getBeforePageID(), false, -1);
+			top.moveFirst();
+			while (!top.isAfterLast()) {
+				root.insert(top.getKey(), top.getValue(), true, false, -1);
+				root.moveNext();
+				top.moveNext();
+			}
+
+			// release the now unused top page
+			top.format(PageType.INDEX_TREE, rootPageID, keyType, Field.PAGEID,
+					unique, compressed, false, -1);
+			branches--;
+			tx.getStatistics().increment(TxStats.BTREE_BRANCH_DEALLOCATE_COUNT);
+			tx.addDeletedPage(top.deletePage());
+			top = null;
+		} finally {
+			if (top != null) {
+				top.cleanup();
+			}
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Bulk loaded %s entries into %s leaves "
+					+ "of index %s with height %s.", tuples, leaves,
+					rootPageID, height + 1));
+		}
+	}
+
+	private IndexStatistics getStatistics() {
+		int pageCount = 1 + ((leaves > 1) ? leaves + branches : 0);
+		IndexStatistics is = new IndexStatistics();
+		is.setIndexHeight((leaves > 1) ? levels.size() + 2 : 1);
+		is.setIndexLeaveCount(leaves);
+		is.setIndexPointers(leaves - 1);
+		is.setIndexTuples(tuples);
+		is.setPageCount(pageCount);
+		is.setIdxSize((long) pageCount * root.getSize());
+		is.setMinKey((firstKey != null) ? keyType.toString(firstKey) : null);
+		is.setMaxKey((lastKey != null) ? keyType.toString(lastKey) : null);
+		return is;
+	}
+
+	private void cleanup() {
+		if ((current != null) && (current != root)) {
+			current.cleanup();
+		}
+		current = null;
+		for (PageContext page : levels) {
+			page.cleanup();
+		}
+		levels.clear();
+		if (root != null) {
+			root.cleanup();
+			root = null;
+		}
+	}
+}
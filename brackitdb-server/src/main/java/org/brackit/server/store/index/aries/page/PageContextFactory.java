@@ -116,6 +116,21 @@ public class PageContextFactory {
 		return page;
 	}
 
+	/**
+	 * Asynchronously loads the given page into the buffer if it is not
+	 * buffered yet.
+	 * 
+	 * @param pageID
+	 *            page that will be accessed soon
+	 */
+	public void prefetchPage(PageID pageID) {
+		try {
+			bufferMgr.getBuffer(pageID).prefetchPage(pageID);
+		} catch (BufferException e) {
+			log.error(String.format("Prefetch of page %s failed.", pageID), e);
+		}
+	}
+
 	/**
 	 * Fixes a page in the buffer, latches it and returns an initialized page
 	 * context for it
@@ -54,6 +54,11 @@ public class AttributeStream extends StreamIterator {
 		super(other, filter);
 	}
 
+	@Override
+	protected boolean needsCurrentKey() {
+		return false;
+	}
+
 	@Override
 	protected void first() throws IndexOperationException, IndexAccessException {
 		
@@ -0,0 +1,94 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.bracket;
+
+import java.io.InputStream;
+
+import org.brackit.server.node.bracket.BracketNode;
+import org.brackit.server.store.page.bracket.DeweyIDBuffer;
+import org.brackit.server.store.page.bracket.RecordInterpreter;
+import org.brackit.xquery.xdm.DocumentException;
+
+/**
+ * Cursor over the nodes of a BracketTree. In contrast to a
+ * {@link org.brackit.xquery.xdm.Stream}, moving the cursor does not create
+ * any objects per node: DeweyID and record of the current node are exposed
+ * as views on the underlying page, which are only valid until the cursor is
+ * moved again or closed. Callers that need to keep a node beyond that have
+ * to load it explicitly with {@link #loadCurrent()}.
+ */
+public interface BracketCursor {
+
+	/**
+	 * Moves this cursor to the next qualifying node. It returns false if
+	 * there are no more nodes, otherwise true.
+	 */
+	public boolean moveNext() throws DocumentException;
+
+	/**
+	 * Returns the DeweyID of the current node. The returned buffer is reused
+	 * and must neither be modified nor kept beyond the next move.
+	 */
+	public DeweyIDBuffer getDeweyID();
+
+	public int getLevel();
+
+	public boolean isAttribute();
+
+	/**
+	 * Returns the node kind of the current node.
+	 */
+	public byte getKind() throws DocumentException;
+
+	/**
+	 * Returns the PCR of the current node, or -1 for document nodes.
+	 */
+	public int getPCR() throws DocumentException;
+
+	/**
+	 * Returns the record of the current node, which gives access to the
+	 * value without decoding it (see {@link RecordInterpreter#getBuffer()}).
+	 * The returned record is only valid until the next move. Its value is
+	 * only meaningful for nodes that are neither elements nor documents.
+	 */
+	public RecordInterpreter getRecord() throws DocumentException;
+
+	/**
+	 * Opens a stream on the value of the current node. Large externalized
+	 * values are read lazily instead of being materialized. The stream
+	 * remains valid after the next move and has to be closed by the caller.
+	 */
+	public InputStream openValueStream() throws DocumentException;
+
+	/**
+	 * Materializes the current node.
+	 */
+	public BracketNode loadCurrent() throws DocumentException;
+
+	public void close();
+}
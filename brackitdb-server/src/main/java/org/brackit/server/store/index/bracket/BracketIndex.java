@@ -41,6 +41,7 @@ import org.brackit.server.tx.Tx;
 import org.brackit.xquery.atomic.Atomic;
 import org.brackit.xquery.atomic.QNm;
 import org.brackit.xquery.xdm.DocumentException;
+import org.brackit.xquery.xdm.Stream;
 
 /**
  * @author Martin Hiller
@@ -123,6 +124,39 @@ public interface BracketIndex {
 	public PageID createIndex(Tx tx, int containerNo)
 			throws IndexAccessException;
 
+	/**
+	 * Merges sparsely filled neighboring leaves of the index online.
+	 * 
+	 * @param tx
+	 *            tx that performs the reorganization
+	 * @param rootPageID
+	 *            number of the root page
+	 * @param minOccupancyRate
+	 *            leaves filled less than this rate are merged with their
+	 *            neighbors, if possible
+	 * @return the number of released leaves
+	 * @throws IndexAccessException
+	 *             iff an error occurs during the reorganization
+	 */
+	public int reorganize(Tx tx, PageID rootPageID, float minOccupancyRate)
+			throws IndexAccessException;
+
+	/**
+	 * Rebuilds the subtree counts of the index, which are dropped by the
+	 * first update after a bulk load. The index must not be modified
+	 * concurrently.
+	 * 
+	 * @param tx
+	 *            tx that performs the rebuild
+	 * @param rootPageID
+	 *            number of the root page
+	 * @return the number of records in the index
+	 * @throws IndexAccessException
+	 *             iff an error occurs during the rebuild
+	 */
+	public long buildSubtreeCounts(Tx tx, PageID rootPageID)
+			throws IndexAccessException;
+
 	/**
 	 * Dumps the content of the index.
 	 * 
@@ -153,6 +187,39 @@ public interface BracketIndex {
 			XTCdeweyID subtreeRoot, HintPageInformation hintPageInfo,
 			BracketFilter filter, boolean self, boolean skipAttributes);
 
+	/**
+	 * Opens a stream over the subtree rooted at <code>subtreeRoot</code>,
+	 * which is scanned by several threads in parallel. The subtree is split
+	 * into disjoint leaf ranges using the separator keys of the branch pages.
+	 * If <code>ordered</code> is <code>false</code>, the nodes are returned in
+	 * arbitrary order, which is sufficient for order-independent
+	 * computations like aggregations. Small subtrees, which do not span
+	 * several leaf ranges, are scanned sequentially.
+	 */
+	public Stream<BracketNode> openPartitionedSubtreeStream(
+			BracketLocator locator, XTCdeweyID subtreeRoot,
+			BracketFilter filter, boolean self, boolean skipAttributes,
+			boolean ordered) throws DocumentException;
+
+	/**
+	 * Returns the number of nodes (including attributes) in the subtree
+	 * rooted at <code>subtreeRoot</code>. If the index was bulk loaded or its
+	 * counts were rebuilt (see {@link #buildSubtreeCounts}), and it has not
+	 * been updated since, the count is computed from the subtree counts in
+	 * the branch pages with a logarithmic number of page accesses.
+	 */
+	public long countSubtree(BracketLocator locator, XTCdeweyID subtreeRoot)
+			throws DocumentException;
+
+	/**
+	 * Returns the DeweyID of the node at the given (zero-based) position in
+	 * document order within the subtree rooted at <code>subtreeRoot</code>,
+	 * where position 0 is the subtree root itself. Returns <code>null</code>
+	 * if the subtree has fewer nodes.
+	 */
+	public XTCdeweyID getSubtreeNode(BracketLocator locator,
+			XTCdeweyID subtreeRoot, long position) throws DocumentException;
+
 	public StreamIterator openAttributeStream(BracketLocator locator,
 			XTCdeweyID elementDeweyID, HintPageInformation hintPageInfo,
 			BracketFilter filter);
@@ -28,6 +28,8 @@
 package org.brackit.server.store.index.bracket;
 
 import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
 
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.BufferException;
@@ -38,7 +40,8 @@ import org.brackit.server.node.XTCdeweyID;
 import org.brackit.server.node.bracket.BracketAttributeTuple;
 import org.brackit.server.node.bracket.BracketLocator;
 import org.brackit.server.node.bracket.BracketNode;
-import org.brackit.server.node.el.ElRecordAccess;
+import org.brackit.server.node.bracket.ValueDictionary;
+import org.brackit.server.store.Field;
 import org.brackit.server.store.OpenMode;
 import org.brackit.server.store.index.IndexAccessException;
 import org.brackit.server.store.index.bracket.filter.BracketFilter;
@@ -51,6 +54,7 @@ import org.brackit.xquery.atomic.Atomic;
 import org.brackit.xquery.atomic.QNm;
 import org.brackit.xquery.xdm.DocumentException;
 import org.brackit.xquery.xdm.Kind;
+import org.brackit.xquery.xdm.Stream;
 
 /**
  * @author Martin Hiller
@@ -68,6 +72,11 @@ public class BracketIndexImpl implements BracketIndex {
 		this(new BracketTree(bufferMgr), bufferMgr);
 	}
 
+	public BracketIndexImpl(BufferMgr bufferMgr,
+			Map<PageID, ValueDictionary> valueDictionaries) {
+		this(new BracketTree(bufferMgr, valueDictionaries), bufferMgr);
+	}
+
 	protected BracketIndexImpl(BracketTree tree, BufferMgr bufferMgr) {
 		this.tree = tree;
 		this.bufferMgr = bufferMgr;
@@ -108,6 +117,9 @@ public class BracketIndexImpl implements BracketIndex {
 			
 			// drop unit
 			buffer.dropUnitDeferred(tx, unitID);
+
+			// cached hints may refer to pages of the dropped unit
+			tree.clearHintCache();
 			
 		} catch (IndexOperationException e) {
 			throw new IndexAccessException(e);
@@ -116,6 +128,18 @@ public class BracketIndexImpl implements BracketIndex {
 		}	
 	}
 
+	@Override
+	public int reorganize(Tx tx, PageID rootPageID, float minOccupancyRate)
+			throws IndexAccessException {
+		return tree.reorganize(tx, rootPageID, minOccupancyRate, true);
+	}
+
+	@Override
+	public long buildSubtreeCounts(Tx tx, PageID rootPageID)
+			throws IndexAccessException {
+		return tree.buildSubtreeCounts(tx, rootPageID, true);
+	}
+
 	@Override
 	public void dump(Tx tx, PageID rootPageID, PrintStream out)
 			throws IndexAccessException {
@@ -235,6 +259,61 @@ public class BracketIndexImpl implements BracketIndex {
 		}
 	}
 
+	@Override
+	public Stream<BracketNode> openPartitionedSubtreeStream(
+			BracketLocator locator, XTCdeweyID subtreeRoot,
+			BracketFilter filter, boolean self, boolean skipAttributes,
+			boolean ordered) throws DocumentException {
+
+		Tx tx = locator.collection.getTX();
+		List<byte[]> separators;
+
+		try {
+			byte[] lowKey = Field.COLLECTIONDEWEYID.encode(subtreeRoot);
+			byte[] highKey = Field.COLLECTIONDEWEYID
+					.encode(PartitionedSubtreeStream
+							.getSubtreeBound(subtreeRoot));
+			separators = tree.getSeparatorKeys(tx, locator.rootPageID,
+					lowKey, highKey, PartitionedSubtreeStream
+							.getMaxPartitions());
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+
+		if (separators.isEmpty()) {
+			// subtree does not span several leaf ranges
+			return openSubtreeStream(locator, subtreeRoot, null, filter, self,
+					skipAttributes);
+		}
+
+		return new PartitionedSubtreeStream(locator, tree, subtreeRoot,
+				separators, filter, self, skipAttributes, ordered);
+	}
+
+	@Override
+	public long countSubtree(BracketLocator locator, XTCdeweyID subtreeRoot)
+			throws DocumentException {
+		try {
+			return tree.countRange(locator.collection.getTX(),
+					locator.rootPageID, subtreeRoot, PartitionedSubtreeStream
+							.getSubtreeBound(subtreeRoot));
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+	}
+
+	@Override
+	public XTCdeweyID getSubtreeNode(BracketLocator locator,
+			XTCdeweyID subtreeRoot, long position) throws DocumentException {
+		try {
+			return tree.selectInRange(locator.collection.getTX(),
+					locator.rootPageID, subtreeRoot, PartitionedSubtreeStream
+							.getSubtreeBound(subtreeRoot), position);
+		} catch (IndexAccessException e) {
+			throw new DocumentException(e);
+		}
+	}
+
 	@Override
 	public StreamIterator forkSubtreeStream(StreamIterator origin,
 			BracketFilter filter, boolean self, boolean skipAttributes)
@@ -258,7 +337,7 @@ public class BracketIndexImpl implements BracketIndex {
 		PSNode attributePsNode = locator.pathSynopsis.getChild(
 				element.getPCR(), name, Kind.ATTRIBUTE.ID, null);
 
-		byte[] physicalRecord = ElRecordAccess.createRecord(
+		byte[] physicalRecord = locator.collection.createRecord(
 				attributePsNode.getPCR(), Kind.ATTRIBUTE.ID,
 				value.stringValue());
 
@@ -29,14 +29,19 @@ package org.brackit.server.store.index.bracket;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.buffer.Buffer.PageReleaser;
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.node.bracket.ValueDictionary;
 import org.brackit.server.store.Field;
 import org.brackit.server.store.OpenMode;
 import org.brackit.server.store.SearchMode;
@@ -59,10 +64,12 @@ import org.brackit.server.store.index.bracket.stats.ScanStats;
 import org.brackit.server.store.page.bracket.BracketNodeSequence;
 import org.brackit.server.store.page.bracket.DeleteSequenceInfo;
 import org.brackit.server.store.page.bracket.DeweyIDBuffer;
+import org.brackit.server.store.page.bracket.ExternalValueCache;
 import org.brackit.server.store.page.bracket.navigation.NavigationStatus;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
 import org.brackit.server.tx.TxStats;
+import org.brackit.xquery.util.Cfg;
 import org.brackit.xquery.util.log.Logger;
 
 /**
@@ -79,8 +86,24 @@ public final class BracketTree extends PageContextFactory {
 	public static final boolean COLLECT_STATS = false;
 	private static final int NEIGHBOR_LEAFS_TO_SCAN = 2;
 	private static final float OCCUPANCY_RATE_DEFAULT = 0.5f;
+	private static final float MAX_MERGE_OCCUPANCY = 0.9f;
+
+	/**
+	 * Occupancy rate below which a leaf is merged with its successor after
+	 * a subtree deletion (0 disables automatic merges).
+	 */
+	public static final String MERGE_THRESHOLD = "org.brackit.server.store.index.bracket.mergeThreshold";
 
 	private final BlobStore blobStore;
+	private final float mergeThreshold;
+	private final HintPageCache hintCache;
+
+	/**
+	 * Roots of indexes that are known to carry no subtree counts. Lets
+	 * updates skip the inspection of the root page in the common case.
+	 */
+	private final Set<PageID> uncountedRoots = Collections
+			.newSetFromMap(new ConcurrentHashMap<PageID, Boolean>());
 	private final EnumMap<NavigationMode, LeafScanner> scannerMap = new EnumMap<NavigationMode, LeafScanner>(
 			NavigationMode.class);
 
@@ -883,8 +906,22 @@ public final class BracketTree extends PageContextFactory {
 	}
 
 	public BracketTree(BufferMgr bufferMgr) {
-		super(bufferMgr);
+		this(bufferMgr, null, null);
+	}
+
+	public BracketTree(BufferMgr bufferMgr,
+			Map<PageID, ValueDictionary> valueDictionaries) {
+		this(bufferMgr, valueDictionaries, new ExternalValueCache());
+	}
+
+	private BracketTree(BufferMgr bufferMgr,
+			Map<PageID, ValueDictionary> valueDictionaries,
+			ExternalValueCache valueCache) {
+		super(bufferMgr, valueDictionaries, valueCache);
 		blobStore = new SimpleBlobStore(bufferMgr);
+		mergeThreshold = (float) Math.min(OCCUPANCY_RATE_DEFAULT, Math.max(
+				0, Cfg.asDouble(MERGE_THRESHOLD, 0)));
+		hintCache = new HintPageCache();
 		initializeScannerMap();
 	}
 
@@ -1245,6 +1282,12 @@ public final class BracketTree extends PageContextFactory {
 
 		if (!openMode.doLog()) {
 			tx.addFlushHook(rootPageID.getContainerNo());
+			// unlogged changes do not modify the page LSNs
+			hintCache.clear();
+		}
+
+		if (openMode.forUpdate()) {
+			dropSubtreeCounts(tx, rootPageID, openMode.doLog());
 		}
 
 		Leaf hintLeaf = null;
@@ -1252,19 +1295,41 @@ public final class BracketTree extends PageContextFactory {
 			deweyIDBuffer = new DeweyIDBuffer();
 		}
 
+		// fall back to the shared hint cache
+		boolean cachedHint = false;
+		if (hintPageInfo == null && navMode != NavigationMode.TO_INSERT_POS
+				&& openMode.doLog()) {
+			hintPageInfo = hintCache.get(rootPageID, key);
+			cachedHint = (hintPageInfo != null);
+		}
+
 		if (hintPageInfo != null && navMode != NavigationMode.TO_INSERT_POS) {
 			try {
 				BPContext hintPage = getPage(tx, hintPageInfo.pageID,
 						openMode.forUpdate(), false);
 
-				// check LSN of hintPage
-				if (hintPage.getLSN() == hintPageInfo.pageLSN) {
+				// check LSN of hintPage (cached hints may even point to a page
+				// of another index)
+				if (hintPage.getLSN() == hintPageInfo.pageLSN
+						&& (!cachedHint || (hintPage.isLeaf() && rootPageID
+								.equals(hintPage.getRootPageID())))) {
 
 					// page has not changed
 					hintLeaf = (Leaf) hintPage;
 					hintLeaf.assignDeweyIDBuffer(deweyIDBuffer);
 
-					if (navMode == NavigationMode.TO_KEY) {
+					if (cachedHint && navMode != NavigationMode.PARENT) {
+
+						// unlogged modifications do not change the page LSN,
+						// so locate the key instead of trusting the offset
+						if (hintLeaf.navigateContextFree(key,
+								NavigationMode.TO_KEY) != NavigationStatus.FOUND) {
+							hintLeaf.cleanup();
+							hintLeaf = null;
+							hintCache.remove(rootPageID, key, hintPageInfo);
+						}
+
+					} else if (navMode == NavigationMode.TO_KEY) {
 
 						// assumption: hintPageInfo already contains the correct
 						// position
@@ -1308,12 +1373,18 @@ public final class BracketTree extends PageContextFactory {
 					}
 
 					hintPage.cleanup();
+					if (cachedHint) {
+						hintCache.remove(rootPageID, key, hintPageInfo);
+					}
 				}
 			} catch (IndexOperationException e) {
 				if (log.isTraceEnabled()) {
 					log.trace(String.format("Page %s could not be fixed.",
 							hintPageInfo.pageID));
 				}
+				if (cachedHint) {
+					hintCache.remove(rootPageID, key, hintPageInfo);
+				}
 			}
 		}
 
@@ -1323,12 +1394,12 @@ public final class BracketTree extends PageContextFactory {
 			if (navMode == NavigationMode.TO_KEY
 					|| navMode == NavigationMode.PARENT) {
 				// target node already found
-				return hintLeaf;
+				return cacheHint(rootPageID, navMode, key, openMode, hintLeaf);
 			}
 			// hintpage scan
 			NavigationStatus navStatus = hintLeaf.navigate(navMode);
 			if (navStatus == NavigationStatus.FOUND) {
-				return hintLeaf;
+				return cacheHint(rootPageID, navMode, key, openMode, hintLeaf);
 			} else if (navStatus == NavigationStatus.NOT_EXISTENT) {
 				hintLeaf.cleanup();
 				return null;
@@ -1343,7 +1414,8 @@ public final class BracketTree extends PageContextFactory {
 		}
 
 		if (scanRes.status == Status.FOUND) {
-			return scanRes.resultLeaf;
+			return cacheHint(rootPageID, navMode, key, openMode,
+					scanRes.resultLeaf);
 		} else {
 			if (scanRes.resultLeaf != null) {
 				scanRes.resultLeaf.cleanup();
@@ -1352,6 +1424,35 @@ public final class BracketTree extends PageContextFactory {
 		}
 	}
 
+	/**
+	 * Records the position of the node the given leaf points to in the hint
+	 * cache. Leafs opened for update are not recorded, because their LSN will
+	 * change anyway.
+	 */
+	private Leaf cacheHint(PageID rootPageID, NavigationMode navMode,
+			XTCdeweyID key, OpenMode openMode, Leaf leaf) {
+
+		if (openMode.forUpdate()) {
+			return leaf;
+		}
+
+		try {
+			XTCdeweyID deweyID = (navMode == NavigationMode.TO_KEY) ? key
+					: leaf.getKey();
+			hintCache.put(rootPageID, deweyID, leaf.getHintPageInformation());
+		} catch (IndexOperationException e) {
+			// ignore: the hint cache is only an optimization
+		}
+		return leaf;
+	}
+
+	/**
+	 * Invalidates the shared hint cache, e.g. after an index was dropped.
+	 */
+	public void clearHintCache() {
+		hintCache.clear();
+	}
+
 	protected Leaf loadHintPage(Tx tx, XTCdeweyID key,
 			HintPageInformation hintPageInfo, OpenMode openMode,
 			DeweyIDBuffer deweyIDBuffer) {
@@ -2479,6 +2580,633 @@ public final class BracketTree extends PageContextFactory {
 		}
 	}
 
+	/**
+	 * Collects separator keys from the branch pages which lie strictly
+	 * between <code>lowKey</code> and <code>highKey</code>. The branch levels
+	 * are inspected top-down until at least <code>maxPartitions - 1</code>
+	 * separators are found or the lowest branch level is reached. The
+	 * returned keys are sorted and thinned out evenly, so that they can be
+	 * used as boundaries of (at most) <code>maxPartitions</code> disjoint leaf
+	 * ranges. The separators are only a snapshot of the tree structure and
+	 * are not protected against concurrent splits or merges.
+	 */
+	public List<byte[]> getSeparatorKeys(Tx tx, PageID rootPageID,
+			byte[] lowKey, byte[] highKey, int maxPartitions)
+			throws IndexAccessException {
+
+		Field field = Field.COLLECTIONDEWEYID;
+		List<byte[]> separators = new ArrayList<byte[]>();
+		List<PageID> level = new ArrayList<PageID>();
+		level.add(rootPageID);
+		BPContext page = null;
+
+		try {
+			while (!level.isEmpty()) {
+				List<PageID> children = new ArrayList<PageID>();
+				boolean lowestBranchLevel = false;
+				separators.clear();
+
+				for (PageID pageID : level) {
+					page = getPage(tx, pageID, false, false);
+
+					if (page.isLeaf()) {
+						// the whole index consists of a single leaf
+						page.cleanup();
+						page = null;
+						return separators;
+					}
+
+					Branch branch = (Branch) page;
+					lowestBranchLevel = (branch.getHeight() == 1);
+					PageID child = branch.getLowPageID();
+					byte[] childLowKey = null;
+
+					branch.moveFirst();
+					while (!branch.isAfterLast()) {
+						byte[] key = branch.getKey();
+						boolean nextPointer = (!branch.isLastInLevel())
+								&& (branch.getPosition() == branch
+										.getEntryCount());
+
+						if (((lowKey == null) || (field.compare(key,
+								lowKey) > 0))
+								&& ((highKey == null)
+										|| (childLowKey == null) || (field
+										.compare(childLowKey, highKey) < 0))) {
+							children.add(child);
+						}
+
+						if (((lowKey == null) || (field.compare(key,
+								lowKey) > 0))
+								&& ((highKey == null) || (field.compare(
+										key, highKey) < 0))) {
+							int size = separators.size();
+							if ((size == 0)
+									|| (field.compare(separators
+											.get(size - 1), key) < 0)) {
+								separators.add(key);
+							}
+						}
+
+						if (nextPointer) {
+							// last entry points to the right neighbor
+							child = null;
+							break;
+						}
+
+						child = branch.getValueAsPageID();
+						childLowKey = key;
+						branch.moveNext();
+					}
+
+					if ((child != null)
+							&& ((highKey == null) || (childLowKey == null) || (field
+									.compare(childLowKey, highKey) < 0))) {
+						children.add(child);
+					}
+
+					page.cleanup();
+					page = null;
+				}
+
+				if ((lowestBranchLevel)
+						|| (separators.size() >= maxPartitions - 1)) {
+					break;
+				}
+
+				level = children;
+			}
+		} catch (IndexOperationException e) {
+			if (page != null) {
+				page.cleanup();
+			}
+			throw new IndexAccessException(e,
+					"Error collecting separator keys.");
+		}
+
+		if (separators.size() <= maxPartitions - 1) {
+			return separators;
+		}
+
+		List<byte[]> sample = new ArrayList<byte[]>(maxPartitions - 1);
+		float step = (float) separators.size() / maxPartitions;
+		for (int i = 1; i < maxPartitions; i++) {
+			sample.add(separators.get((int) (i * step)));
+		}
+		return sample;
+	}
+
+	/**
+	 * Key range [low, high) together with its encoded bounds.
+	 */
+	private static final class KeyRange {
+		final XTCdeweyID low;
+
+		final XTCdeweyID high;
+
+		final byte[] lowBytes;
+
+		final byte[] highBytes;
+
+		KeyRange(XTCdeweyID low, XTCdeweyID high) {
+			this.low = low;
+			this.high = high;
+			this.lowBytes = Field.COLLECTIONDEWEYID.encode(low);
+			this.highBytes = Field.COLLECTIONDEWEYID.encode(high);
+		}
+
+		boolean covers(byte[] pageLow, byte[] pageHigh) {
+			return ((pageLow != null)
+					&& (Field.COLLECTIONDEWEYID.compare(pageLow, lowBytes) >= 0)
+					&& (pageHigh != null) && (Field.COLLECTIONDEWEYID.compare(
+					pageHigh, highBytes) <= 0));
+		}
+
+		boolean overlaps(byte[] pageLow, byte[] pageHigh) {
+			return (((pageLow == null) || (Field.COLLECTIONDEWEYID.compare(
+					pageLow, highBytes) < 0)) && ((pageHigh == null) || (Field.COLLECTIONDEWEYID
+					.compare(pageHigh, lowBytes) > 0)));
+		}
+	}
+
+	/**
+	 * Child pointer of a branch page with the key range of the child and the
+	 * number of records in its subtree (-1 if unknown).
+	 */
+	private static final class ChildRange {
+		final PageID pageID;
+
+		final byte[] low;
+
+		byte[] high;
+
+		long count;
+
+		ChildRange(PageID pageID, byte[] low, long count) {
+			this.pageID = pageID;
+			this.low = low;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Returns the number of records with keys in [<code>lowKey</code>,
+	 * <code>highKey</code>). If the index carries subtree counts (see
+	 * {@link #buildSubtreeCounts}) and has not been opened for update since,
+	 * the counts stored in the branch entries are used and only the pages on
+	 * the paths to the range boundaries are accessed. Otherwise, the leaves of
+	 * the range are visited, but only the two boundary leaves are scanned.
+	 */
+	public long countRange(Tx tx, PageID rootPageID, XTCdeweyID lowKey,
+			XTCdeweyID highKey) throws IndexAccessException {
+		KeyRange range = new KeyRange(lowKey, highKey);
+		BPContext root = null;
+
+		try {
+			root = getPage(tx, rootPageID, false, false);
+
+			// the shared root latch keeps the counts valid
+			if ((root.isLeaf()) || (((Branch) root).isCounted())) {
+				return count(tx, root, null, null, -1, range);
+			}
+
+			root.cleanup();
+			root = null;
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e, "Error counting range [%s, %s).",
+					lowKey, highKey);
+		} finally {
+			if (root != null) {
+				root.cleanup();
+			}
+		}
+
+		Leaf leaf = descend(tx, rootPageID, NavigationMode.TO_KEY
+				.getSearchMode(), range.lowBytes, false);
+		long count = 0;
+
+		try {
+			leaf.assignDeweyIDBuffer(new DeweyIDBuffer());
+			boolean first = true;
+
+			while (true) {
+				XTCdeweyID leafHighKey = leaf.getHighKey();
+				boolean covered = ((!first) && (leafHighKey != null) && (leafHighKey
+						.compareTo(highKey) <= 0));
+				count += countLeaf(leaf, (covered) ? null : range);
+
+				if ((leafHighKey == null)
+						|| (leafHighKey.compareTo(highKey) >= 0)) {
+					return count;
+				}
+
+				Leaf current = leaf;
+				leaf = null;
+				leaf = getNextPage(tx, rootPageID, current, OpenMode.READ, true);
+				if (leaf == null) {
+					return count;
+				}
+				first = false;
+			}
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e, "Error counting range [%s, %s).",
+					lowKey, highKey);
+		} finally {
+			if (leaf != null) {
+				leaf.cleanup();
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of the record at the given (zero-based) position in the
+	 * range [<code>lowKey</code>, <code>highKey</code>), or <code>null</code>
+	 * if the range contains fewer records. Subtree counts are used in the
+	 * same way as in {@link #countRange}.
+	 */
+	public XTCdeweyID selectInRange(Tx tx, PageID rootPageID,
+			XTCdeweyID lowKey, XTCdeweyID highKey, long position)
+			throws IndexAccessException {
+		if (position < 0) {
+			return null;
+		}
+
+		KeyRange range = new KeyRange(lowKey, highKey);
+		BPContext root = null;
+
+		try {
+			root = getPage(tx, rootPageID, false, false);
+
+			if ((root.isLeaf()) || (((Branch) root).isCounted())) {
+				return select(tx, root, null, null, -1, range, position);
+			}
+
+			root.cleanup();
+			root = null;
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Error selecting position %s in range [%s, %s).",
+					position, lowKey, highKey);
+		} finally {
+			if (root != null) {
+				root.cleanup();
+			}
+		}
+
+		Leaf leaf = descend(tx, rootPageID, NavigationMode.TO_KEY
+				.getSearchMode(), range.lowBytes, false);
+
+		try {
+			leaf.assignDeweyIDBuffer(new DeweyIDBuffer());
+			boolean first = true;
+
+			while (true) {
+				XTCdeweyID leafHighKey = leaf.getHighKey();
+				boolean covered = ((!first) && (leafHighKey != null) && (leafHighKey
+						.compareTo(highKey) <= 0));
+				long count = countLeaf(leaf, (covered) ? null : range);
+
+				if (position < count) {
+					return selectLeaf(leaf, (covered) ? null : range, position);
+				}
+				position -= count;
+
+				if ((leafHighKey == null)
+						|| (leafHighKey.compareTo(highKey) >= 0)) {
+					return null;
+				}
+
+				Leaf current = leaf;
+				leaf = null;
+				leaf = getNextPage(tx, rootPageID, current, OpenMode.READ, true);
+				if (leaf == null) {
+					return null;
+				}
+				first = false;
+			}
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Error selecting position %s in range [%s, %s).",
+					position, lowKey, highKey);
+		} finally {
+			if (leaf != null) {
+				leaf.cleanup();
+			}
+		}
+	}
+
+	private long count(Tx tx, BPContext page, byte[] pageLow, byte[] pageHigh,
+			long total, KeyRange range) throws IndexOperationException {
+		if (page.isLeaf()) {
+			return countLeaf((Leaf) page, (range.covers(pageLow, pageHigh)) ? null
+					: range);
+		}
+
+		long count = 0;
+
+		for (ChildRange child : getChildRanges((Branch) page, pageLow,
+				pageHigh, total)) {
+			if (!range.overlaps(child.low, child.high)) {
+				continue;
+			}
+			if ((child.count >= 0) && (range.covers(child.low, child.high))) {
+				count += child.count;
+				continue;
+			}
+
+			BPContext childPage = getPage(tx, child.pageID, false, false);
+			try {
+				count += count(tx, childPage, child.low, child.high,
+						child.count, range);
+			} finally {
+				childPage.cleanup();
+			}
+		}
+
+		return count;
+	}
+
+	private XTCdeweyID select(Tx tx, BPContext page, byte[] pageLow,
+			byte[] pageHigh, long total, KeyRange range, long position)
+			throws IndexOperationException {
+		if (page.isLeaf()) {
+			return selectLeaf((Leaf) page, (range.covers(pageLow, pageHigh)) ? null
+					: range, position);
+		}
+
+		for (ChildRange child : getChildRanges((Branch) page, pageLow,
+				pageHigh, total)) {
+			if (!range.overlaps(child.low, child.high)) {
+				continue;
+			}
+			boolean known = ((child.count >= 0) && (range.covers(child.low,
+					child.high)));
+			if ((known) && (position >= child.count)) {
+				position -= child.count;
+				continue;
+			}
+
+			BPContext childPage = getPage(tx, child.pageID, false, false);
+			try {
+				if (!known) {
+					long count = count(tx, childPage, child.low, child.high,
+							child.count, range);
+					if (position >= count) {
+						position -= count;
+						continue;
+					}
+				}
+				return select(tx, childPage, child.low, child.high,
+						child.count, range, position);
+			} finally {
+				childPage.cleanup();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the child pointers of the given branch page in key order. The
+	 * count of the low page is derived from the total count of the branch.
+	 */
+	private List<ChildRange> getChildRanges(Branch branch, byte[] pageLow,
+			byte[] pageHigh, long total) throws IndexOperationException {
+		List<ChildRange> children = new ArrayList<ChildRange>();
+		ChildRange child = new ChildRange(branch.getLowPageID(), pageLow, -1);
+		long sum = 0;
+		boolean complete = true;
+
+		branch.moveFirst();
+		while (!branch.isAfterLast()) {
+			byte[] key = branch.getKey();
+			child.high = key;
+			children.add(child);
+
+			if ((!branch.isLastInLevel())
+					&& (branch.getPosition() == branch.getEntryCount())) {
+				// last entry points to the right neighbor
+				child = null;
+				break;
+			}
+
+			long count = branch.getSubtreeCount();
+			if (count < 0) {
+				complete = false;
+			} else {
+				sum += count;
+			}
+			child = new ChildRange(branch.getValueAsPageID(), key, count);
+			branch.moveNext();
+		}
+
+		if (child != null) {
+			child.high = pageHigh;
+			children.add(child);
+		}
+
+		if ((total >= 0) && (complete)) {
+			children.get(0).count = total - sum;
+		}
+
+		return children;
+	}
+
+	/**
+	 * Counts the records of the leaf which lie in the given range, or all
+	 * records if the range is <code>null</code>.
+	 */
+	private long countLeaf(Leaf leaf, KeyRange range)
+			throws IndexOperationException {
+		if (range == null) {
+			return leaf.getEntryCount();
+		}
+
+		if (leaf.getDeweyIDBuffer() == null) {
+			leaf.assignDeweyIDBuffer(new DeweyIDBuffer());
+		}
+
+		long count = 0;
+		if (leaf.moveFirst()) {
+			do {
+				XTCdeweyID key = leaf.getKey();
+				if (key.compareTo(range.high) >= 0) {
+					break;
+				}
+				if (key.compareTo(range.low) >= 0) {
+					count++;
+				}
+			} while (leaf.moveNextInDocument() == NavigationStatus.FOUND);
+		}
+		return count;
+	}
+
+	private XTCdeweyID selectLeaf(Leaf leaf, KeyRange range, long position)
+			throws IndexOperationException {
+		if (leaf.getDeweyIDBuffer() == null) {
+			leaf.assignDeweyIDBuffer(new DeweyIDBuffer());
+		}
+
+		if (leaf.moveFirst()) {
+			do {
+				XTCdeweyID key = leaf.getKey();
+				if ((range != null) && (key.compareTo(range.high) >= 0)) {
+					break;
+				}
+				if (((range == null) || (key.compareTo(range.low) >= 0))
+						&& (position-- == 0)) {
+					return key;
+				}
+			} while (leaf.moveNextInDocument() == NavigationStatus.FOUND);
+		}
+		return null;
+	}
+
+	/**
+	 * Clears the subtree counts of the index before it is modified. The
+	 * counts are only built by the bulk loader and by
+	 * {@link #buildSubtreeCounts}, so the first update simply invalidates
+	 * them. The change is logged like a structure modification, i.e., it is
+	 * redone after a crash, but not undone if the transaction rolls back,
+	 * because concurrent transactions may have updated the index since.
+	 */
+	private void dropSubtreeCounts(Tx tx, PageID rootPageID, boolean logged)
+			throws IndexAccessException {
+		if (uncountedRoots.contains(rootPageID)) {
+			return;
+		}
+
+		BPContext root = null;
+
+		try {
+			root = getPage(tx, rootPageID, false, false);
+			if ((root.isLeaf()) || (!((Branch) root).isCounted())) {
+				// remember while the root is latched to serialize with
+				// subtreeCountsBuilt()
+				uncountedRoots.add(rootPageID);
+				return;
+			}
+			root.cleanup();
+			root = null;
+
+			root = getPage(tx, rootPageID, true, false);
+			if ((!root.isLeaf()) && (((Branch) root).isCounted())) {
+				if (logged) {
+					long rememberedLSN = tx.checkPrevLSN();
+					((Branch) root).setCounted(false, true, -1);
+					// skip the change during undo processing
+					logDummyCLR(tx, rememberedLSN);
+				} else {
+					((Branch) root).setCounted(false, false, -1);
+					tx.addFlushHook(rootPageID.getContainerNo());
+				}
+			}
+			uncountedRoots.add(rootPageID);
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Error dropping subtree counts of index %s.", rootPageID);
+		} finally {
+			if (root != null) {
+				root.cleanup();
+			}
+		}
+	}
+
+	/**
+	 * Called by the bulk loader while the root is still latched exclusively
+	 * after it has annotated the index with subtree counts.
+	 */
+	void subtreeCountsBuilt(PageID rootPageID) {
+		uncountedRoots.remove(rootPageID);
+	}
+
+	/**
+	 * Recomputes the subtree counts of all branch entries and flags the root
+	 * as counted, e.g., after the counts were dropped by an update. All pages
+	 * of the index are visited. The index must not be modified concurrently,
+	 * and the rebuild fails if a branch page has no room for the counts.
+	 * 
+	 * @return the number of records in the index
+	 */
+	public long buildSubtreeCounts(Tx tx, PageID rootPageID, boolean logged)
+			throws IndexAccessException {
+		if (!logged) {
+			tx.addFlushHook(rootPageID.getContainerNo());
+		}
+
+		BPContext root = null;
+
+		try {
+			root = getPage(tx, rootPageID, true, false);
+
+			if (root.isLeaf()) {
+				return root.getEntryCount();
+			}
+
+			Branch branch = (Branch) root;
+			long count = annotate(tx, branch, null, logged);
+			if (!branch.isCounted()) {
+				branch.setCounted(true, logged, -1);
+			}
+			subtreeCountsBuilt(rootPageID);
+			return count;
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Error building subtree counts of index %s.", rootPageID);
+		} finally {
+			if (root != null) {
+				root.cleanup();
+			}
+		}
+	}
+
+	/**
+	 * Stores the subtree counts in the entries of the given branch and
+	 * returns the number of records in its subtree. The record counts of
+	 * leaves found in <code>leafCounts</code> are taken from there.
+	 */
+	long annotate(Tx tx, Branch branch, Map<PageID, Integer> leafCounts,
+			boolean logged) throws IndexOperationException {
+		long total = annotate(tx, branch.getLowPageID(), leafCounts, logged);
+
+		branch.moveFirst();
+		while (!branch.isAfterLast()) {
+			if ((!branch.isLastInLevel())
+					&& (branch.getPosition() == branch.getEntryCount())) {
+				// last entry points to the right neighbor, which is counted
+				// by the parent
+				break;
+			}
+			long count = annotate(tx, branch.getValueAsPageID(), leafCounts,
+					logged);
+			if (!branch.setSubtreeCount(count, logged, -1)) {
+				throw new IndexOperationException(
+						"Could not store subtree count in page %s.", branch
+								.getPageID());
+			}
+			total += count;
+			branch.moveNext();
+		}
+		return total;
+	}
+
+	private long annotate(Tx tx, PageID pageID,
+			Map<PageID, Integer> leafCounts, boolean logged)
+			throws IndexOperationException {
+		Integer count = (leafCounts != null) ? leafCounts.get(pageID) : null;
+		if (count != null) {
+			return count;
+		}
+
+		BPContext page = getPage(tx, pageID, true, false);
+		try {
+			return (page.isLeaf()) ? page.getEntryCount() : annotate(tx,
+					(Branch) page, leafCounts, logged);
+		} finally {
+			page.cleanup();
+		}
+	}
+
 	protected Branch deleteFromBranch(Tx tx, PageID rootPageID, Branch page,
 			byte[] deleteKey, boolean logged, long undoNextLSN)
 			throws IndexAccessException {
@@ -2806,6 +3534,206 @@ public final class BracketTree extends PageContextFactory {
 		}
 	}
 
+	/**
+	 * Merges sparsely filled neighboring leaves of the index, e.g. after
+	 * heavy deletions. Leaves are scanned from left to right and a leaf is
+	 * merged with its successor, if one of them is filled less than
+	 * <code>minOccupancyRate</code> and the content of both fits into a
+	 * single page. Only the involved pages are latched at a time.
+	 * <p>
+	 * Each merge is a structure modification that is skipped during undo,
+	 * i.e., the reorganization may be performed by any transaction.
+	 * 
+	 * @return the number of leaves released by the reorganization
+	 */
+	public int reorganize(Tx tx, PageID rootPageID, float minOccupancyRate,
+			boolean logged) throws IndexAccessException {
+		// merges invalidate the subtree counts
+		dropSubtreeCounts(tx, rootPageID, logged);
+
+		Leaf leaf = descend(tx, rootPageID, SearchMode.FIRST, null, true);
+		int merged = 0;
+
+		try {
+			while (!leaf.isLastInLevel()) {
+				Leaf next = (Leaf) getPage(tx, leaf.getNextPageID(), true,
+						false);
+
+				if (((getOccupancyRate(leaf) < minOccupancyRate) || (getOccupancyRate(next) < minOccupancyRate))
+						&& (mergeWithNext(tx, rootPageID, leaf, next, logged))) {
+					// stay at this leaf to merge the following one, too
+					merged++;
+					continue;
+				}
+
+				leaf.cleanup();
+				leaf = next;
+			}
+			return merged;
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Error reorganizing leaves of index %s.", rootPageID);
+		} finally {
+			leaf.cleanup();
+		}
+	}
+
+	private float getOccupancyRate(Leaf leaf) {
+		int usedSpace = leaf.getUsedSpace();
+		return (float) usedSpace / (usedSpace + leaf.getFreeSpace());
+	}
+
+	/**
+	 * Merges the X-latched leaf with its successor, if possible. The leaf
+	 * remains latched.
+	 */
+	private boolean mergeWithNext(Tx tx, PageID rootPageID, Leaf leaf,
+			boolean logged) throws IndexAccessException {
+		if (leaf.isLastInLevel()) {
+			return false;
+		}
+
+		Leaf next = null;
+		try {
+			next = (Leaf) getPage(tx, leaf.getNextPageID(), true, false);
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e);
+		}
+		if (!mergeWithNext(tx, rootPageID, leaf, next, logged)) {
+			next.cleanup();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Moves the content of the X-latched leaf <code>next</code> to the end
+	 * of its X-latched predecessor <code>leaf</code> and releases
+	 * <code>next</code>. The merge is only performed if both fit into a
+	 * single page and if the key range of <code>next</code> is passed to
+	 * <code>leaf</code> when the separator is deleted from the parent, i.e.,
+	 * if <code>next</code> is not the low page of its parent. If
+	 * <code>next</code> is the last leaf, <code>leaf</code> becomes the new
+	 * last leaf.
+	 * <p>
+	 * <code>leaf</code> always remains latched, while <code>next</code>
+	 * only remains latched if the leaves were not merged.
+	 * 
+	 * @return <code>true</code> if the leaves were merged
+	 */
+	private boolean mergeWithNext(Tx tx, PageID rootPageID, Leaf leaf,
+			Leaf next, boolean logged) throws IndexAccessException {
+		long rememberedLSN = tx.checkPrevLSN();
+		PageID nextPageID = next.getPageID();
+		Leaf afterNext = null;
+		Branch parent = null;
+		boolean failed = true;
+
+		try {
+			if (leaf.getUsedSpace() + next.getUsedSpace() > MAX_MERGE_OCCUPANCY
+					* (leaf.getUsedSpace() + leaf.getFreeSpace())) {
+				failed = false;
+				return false;
+			}
+
+			byte[] separatorKey;
+			if (next.isLastInLevel()) {
+				// the last leaf has no high key, so we search for its
+				// separator, which is the high key of leaf
+				separatorKey = leaf.getHighKeyBytes();
+			} else {
+				afterNext = (Leaf) getPage(tx, next.getNextPageID(), true,
+						false);
+				separatorKey = next.getHighKeyBytes();
+			}
+			parent = descendToParent(tx, rootPageID, rootPageID,
+					separatorKey, nextPageID, 1);
+
+			// parent context is positioned at the separator if it was
+			// found directly, otherwise one record after the separator
+			if (((parent.isAfterLast()) || (!parent.getValueAsPageID()
+					.equals(nextPageID)))
+					&& (!parent.hasPrevious())) {
+				// key range of next would be passed to afterNext
+				failed = false;
+				return false;
+			}
+
+			// move nodes to the end of leaf
+			BracketNodeSequence nodes = next.clearData(true, logged, -1);
+			if (!nodes.isEmpty()) {
+				leaf.moveLast();
+				if (!leaf.insertSequenceAfter(nodes, true, logged, -1, false)) {
+					// restore next page
+					next.moveBeforeFirst();
+					next.insertSequenceAfter(nodes, true, logged, -1, false);
+					failed = false;
+					return false;
+				}
+			}
+
+			// set pointers and high key
+			leaf.setHighKeyBytes(next.getHighKeyBytes(), logged, -1);
+			if (afterNext != null) {
+				leaf.setNextPageID(afterNext.getPageID(), logged, -1);
+				afterNext.setPrevPageID(leaf.getPageID(), logged, -1);
+				afterNext.cleanup();
+				afterNext = null;
+			} else {
+				leaf.setNextPageID(null, logged, -1);
+			}
+
+			// delete separator
+			if (log.isTraceEnabled()) {
+				log.trace(String.format(
+						"Merging leaf %s into %s and deleting separator "
+								+ "from parent %s", nextPageID, leaf
+								.getPageID(), parent));
+			}
+			Branch page = parent;
+			parent = null; // cleaned up by deleteFromBranch on failure
+			page = deleteFromBranch(tx, rootPageID, page, page.getKey(),
+					logged, -1);
+			page.cleanup();
+
+			// delete next
+			next.setNextPageID(null, logged, -1);
+			next.setPrevPageID(null, logged, -1);
+			next.setHighKey(null, logged, -1);
+			next.format(rootPageID, logged, -1);
+			PageReleaser pr = next.deletePage();
+			next = null;
+
+			if (logged) {
+				// skip the merge during undo processing
+				logDummyCLR(tx, rememberedLSN);
+			}
+
+			// release page physically
+			try {
+				pr.release();
+			} catch (BufferException e) {
+				throw new IndexAccessException(e);
+			}
+			failed = false;
+			return true;
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e,
+					"Error merging leaf %s into %s.", nextPageID, leaf
+							.getPageID());
+		} finally {
+			if (parent != null) {
+				parent.cleanup();
+			}
+			if (afterNext != null) {
+				afterNext.cleanup();
+			}
+			if ((failed) && (next != null)) {
+				next.cleanup();
+			}
+		}
+	}
+
 	public String printLeafScannerStats(NavigationMode navMode) {
 		return !COLLECT_STATS ? "No statistics available!" : scannerMap.get(
 				navMode).printStats();
@@ -2818,6 +3746,9 @@ public final class BracketTree extends PageContextFactory {
 		for (PageID pageID : externalPageIDs) {
 			try {
 				blobStore.drop(tx, pageID);
+				if (valueCache != null) {
+					valueCache.remove(pageID);
+				}
 			} catch (BlobStoreAccessException e) {
 				if (exceptionPageIDs == null) {
 					exceptionPageIDs = new ArrayList<PageID>();
@@ -2938,6 +3869,18 @@ public final class BracketTree extends PageContextFactory {
 					// delete external values after commit
 					deleteExternalized(tx, externalPageIDs);
 
+					// merge sparsely filled leaf with its successor
+					if ((leaf != null) && (next == null) && (mergeThreshold > 0)
+							&& (getOccupancyRate(leaf) < mergeThreshold)) {
+						try {
+							mergeWithNext(tx, rootPageID, leaf, true);
+						} catch (IndexAccessException e) {
+							leaf.cleanup();
+							leaf = null;
+							throw e;
+						}
+					}
+
 					// cleanup
 					if (leaf != null) {
 						leaf.cleanup();
@@ -3197,7 +4140,7 @@ public final class BracketTree extends PageContextFactory {
 	 *            log insertion in right page
 	 * @throws IndexOperationException
 	 */
-	private void moveNodes(Leaf left, Leaf right, boolean logLeft,
+	protected void moveNodes(Leaf left, Leaf right, boolean logLeft,
 			boolean logRight) throws IndexOperationException {
 
 		// delete nodes from left page
@@ -0,0 +1,386 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.bracket;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.brackit.server.io.buffer.BufferException;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.store.Field;
+import org.brackit.server.store.index.IndexAccessException;
+import org.brackit.server.store.index.bracket.page.BracketContext;
+import org.brackit.server.store.index.bracket.page.Branch;
+import org.brackit.server.store.index.bracket.page.Leaf;
+import org.brackit.server.store.page.bracket.BracketNodeSequence;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxStats;
+import org.brackit.server.util.Calc;
+import org.brackit.xquery.util.Cfg;
+
+/**
+ * Bottom-up bulk loader for an empty {@link BracketTree}. Nodes are appended
+ * to sequentially allocated leaves, which are filled up to the configured
+ * fill factor. Separators are not posted top-down, but collected in the
+ * rightmost branch page of each level, which is allocated and chained on
+ * demand. When the load is finished, the content of the single page at the
+ * top level is copied into the root page, which thus keeps its page number.
+ * <p>
+ * The loader is meant for the unlogged LOAD mode: no record is logged at
+ * all and the container is flushed when the transaction commits.
+ * <p>
+ * If subtree counts are enabled, every branch entry additionally stores the
+ * number of records in the subtree of its child page, and the root is
+ * flagged as counted. The counts are only valid until the index is opened
+ * for update the next time (see {@link BracketTree#countRange}), but they
+ * can be rebuilt with {@link BracketTree#buildSubtreeCounts}.
+ */
+final class BulkLoader {
+
+	public static final String FILL_FACTOR = "org.brackit.server.store.index.bracket.bulkFillFactor";
+
+	public static final String SUBTREE_COUNTS = "org.brackit.server.store.index.bracket.subtreeCounts";
+
+	private final Tx tx;
+
+	private final PageID rootPageID;
+
+	private final BracketTree tree;
+
+	private final boolean logged;
+
+	private final int unitID;
+
+	private final float fillFactor;
+
+	/**
+	 * Rightmost branch page of each level (index 0 is height 1).
+	 */
+	private final List<Branch> levels;
+
+	/**
+	 * Leftmost page of each level (index 0 is the leaf level).
+	 */
+	private final List<PageID> leftmost;
+
+	/**
+	 * Number of records of each finished leaf, if subtree counts are built.
+	 */
+	private final Map<PageID, Integer> leafCounts;
+
+	private Leaf root;
+
+	private Leaf current;
+
+	BulkLoader(Tx tx, PageID rootPageID, BracketTree tree, Leaf root,
+			boolean logged) {
+		this.tx = tx;
+		this.rootPageID = rootPageID;
+		this.tree = tree;
+		this.logged = logged;
+		this.unitID = root.getUnitID();
+		this.fillFactor = (float) Math.min(1.0, Math.max(0.5, Cfg.asDouble(
+				FILL_FACTOR, 1.0)));
+		this.levels = new ArrayList<Branch>();
+		this.leftmost = new ArrayList<PageID>();
+		this.leafCounts = (Cfg.asBool(SUBTREE_COUNTS, false)) ? new HashMap<PageID, Integer>()
+				: null;
+		this.root = root;
+		this.current = root;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given page is the empty root leaf of
+	 * an index, i.e., if a bulk load can be performed.
+	 */
+	static boolean isEmptyIndex(PageID rootPageID, Leaf page)
+			throws IndexOperationException {
+		return ((page.getPageID().equals(rootPageID)) && (page.isBeforeFirst())
+				&& (page.getNextPageID() == null) && (page.getEntryCount() == 0));
+	}
+
+	public void insert(XTCdeweyID deweyID, byte[] value, int ancestorsToInsert)
+			throws IndexAccessException {
+		try {
+			BracketNodeSequence nodes = tree.recordToSequence(tx, current,
+					deweyID, value, ancestorsToInsert);
+
+			if ((current.getUsedSpace() >= fillFactor * current.getSize())
+					|| (!current.insertSequenceAfter(nodes, false, logged, -1,
+							true))) {
+				append(nodes);
+			}
+		} catch (IndexOperationException e) {
+			cleanup();
+			throw new IndexAccessException(e);
+		}
+	}
+
+	/**
+	 * Allocates a new leaf and appends the given sequence.
+	 */
+	private void append(BracketNodeSequence nodes)
+			throws IndexOperationException, IndexAccessException {
+
+		current.bulkLog(false, -1);
+
+		if (current == root) {
+			relocateRoot();
+		}
+
+		Leaf next = tree.allocateLeaf(tx, -1, unitID, rootPageID, logged);
+		tx.getStatistics().increment(TxStats.BTREE_LEAF_ALLOCATIONS);
+
+		try {
+			// separate leaves by low key of new leaf
+			byte[] separatorKey = Field.COLLECTIONDEWEYID.encode(nodes
+					.getLowKey());
+			XTCdeweyID beforeInsertKey = null;
+			int runCount = 0;
+			while (!current.setHighKeyBytes(separatorKey, logged, -1)) {
+				// not enough space for highkey!
+				// move at least one record to the new page
+				if (runCount == 1) {
+					beforeInsertKey = next.getKey();
+				}
+				current.moveNextToLastRecord();
+				tree.moveNodes(current, next, logged, logged);
+				separatorKey = next.getLowKeyBytes();
+				runCount++;
+			}
+			if (beforeInsertKey != null) {
+				next.moveBeforeFirst();
+				next.navigateContextFree(beforeInsertKey, NavigationMode.TO_KEY);
+			}
+
+			current.setNextPageID(next.getPageID(), logged, -1);
+			next.setPrevPageID(current.getPageID(), logged, -1);
+			finishLeaf();
+			current.cleanup();
+			current = next;
+			next = null;
+
+			addSeparator(1, separatorKey, current.getPageID());
+
+			if (!current.insertSequenceAfter(nodes, false, logged, -1, true)) {
+				// sequence does not fit into an empty page -> split sequence
+				BracketNodeSequence remainingNodes = nodes.split();
+				current.insertSequenceAfter(nodes, false, logged, -1, true);
+				append(remainingNodes);
+			}
+		} finally {
+			if (next != null) {
+				next.cleanup();
+			}
+		}
+	}
+
+	/**
+	 * Moves the content of the root leaf to a newly allocated leaf, which
+	 * becomes the leftmost leaf of the tree. The root page is kept latched
+	 * and converted to a branch page when the load is finished.
+	 */
+	private void relocateRoot() throws IndexOperationException {
+		Leaf first = tree.allocateLeaf(tx, -1, unitID, rootPageID, logged);
+		tx.getStatistics().increment(TxStats.BTREE_LEAF_ALLOCATIONS);
+
+		BracketContext rootContext = root.getContext();
+		BracketNodeSequence rootContent = root.clearData(true, logged, -1);
+		first.insertSequenceAfter(rootContent, true, logged, -1, false);
+		first.setContext(rootContext);
+
+		leftmost.add(first.getPageID());
+		current = first;
+	}
+
+	/**
+	 * Appends a separator entry pointing to <code>childPageID</code> to the
+	 * rightmost branch page of the given height.
+	 */
+	private void addSeparator(int height, byte[] separatorKey,
+			PageID childPageID) throws IndexOperationException {
+
+		if (levels.size() < height) {
+			Branch branch = allocateBranch(height);
+			branch.setLowPageID(leftmost.get(height - 1), logged, -1);
+			levels.add(branch);
+			leftmost.add(branch.getPageID());
+		}
+
+		Branch branch = levels.get(height - 1);
+		byte[] value = childValue(childPageID);
+		boolean inserted = false;
+
+		if ((branch.getEntryCount() == 0)
+				|| (branch.getUsedSpace() < fillFactor * branch.getSize())) {
+			inserted = branch.insert(separatorKey, value, logged, -1);
+		}
+
+		if (!inserted) {
+			// Branch is full: Promote pointer of last entry to low page of
+			// a new right branch and turn last entry into the pointer to the
+			// right branch (same layout as after a branch split).
+			Branch right = allocateBranch(height);
+			branch.moveLast();
+			byte[] promotedKey = branch.getKey();
+			right.setLowPageID(branch.getValueAsPageID(), logged, -1);
+			branch.setPageIDAsValue(right.getPageID(), logged, -1);
+			branch.setLastInLevel(false);
+			right.setPrevPageID(branch.getPageID(), logged, -1);
+			branch.cleanup();
+			levels.set(height - 1, right);
+			branch = right;
+
+			if (!branch.insert(separatorKey, value, logged, -1)) {
+				throw new IndexOperationException(
+						"Separator does not fit into empty branch page.");
+			}
+
+			addSeparator(height + 1, promotedKey, right.getPageID());
+		}
+
+		branch.moveNext();
+	}
+
+	/**
+	 * Returns the entry value for the given child page. If subtree counts are
+	 * built, the value already reserves space for the count, which is filled
+	 * in when the load is finished.
+	 */
+	private byte[] childValue(PageID childPageID) {
+		if (leafCounts == null) {
+			return childPageID.getBytes();
+		}
+		byte[] value = new byte[PageID.getSize() + 8];
+		System.arraycopy(childPageID.getBytes(), 0, value, 0, PageID.getSize());
+		Calc.fromLong(-1, value, PageID.getSize());
+		return value;
+	}
+
+	private void finishLeaf() {
+		if (leafCounts != null) {
+			leafCounts.put(current.getPageID(), current.getEntryCount());
+		}
+	}
+
+	private Branch allocateBranch(int height) throws IndexOperationException {
+		Branch branch = tree.allocateBranch(tx, -1, unitID, rootPageID,
+				height, false, logged);
+		tx.getStatistics().increment(TxStats.BTREE_BRANCH_ALLOCATE_COUNT);
+		branch.setLastInLevel(true);
+		branch.moveFirst();
+		return branch;
+	}
+
+	/**
+	 * Finishes the load and turns the root into a branch page if more than
+	 * one leaf was filled.
+	 */
+	public void close() throws IndexAccessException {
+		if (current == null) {
+			// load was aborted
+			return;
+		}
+
+		try {
+			current.bulkLog(false, -1);
+
+			if (current == root) {
+				// everything fits into the root leaf
+				return;
+			}
+
+			finishLeaf();
+			current.cleanup();
+			current = null;
+
+			// copy top level into root page
+			int height = levels.size();
+			Branch top = levels.get(height - 1);
+			Branch newRoot = (Branch) root.format(false, rootPageID, height,
+					false, logged, -1);
+			root = null;
+			try {
+				newRoot.setLastInLevel(true);
+				newRoot.moveFirst();
+				newRoot.setLowPageID(top.getLowPageID(), logged, -1);
+				top.moveFirst();
+				while (!top.isAfterLast()) {
+					newRoot.insert(top.getKey(), top.getValue(), logged, -1);
+					newRoot.moveNext();
+					top.moveNext();
+				}
+
+				// release the now unused top page
+				top.format(rootPageID, height, false, logged, -1);
+				levels.remove(height - 1);
+				try {
+					top.deletePage().release();
+				} catch (BufferException e) {
+					throw new IndexAccessException(e);
+				}
+
+				if (leafCounts != null) {
+					// unlatch the remaining branches before they are
+					// revisited top-down
+					for (Branch branch : levels) {
+						branch.cleanup();
+					}
+					levels.clear();
+					tree.annotate(tx, newRoot, leafCounts, logged);
+					newRoot.setCounted(true, logged, -1);
+					tree.subtreeCountsBuilt(rootPageID);
+				}
+			} finally {
+				newRoot.cleanup();
+			}
+		} catch (IndexOperationException e) {
+			throw new IndexAccessException(e);
+		} finally {
+			cleanup();
+		}
+	}
+
+	private void cleanup() {
+		if ((current != null) && (current != root)) {
+			current.cleanup();
+		}
+		current = null;
+		if (root != null) {
+			root.cleanup();
+			root = null;
+		}
+		for (Branch branch : levels) {
+			branch.cleanup();
+		}
+		levels.clear();
+	}
+}
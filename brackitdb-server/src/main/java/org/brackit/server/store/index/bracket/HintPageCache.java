@@ -0,0 +1,152 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.bracket;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.xquery.util.Cfg;
+
+/**
+ * Bounded cache for the hint page information of recently accessed nodes,
+ * which is shared by all iterators of a BracketTree. The cache is
+ * direct-mapped, i.e., each node is assigned to exactly one slot and
+ * replaces the previous entry of this slot. Therefore, neither lookups nor
+ * updates need any locking.
+ * <p>
+ * Entries are only hints: they have to be validated against the page LSN
+ * and, as unlogged modifications leave the LSN unchanged, the node has to
+ * be located in the page again before it is used.
+ */
+public class HintPageCache {
+
+	public static final String CACHE_SIZE = "org.brackit.server.store.index.bracket.hintCacheSize";
+
+	private static final int DEFAULT_CACHE_SIZE = 4096;
+
+	private static final class Entry {
+		final PageID rootPageID;
+		final XTCdeweyID deweyID;
+		final HintPageInformation hintPageInfo;
+		final int epoch;
+
+		Entry(PageID rootPageID, XTCdeweyID deweyID,
+				HintPageInformation hintPageInfo, int epoch) {
+			this.rootPageID = rootPageID;
+			this.deweyID = deweyID;
+			this.hintPageInfo = hintPageInfo;
+			this.epoch = epoch;
+		}
+	}
+
+	private final AtomicReferenceArray<Entry> entries;
+
+	private final int mask;
+
+	private final AtomicInteger epoch = new AtomicInteger();
+
+	public HintPageCache() {
+		this(Cfg.asInt(CACHE_SIZE, DEFAULT_CACHE_SIZE));
+	}
+
+	public HintPageCache(int size) {
+		if (size > 0) {
+			int capacity = Integer.highestOneBit(Math.min(size, 1 << 30));
+			if (capacity < size) {
+				capacity <<= 1;
+			}
+			this.entries = new AtomicReferenceArray<Entry>(capacity);
+			this.mask = capacity - 1;
+		} else {
+			this.entries = null;
+			this.mask = 0;
+		}
+	}
+
+	/**
+	 * Returns the last known position of the given node or <code>null</code>.
+	 */
+	public HintPageInformation get(PageID rootPageID, XTCdeweyID deweyID) {
+		if (entries == null) {
+			return null;
+		}
+
+		Entry entry = entries.get(slot(rootPageID, deweyID));
+		if ((entry == null) || (entry.epoch != epoch.get())
+				|| (!entry.rootPageID.equals(rootPageID))
+				|| (!entry.deweyID.equals(deweyID))) {
+			return null;
+		}
+		return entry.hintPageInfo;
+	}
+
+	public void put(PageID rootPageID, XTCdeweyID deweyID,
+			HintPageInformation hintPageInfo) {
+		if (entries == null) {
+			return;
+		}
+
+		entries.set(slot(rootPageID, deweyID), new Entry(rootPageID, deweyID,
+				hintPageInfo, epoch.get()));
+	}
+
+	/**
+	 * Removes the given entry, if it was found to be outdated and was not
+	 * replaced in the meantime.
+	 */
+	public void remove(PageID rootPageID, XTCdeweyID deweyID,
+			HintPageInformation hintPageInfo) {
+		if (entries == null) {
+			return;
+		}
+
+		int slot = slot(rootPageID, deweyID);
+		Entry entry = entries.get(slot);
+		if ((entry != null) && (entry.hintPageInfo == hintPageInfo)) {
+			entries.compareAndSet(slot, entry, null);
+		}
+	}
+
+	/**
+	 * Invalidates all entries. This is necessary if pages are modified
+	 * without changing their LSN, e.g. during unlogged loads.
+	 */
+	public void clear() {
+		epoch.incrementAndGet();
+	}
+
+	private int slot(PageID rootPageID, XTCdeweyID deweyID) {
+		int h = deweyID.hashCode() * 31 + deweyID.getDocID().hashCode();
+		h = h * 31 + rootPageID.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return h & mask;
+	}
+}
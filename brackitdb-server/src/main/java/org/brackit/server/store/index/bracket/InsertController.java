@@ -54,6 +54,8 @@ public final class InsertController {
 
 	private Leaf page;
 
+	private BulkLoader loader;
+
 	/**
 	 * Opens the index for insertion of the given DeweyID. If this DeweyID is
 	 * null, the index will be opened for the insertion of a new document.
@@ -120,6 +122,13 @@ public final class InsertController {
 			this.checkHighKey = (highKey != null && startInsertKey
 					.isPrefixOf(highKey));
 
+			// unlogged load into an empty index: build tree bottom-up
+			if ((openMode == OpenMode.LOAD)
+					&& (BulkLoader.isEmptyIndex(rootPageID, page))) {
+				loader = new BulkLoader(tx, rootPageID, tree, page, doLog);
+				page = null;
+			}
+
 		} catch (IndexOperationException e) {
 			if (page != null) {
 				page.cleanup();
@@ -132,6 +141,11 @@ public final class InsertController {
 	public void insert(XTCdeweyID deweyID, byte[] value, int ancestorsToInsert)
 			throws IndexAccessException {
 
+		if (loader != null) {
+			loader.insert(deweyID, value, ancestorsToInsert);
+			return;
+		}
+
 		try {
 
 			// create sequence from record
@@ -191,6 +205,11 @@ public final class InsertController {
 	}
 
 	public void close() throws IndexAccessException {
+		if (loader != null) {
+			BulkLoader bulkLoader = loader;
+			loader = null;
+			bulkLoader.close();
+		}
 		if (page != null) {
 			try {
 				// log remaining insert operations
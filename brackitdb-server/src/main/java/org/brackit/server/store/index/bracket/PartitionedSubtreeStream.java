@@ -0,0 +1,441 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.bracket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.brackit.server.node.DocID;
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.node.bracket.BracketLocator;
+import org.brackit.server.node.bracket.BracketNode;
+import org.brackit.server.store.Field;
+import org.brackit.server.store.OpenMode;
+import org.brackit.server.store.index.IndexAccessException;
+import org.brackit.server.store.index.bracket.filter.BracketFilter;
+import org.brackit.server.store.index.bracket.page.Leaf;
+import org.brackit.server.store.page.bracket.DeweyIDBuffer;
+import org.brackit.server.store.page.bracket.navigation.NavigationStatus;
+import org.brackit.server.tx.Tx;
+import org.brackit.xquery.util.Cfg;
+import org.brackit.xquery.util.log.Logger;
+import org.brackit.xquery.xdm.DocumentException;
+import org.brackit.xquery.xdm.Stream;
+
+/**
+ * Scans a subtree with several worker threads. The key range of the subtree
+ * is split into disjoint leaf ranges using the separator keys of the branch
+ * pages. Each partition is scanned independently with its own latches and
+ * its own {@link DeweyIDBuffer}, and the qualifying nodes are handed over to
+ * the consumer through bounded queues. At most <code>scanThreads</code>
+ * partitions of a stream are scanned concurrently; the remaining ones are
+ * started in document order as soon as a running partition is finished.
+ * If the stream is <em>ordered</em>, the partitions are drained one after
+ * another, i.e., nodes are returned in document order. Otherwise, nodes are
+ * returned in the order they are produced.
+ * <p>
+ * All workers use the {@link Tx} of the collection, which is not
+ * thread-safe. The workers only fix and latch pages in {@link OpenMode#READ}
+ * and read externalized values. They never log, lock, or change the state of
+ * the transaction. Locks have to be acquired by the caller before the stream
+ * is opened. The transaction must not perform updates while the stream is
+ * open. {@link #close()} cancels the partitions and waits until no worker
+ * uses the transaction anymore, so the stream must be closed before the
+ * transaction is finished.
+ */
+public class PartitionedSubtreeStream implements Stream<BracketNode> {
+
+	private static final Logger log = Logger
+			.getLogger(PartitionedSubtreeStream.class);
+
+	public static final String SCAN_THREADS = "org.brackit.server.store.index.bracket.scanThreads";
+
+	public static final String PARTITIONS_PER_THREAD = "org.brackit.server.store.index.bracket.partitionsPerThread";
+
+	public static final String QUEUE_SIZE = "org.brackit.server.store.index.bracket.scanQueueSize";
+
+	private static final OpenMode OPEN_MODE = OpenMode.READ;
+
+	private static final Object END = new Object();
+
+	private static final long OFFER_TIMEOUT = 100;
+
+	private static ExecutorService pool;
+
+	private final BracketLocator locator;
+
+	private final BracketTree tree;
+
+	/**
+	 * Shared by all workers; used for read-only page access only.
+	 */
+	private final Tx tx;
+
+	private final XTCdeweyID subtreeRoot;
+
+	private final BracketFilter filter;
+
+	private final boolean self;
+
+	private final boolean skipAttributes;
+
+	private final boolean ordered;
+
+	private final Partition[] partitions;
+
+	private final Future<?>[] futures;
+
+	private final BlockingQueue<Object> sharedQueue;
+
+	private int current;
+
+	private int scheduled;
+
+	private int finished;
+
+	/**
+	 * Number of workers currently scanning a partition (guarded by this).
+	 */
+	private int running;
+
+	private volatile boolean closed;
+
+	private final class Partition implements Runnable {
+		private final XTCdeweyID start;
+
+		private final XTCdeweyID end;
+
+		private final BlockingQueue<Object> queue;
+
+		private Leaf page;
+
+		Partition(XTCdeweyID start, XTCdeweyID end, BlockingQueue<Object> queue) {
+			this.start = start;
+			this.end = end;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			if (!started()) {
+				return;
+			}
+
+			try {
+				boolean found = first();
+				while ((found) && (!closed)) {
+					XTCdeweyID key = page.getKey();
+
+					if (key.compareTo(end) >= 0) {
+						break;
+					}
+
+					if (((self) || (!key.equals(subtreeRoot)))
+							&& ((!skipAttributes) || (!page.isAttribute()))
+							&& ((filter == null) || (page.accept(filter)))) {
+						put(page.load(locator.bracketNodeLoader));
+					}
+
+					found = next();
+				}
+				put(END);
+			} catch (Throwable e) {
+				if (!closed) {
+					log.error(String.format("Error scanning partition [%s, %s).",
+							start, end), e);
+				}
+				try {
+					put(e);
+				} catch (InterruptedException ie) {
+					// stream is closed
+				}
+			} finally {
+				if (page != null) {
+					page.cleanup();
+					page = null;
+				}
+				scheduleNext();
+				stopped();
+			}
+		}
+
+		private boolean first() throws IndexOperationException,
+				IndexAccessException {
+			page = tree.descend(tx, locator.rootPageID,
+					NavigationMode.TO_KEY.getSearchMode(),
+					Field.COLLECTIONDEWEYID.encode(start), false);
+			page.assignDeweyIDBuffer(new DeweyIDBuffer());
+
+			boolean found = page.moveFirst();
+			if (!found) {
+				found = nextPage();
+			}
+
+			// skip entries of this leaf which precede the partition
+			while ((found) && (page.getKey().compareTo(start) < 0)) {
+				found = next();
+			}
+			return found;
+		}
+
+		private boolean next() throws IndexAccessException {
+			NavigationStatus navStatus = page.moveNextInDocument();
+			if (navStatus == NavigationStatus.FOUND) {
+				return true;
+			}
+			return nextPage();
+		}
+
+		private boolean nextPage() throws IndexAccessException {
+			while (true) {
+				Leaf current = page;
+				page = null;
+				page = tree.getNextPage(tx, locator.rootPageID, current,
+						OPEN_MODE, true);
+				if (page == null) {
+					return false;
+				}
+				if (page.moveNextInDocument() == NavigationStatus.FOUND) {
+					return true;
+				}
+			}
+		}
+
+		private void put(Object o) throws InterruptedException {
+			while (!queue.offer(o, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				if (closed) {
+					throw new InterruptedException();
+				}
+			}
+		}
+	}
+
+	public PartitionedSubtreeStream(BracketLocator locator, BracketTree tree,
+			XTCdeweyID subtreeRoot, List<byte[]> separators,
+			BracketFilter filter, boolean self, boolean skipAttributes,
+			boolean ordered) {
+		this.locator = locator;
+		this.tree = tree;
+		this.tx = locator.collection.getTX();
+		this.subtreeRoot = subtreeRoot;
+		this.filter = filter;
+		this.self = self;
+		this.skipAttributes = skipAttributes;
+		this.ordered = ordered;
+
+		int queueSize = Cfg.asInt(QUEUE_SIZE, 256);
+		int collectionID = locator.collection.getID();
+		List<XTCdeweyID> bounds = new ArrayList<XTCdeweyID>();
+		bounds.add(subtreeRoot);
+		for (byte[] separator : separators) {
+			bounds.add(Field.COLLECTIONDEWEYID.decode(collectionID, separator));
+		}
+		bounds.add(getSubtreeBound(subtreeRoot));
+
+		this.sharedQueue = (ordered) ? null : new ArrayBlockingQueue<Object>(
+				queueSize);
+		this.partitions = new Partition[bounds.size() - 1];
+		this.futures = new Future<?>[partitions.length];
+		for (int i = 0; i < partitions.length; i++) {
+			BlockingQueue<Object> queue = (ordered) ? new ArrayBlockingQueue<Object>(
+					queueSize)
+					: sharedQueue;
+			partitions[i] = new Partition(bounds.get(i), bounds.get(i + 1),
+					queue);
+		}
+
+		// partitions are started in document order, so that the partition
+		// drained by an ordered stream is always running
+		int threads = Math.min(getThreadCount(), partitions.length);
+		for (int i = 0; i < threads; i++) {
+			scheduleNext();
+		}
+	}
+
+	private synchronized void scheduleNext() {
+		if ((!closed) && (scheduled < partitions.length)) {
+			futures[scheduled] = getPool().submit(partitions[scheduled]);
+			scheduled++;
+		}
+	}
+
+	/**
+	 * Registers a worker which starts to scan a partition. Returns
+	 * <code>false</code> if the stream was closed in the meantime.
+	 */
+	private synchronized boolean started() {
+		if (closed) {
+			return false;
+		}
+		running++;
+		return true;
+	}
+
+	private synchronized void stopped() {
+		running--;
+		notifyAll();
+	}
+
+	/**
+	 * Returns the number of partitions a subtree scan should be split into.
+	 */
+	public static int getMaxPartitions() {
+		return getThreadCount() * Cfg.asInt(PARTITIONS_PER_THREAD, 4);
+	}
+
+	/**
+	 * Returns the smallest DeweyID which follows all nodes of the subtree
+	 * rooted at <code>subtreeRoot</code> in document order.
+	 */
+	public static XTCdeweyID getSubtreeBound(XTCdeweyID subtreeRoot) {
+		if (subtreeRoot.isDocument()) {
+			DocID docID = subtreeRoot.getDocID();
+			return new XTCdeweyID(new DocID(docID.getCollectionID(), docID
+					.getDocNumber() + 1));
+		}
+		int[] divisions = subtreeRoot.getDivisionValues();
+		int[] bound = new int[divisions.length];
+		System.arraycopy(divisions, 0, bound, 0, divisions.length);
+		bound[bound.length - 1]++;
+		return new XTCdeweyID(subtreeRoot.getDocID(), bound, subtreeRoot
+				.getLevel());
+	}
+
+	private static int getThreadCount() {
+		return Cfg.asInt(SCAN_THREADS, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	private static synchronized ExecutorService getPool() {
+		if (pool == null) {
+			final AtomicInteger threadNo = new AtomicInteger();
+			pool = Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "ScanWorker"
+							+ threadNo.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return pool;
+	}
+
+	@Override
+	public BracketNode next() throws DocumentException {
+		if (closed) {
+			return null;
+		}
+
+		try {
+			while (true) {
+				Object o;
+				if (ordered) {
+					if (current == partitions.length) {
+						return null;
+					}
+					o = partitions[current].queue.take();
+					if (o == END) {
+						current++;
+						continue;
+					}
+				} else {
+					if (finished == partitions.length) {
+						return null;
+					}
+					o = sharedQueue.take();
+					if (o == END) {
+						finished++;
+						continue;
+					}
+				}
+
+				if (o instanceof Throwable) {
+					close();
+					throw new DocumentException((Throwable) o,
+							"Error in partitioned scan of subtree %s.",
+							subtreeRoot);
+				}
+				return (BracketNode) o;
+			}
+		} catch (InterruptedException e) {
+			close();
+			throw new DocumentException(e, "Partitioned scan interrupted.");
+		}
+	}
+
+	/**
+	 * Cancels all partitions and waits until all workers have stopped.
+	 * Running workers are not interrupted. They notice the closed stream
+	 * after the current node or within <code>OFFER_TIMEOUT</code> ms if they
+	 * wait for room in a queue, and release their latches before they stop.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		for (Future<?> future : futures) {
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+		if (ordered) {
+			for (Partition partition : partitions) {
+				partition.queue.clear();
+			}
+		} else {
+			sharedQueue.clear();
+		}
+		awaitWorkers();
+	}
+
+	private synchronized void awaitWorkers() {
+		boolean interrupted = false;
+		while (running > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				// workers still use the transaction
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -27,6 +27,9 @@
  */
 package org.brackit.server.store.index.bracket;
 
+import java.io.InputStream;
+
+import org.brackit.server.metadata.pathSynopsis.PSNode;
 import org.brackit.server.node.XTCdeweyID;
 import org.brackit.server.node.bracket.BracketLocator;
 import org.brackit.server.node.bracket.BracketNode;
@@ -35,16 +38,23 @@ import org.brackit.server.store.index.IndexAccessException;
 import org.brackit.server.store.index.bracket.filter.BracketFilter;
 import org.brackit.server.store.index.bracket.page.Leaf;
 import org.brackit.server.store.page.bracket.DeweyIDBuffer;
+import org.brackit.server.store.page.bracket.ExternalValueException;
+import org.brackit.server.store.page.bracket.RecordInterpreter;
 import org.brackit.server.tx.Tx;
 import org.brackit.xquery.xdm.DocumentException;
+import org.brackit.xquery.xdm.Kind;
 import org.brackit.xquery.xdm.Stream;
 
 /**
+ * Base class for all streams over a BracketTree. Each stream is a
+ * {@link BracketCursor}; the {@link Stream} interface is only a thin adapter
+ * that materializes every qualifying node (see {@link #next()}).
  * 
  * @author Martin Hiller
  * 
  */
-public abstract class StreamIterator implements Stream<BracketNode> {
+public abstract class StreamIterator implements Stream<BracketNode>,
+		BracketCursor {
 
 	protected static final OpenMode OPEN_MODE = OpenMode.READ;
 
@@ -111,6 +121,8 @@ public abstract class StreamIterator implements Stream<BracketNode> {
 	}
 
 	/**
+	 * Equivalent to {@link #moveNext()} followed by {@link #loadCurrent()}.
+	 * 
 	 * @see org.brackit.xquery.xdm.Stream#next()
 	 */
 	@Override
@@ -128,6 +140,7 @@ public abstract class StreamIterator implements Stream<BracketNode> {
 	 * Loads and returns the node this iterator points to. This method may only
 	 * be called after moveNext() was invoked and returned true.
 	 */
+	@Override
 	public BracketNode loadCurrent() throws DocumentException {
 
 		// assertion: page != null
@@ -147,6 +160,7 @@ public abstract class StreamIterator implements Stream<BracketNode> {
 	 * Moves this iterator to the next qualifying node. It returns false if
 	 * there are no more nodes, otherwise true.
 	 */
+	@Override
 	public boolean moveNext() throws DocumentException {
 
 		try {
@@ -174,7 +188,9 @@ public abstract class StreamIterator implements Stream<BracketNode> {
 
 				// at this point, we know that the navigation succeeded and the
 				// context points to a valid node
-				currentKey = page.getKey();
+				if (needsCurrentKey()) {
+					currentKey = page.getKey();
+				}
 				// check filter condition
 				if (filter == null || page.accept(filter)) {
 					return true;
@@ -191,6 +207,110 @@ public abstract class StreamIterator implements Stream<BracketNode> {
 		}
 	}
 
+	@Override
+	public DeweyIDBuffer getDeweyID() {
+		return page.getDeweyIDBuffer();
+	}
+
+	@Override
+	public int getLevel() {
+		return page.getDeweyIDBuffer().getLevel();
+	}
+
+	@Override
+	public boolean isAttribute() {
+		return page.getDeweyIDBuffer().isAttribute();
+	}
+
+	@Override
+	public byte getKind() throws DocumentException {
+
+		try {
+
+			return page.getKind();
+
+		} catch (IndexOperationException e) {
+			page.cleanup();
+			page = null;
+			throw new DocumentException("Error reading current node.", e);
+		}
+	}
+
+	@Override
+	public int getPCR() throws DocumentException {
+
+		try {
+
+			if (page.getKind() == Kind.DOCUMENT.ID) {
+				return -1;
+			}
+
+			RecordInterpreter record = page.getRecordHeader();
+			PSNode psn = record.getPsNode();
+			if (psn == null) {
+				psn = locator.pathSynopsis.get(record.getPCR());
+			}
+
+			int level = page.getDeweyIDBuffer().getLevel();
+			int dist = level - psn.getLevel();
+			if (dist > 1) {
+				throw new DocumentException(
+						"Node %s has level %s but PCR %s has level %s",
+						page.getDeweyIDBuffer(), level, psn.getPCR(), psn
+								.getLevel());
+			}
+
+			// the record may belong to a descendant
+			while (dist++ < 0) {
+				psn = psn.getParent();
+			}
+			return psn.getPCR();
+
+		} catch (IndexOperationException e) {
+			page.cleanup();
+			page = null;
+			throw new DocumentException("Error reading current node.", e);
+		}
+	}
+
+	@Override
+	public RecordInterpreter getRecord() throws DocumentException {
+
+		try {
+
+			return page.getRecord();
+
+		} catch (IndexOperationException e) {
+			page.cleanup();
+			page = null;
+			throw new DocumentException("Error reading current node.", e);
+		}
+	}
+
+	@Override
+	public InputStream openValueStream() throws DocumentException {
+
+		try {
+
+			return page.getRecordHeader().openValueStream();
+
+		} catch (IndexOperationException e) {
+			page.cleanup();
+			page = null;
+			throw new DocumentException("Error reading current node.", e);
+		} catch (ExternalValueException e) {
+			throw new DocumentException("Error reading current value.", e);
+		}
+	}
+
+	/**
+	 * Returns true if the stream uses {@link #currentKey} for navigation.
+	 * Otherwise, the current key is not materialized for each node.
+	 */
+	protected boolean needsCurrentKey() {
+		return true;
+	}
+
 	protected abstract void first() throws IndexOperationException,
 			IndexAccessException;
 
@@ -78,6 +78,14 @@ public final class SubtreeStreamSkipAttr extends StreamIterator {
 		}
 	}
 
+	/**
+	 * @see org.brackit.server.store.index.bracket.StreamIterator#needsCurrentKey()
+	 */
+	@Override
+	protected boolean needsCurrentKey() {
+		return false;
+	}
+
 	/**
 	 * @see org.brackit.server.store.index.bracket.StreamIterator#nextInternal()
 	 */
@@ -70,6 +70,15 @@ public abstract class BracketFilter {
 	
 	public abstract boolean accept(BracketNode node);
 	
+	/**
+	 * Returns true if {@link #accept(DeweyIDBuffer, boolean, RecordInterpreter)}
+	 * needs the value of the record. Otherwise, externalized values are not
+	 * loaded before the filter is applied.
+	 */
+	public boolean needsValue() {
+		return false;
+	}
+	
 	protected final byte kind(boolean hasRecord, RecordInterpreter value) {
 		return (hasRecord) ? value.getType() : Kind.ELEMENT.ID;
 	}
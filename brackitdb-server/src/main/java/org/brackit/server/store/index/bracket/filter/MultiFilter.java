@@ -93,6 +93,16 @@ public class MultiFilter extends BracketFilter {
 		return type.accept(accepts);
 	}
 	
+	@Override
+	public boolean needsValue() {
+		for (BracketFilter filter : filters) {
+			if (filter.needsValue()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	public boolean[] getLastResults() {
 		return Arrays.copyOf(lastResults, lastResults.length);
 	}
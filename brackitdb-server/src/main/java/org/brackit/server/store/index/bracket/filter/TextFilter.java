@@ -57,4 +57,9 @@ public class TextFilter extends BracketFilter {
 	public boolean accept(BracketNode node) {
 		return false;
 	}
+
+	@Override
+	public boolean needsValue() {
+		return true;
+	}
 }
@@ -0,0 +1,100 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.bracket.filter;
+
+import org.brackit.server.node.bracket.BracketNode;
+import org.brackit.server.store.page.bracket.DeweyIDBuffer;
+import org.brackit.server.store.page.bracket.RecordInterpreter;
+import org.brackit.server.util.Calc;
+import org.brackit.xquery.xdm.DocumentException;
+import org.brackit.xquery.xdm.Kind;
+
+/**
+ * Accepts text, attribute, comment and processing instruction nodes with a
+ * given value. If the value has a code in the value dictionary of the
+ * collection, dictionary coded records are compared by their code, i.e.
+ * without decoding them. Uncoded records are compared with the UTF-8 bytes
+ * of the value.
+ */
+public class ValueFilter extends BracketFilter {
+
+	private final String value;
+
+	private final byte[] valueBytes;
+
+	private final int code;
+
+	/**
+	 * @param value
+	 *            the value to look for
+	 * @param code
+	 *            the dictionary code of the value, or -1 if it has none
+	 */
+	public ValueFilter(String value, int code) {
+		this.value = value;
+		this.valueBytes = Calc.fromString(value);
+		this.code = code;
+	}
+
+	@Override
+	public boolean needsValue() {
+		// without a code, coded records have to be compared by their value
+		return (code < 0);
+	}
+
+	@Override
+	public boolean accept(DeweyIDBuffer deweyID, boolean hasRecord,
+			RecordInterpreter record) {
+		byte kind = kind(hasRecord, record);
+		if ((kind == Kind.ELEMENT.ID) || (kind == Kind.DOCUMENT.ID)) {
+			return false;
+		}
+
+		int recordCode = record.getCode();
+		if ((recordCode >= 0) && (code >= 0)) {
+			return (recordCode == code);
+		}
+		if (!record.isResolved()) {
+			// externalized values are too long to have a code, i.e. they can
+			// not be equal to a value with a code
+			return false;
+		}
+		return record.valueEquals(valueBytes);
+	}
+
+	@Override
+	public boolean accept(BracketNode node) {
+		try {
+			Kind kind = node.getKind();
+			return ((kind != Kind.ELEMENT) && (kind != Kind.DOCUMENT) && (value
+					.equals(node.getValue().stringValue())));
+		} catch (DocumentException e) {
+			return false;
+		}
+	}
+}
@@ -64,6 +64,8 @@ public abstract class BracketIndexLogOperation extends LogOperation {
 	
 	public static final byte FORMAT = 43;
 
+	public static final byte COUNTED = 44;
+
 	protected static final int BASE_SIZE = 2 * PageID.getSize();
 
 	protected PageID rootPageID;
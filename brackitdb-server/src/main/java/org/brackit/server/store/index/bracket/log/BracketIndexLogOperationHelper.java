@@ -64,6 +64,8 @@ public class BracketIndexLogOperationHelper implements LogOperationHelper {
 		operationTypes.add(BracketIndexLogOperation.HIGHKEY_UPDATE);
 
 		operationTypes.add(BracketIndexLogOperation.FORMAT);
+
+		operationTypes.add(BracketIndexLogOperation.COUNTED);
 	}
 
 	@Override
@@ -105,6 +107,9 @@ public class BracketIndexLogOperationHelper implements LogOperationHelper {
 		case BracketIndexLogOperation.FORMAT:
 			return createFormatLogOperation(buffer, pageID, rootPageID);
 
+		case BracketIndexLogOperation.COUNTED:
+			return createCountedLogOperation(buffer, pageID, rootPageID);
+
 		default:
 			throw new LogException("Unknown operation type: %s.", type);
 		}
@@ -197,4 +202,14 @@ public class BracketIndexLogOperationHelper implements LogOperationHelper {
 		return new FormatLogOperation(pageID, rootPageID, oldLeaf, leaf,
 				oldHeight, height, oldCompressed, compressed);
 	}
+
+	private LogOperation createCountedLogOperation(ByteBuffer buffer,
+			PageID pageID, PageID rootPageID) {
+
+		byte flags = buffer.get();
+		boolean oldCounted = ((flags >>> 1) & 1) > 0;
+		boolean counted = (flags & 1) > 0;
+
+		return new CountedLogOperation(pageID, rootPageID, oldCounted, counted);
+	}
 }
@@ -0,0 +1,186 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.bracket.log;
+
+import java.nio.ByteBuffer;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.store.index.IndexAccessException;
+import org.brackit.server.store.index.bracket.BracketTree;
+import org.brackit.server.store.index.bracket.IndexOperationException;
+import org.brackit.server.store.index.bracket.page.BPContext;
+import org.brackit.server.store.index.bracket.page.Branch;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.log.LogException;
+import org.brackit.xquery.util.log.Logger;
+
+/**
+ * Logs a change of the flag of a root branch page, which says whether the
+ * subtree counts in the branch entries of the index are valid.
+ */
+public class CountedLogOperation extends BracketIndexLogOperation {
+
+	private static final Logger log = Logger
+			.getLogger(CountedLogOperation.class);
+
+	private static final int SIZE = BASE_SIZE + 1;
+
+	private boolean oldCounted;
+
+	private boolean counted;
+
+	public CountedLogOperation(PageID pageID, PageID rootPageID,
+			boolean oldCounted, boolean counted) {
+		super(COUNTED, pageID, rootPageID);
+		this.oldCounted = oldCounted;
+		this.counted = counted;
+	}
+
+	@Override
+	public int getSize() {
+		return SIZE;
+	}
+
+	@Override
+	public void toBytes(ByteBuffer bb) {
+		super.toBytes(bb);
+		bb.put((byte) (((oldCounted ? 1 : 0) << 1) | (counted ? 1 : 0)));
+	}
+
+	@Override
+	public void redo(Tx tx, long LSN) throws LogException {
+		try {
+			redoCountedUpdate(tx, LSN);
+		} catch (IndexAccessException e) {
+			throw new LogException(e,
+					"Redo of counted flag update in page %s failed.", pageID);
+		}
+	}
+
+	@Override
+	public void undo(Tx tx, long LSN, long undoNextLSN) throws LogException {
+		try {
+			undoCountedUpdate(tx, LSN, undoNextLSN);
+		} catch (IndexAccessException e) {
+			throw new LogException(e,
+					"Undo of counted flag update in page %s failed.", pageID);
+		}
+	}
+
+	public void redoCountedUpdate(Tx tx, long LSN) throws IndexAccessException {
+		BPContext page = null;
+
+		if (log.isTraceEnabled()) {
+			log.trace("Begin redo counted flag update");
+		}
+
+		try {
+			page = new BracketTree(tx.getBufferManager()).getPage(tx, pageID,
+					true, false);
+		} catch (IndexOperationException e) {
+			if (log.isDebugEnabled()) {
+				log.trace(String.format("Page %s has been deleted "
+						+ "and flushed to disk. " + "No redo necessary.",
+						pageID));
+			}
+
+			return;
+		}
+
+		try {
+			if (page.getLSN() < LSN) {
+				if (page.isLeaf()) {
+					page.cleanup();
+					throw new IndexAccessException(
+							"LogOperation type not valid for leaf pages!");
+				}
+
+				((Branch) page).setCounted(counted, false, -1);
+			} else {
+				if (log.isTraceEnabled()) {
+					log.trace(String.format(
+							"LSN %s of page %s is >= RedoLSN %s."
+									+ " No redo necessary.", page.getLSN(),
+							pageID, LSN));
+				}
+			}
+
+			page.cleanup();
+		} catch (IndexOperationException e) {
+			page.cleanup();
+			throw new IndexAccessException(e,
+					"Redo counted flag update of page %s failed.", pageID);
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace("End redo counted flag update");
+		}
+	}
+
+	public void undoCountedUpdate(Tx tx, long LSN, long undoNextLSN)
+			throws IndexAccessException {
+		BPContext page = null;
+
+		if (log.isTraceEnabled()) {
+			log.trace("Begin undo counted flag update");
+		}
+
+		try {
+			page = new BracketTree(tx.getBufferManager()).getPage(tx, pageID,
+					true, false);
+
+			if ((page.isLeaf()) || (page.getRootPageID() == null)
+					|| (!page.getRootPageID().equals(rootPageID))) {
+				page.cleanup();
+				throw new IndexAccessException(
+						"Undo counted flag update of page %s failed"
+								+ " because it is no root branch of index %s.",
+						pageID, rootPageID);
+			}
+
+			((Branch) page).setCounted(oldCounted, true, undoNextLSN);
+			page.cleanup();
+		} catch (IndexOperationException e) {
+			if (page != null) {
+				page.cleanup();
+			}
+			throw new IndexAccessException(e,
+					"Undo counted flag update of page %s failed.", pageID);
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace("End undo counted flag update");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s(%s %s->%s for index %s)", getClass()
+				.getSimpleName(), pageID, oldCounted, counted, rootPageID);
+	}
+}
@@ -237,6 +237,8 @@ public abstract class AbstractBPContext extends SimpleBlobStore implements
 			}
 
 		} else if (!leaf && this.isLeaf()) {
+			// drop the leaf's skip directory
+			page.getHandle().resetCache();
 			switch (PageContextFactory.BRANCH_TYPE) {
 			case 1:
 				newContext = new BranchBPContext(bufferMgr, tx,
@@ -87,4 +87,22 @@ public interface Branch extends BPContext {
 
 	public boolean setValue(byte[] value, boolean logged, long undoNextLSN)
 			throws IndexOperationException;
+
+	/**
+	 * Returns <code>true</code> if the entries of this page carry the number
+	 * of records stored in the subtree of their child page.
+	 */
+	public boolean isCounted();
+
+	public void setCounted(boolean counted, boolean logged, long undoNextLSN)
+			throws IndexOperationException;
+
+	/**
+	 * Returns the number of records in the subtree of the current entry's
+	 * child page, or -1 if the entry carries no count.
+	 */
+	public long getSubtreeCount() throws IndexOperationException;
+
+	public boolean setSubtreeCount(long count, boolean logged, long undoNextLSN)
+			throws IndexOperationException;
 }
@@ -35,6 +35,7 @@ import org.brackit.server.store.blob.BlobStoreAccessException;
 import org.brackit.server.store.index.bracket.IndexOperationException;
 import org.brackit.server.store.index.bracket.log.BranchUpdateLogOperation;
 import org.brackit.server.store.index.bracket.log.BranchUpdateLogOperation.ActionType;
+import org.brackit.server.store.index.bracket.log.CountedLogOperation;
 import org.brackit.server.store.index.bracket.log.PointerLogOperation;
 import org.brackit.server.store.index.bracket.log.PointerLogOperation.PointerField;
 import org.brackit.server.store.page.BasePage;
@@ -43,6 +44,7 @@ import org.brackit.server.store.page.RecordFlag;
 import org.brackit.server.store.page.keyvalue.KeyValuePage;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.util.Calc;
 import org.brackit.xquery.util.log.Logger;
 
 /**
@@ -61,6 +63,7 @@ public class BranchBPContext extends AbstractBPContext implements Branch {
 
 	private static final byte LAST_IN_LEVEL_FLAG = 2;
 	private static final byte COMPRESSED_FLAG = 8;
+	private static final byte COUNTED_FLAG = 16;
 
 	private static final Field KEY_TYPE = Field.COLLECTIONDEWEYID;
 	private static final Field VALUE_TYPE = Field.PAGEID;
@@ -127,6 +130,31 @@ public class BranchBPContext extends AbstractBPContext implements Branch {
 		setFlag(LAST_IN_LEVEL_FLAG, last);
 	}
 
+	@Override
+	public boolean isCounted() {
+		return checkFlag(COUNTED_FLAG);
+	}
+
+	@Override
+	public void setCounted(boolean counted, boolean logged, long undoNextLSN)
+			throws IndexOperationException {
+		LogOperation operation = null;
+
+		if (logged) {
+			operation = new CountedLogOperation(getPageID(), getRootPageID(),
+					isCounted(), counted);
+		}
+
+		setFlag(COUNTED_FLAG, counted);
+		page.getHandle().setModified(true);
+
+		if (logged) {
+			log(tx, operation, undoNextLSN);
+		} else {
+			page.getHandle().setAssignedTo(tx);
+		}
+	}
+
 	@Override
 	public PageID getLowPageID() {
 		byte[] value = page.getHandle().page;
@@ -353,6 +381,23 @@ public class BranchBPContext extends AbstractBPContext implements Branch {
 		}
 	}
 
+	@Override
+	public long getSubtreeCount() throws IndexOperationException {
+		byte[] value = getValue();
+		return ((value != null) && (value.length >= PageID.getSize() + 8)) ? Calc
+				.toLong(value, PageID.getSize()) : -1;
+	}
+
+	@Override
+	public boolean setSubtreeCount(long count, boolean logged,
+			long undoNextLSN) throws IndexOperationException {
+		// value layout: child PageID followed by the subtree count
+		byte[] value = new byte[PageID.getSize() + 8];
+		System.arraycopy(getValue(), 0, value, 0, PageID.getSize());
+		Calc.fromLong(count, value, PageID.getSize());
+		return setValue(value, logged, undoNextLSN);
+	}
+
 	@Override
 	public boolean hasNext() {
 		if (currentPos < entryCount - 1) {
@@ -676,9 +721,9 @@ public class BranchBPContext extends AbstractBPContext implements Branch {
 		out.append(String.format("PageID=%s (UnitID=%s)\n", pageNumber,
 				page.getHandle().getUnitID()));
 		out.append(String
-				.format("Type=BRANCH RootPageNo=%s Height=%s LastInLevel=%s KeyType=%s ValueType=%s\n",
-						getRootPageID(), getHeight(), isLastInLevel(), keyType,
-						valueType));
+				.format("Type=BRANCH RootPageNo=%s Height=%s LastInLevel=%s Counted=%s KeyType=%s ValueType=%s\n",
+						getRootPageID(), getHeight(), isLastInLevel(),
+						isCounted(), keyType, valueType));
 		out.append(String.format("LSN=%s\n", LSN));
 		out.append(String.format("FreeSpace=%s\n", freeSpace));
 		out.append(String.format("Entry Count=%s\n", recordCount));
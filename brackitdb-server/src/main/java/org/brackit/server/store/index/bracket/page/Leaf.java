@@ -300,10 +300,29 @@ public interface Leaf extends BPContext {
 			throws IndexOperationException;
 
 	/**
-	 * Returns a record (interpreter) for the current context.
+	 * Returns a record (interpreter) for the current context. The interpreter
+	 * may be reused by this context and is therefore only valid until the
+	 * context is moved.
 	 */
 	public RecordInterpreter getRecord() throws IndexOperationException;
 
+	/**
+	 * Returns a record (interpreter) for the current context, which does not
+	 * resolve externalized values, i.e. only PCR and type are accessible.
+	 */
+	public RecordInterpreter getRecordHeader() throws IndexOperationException;
+
+	/**
+	 * Returns true if the current node has its own record, i.e. if it is
+	 * neither a document node nor an element without a data reference.
+	 */
+	public boolean hasRecord();
+
+	/**
+	 * Returns the node kind of the current node without loading it.
+	 */
+	public byte getKind() throws IndexOperationException;
+
 	/**
 	 * Moves to the next non-attribute node within this document.
 	 */
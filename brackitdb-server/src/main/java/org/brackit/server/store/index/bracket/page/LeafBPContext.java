@@ -27,8 +27,11 @@
  */
 package org.brackit.server.store.index.bracket.page;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.BufferException;
@@ -37,6 +40,7 @@ import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.node.XTCdeweyID;
 import org.brackit.server.node.bracket.BracketNode;
+import org.brackit.server.node.bracket.ValueDictionary;
 import org.brackit.server.store.Field;
 import org.brackit.server.store.blob.BlobStoreAccessException;
 import org.brackit.server.store.index.bracket.HintPageInformation;
@@ -62,6 +66,7 @@ import org.brackit.server.store.page.bracket.DeletePrepareListener;
 import org.brackit.server.store.page.bracket.DeleteSequenceInfo;
 import org.brackit.server.store.page.bracket.DeleteSequencePreparation;
 import org.brackit.server.store.page.bracket.DeweyIDBuffer;
+import org.brackit.server.store.page.bracket.ExternalValueCache;
 import org.brackit.server.store.page.bracket.ExternalValueException;
 import org.brackit.server.store.page.bracket.ExternalValueLoader;
 import org.brackit.server.store.page.bracket.RecordInterpreter;
@@ -70,7 +75,9 @@ import org.brackit.server.store.page.bracket.navigation.NavigationStatus;
 import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
 import org.brackit.server.tx.log.LogOperation;
+import org.brackit.server.util.Calc;
 import org.brackit.xquery.xdm.DocumentException;
+import org.brackit.xquery.xdm.Kind;
 
 /**
  * @author Martin Hiller
@@ -143,7 +150,49 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 		public byte[] loadExternalValue(PageID externalPageID)
 				throws ExternalValueException {
 			try {
-				return read(tx, externalPageID);
+				if (valueCache == null) {
+					return read(tx, externalPageID);
+				}
+				long LSN = getLSN(tx, externalPageID);
+				byte[] value = valueCache.get(externalPageID, LSN);
+				if (value == null) {
+					value = read(tx, externalPageID);
+					valueCache.put(externalPageID, LSN, value);
+				}
+				return value;
+			} catch (BlobStoreAccessException e) {
+				throw new ExternalValueException(
+						e,
+						"Error reading externalized value at offset %s from blob %s",
+						currentOffset, externalPageID);
+			}
+		}
+
+		@Override
+		public byte[] loadExternalValuePrefix(PageID externalPageID,
+				int length) throws ExternalValueException {
+			try {
+				return readPrefix(tx, externalPageID, length);
+			} catch (BlobStoreAccessException e) {
+				throw new ExternalValueException(
+						e,
+						"Error reading externalized value at offset %s from blob %s",
+						currentOffset, externalPageID);
+			}
+		}
+
+		@Override
+		public InputStream openExternalValue(PageID externalPageID)
+				throws ExternalValueException {
+			try {
+				if (valueCache != null) {
+					byte[] value = valueCache.get(externalPageID, getLSN(tx,
+							externalPageID));
+					if (value != null) {
+						return new ByteArrayInputStream(value);
+					}
+				}
+				return readStream(tx, externalPageID);
 			} catch (BlobStoreAccessException e) {
 				throw new ExternalValueException(
 						e,
@@ -151,6 +200,27 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 						currentOffset, externalPageID);
 			}
 		}
+
+		@Override
+		public byte[] loadDictionaryValue(int code)
+				throws ExternalValueException {
+			ValueDictionary dictionary = null;
+			if (valueDictionaries != null) {
+				dictionary = valueDictionaries.get(getRootPageID());
+			}
+			if (dictionary == null) {
+				throw new ExternalValueException(
+						"No dictionary available to decode value %s at offset %s.",
+						code, currentOffset);
+			}
+			try {
+				return Calc.fromString(dictionary.resolve(code));
+			} catch (DocumentException e) {
+				throw new ExternalValueException(e,
+						"Error decoding value %s at offset %s", code,
+						currentOffset);
+			}
+		}
 	}
 
 	protected final BracketPage page;
@@ -163,19 +233,33 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 
 	private RecordInterpreter bufferedRecord;
 	private BracketKey.Type bufferedKeyType;
+	private final RecordInterpreter recordView;
 
 	private BracketNodeSequence insertSequence;
 
 	private final ExternalValueLoader extValueLoader;
 
+	private final Map<PageID, ValueDictionary> valueDictionaries;
+
+	private final ExternalValueCache valueCache;
+
 	public LeafBPContext(BufferMgr bufferMgr, Tx tx, BracketPage page) {
+		this(bufferMgr, tx, page, null, null);
+	}
+
+	public LeafBPContext(BufferMgr bufferMgr, Tx tx, BracketPage page,
+			Map<PageID, ValueDictionary> valueDictionaries,
+			ExternalValueCache valueCache) {
 		super(bufferMgr, tx, page);
+		this.valueDictionaries = valueDictionaries;
+		this.valueCache = valueCache;
 		this.page = page;
 		this.pageHandle = page.getHandle();
 		this.pageID = pageHandle.getPageID();
 		this.currentOffset = BracketPage.BEFORE_LOW_KEY_OFFSET;
 		this.level = -1;
 		this.extValueLoader = new ExternalValueLoaderImpl();
+		this.recordView = new RecordInterpreter(null, 0, 0);
 	}
 
 	private void initBuffer() {
@@ -756,7 +840,8 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 
 	@Override
 	public BPContext createClone() throws IndexOperationException {
-		LeafBPContext clone = new LeafBPContext(bufferMgr, tx, page);
+		LeafBPContext clone = new LeafBPContext(bufferMgr, tx, page,
+				valueDictionaries, valueCache);
 		return clone;
 	}
 
@@ -1355,25 +1440,7 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 
 		try {
 
-			RecordInterpreter record = bufferedRecord;
-
-			// fetch record if needed
-			if (record == null) {
-
-				// fetch key type if needed
-				if (bufferedKeyType == null) {
-					bufferedKeyType = page.getKeyType(currentOffset);
-				}
-
-				if (bufferedKeyType == Type.DOCUMENT) {
-					record = RecordInterpreter.DOCUMENT_RECORD;
-				} else {
-					// load record from page
-					bufferedRecord = page.getRecordInterpreter(currentOffset,
-							extValueLoader);
-					record = bufferedRecord;
-				}
-			}
+			RecordInterpreter record = fetchRecord(true);
 
 			BracketNode node = loader.load(currentDeweyID.getDeweyID(), record);
 
@@ -1399,24 +1466,8 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 
 		try {
 
-			// fetch key type if needed
-			if (bufferedKeyType == null) {
-				bufferedKeyType = page.getKeyType(currentOffset);
-			}
-
-			RecordInterpreter record = bufferedRecord;
-
-			// fetch record if needed
-			if (record == null) {
-				if (bufferedKeyType == Type.DOCUMENT) {
-					record = RecordInterpreter.DOCUMENT_RECORD;
-				} else {
-					// load record from page
-					bufferedRecord = page.getRecordInterpreter(currentOffset,
-							extValueLoader);
-					record = bufferedRecord;
-				}
-			}
+			// externalized values are only loaded if the filter needs them
+			RecordInterpreter record = fetchRecord(filter.needsValue());
 
 			// invoke filter
 			return filter.accept(currentDeweyID,
@@ -1427,37 +1478,82 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 		}
 	}
 
+	/**
+	 * Returns the (buffered) record of the current node. If
+	 * <code>resolve</code> is <code>false</code>, only the header of an
+	 * externalized record is loaded.
+	 */
+	private RecordInterpreter fetchRecord(boolean resolve)
+			throws ExternalValueException {
+
+		// fetch key type if needed
+		if (bufferedKeyType == null) {
+			bufferedKeyType = page.getKeyType(currentOffset);
+		}
+
+		if (bufferedKeyType == Type.DOCUMENT) {
+			return RecordInterpreter.DOCUMENT_RECORD;
+		}
+
+		if (bufferedRecord == null) {
+			// load record from page (inline records reuse the record view)
+			bufferedRecord = page.getRecordInterpreter(currentOffset,
+					extValueLoader, resolve, recordView);
+		} else if (resolve) {
+			bufferedRecord.resolve();
+		}
+		return bufferedRecord;
+	}
+
 	@Override
 	public RecordInterpreter getRecord() throws IndexOperationException {
 
 		try {
 
-			RecordInterpreter record = bufferedRecord;
+			return fetchRecord(true);
 
-			// fetch record if needed
-			if (record == null) {
+		} catch (ExternalValueException e) {
+			throw new IndexOperationException("Error loading the record!", e);
+		}
+	}
 
-				// fetch key type if needed
-				if (bufferedKeyType == null) {
-					bufferedKeyType = page.getKeyType(currentOffset);
-				}
+	@Override
+	public RecordInterpreter getRecordHeader() throws IndexOperationException {
 
-				if (bufferedKeyType == Type.DOCUMENT) {
-					record = RecordInterpreter.DOCUMENT_RECORD;
-				} else {
-					// load record from page
-					bufferedRecord = page.getRecordInterpreter(currentOffset,
-							extValueLoader);
-					record = bufferedRecord;
-				}
-			}
-			return record;
+		try {
+
+			return fetchRecord(false);
 
 		} catch (ExternalValueException e) {
 			throw new IndexOperationException("Error loading the record!", e);
 		}
 	}
 
+	@Override
+	public boolean hasRecord() {
+
+		if (CHECK_OFFSET_INTEGRITY) {
+			declareContextSensitive();
+		}
+
+		if (bufferedKeyType == null) {
+			bufferedKeyType = page.getKeyType(currentOffset);
+		}
+		return bufferedKeyType.hasDataReference;
+	}
+
+	@Override
+	public byte getKind() throws IndexOperationException {
+
+		if (!hasRecord()) {
+			return (bufferedKeyType == Type.DOCUMENT) ? Kind.DOCUMENT.ID
+					: Kind.ELEMENT.ID;
+		}
+
+		// the type is part of the record header
+		return getRecordHeader().getType();
+	}
+
 	@Override
 	public PageID getPageID() {
 		return pageID;
@@ -1475,9 +1571,13 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 			handle.latchS();
 
 			LeafBPContext other = new LeafBPContext(bufferMgr, tx,
-					new BracketPage(buffer, handle));
+					new BracketPage(buffer, handle), valueDictionaries,
+					valueCache);
 			other.bufferedKeyType = this.bufferedKeyType;
-			other.bufferedRecord = this.bufferedRecord;
+			if (this.bufferedRecord != this.recordView) {
+				// the record view belongs to this context
+				other.bufferedRecord = this.bufferedRecord;
+			}
 			other.currentDeweyID = new DeweyIDBuffer(this.currentDeweyID);
 			other.currentOffset = this.currentOffset;
 			other.level = this.level;
@@ -1494,4 +1594,12 @@ public final class LeafBPContext extends AbstractBPContext implements Leaf {
 	public ExternalValueLoader getExternalValueLoader() {
 		return extValueLoader;
 	}
+
+	@Override
+	public void drop(Tx tx, PageID pageID) throws BlobStoreAccessException {
+		super.drop(tx, pageID);
+		if (valueCache != null) {
+			valueCache.remove(pageID);
+		}
+	}
 }
@@ -27,15 +27,19 @@
  */
 package org.brackit.server.store.index.bracket.page;
 
+import java.util.Map;
+
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.io.manager.BufferMgr;
+import org.brackit.server.node.bracket.ValueDictionary;
 import org.brackit.server.store.index.Index;
 import org.brackit.server.store.index.bracket.IndexOperationException;
 import org.brackit.server.store.page.bracket.BracketPage;
+import org.brackit.server.store.page.bracket.ExternalValueCache;
 import org.brackit.server.store.page.keyvalue.CachingKeyValuePageImpl;
 import org.brackit.server.store.page.keyvalue.KeyValuePage;
 import org.brackit.server.store.page.keyvalue.SlottedKeyValuePage;
@@ -56,8 +60,36 @@ public class PageContextFactory {
 
 	protected final BufferMgr bufferMgr;
 
+	/**
+	 * Value dictionaries for decoding dictionary coded values, mapped by the
+	 * root page of the document index they belong to (may be null).
+	 */
+	protected final Map<PageID, ValueDictionary> valueDictionaries;
+
+	/**
+	 * Cache for externalized values (may be null).
+	 */
+	protected final ExternalValueCache valueCache;
+
+	/**
+	 * Creates a factory without value cache, e.g. for short-lived use during
+	 * recovery.
+	 */
 	public PageContextFactory(BufferMgr bufferMgr) {
+		this(bufferMgr, null, null);
+	}
+
+	public PageContextFactory(BufferMgr bufferMgr,
+			Map<PageID, ValueDictionary> valueDictionaries) {
+		this(bufferMgr, valueDictionaries, new ExternalValueCache());
+	}
+
+	public PageContextFactory(BufferMgr bufferMgr,
+			Map<PageID, ValueDictionary> valueDictionaries,
+			ExternalValueCache valueCache) {
 		this.bufferMgr = bufferMgr;
+		this.valueDictionaries = valueDictionaries;
+		this.valueCache = valueCache;
 	}
 
 	public final Branch allocateBranch(Tx tx, int containerNo, int unitID,
@@ -195,7 +227,8 @@ public class PageContextFactory {
 
 	private Leaf createLeaf(Tx tx, Buffer buffer, Handle handle)
 			throws IndexOperationException {
-		return new LeafBPContext(bufferMgr, tx, new BracketPage(buffer, handle));
+		return new LeafBPContext(bufferMgr, tx,
+				new BracketPage(buffer, handle), valueDictionaries, valueCache);
 	}
 
 	private Leaf createLeaf(Tx tx, Buffer buffer, Handle handle, int latchMode)
@@ -164,7 +164,7 @@ public abstract class BasePage implements BufferedPage {
 		return handle.getLSN();
 	}
 
-	public final void setLSN(long LSN) {
+	public void setLSN(long LSN) {
 		handle.setLSN(LSN);
 	}
 
@@ -0,0 +1,78 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.page;
+
+import org.brackit.server.io.buffer.Handle;
+
+/**
+ * Base class for decoded page state (e.g., parsed slot offsets and keys) that
+ * is attached to the buffer frame of a page (see {@link Handle#getCache()}).
+ * The state outlives the page objects created for single accesses and is thus
+ * shared by all transactions fixing the page.
+ * 
+ * <p>
+ * A cache is stamped with the modification count of the frame at which it is
+ * known to reflect the page content (see {@link Handle#getModCount()}). Each
+ * modification of the page increases the count, no matter if it is logged or
+ * not. Page implementations maintaining the cache in place stamp it again
+ * after their own modifications, provided it was current before. A page that
+ * is found with a different count was changed behind the cache's back and
+ * must be decoded again.
+ * </p>
+ */
+public abstract class PageCache {
+	private static final long UNSTAMPED = Long.MIN_VALUE;
+
+	private long modCount = UNSTAMPED;
+
+	/**
+	 * Checks if this cache reflects the current content of the page. Must be
+	 * called with the page latched.
+	 */
+	public final boolean isCurrent(Handle handle) {
+		return (modCount == handle.getModCount());
+	}
+
+	/**
+	 * Marks this cache as reflecting the current content of the page.
+	 */
+	public final void stamp(Handle handle) {
+		modCount = handle.getModCount();
+	}
+
+	/**
+	 * Stamps this cache again after a modification that was applied to both
+	 * the page and the cache, provided that the cache was current before the
+	 * modification.
+	 */
+	public final void modified(Handle handle, boolean wasCurrent) {
+		if (wasCurrent) {
+			modCount = handle.getModCount();
+		}
+	}
+}
@@ -27,6 +27,8 @@
  */
 package org.brackit.server.store.page.bracket;
 
+import java.util.Arrays;
+
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
@@ -163,6 +165,8 @@ public final class BracketPage extends BasePage {
 
 	private final NavigationResult navRes;
 
+	private final SkipDirectory skipDirectory;
+
 	private class InternalValue {
 		public int totalValueLength;
 		public boolean externalized;
@@ -190,6 +194,20 @@ public final class BracketPage extends BasePage {
 				- BASE_PAGE_START_OFFSET);
 		this.page = pageHandle.page;
 		this.navRes = new NavigationResult();
+		this.skipDirectory = attachSkipDirectory(pageHandle);
+	}
+
+	private static SkipDirectory attachSkipDirectory(Handle pageHandle) {
+		if (!SkipDirectory.USE_SKIP_DIRECTORY) {
+			return null;
+		}
+		Object cache = pageHandle.getCache();
+		while (!(cache instanceof SkipDirectory)) {
+			// replace missing cache or slot cache of former branch page
+			pageHandle.replaceCache(cache, new SkipDirectory());
+			cache = pageHandle.getCache();
+		}
+		return (SkipDirectory) cache;
 	}
 
 	/**
@@ -242,6 +260,9 @@ public final class BracketPage extends BasePage {
 	}
 
 	private void setKeyAreaEndOffset(int keyAreaEndOffset) {
+		if (skipDirectory != null) {
+			skipDirectory.invalidate();
+		}
 		page[KEY_AREA_END_FIELD_NO] = (byte) ((keyAreaEndOffset >> 8) & 255);
 		page[KEY_AREA_END_FIELD_NO + 1] = (byte) (keyAreaEndOffset & 255);
 	}
@@ -429,6 +450,21 @@ public final class BracketPage extends BasePage {
 
 	public RecordInterpreter getRecordInterpreter(int keyOffset,
 			ExternalValueLoader extValueLoader) throws ExternalValueException {
+		return getRecordInterpreter(keyOffset, extValueLoader, true, null);
+	}
+
+	/**
+	 * Returns an interpreter for the record of the given key. If
+	 * <code>resolveExternal</code> is <code>false</code>, only the header of
+	 * an externalized record is loaded and dictionary coded values are not
+	 * decoded, which suffices to check PCR and type (see
+	 * {@link RecordInterpreter#resolve()}). If <code>reuse</code> is not
+	 * <code>null</code>, it is reset to an inline record instead of creating
+	 * a new interpreter.
+	 */
+	public RecordInterpreter getRecordInterpreter(int keyOffset,
+			ExternalValueLoader extValueLoader, boolean resolveExternal,
+			RecordInterpreter reuse) throws ExternalValueException {
 
 		int valueOffset = getValueOffset(getNextValueRefOffset(keyOffset));
 
@@ -442,15 +478,25 @@ public final class BracketPage extends BasePage {
 
 			if (byte1 == 255 && byte2 == 255) {
 				// external value!
-				return new RecordInterpreter(
-						extValueLoader.loadExternalValue(PageID.fromBytes(page,
-								valueOffset)));
+				return RecordInterpreter.external(PageID.fromBytes(page,
+						valueOffset), extValueLoader, resolveExternal);
 			} else {
 				valueLength = (byte1 << 8) | byte2;
 			}
 		}
 
-		return new RecordInterpreter(page, valueOffset, valueLength);
+		RecordInterpreter record = reuse;
+		if (record != null) {
+			record.reset(page, valueOffset, valueLength);
+		} else {
+			record = new RecordInterpreter(page, valueOffset, valueLength);
+		}
+
+		record.checkCoded(extValueLoader);
+		if (resolveExternal) {
+			record.resolve();
+		}
+		return record;
 	}
 
 	/**
@@ -804,6 +850,83 @@ public final class BracketPage extends BasePage {
 		return navRes;
 	}
 
+	/**
+	 * Returns the navigation checkpoints of this page. If the skip directory is
+	 * disabled or the page is too small to benefit from it, null is returned.
+	 * 
+	 * @return the checkpoints or null
+	 */
+	private SkipDirectory.Checkpoints getCheckpoints() {
+
+		if (skipDirectory == null) {
+			return null;
+		}
+
+		int keyAreaEndOffset = getKeyAreaEndOffset();
+		SkipDirectory.Checkpoints checkpoints = skipDirectory
+				.get(keyAreaEndOffset);
+
+		if (checkpoints == null
+				&& getRecordCount() >= 2 * SkipDirectory.INTERVAL
+				&& skipDirectory.shouldBuild()) {
+			checkpoints = buildCheckpoints(keyAreaEndOffset);
+			skipDirectory.set(checkpoints);
+		}
+
+		return checkpoints;
+	}
+
+	/**
+	 * Decodes the whole key area and records a checkpoint for every
+	 * {@link SkipDirectory#INTERVAL}-th element or text node.
+	 * 
+	 * @param keyAreaEndOffset
+	 *            the current end of the key area
+	 * @return the checkpoints
+	 */
+	private SkipDirectory.Checkpoints buildCheckpoints(int keyAreaEndOffset) {
+
+		int capacity = getRecordCount() / SkipDirectory.INTERVAL + 1;
+		int[] offsets = new int[capacity];
+		XTCdeweyID[] deweyIDs = new XTCdeweyID[capacity];
+		int size = 0;
+
+		DeweyIDBuffer deweyID = new DeweyIDBuffer();
+		deweyID.setTo(getLowKey());
+		BracketKey currentKey = new BracketKey();
+
+		int keyPos = getKeyAreaStartOffset()
+				+ getLowKeyType().dataReferenceLength;
+		int skipped = 0;
+
+		while (keyPos < keyAreaEndOffset) {
+
+			currentKey.load(page, keyPos);
+			deweyID.update(currentKey, false);
+			skipped++;
+
+			if (skipped >= SkipDirectory.INTERVAL
+					&& (currentKey.type == BracketKey.Type.DATA
+							|| currentKey.type == BracketKey.Type.NODATA)) {
+				if (size == capacity) {
+					capacity = (capacity * 3) / 2 + 1;
+					offsets = Arrays.copyOf(offsets, capacity);
+					deweyIDs = Arrays.copyOf(deweyIDs, capacity);
+				}
+				offsets[size] = keyPos;
+				deweyIDs[size] = deweyID.getDeweyID();
+				size++;
+				skipped = 0;
+			}
+
+			keyPos += BracketKey.PHYSICAL_LENGTH
+					+ currentKey.type.dataReferenceLength;
+		}
+
+		return new SkipDirectory.Checkpoints(keyAreaEndOffset, size, offsets,
+				deweyIDs);
+	}
+
 	/**
 	 * Checks whether there is enough free space and then allocates the required
 	 * space.
@@ -970,6 +1093,9 @@ public final class BracketPage extends BasePage {
 	}
 
 	private void setLowKeyType(BracketKey.Type type) {
+		if (skipDirectory != null) {
+			skipDirectory.invalidate();
+		}
 		page[LOW_KEY_TYPE_FIELD_NO] = type.physicalValue;
 	}
 
@@ -1268,9 +1394,28 @@ public final class BracketPage extends BasePage {
 			navRes.reset();
 			navRes.status = NavigationStatus.NOT_FOUND;
 		} else {
-			// navigate to key
-			navigateGeneric(currentDeweyID, LOW_KEY_OFFSET,
-					NavigationProfiles.BY_DEWEYID, false);
+			// jump to the closest checkpoint in front of the key
+			int startOffset = LOW_KEY_OFFSET;
+			SkipDirectory.Checkpoints checkpoints = getCheckpoints();
+			int checkpoint = (checkpoints != null) ? checkpoints.floor(key)
+					: -1;
+
+			if (checkpoint >= 0) {
+				startOffset = checkpoints.offsets[checkpoint];
+				currentDeweyID.setTo(checkpoints.deweyIDs[checkpoint]);
+			}
+
+			if (checkpoint >= 0 && currentDeweyID.compare() == 0) {
+				// key is a checkpoint
+				navRes.reset();
+				navRes.status = NavigationStatus.FOUND;
+				navRes.keyOffset = startOffset;
+				navRes.keyType = BracketKey.loadType(page, startOffset);
+			} else {
+				// navigate to key
+				navigateGeneric(currentDeweyID, startOffset,
+						NavigationProfiles.BY_DEWEYID, false);
+			}
 		}
 
 		currentDeweyID.disableCompareMode();
@@ -1609,8 +1754,34 @@ public final class BracketPage extends BasePage {
 		int overflowDiff = 0;
 		boolean firstUpdate = false;
 
-		// determine the key offset for the next bracket key
-		if (currentOffset == LOW_KEY_OFFSET) {
+		// divisions and levels the DeweyIDBuffer is ahead of the reference
+		// node after skipping parts of its subtree
+		int skippedDivisions = 0;
+		int skippedLevels = 0;
+
+		SkipDirectory.Checkpoints checkpoints = (currentOffset >= LOW_KEY_OFFSET
+				&& currentDeweyID.getNumberOfDivisions() > 0 && !currentDeweyID
+				.isAttribute()) ? getCheckpoints() : null;
+		int checkpoint = (checkpoints != null) ? checkpoints.lastDescendant(
+				currentOffset, currentDeweyID.getDeweyID()) : -1;
+
+		if (checkpoint >= 0) {
+			// skip the subtree of the reference node up to the last
+			// checkpoint inside of it
+			XTCdeweyID skipTo = checkpoints.deweyIDs[checkpoint];
+			skippedDivisions = skipTo.getNumberOfDivisions()
+					- currentDeweyID.getNumberOfDivisions();
+			skippedLevels = currentDeweyID.getLevelDifferenceTo(skipTo);
+			levelDiff = skippedLevels;
+			overflowDiff = skippedDivisions - skippedLevels;
+			currentDeweyID.setTo(skipTo);
+
+			currentOffset = checkpoints.offsets[checkpoint];
+			currentKeyType = BracketKey.loadType(page, currentOffset);
+			currentOffset += BracketKey.PHYSICAL_LENGTH
+					+ currentKeyType.dataReferenceLength;
+		} else if (currentOffset == LOW_KEY_OFFSET) {
+			// determine the key offset for the next bracket key
 			currentOffset = getKeyAreaStartOffset()
 					+ getLowKeyType().dataReferenceLength;
 		} else {
@@ -1641,7 +1812,8 @@ public final class BracketPage extends BasePage {
 					currentOffset--;
 					navRes.keyOffset = currentOffset;
 					navRes.keyType = currentKeyType;
-					navRes.levelDiff = -currentDeweyID.getLevel();
+					navRes.levelDiff = skippedLevels
+							- currentDeweyID.getLevel();
 					currentKey.load(page, currentOffset);
 					currentDeweyID.updateReduced(currentKey);
 				}
@@ -1668,7 +1840,7 @@ public final class BracketPage extends BasePage {
 					navRes.status = NavigationStatus.NOT_EXISTENT;
 					if (returnNodeOnFailure) {
 						currentKey.idGaps = page[currentOffset] & 0xFF;
-						currentKey.roundBrackets = -levelDiff;
+						currentKey.roundBrackets = skippedDivisions - levelDiff;
 						currentKey.angleBrackets = -overflowDiff;
 						currentKey.type = currentKeyType;
 						currentDeweyID.updateOptimized(currentKey);
@@ -1690,9 +1862,11 @@ public final class BracketPage extends BasePage {
 					// update of current DeweyID necessary
 					currentKey.idGaps = page[currentOffset] & 0xFF;
 					if (!firstUpdate) {
-						currentKey.roundBrackets = 1;
+						currentKey.roundBrackets = 1 + skippedDivisions;
 						currentKey.angleBrackets = -overflowDiff;
 						firstUpdate = true;
+						skippedDivisions = 0;
+						skippedLevels = 0;
 					}
 					currentKey.type = currentKeyType;
 					currentDeweyID.updateOptimized(currentKey);
@@ -2016,8 +2190,49 @@ public final class BracketPage extends BasePage {
 	public NavigationResult navigateLastChild(int currentOffset,
 			DeweyIDBuffer currentDeweyID) {
 
-		NavigationResult lastChild = navigateGeneric(currentDeweyID,
-				currentOffset, NavigationProfiles.LAST_CHILD, false);
+		NavigationResult lastChild = null;
+
+		SkipDirectory.Checkpoints checkpoints = (currentOffset >= LOW_KEY_OFFSET
+				&& !currentDeweyID.isAttribute()) ? getCheckpoints() : null;
+
+		if (checkpoints != null) {
+			// find the last checkpoint that is a child of the reference node
+			XTCdeweyID reference = currentDeweyID.getDeweyID();
+			int checkpoint = checkpoints.lastDescendant(currentOffset,
+					reference);
+			while (checkpoint >= 0
+					&& checkpoints.offsets[checkpoint] > currentOffset
+					&& !reference.isParentOf(checkpoints.deweyIDs[checkpoint])) {
+				checkpoint--;
+			}
+
+			if (checkpoint >= 0
+					&& checkpoints.offsets[checkpoint] > currentOffset) {
+				// continue with the last sibling of this child
+				XTCdeweyID child = checkpoints.deweyIDs[checkpoint];
+				int childOffset = checkpoints.offsets[checkpoint];
+				currentDeweyID.setTo(child);
+
+				lastChild = navigateGeneric(currentDeweyID, childOffset,
+						NavigationProfiles.LAST_SIBLING, false);
+
+				if (lastChild.status == NavigationStatus.FOUND) {
+					lastChild.levelDiff++;
+				} else {
+					// the checkpoint itself is the last child
+					currentDeweyID.setTo(child);
+					lastChild.status = NavigationStatus.FOUND;
+					lastChild.keyOffset = childOffset;
+					lastChild.keyType = BracketKey.loadType(page, childOffset);
+					lastChild.levelDiff = 1;
+				}
+			}
+		}
+
+		if (lastChild == null) {
+			lastChild = navigateGeneric(currentDeweyID, currentOffset,
+					NavigationProfiles.LAST_CHILD, false);
+		}
 
 		if (lastChild.status == NavigationStatus.FOUND
 				&& !lastChild.breakConditionFulfilled) {
@@ -0,0 +1,181 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.page.bracket;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.xquery.util.Cfg;
+
+/**
+ * Size-bounded cache for externalized values, which is shared by concurrent
+ * readers. Entries are keyed by the first page of the external value and
+ * are only valid as long as the LSN of this page does not change. Since the
+ * (logged) allocation of a blob page sets a new LSN, a reused page is never
+ * mistaken for a cached value.
+ * <p>
+ * If the cache exceeds its capacity, entries are evicted in clock order,
+ * i.e. entries that were accessed since the last pass of the clock hand get
+ * a second chance.
+ * <p>
+ * Cached values are shared and must not be modified.
+ */
+public class ExternalValueCache {
+
+	public static final String CACHE_SIZE = "org.brackit.server.store.page.bracket.externalValueCacheSize";
+
+	private static final int DEFAULT_CACHE_SIZE = 4 * 1024 * 1024;
+
+	private static final class Entry {
+		final long LSN;
+		final byte[] value;
+		volatile boolean referenced;
+
+		Entry(long LSN, byte[] value) {
+			this.LSN = LSN;
+			this.value = value;
+		}
+	}
+
+	private final ConcurrentHashMap<PageID, Entry> entries;
+
+	private final long capacity;
+
+	private final AtomicLong size = new AtomicLong();
+
+	private Iterator<Map.Entry<PageID, Entry>> clockHand;
+
+	public ExternalValueCache() {
+		this(Cfg.asInt(CACHE_SIZE, DEFAULT_CACHE_SIZE));
+	}
+
+	/**
+	 * @param capacity
+	 *            the maximum number of cached bytes, or 0 to disable the
+	 *            cache
+	 */
+	public ExternalValueCache(long capacity) {
+		this.capacity = Math.max(0, capacity);
+		this.entries = new ConcurrentHashMap<PageID, Entry>();
+	}
+
+	public boolean isEnabled() {
+		return (capacity > 0);
+	}
+
+	/**
+	 * Returns the cached value of the external value starting at
+	 * <code>pageID</code>, if it was cached with the given page LSN.
+	 */
+	public byte[] get(PageID pageID, long LSN) {
+		if (capacity == 0) {
+			return null;
+		}
+
+		Entry entry = entries.get(pageID);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.LSN != LSN) {
+			remove(pageID, entry);
+			return null;
+		}
+		entry.referenced = true;
+		return entry.value;
+	}
+
+	public void put(PageID pageID, long LSN, byte[] value) {
+		if ((capacity == 0) || (value.length > capacity / 4)) {
+			// do not let a single value flush the whole cache
+			return;
+		}
+
+		Entry entry = new Entry(LSN, value);
+		Entry previous = entries.put(pageID, entry);
+		size.addAndGet(value.length
+				- ((previous != null) ? previous.value.length : 0));
+
+		if (size.get() > capacity) {
+			evict();
+		}
+	}
+
+	/**
+	 * Removes the external value starting at <code>pageID</code>, e.g.
+	 * because it is deleted.
+	 */
+	public void remove(PageID pageID) {
+		if (capacity == 0) {
+			return;
+		}
+
+		Entry entry = entries.remove(pageID);
+		if (entry != null) {
+			size.addAndGet(-entry.value.length);
+		}
+	}
+
+	public void clear() {
+		for (PageID pageID : entries.keySet()) {
+			remove(pageID);
+		}
+	}
+
+	public long getSize() {
+		return size.get();
+	}
+
+	private void remove(PageID pageID, Entry entry) {
+		if (entries.remove(pageID, entry)) {
+			size.addAndGet(-entry.value.length);
+		}
+	}
+
+	private synchronized void evict() {
+		// two rounds suffice to find an unreferenced victim
+		int limit = 2 * entries.size();
+		while ((size.get() > capacity) && (limit-- > 0)) {
+			if ((clockHand == null) || (!clockHand.hasNext())) {
+				clockHand = entries.entrySet().iterator();
+				if (!clockHand.hasNext()) {
+					return;
+				}
+			}
+			Map.Entry<PageID, Entry> next = clockHand.next();
+			Entry entry = next.getValue();
+			if (entry.referenced) {
+				entry.referenced = false;
+			} else {
+				remove(next.getKey(), entry);
+			}
+		}
+	}
+}
@@ -27,6 +27,8 @@
  */
 package org.brackit.server.store.page.bracket;
 
+import java.io.InputStream;
+
 import org.brackit.server.io.buffer.PageID;
 
 /**
@@ -44,5 +46,34 @@ public interface ExternalValueLoader {
 	 * @throws ExternalValueException
 	 */
 	public byte[] loadExternalValue(PageID externalPageID) throws ExternalValueException;
+
+	/**
+	 * Loads at most <code>length</code> bytes from the beginning of an
+	 * external value. The result may be shorter than requested.
+	 * @param externalPageID the external PageID
+	 * @param length the maximum number of bytes to load
+	 * @return the prefix of the external value
+	 * @throws ExternalValueException
+	 */
+	public byte[] loadExternalValuePrefix(PageID externalPageID, int length)
+			throws ExternalValueException;
+
+	/**
+	 * Opens a stream on an external value, which reads the value lazily page
+	 * by page unless it is cached already.
+	 * @param externalPageID the external PageID
+	 * @return the stream, which has to be closed by the caller
+	 * @throws ExternalValueException
+	 */
+	public InputStream openExternalValue(PageID externalPageID)
+			throws ExternalValueException;
+
+	/**
+	 * Loads a value from the value dictionary.
+	 * @param code the dictionary code of the value
+	 * @return the (UTF-8 encoded) value
+	 * @throws ExternalValueException
+	 */
+	public byte[] loadDictionaryValue(int code) throws ExternalValueException;
 	
 }
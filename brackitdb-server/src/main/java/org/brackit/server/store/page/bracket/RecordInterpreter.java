@@ -27,6 +27,12 @@
  */
 package org.brackit.server.store.page.bracket;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.metadata.pathSynopsis.PSNode;
 import org.brackit.server.node.el.ElRecordAccess;
 import org.brackit.server.util.Calc;
@@ -41,9 +47,24 @@ import org.brackit.xquery.xdm.Kind;
  */
 public class RecordInterpreter extends ElRecordAccess {
 	
-	private final byte[] buf;
-	private final int offset;
-	private final int len;
+	/**
+	 * Maximum length of the record header (type and PCR).
+	 */
+	public static final int MAX_HEADER_LENGTH = 1 + (PCR_SIZE_MASK + 1);
+	
+	/**
+	 * 0010 0000: the value is stored as code of the value dictionary
+	 */
+	public static final int CODED_MASK = 32;
+	
+	private byte[] buf;
+	private int offset;
+	private int len;
+	
+	private PageID externalPageID;
+	private ExternalValueLoader extValueLoader;
+	private boolean coded;
+	private int code = -1;
 	
 	private int pcr = -1;
 	private PSNode psNode = null;
@@ -58,6 +79,37 @@ public class RecordInterpreter extends ElRecordAccess {
 		this.len = len;
 	}
 	
+	private RecordInterpreter(byte[] header, PageID externalPageID,
+			ExternalValueLoader extValueLoader) {
+		this.buf = header;
+		this.offset = 0;
+		this.len = header.length;
+		this.externalPageID = externalPageID;
+		this.extValueLoader = extValueLoader;
+	}
+	
+	/**
+	 * Creates an interpreter for an externalized record. If
+	 * <code>resolve</code> is <code>false</code>, only the record header is
+	 * loaded, i.e., PCR and type are available right away, while the value
+	 * is only available after {@link #resolve()}.
+	 */
+	public static RecordInterpreter external(PageID externalPageID,
+			ExternalValueLoader extValueLoader, boolean resolve)
+			throws ExternalValueException {
+		if (!resolve) {
+			byte[] header = extValueLoader.loadExternalValuePrefix(
+					externalPageID, MAX_HEADER_LENGTH);
+			if ((header.length > 0)
+					&& (header.length >= 1 + (header[0] & PCR_SIZE_MASK) + 1)) {
+				return new RecordInterpreter(header, externalPageID,
+						extValueLoader);
+			}
+		}
+		return new RecordInterpreter(extValueLoader
+				.loadExternalValue(externalPageID));
+	}
+	
 	public RecordInterpreter(byte[] value) {
 		this.buf = value;
 		this.offset = 0;
@@ -89,7 +141,163 @@ public class RecordInterpreter extends ElRecordAccess {
 		return type;
 	}
 	
+	public boolean isResolved() {
+		return (externalPageID == null) && (!coded);
+	}
+	
+	/**
+	 * Loads the complete external record and decodes a dictionary coded
+	 * value, if this is not done yet.
+	 */
+	public void resolve() throws ExternalValueException {
+		if (externalPageID != null) {
+			buf = extValueLoader.loadExternalValue(externalPageID);
+			offset = 0;
+			len = buf.length;
+			externalPageID = null;
+		}
+		if (coded) {
+			buf = decode(buf, offset, len, extValueLoader
+					.loadDictionaryValue(code));
+			offset = 0;
+			len = buf.length;
+			coded = false;
+		}
+		extValueLoader = null;
+	}
+	
+	private void checkResolved() {
+		if (externalPageID != null) {
+			throw new IllegalStateException(String.format(
+					"External value %s is not resolved.", externalPageID));
+		}
+		if (coded) {
+			throw new IllegalStateException(String.format(
+					"Dictionary value %s is not resolved.", code));
+		}
+	}
+	
+	/**
+	 * Marks the value of this record as dictionary code, if the record header
+	 * says so. The value is decoded by {@link #resolve()}.
+	 */
+	void checkCoded(ExternalValueLoader extValueLoader) {
+		if ((len > 0) && ((buf[offset] & CODED_MASK) != 0)) {
+			int valueOffset = 1 + ((buf[offset] & PCR_SIZE_MASK) + 1);
+			this.code = Calc.toInt(buf, offset + valueOffset, len
+					- valueOffset);
+			this.coded = true;
+			this.extValueLoader = extValueLoader;
+		}
+	}
+	
+	/**
+	 * Returns the dictionary code of the value, or -1 if the value is stored
+	 * uncoded. The code is available without resolving the record, so that
+	 * values can be compared without decoding them.
+	 */
+	public int getCode() {
+		return code;
+	}
+	
+	/**
+	 * Points this interpreter to another record, so that a single instance
+	 * can be reused while navigating through a page.
+	 */
+	void reset(byte[] buf, int offset, int len) {
+		this.buf = buf;
+		this.offset = offset;
+		this.len = len;
+		this.externalPageID = null;
+		this.extValueLoader = null;
+		this.coded = false;
+		this.code = -1;
+		this.pcr = -1;
+		this.psNode = null;
+		this.type = -1;
+		this.value = null;
+	}
+	
+	/**
+	 * Returns the buffer holding the record. Together with
+	 * {@link #getValueOffset()} and {@link #getValueLength()}, the value can
+	 * be accessed without decoding it. The buffer must not be modified and is
+	 * only valid until the record's page is navigated or changed.
+	 */
+	public byte[] getBuffer() {
+		checkResolved();
+		return buf;
+	}
+	
+	public int getValueOffset() {
+		checkResolved();
+		return offset + 1 + ((buf[offset] & PCR_SIZE_MASK) + 1);
+	}
+	
+	public int getValueLength() {
+		checkResolved();
+		return Math.max(0, len - (1 + ((buf[offset] & PCR_SIZE_MASK) + 1)));
+	}
+	
+	/**
+	 * Opens a stream on the (UTF-8 encoded) value. The value of an
+	 * unresolved external record is read lazily page by page, i.e. it is
+	 * never materialized completely. An inline value is copied, because the
+	 * record may point into a buffer frame that is reused once it is
+	 * unlatched.
+	 */
+	public InputStream openValueStream() throws ExternalValueException {
+		if (coded) {
+			resolve();
+		}
+		if (externalPageID == null) {
+			int valueOffset = getValueOffset();
+			return new ByteArrayInputStream(Arrays.copyOfRange(buf,
+					valueOffset, valueOffset + getValueLength()));
+		}
+
+		// the external record starts with the record header
+		int headerLength = 1 + ((buf[offset] & PCR_SIZE_MASK) + 1);
+		InputStream in = extValueLoader.openExternalValue(externalPageID);
+		try {
+			for (int i = 0; i < headerLength; i++) {
+				if (in.read() < 0) {
+					throw new IOException("Unexpected end of stream.");
+				}
+			}
+		} catch (IOException e) {
+			try {
+				in.close();
+			} catch (IOException e1) {
+				// ignore
+			}
+			throw new ExternalValueException(e,
+					"Error reading header of external value %s.",
+					externalPageID);
+		}
+		return in;
+	}
+	
+	/**
+	 * Compares the (UTF-8 encoded) value with the given bytes without
+	 * decoding it.
+	 */
+	public boolean valueEquals(byte[] other) {
+		int valueLength = getValueLength();
+		if (valueLength != other.length) {
+			return false;
+		}
+		int valueOffset = getValueOffset();
+		for (int i = 0; i < valueLength; i++) {
+			if (buf[valueOffset + i] != other[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	public Atomic getValue() {
+		checkResolved();
 		if (value == null) {
 			String untypedValue = getValue(buf, offset, len);
 			if (type == Kind.COMMENT.ID || type == Kind.PROCESSING_INSTRUCTION.ID) {
@@ -110,6 +318,42 @@ public class RecordInterpreter extends ElRecordAccess {
 	}
 	
 	public String getStringValue() {
+		checkResolved();
 		return (value != null) ? value.stringValue() : getValue(buf, offset, len);
 	}
+
+	/**
+	 * Creates a record whose value is the given code of the value
+	 * dictionary.
+	 */
+	public static byte[] createCodedRecord(int PCR, byte type, int code) {
+		byte[] header = createRecord(PCR, type, null);
+		byte[] codeBytes = Calc.fromUIntVar(code);
+		byte[] record = new byte[header.length + codeBytes.length];
+		System.arraycopy(header, 0, record, 0, header.length);
+		System.arraycopy(codeBytes, 0, record, header.length, codeBytes.length);
+		record[0] |= CODED_MASK;
+		return record;
+	}
+
+	public static boolean isCoded(byte[] record) {
+		return ((record[0] & CODED_MASK) != 0);
+	}
+
+	public static int getCode(byte[] record) {
+		int valueOffset = 1 + getPCRsize(record);
+		return Calc.toInt(record, valueOffset, record.length - valueOffset);
+	}
+
+	/**
+	 * Replaces the code of a dictionary coded record with the given value.
+	 */
+	public static byte[] decode(byte[] buf, int offset, int len, byte[] value) {
+		int headerLength = 1 + ((buf[offset] & PCR_SIZE_MASK) + 1);
+		byte[] record = new byte[headerLength + value.length];
+		System.arraycopy(buf, offset, record, 0, headerLength);
+		record[0] &= ~CODED_MASK;
+		System.arraycopy(value, 0, record, headerLength, value.length);
+		return record;
+	}
 }
@@ -0,0 +1,172 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.page.bracket;
+
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.xquery.util.Cfg;
+
+/**
+ * Sparse directory of navigation checkpoints for a {@link BracketPage}. Every
+ * {@link #INTERVAL}-th bracket key (restricted to element and text nodes) is
+ * recorded together with its key offset and full DeweyID, so that navigation
+ * can resume close to its target instead of decoding the key area from the
+ * reference node onwards.
+ * 
+ * <p>
+ * The directory is not part of the persistent page format. It is attached to
+ * the buffer frame (see {@link org.brackit.server.io.buffer.Handle#getCache()
+ * Handle.getCache()}), built lazily under a shared latch and discarded by every
+ * modification of the key area. Pages written by older versions can therefore
+ * be read without any conversion.
+ * </p>
+ */
+final class SkipDirectory {
+
+	public static final String ENABLED = "org.brackit.server.store.page.bracket.skipDirectory";
+
+	public static final String SKIP_INTERVAL = "org.brackit.server.store.page.bracket.skipInterval";
+
+	static final boolean USE_SKIP_DIRECTORY = Cfg.asBool(ENABLED, true);
+
+	static final int INTERVAL = Math.max(4, Cfg.asInt(SKIP_INTERVAL, 32));
+
+	/**
+	 * Number of navigations after a modification before the directory is
+	 * (re-)built. Pages that are modified after nearly every access do not pay
+	 * for the additional scan.
+	 */
+	private static final int BUILD_THRESHOLD = 2;
+
+	/**
+	 * Immutable snapshot of the checkpoints. Readers holding a shared latch
+	 * may build and publish a snapshot concurrently.
+	 */
+	static final class Checkpoints {
+		final int keyAreaEnd;
+		final int size;
+		final int[] offsets;
+		final XTCdeweyID[] deweyIDs;
+
+		Checkpoints(int keyAreaEnd, int size, int[] offsets,
+				XTCdeweyID[] deweyIDs) {
+			this.keyAreaEnd = keyAreaEnd;
+			this.size = size;
+			this.offsets = offsets;
+			this.deweyIDs = deweyIDs;
+		}
+
+		/**
+		 * Returns the index of the last checkpoint whose DeweyID is less than
+		 * or equal to the given key or -1.
+		 */
+		int floor(XTCdeweyID key) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = deweyIDs[mid].compareTo(key);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return high;
+		}
+
+		/**
+		 * Returns the index of the first checkpoint located behind the given
+		 * key offset or {@link #size}.
+		 */
+		int after(int keyOffset) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (offsets[mid] <= keyOffset) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Returns the index of the last checkpoint behind the given key offset
+		 * that lies within the subtree of the given reference node or -1.
+		 * Since checkpoints are in document order, all descendant checkpoints
+		 * directly follow the reference node.
+		 */
+		int lastDescendant(int keyOffset, XTCdeweyID reference) {
+			int last = -1;
+			for (int i = after(keyOffset); i < size; i++) {
+				if (!reference.isAncestorOf(deweyIDs[i])) {
+					break;
+				}
+				last = i;
+			}
+			return last;
+		}
+	}
+
+	private volatile Checkpoints checkpoints;
+
+	private volatile int requests;
+
+	/**
+	 * Returns the current checkpoints if they are still valid for the given
+	 * key area end offset.
+	 */
+	Checkpoints get(int keyAreaEnd) {
+		Checkpoints current = checkpoints;
+		if ((current != null) && (current.keyAreaEnd == keyAreaEnd)) {
+			return current;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true, if a caller that found no valid checkpoints should build
+	 * a new snapshot now.
+	 */
+	boolean shouldBuild() {
+		return (++requests >= BUILD_THRESHOLD);
+	}
+
+	void set(Checkpoints checkpoints) {
+		this.checkpoints = checkpoints;
+	}
+
+	void invalidate() {
+		checkpoints = null;
+		requests = 0;
+	}
+}
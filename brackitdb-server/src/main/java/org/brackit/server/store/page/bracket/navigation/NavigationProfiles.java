@@ -100,6 +100,21 @@ public class NavigationProfiles {
 				}
 			});
 
+	public static final NavigationProperties LAST_SIBLING = new NavigationProperties(
+			NavigationTarget.LAST, true, new NavigationCondition() {
+				@Override
+				public boolean checkCondition(int levelDiff,
+						DeweyIDBuffer deweyID, Type type, int keyOffset) {
+					return levelDiff == 0;
+				}
+			}, new NavigationCondition() {
+				@Override
+				public boolean checkCondition(int levelDiff,
+						DeweyIDBuffer deweyID, Type type, int keyOffset) {
+					return levelDiff < 0;
+				}
+			});
+
 	public static final NavigationProperties BY_DEWEYID = new NavigationProperties(
 			NavigationTarget.FIRST, false, new NavigationCondition() {
 				@Override
@@ -31,18 +31,30 @@ import java.util.Arrays;
 
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.store.page.PageCache;
+import org.brackit.server.store.page.RecordFlag;
 
 /**
+ * Key/value page which keeps the decoded header offsets and keys in a
+ * {@link PageCache} attached to the buffer frame. The cache also holds the
+ * sorted positions of all uncompressed restart keys, so the chain a
+ * compressed insert joins is found by binary search. The cache is shared by all
+ * page objects created for the frame and is rebuilt only if the modification
+ * count of the frame reveals a modification that was not applied through
+ * this class.
  * 
  * @author Sebastian Baechle
  * 
  */
 public class CachingKeyValuePageImpl extends KeyValuePageImpl {
-	private class SlotCache {
+	private class SlotCache extends PageCache {
 		int keySize;
 		byte[][] keys;
 		int headerSize;
 		int[] offsets;
+		int restartSize;
+		int[] restarts;
 	}
 
 	protected SlotCache cache;
@@ -50,13 +62,15 @@ public class CachingKeyValuePageImpl extends KeyValuePageImpl {
 	public CachingKeyValuePageImpl(Buffer buffer, Handle handle, int reserved) {
 		super(buffer, handle, reserved);
 
-		cache = (SlotCache) handle.getCache();
+		Object attached = handle.getCache();
 
-		if (cache == null) {
-			handle.setCache(new SlotCache());
-			cache = (SlotCache) handle.getCache();
+		while (!(attached instanceof SlotCache)) {
+			// replace missing cache or cache of former page type
+			handle.replaceCache(attached, new SlotCache());
+			attached = handle.getCache();
 		}
 
+		cache = (SlotCache) attached;
 		fillCache();
 	}
 
@@ -70,62 +84,115 @@ public class CachingKeyValuePageImpl extends KeyValuePageImpl {
 		clearCache();
 	}
 
+	@Override
+	public void format(PageID basePageID) {
+		super.format(basePageID);
+		clearCache();
+	}
+
+	@Override
+	public void setLSN(long LSN) {
+		boolean current = cache.isCurrent(handle);
+		super.setLSN(LSN);
+		cache.modified(handle, current);
+	}
+
 	private void clearCache() {
 		int size = 10;
-		byte[][] keys = new byte[size][];
-		int[] offsets = new int[size];
-		int[] lengths = new int[size];
-
-		cache.keys = keys;
-		cache.offsets = offsets;
+		cache.keys = new byte[size][];
+		cache.offsets = new int[size];
 		cache.keySize = 0;
 		cache.headerSize = 0;
+		cache.restarts = new int[size];
+		cache.restartSize = 0;
+		cache.stamp(handle);
 	}
 
 	private void fillCache() {
 		synchronized (cache) {
-			if (cache.keys == null) {
+			if ((cache.keys == null) || (!cache.isCurrent(handle))) {
 				int recordCount = super.getRecordCount();
 				int size = (recordCount != 0) ? recordCount : 10;
-				byte[][] keys = new byte[size][];
-				int[] offsets = new int[size];
-				int[] lengths = new int[size];
 
-				cache.keys = keys;
-				cache.offsets = offsets;
+				cache.keys = new byte[size][];
+				cache.offsets = new int[size];
 				cache.keySize = 0;
 				cache.headerSize = 0;
+				cache.restarts = new int[size];
+				cache.restartSize = 0;
 
 				for (int pos = 0; pos < recordCount; pos++) {
 					getHeaderOffset(pos);
 					getKey(pos);
+					refreshRestartCache(pos);
 				}
+
+				cache.stamp(handle);
 			}
 		}
 	}
 
 	@Override
 	public void delete(int pos) {
+		boolean current = cache.isCurrent(handle);
 		super.delete(pos);
 
 		deleteFromKeyCache(pos);
 		deleteFromOffsetLengthCache(pos);
+		deleteFromRestartCache(pos);
+		cache.modified(handle, current);
 	}
 
 	@Override
 	protected int getHeaderOffset(int pos) {
 		if ((pos >= 0) && (pos < cache.headerSize)) {
 			return cache.offsets[pos];
-		} else {
-			int offset = super.getHeaderOffset(pos);
+		}
 
-			if ((pos == cache.headerSize) && (pos < getRecordCount())) {
-				insertIntoOffsetLengthCache(pos, offset, super
-						.calcLengthFromEntry(offset));
-			}
+		// continue the walk behind the last cached header
+		int i = cache.headerSize;
+		int offset = getStartOffset();
+
+		if (i > 0) {
+			offset = cache.offsets[i - 1]
+					+ calcLengthFromEntry(cache.offsets[i - 1]);
+		}
+
+		for (; i < pos; i++) {
+			int length = calcLengthFromEntry(offset);
+			insertIntoOffsetLengthCache(i, offset, length);
+			offset += length;
+		}
+
+		if ((pos == cache.headerSize) && (pos < getRecordCount())) {
+			insertIntoOffsetLengthCache(pos, offset, calcLengthFromEntry(offset));
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Looks up the chain head of the given position in the cached restart
+	 * positions instead of walking the page.
+	 */
+	@Override
+	protected boolean needsRestart(int pos) {
+		if (restartInterval <= 0) {
+			return false;
+		}
 
-			return offset;
+		int i = findRestart(pos);
+		int next = (i < cache.restartSize) ? cache.restarts[i]
+				: getRecordCount();
+
+		if (pos == 0) {
+			// the compressed keys in front of the first restart key follow
+			return (next > restartInterval);
 		}
+
+		// the new key joins the chain from the preceding head to next
+		int head = (i > 0) ? cache.restarts[i - 1] : 0;
+		return (next - head > restartInterval);
 	}
 
 	@Override
@@ -151,8 +218,11 @@ public class CachingKeyValuePageImpl extends KeyValuePageImpl {
 
 	@Override
 	public boolean insert(int pos, byte[] key, byte[] value, boolean compressed) {
+		boolean current = cache.isCurrent(handle);
 		if (super.insert(pos, key, value, compressed)) {
 			insertIntoKeyCache(pos, key);
+			insertIntoRestartCache(pos);
+			cache.modified(handle, current);
 			return true;
 		}
 		return false;
@@ -172,8 +242,10 @@ public class CachingKeyValuePageImpl extends KeyValuePageImpl {
 
 	@Override
 	public boolean setKey(int pos, byte[] key) {
+		boolean current = cache.isCurrent(handle);
 		if (super.setKey(pos, key)) {
 			updateKeyCache(pos, key);
+			cache.modified(handle, current);
 			return true;
 		}
 		return false;
@@ -181,8 +253,10 @@ public class CachingKeyValuePageImpl extends KeyValuePageImpl {
 
 	@Override
 	public boolean update(int pos, byte[] key, byte[] value) {
+		boolean current = cache.isCurrent(handle);
 		if (super.update(pos, key, value)) {
 			updateKeyCache(pos, key);
+			cache.modified(handle, current);
 			return true;
 		}
 		return false;
@@ -262,6 +336,70 @@ public class CachingKeyValuePageImpl extends KeyValuePageImpl {
 		cache.offsets[pos] = offset;
 	}
 
+	/**
+	 * Returns the index of the first cached restart position that is not
+	 * smaller than the given position.
+	 */
+	private int findRestart(int pos) {
+		int i = Arrays.binarySearch(cache.restarts, 0, cache.restartSize, pos);
+		return (i >= 0) ? i : -(i + 1);
+	}
+
+	private void insertIntoRestartCache(int pos) {
+		for (int i = findRestart(pos); i < cache.restartSize; i++) {
+			cache.restarts[i]++;
+		}
+
+		// a restart insert at the front also turns the former first key
+		// into a restart key
+		refreshRestartCache(pos);
+		refreshRestartCache(pos + 1);
+	}
+
+	private void deleteFromRestartCache(int pos) {
+		int i = findRestart(pos);
+
+		if ((i < cache.restartSize) && (cache.restarts[i] == pos)) {
+			System.arraycopy(cache.restarts, i + 1, cache.restarts, i,
+					cache.restartSize - i - 1);
+			cache.restartSize--;
+		}
+
+		for (int j = i; j < cache.restartSize; j++) {
+			cache.restarts[j]--;
+		}
+
+		// the successor of a deleted restart key may have become one
+		refreshRestartCache(pos);
+	}
+
+	private void refreshRestartCache(int pos) {
+		if (pos >= getRecordCount()) {
+			return;
+		}
+
+		boolean restart = !checkFlag(pos, RecordFlag.PREFIX_COMPRESSION);
+		int i = findRestart(pos);
+		boolean cached = ((i < cache.restartSize) && (cache.restarts[i] == pos));
+
+		if ((restart) && (!cached)) {
+			if (cache.restarts.length == cache.restartSize) {
+				// grow cache
+				int newCapacity = (cache.restarts.length * 3) / 2 + 1;
+				cache.restarts = Arrays.copyOf(cache.restarts, newCapacity);
+			}
+
+			System.arraycopy(cache.restarts, i, cache.restarts, i + 1,
+					cache.restartSize - i);
+			cache.restarts[i] = pos;
+			cache.restartSize++;
+		} else if ((!restart) && (cached)) {
+			System.arraycopy(cache.restarts, i + 1, cache.restarts, i,
+					cache.restartSize - i - 1);
+			cache.restartSize--;
+		}
+	}
+
 	private void updateOffsetLengthCache(int pos, int offset, int newLength) {
 		if (pos + 1 < cache.headerSize) {
 			// shift offsets following records before update
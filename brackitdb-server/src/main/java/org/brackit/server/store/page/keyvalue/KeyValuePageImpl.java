@@ -35,14 +35,32 @@ import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
 import org.brackit.server.store.page.BasePage;
 import org.brackit.server.store.page.RecordFlag;
+import org.brackit.xquery.util.Cfg;
 
 /**
+ * Key/value page without slot directory. Keys may be prefix-compressed
+ * against the key of the preceding record. To keep keys decodable with a
+ * bounded number of steps, a compressed insert starts a new chain with an
+ * uncompressed restart key as soon as a chain of compressed keys would
+ * exceed the configured restart interval. Thus, the binary search of the
+ * page contexts decodes at most {@link #RESTART_INTERVAL} keys per probe.
+ * <p>
+ * This class has no slot directory and locates records and chain heads by
+ * walking the page. {@link CachingKeyValuePageImpl} keeps the header offsets
+ * and the positions of the restart keys in the frame cache instead and
+ * answers both without a walk.
+ * 
  * @author Sebastian Baechle
  * 
  */
 public class KeyValuePageImpl extends BasePage implements KeyValuePage {
+	public static final String RESTART_INTERVAL = "org.brackit.server.store.page.keyvalue.restartInterval";
+
 	protected static final byte PREFIX_COMPRESSION_FLAG = RecordFlag.PREFIX_COMPRESSION.mask;
 
+	protected static final int restartInterval = Cfg.asInt(RESTART_INTERVAL,
+			16);
+
 	private static final Logger log = Logger.getLogger(KeyValuePageImpl.class);
 
 	private static final int HEADER_SIZE = 1;
@@ -210,8 +228,21 @@ public class KeyValuePageImpl extends BasePage implements KeyValuePage {
 					"Invalid pos number: %s", pos));
 		}
 
-		boolean success = (compressed) ? insertCompressed(pos, key, value)
-				: insertUncompressed(pos, key, value);
+		boolean success;
+		boolean restart = (compressed) && (needsRestart(pos));
+
+		if (!restart) {
+			success = (compressed) ? insertCompressed(pos, key, value)
+					: insertUncompressed(pos, key, value);
+		} else if (pos > 0) {
+			// start a new chain with an uncompressed restart key
+			success = insertUncompressed(pos, key, value);
+		} else {
+			// the new first key heads the chain: cut it behind the new key
+			success = (calcRequiredSpaceInsertCompressed(pos, key, value,
+					true) <= getFreeSpace())
+					&& decompress(pos) && insertCompressed(pos, key, value);
+		}
 
 		if (success) {
 			handle.setModified(true);
@@ -220,6 +251,74 @@ public class KeyValuePageImpl extends BasePage implements KeyValuePage {
 		return success;
 	}
 
+	/**
+	 * Returns <code>true</code> if a compressed key inserted at the given
+	 * position would extend a chain of compressed keys beyond the restart
+	 * interval. The head of a chain is either an uncompressed key or the
+	 * first key of the page. The records before <code>pos</code> have to be
+	 * walked to find the chain head, but the chain behind <code>pos</code> is
+	 * only followed until the interval is exceeded.
+	 */
+	protected boolean needsRestart(int pos) {
+		if (restartInterval <= 0) {
+			return false;
+		}
+
+		int recordCount = getRecordCount();
+		int offset = getStartOffset();
+		// a key inserted behind the head must be decoded itself
+		int self = (pos > 0) ? 1 : 0;
+		int chainLength = 0;
+
+		for (int i = 0; i < recordCount; i++) {
+			boolean compressed = getFlag(offset, PREFIX_COMPRESSION_FLAG);
+
+			if (i < pos) {
+				chainLength = ((i > 0) && (compressed)) ? chainLength + 1 : 0;
+			} else if (!compressed) {
+				break;
+			} else if (++chainLength + self > restartInterval) {
+				// following compressed keys are shifted behind the new key
+				return true;
+			}
+
+			offset += calcLengthFromEntry(offset);
+		}
+
+		return (chainLength + self > restartInterval);
+	}
+
+	/**
+	 * Rewrites the compressed key at the given position as uncompressed
+	 * restart key.
+	 */
+	private boolean decompress(int pos) {
+		int offset = getHeaderOffset(pos);
+
+		if (!getFlag(offset, PREFIX_COMPRESSION_FLAG)) {
+			return true;
+		}
+
+		byte[] key = getKey(pos);
+		byte[] value = getValue(pos);
+		int currentLength = calcLengthFromEntry(offset);
+		int newLength = HEADER_SIZE + calcRequiredUncompressedValueSpace(key)
+				+ calcRequiredUncompressedValueSpace(value);
+		int requiredSpace = newLength - currentLength;
+		byte flags = (byte) (getFlags(offset) & ~PREFIX_COMPRESSION_FLAG);
+
+		if (!prepareForUpdate(pos, offset, key, value, requiredSpace)) {
+			return false;
+		}
+
+		// write header, key, and value of restart record
+		offset = updateHeader(pos, offset, newLength, flags);
+		offset = writeUncompressedValue(offset, key);
+		offset = writeUncompressedValue(offset, value);
+
+		return true;
+	}
+
 	public int getUsedSpace(int pos) {
 		if ((pos < 0) || (pos > getRecordCount())) {
 			throw new IllegalArgumentException(String.format(
@@ -376,14 +475,13 @@ public class KeyValuePageImpl extends BasePage implements KeyValuePage {
 	}
 
 	protected int getHeaderOffset(int pos) {
-		if (pos > 0) {
-			int previousHeaderOffset = getHeaderOffset(pos - 1);
-			int previousLength = calcLengthFromEntry(previousHeaderOffset);
+		int offset = getStartOffset();
 
-			return previousHeaderOffset + previousLength;
-		} else {
-			return getStartOffset();
+		for (int i = 0; i < pos; i++) {
+			offset += calcLengthFromEntry(offset);
 		}
+
+		return offset;
 	}
 
 	protected final int calcLengthFromEntry(int offset) {
@@ -630,6 +728,15 @@ public class KeyValuePageImpl extends BasePage implements KeyValuePage {
 		int offset = getHeaderOffset(pos);
 		boolean compressed = getFlag(offset, PREFIX_COMPRESSION_FLAG);
 
+		if ((!compressed) && (pos < getRecordCount() - 1)
+				&& (getFlag(offset + calcLengthFromEntry(offset),
+						PREFIX_COMPRESSION_FLAG))) {
+			// The next key is compressed against the deleted restart key.
+			// Turn it into a restart key or, if there is not enough space,
+			// compress it against the previous key.
+			compressed = !decompress(pos + 1);
+		}
+
 		if (compressed) {
 			deleteCompressed(pos, offset);
 		} else {
@@ -793,7 +900,7 @@ public class KeyValuePageImpl extends BasePage implements KeyValuePage {
 
 		if (compressed) {
 			return calcRequiredSpaceInsertCompressed(pos, insertKey,
-					insertValue);
+					insertValue, needsRestart(pos));
 		} else {
 			return calcRequiredSpaceInsertUncompressed(insertKey, insertValue);
 		}
@@ -883,20 +990,21 @@ public class KeyValuePageImpl extends BasePage implements KeyValuePage {
 	}
 
 	private int calcRequiredSpaceInsertCompressed(int pos, byte[] insertKey,
-			byte[] insertValue) {
+			byte[] insertValue, boolean restart) {
 		byte[] previousKey = (pos > 0) ? getKey(pos - 1) : null;
-		int insertKeyLength = calcRequiredCompressedValueSpace(previousKey,
-				insertKey);
+		int insertKeyLength = ((restart) && (pos > 0)) ? calcRequiredUncompressedValueSpace(insertKey)
+				: calcRequiredCompressedValueSpace(previousKey, insertKey);
 		int insertValueLength = calcRequiredUncompressedValueSpace(insertValue);
 		int length = HEADER_SIZE + insertKeyLength + insertValueLength;
 
-		if (pos < getRecordCount()) {
+		if ((pos < getRecordCount())
+				&& (getFlag(getHeaderOffset(pos), PREFIX_COMPRESSION_FLAG))) {
 			byte[] nextKey = getKey(pos);
 
 			int oldNextKeyLength = calcRequiredCompressedValueSpace(
 					previousKey, nextKey);
-			int newNextKeyLength = calcRequiredCompressedValueSpace(insertKey,
-					nextKey);
+			int newNextKeyLength = ((restart) && (pos == 0)) ? calcRequiredUncompressedValueSpace(nextKey)
+					: calcRequiredCompressedValueSpace(insertKey, nextKey);
 
 			length += (newNextKeyLength - oldNextKeyLength);
 		}
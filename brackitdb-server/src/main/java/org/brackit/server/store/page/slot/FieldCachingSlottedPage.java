@@ -31,14 +31,21 @@ import java.util.Arrays;
 
 import org.brackit.server.io.buffer.Buffer;
 import org.brackit.server.io.buffer.Handle;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.store.page.PageCache;
 
 /**
+ * Slotted page which keeps the decoded values of one field in a
+ * {@link PageCache} attached to the buffer frame. The cache is shared by all
+ * page objects created for the frame and is rebuilt only if the modification
+ * count of the frame reveals a modification that was not applied through
+ * this class.
  * 
  * @author Sebastian Baechle
  * 
  */
 public class FieldCachingSlottedPage extends SlottedPage {
-	private class SlotCache {
+	private class SlotCache extends PageCache {
 		byte[][] fields;
 		int size;
 	}
@@ -56,13 +63,15 @@ public class FieldCachingSlottedPage extends SlottedPage {
 		super(buffer, handle, reserved);
 		this.fieldNo = fieldNo;
 
-		cache = (SlotCache) handle.getCache();
+		Object attached = handle.getCache();
 
-		if (cache == null) {
-			handle.setCache(new SlotCache());
-			cache = (SlotCache) handle.getCache();
+		while (!(attached instanceof SlotCache)) {
+			// replace missing cache or cache of former page type
+			handle.replaceCache(attached, new SlotCache());
+			attached = handle.getCache();
 		}
 
+		cache = (SlotCache) attached;
 		fillCache();
 	}
 
@@ -72,19 +81,35 @@ public class FieldCachingSlottedPage extends SlottedPage {
 
 	@Override
 	public void clear() {
-		clearCache();
 		super.clear();
+		clearCache();
+	}
+
+	@Override
+	public void format(PageID basePageID) {
+		super.format(basePageID);
+		clearCache();
+	}
+
+	@Override
+	public void setLSN(long LSN) {
+		boolean current = cache.isCurrent(handle);
+		super.setLSN(LSN);
+		cache.modified(handle, current);
 	}
 
 	private void clearCache() {
 		cache.fields = new byte[10][];
+		cache.size = 0;
+		cache.stamp(handle);
 	}
 
 	private void fillCache() {
 		synchronized (cache) {
-			if (cache.fields == null) {
+			if ((cache.fields == null) || (!cache.isCurrent(handle))) {
 				int recordCount = super.getRecordCount();
 				cache.fields = new byte[(recordCount != 0) ? recordCount : 10][];
+				cache.size = 0;
 
 				for (int slotNo = 0; slotNo < recordCount; slotNo++) {
 					try {
@@ -95,18 +120,22 @@ public class FieldCachingSlottedPage extends SlottedPage {
 						System.out.println("EntryCount " + recordCount);
 					}
 				}
+
+				cache.stamp(handle);
 			}
 		}
 	}
 
 	@Override
 	public void delete(int slotNo) {
+		boolean current = cache.isCurrent(handle);
 		super.delete(slotNo);
 		if (cache.size > slotNo) {
 			System.arraycopy(cache.fields, slotNo + 1, cache.fields, slotNo,
 					cache.size - slotNo - 1);
 			cache.size--;
 		}
+		cache.modified(handle, current);
 	}
 
 	@Override
@@ -138,6 +167,7 @@ public class FieldCachingSlottedPage extends SlottedPage {
 	@Override
 	public boolean write(int slotNo, Tuple tuple, boolean update,
 			boolean prefixCompression) {
+		boolean current = cache.isCurrent(handle);
 		boolean success = super.write(slotNo, tuple, update, prefixCompression);
 
 		if (success) {
@@ -146,6 +176,7 @@ public class FieldCachingSlottedPage extends SlottedPage {
 			} else {
 				insertIntoFieldCache(slotNo, tuple.get(fieldNo));
 			}
+			cache.modified(handle, current);
 		}
 
 		return success;
@@ -175,10 +206,14 @@ public class FieldCachingSlottedPage extends SlottedPage {
 
 	@Override
 	public boolean writeField(int slotNo, int fieldNo, byte[] newValue) {
+		boolean current = cache.isCurrent(handle);
 		boolean success = super.writeField(slotNo, fieldNo, newValue);
 
-		if ((success) && (fieldNo == this.fieldNo)) {
-			cache.fields[slotNo] = newValue;
+		if (success) {
+			if (fieldNo == this.fieldNo) {
+				cache.fields[slotNo] = newValue;
+			}
+			cache.modified(handle, current);
 		}
 
 		return success;
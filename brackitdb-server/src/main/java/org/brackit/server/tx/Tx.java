@@ -49,6 +49,15 @@ public interface Tx extends CachedObjectUser {
 
 	public boolean isReadOnly();
 
+	/**
+	 * Marks a running tx as read-only if it has not written any log records
+	 * and has not registered any commit hooks yet. A tx marked this way
+	 * switches back to normal processing as soon as it performs an update.
+	 * 
+	 * @return <code>true</code> iff the tx is read-only now
+	 */
+	public boolean markReadOnly();
+
 	public void setLockDepth(int lockDepth);
 
 	public int getLockDepth();
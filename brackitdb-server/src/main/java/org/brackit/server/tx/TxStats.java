@@ -35,7 +35,8 @@ import java.util.Arrays;
  * #written blocks, #read blocks, #locks, b-tree statistics, timings, etc...
  * 
  * All statistic values and counter can be reseted, incremented, and retrieved
- * (get).
+ * (get). The methods are synchronized, because the workers of a partitioned
+ * scan share the transaction of the consumer.
  * 
  * @author Karsten Schmidt
  * @since 2009-11-03
@@ -80,32 +81,32 @@ public class TxStats {
 	public TxStats() {
 	}
 
-	public void reset() {
+	public synchronized void reset() {
 		Arrays.fill(counter, 0);
 		Arrays.fill(timer, 0);
 	}
 
-	public void reset(int category) {
+	public synchronized void reset(int category) {
 		counter[category] = 0;
 	}
 
-	public void increment(int category) {
+	public synchronized void increment(int category) {
 		counter[category]++;
 	}
 
-	public void decrement(int category) {
+	public synchronized void decrement(int category) {
 		counter[category]--;
 	}
 
-	public void addTime(int category, long start, long end) {
+	public synchronized void addTime(int category, long start, long end) {
 		timer[category] += (end - start);
 	}
 
-	public long getTime(int category) {
+	public synchronized long getTime(int category) {
 		return timer[category];
 	}
 
-	public int get(int category) {
+	public synchronized int get(int category) {
 		return counter[category];
 	}
 }
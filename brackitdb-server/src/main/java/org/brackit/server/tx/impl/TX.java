@@ -51,6 +51,7 @@ import org.brackit.server.tx.TxMgr;
 import org.brackit.server.tx.TxState;
 import org.brackit.server.tx.TxStats;
 import org.brackit.server.tx.locking.LockControlBlock;
+import org.brackit.server.tx.locking.ValidationException;
 import org.brackit.server.tx.locking.services.LockServiceClient;
 import org.brackit.server.tx.log.Log;
 import org.brackit.server.tx.log.LogException;
@@ -69,6 +70,10 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 
 	protected final boolean readOnly;
 
+	// true if the tx was found to be read-only
+	// after it was started, e.g., by the compiler
+	private volatile boolean inferredReadOnly;
+
 	// != null if transaction is
 	// started from a connection
 	protected final Session session;
@@ -79,7 +84,7 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 
 	protected int lockDepth = 20;
 
-	protected long minUndoLSN = -1;
+	protected volatile long minUndoLSN = -1;
 
 	protected long prevLSN = -1;
 
@@ -163,6 +168,10 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 		boolean doCommit = voteCommit();
 
 		if (doCommit) {
+			if (isReadOnly() && preHooks.isEmpty() && postHooks.isEmpty()) {
+				doReadOnlyCommit();
+				return;
+			}
 			doCommit();
 		} else {
 			waitEOT();
@@ -187,7 +196,7 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 		}
 
 		// remove Tx from table
-		taMgr.getTxTable().remove(txID);
+		unregister();
 	}
 
 	@Override
@@ -209,6 +218,48 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 		}
 	}
 
+	/**
+	 * Fast path for read-only transactions: No log records are written, no
+	 * log force is required and no hooks have to be executed.
+	 */
+	private void doReadOnlyCommit() throws TxException {
+		if (!getState().isCommitable()) {
+			throw new TxException("Commit failed: Tx %s is in state %s", txID,
+					getState());
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Read-only commit of %s started.",
+					toString()));
+		}
+
+		try {
+			validate();
+		} catch (ValidationException e) {
+			doRollback();
+			throw new TxException(e,
+					"Validation for commit failed. The transaction was "
+							+ "rolled back.", toString());
+		}
+
+		for (LockServiceClient lockServiceClient : lcb.getLockServiceClients()) {
+			lockServiceClient.freeResources();
+		}
+
+		signalEOT(true);
+		unregister();
+	}
+
+	private void validate() throws ValidationException {
+		for (LockServiceClient lockServiceClient : lcb.getLockServiceClients()) {
+			if (!lockServiceClient.validate()) {
+				throw new ValidationException(
+						"Validation of %s failed at lock service %s.",
+						toShortString(), lockServiceClient);
+			}
+		}
+	}
+
 	private void doCommit() throws TxException {
 		if (!getState().isCommitable()) {
 			throw new TxException("Commit failed: Tx %s is in state %s", txID,
@@ -218,7 +269,9 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 			if (log.isDebugEnabled()) {
 				log.debug(String.format("Commit of %s started.", toString()));
 			}
-			
+
+			validate();
+
 			// check whether deleted pages are also released by now
 			if (releaseDeletedPages()) {
 				throw new ServerException("Some deleted pages are not released yet.");
@@ -228,7 +281,7 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 				hook.prepare(this);
 			}
 
-			if (!readOnly) {
+			if (!isReadOnly()) {
 				long commitLsn = logEOT(true);
 				taMgr.getLog().flush(commitLsn);
 			}
@@ -278,7 +331,7 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 
 		// first process log buffer and write compensation log file if the
 		// transaction is not read-only
-		if (!readOnly) {
+		if (!isReadOnly()) {
 			try {
 				// undo the operations done by transaction
 				undo(-1);
@@ -305,7 +358,7 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 		signalEOT(false);
 
 		// remove transaction control block
-		taMgr.getTxTable().remove(txID);
+		unregister();
 
 		if (log.isDebugEnabled()) {
 			log.debug(String.format("Transaction %s rolled back.", toString()));
@@ -317,7 +370,61 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 	}
 
 	public boolean isReadOnly() {
-		return this.readOnly;
+		return (this.readOnly || this.inferredReadOnly);
+	}
+
+	@Override
+	public synchronized boolean markReadOnly() {
+		if (readOnly || inferredReadOnly) {
+			return true;
+		}
+
+		if ((prevLSN != -1) || (!getState().isActive())
+				|| (!preHooks.isEmpty()) || (!postHooks.isEmpty())
+				|| (!pagesToRelease.isEmpty())) {
+			return false;
+		}
+
+		taMgr.getTxTable().remove(txID);
+		taMgr.getReadOnlyTxTable().put(txID, this);
+		inferredReadOnly = true;
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("%s marked as read-only.",
+					toShortString()));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Turns a tx that was marked read-only after its start back into an
+	 * update tx before it writes its first log record or registers any commit
+	 * hooks.
+	 */
+	private void upgrade() {
+		if (inferredReadOnly) {
+			synchronized (this) {
+				if (inferredReadOnly) {
+					taMgr.getReadOnlyTxTable().remove(txID);
+					taMgr.getTxTable().put(txID, this);
+					inferredReadOnly = false;
+
+					if (log.isDebugEnabled()) {
+						log.debug(String.format("%s is no longer read-only.",
+								toShortString()));
+					}
+				}
+			}
+		}
+	}
+
+	private synchronized void unregister() {
+		if (readOnly || inferredReadOnly) {
+			taMgr.getReadOnlyTxTable().remove(txID);
+		} else {
+			taMgr.getTxTable().remove(txID);
+		}
 	}
 
 	public IsolationLevel getIsolationLevel() {
@@ -431,7 +538,15 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 			throw new TxException("%s is readonly.", this);
 		}
 
+		upgrade();
+
 		try {
+			if ((updatePrevLSN) && (prevLSN == -1)) {
+				// publish a lower bound of the first LSN before appending so
+				// that a concurrent checkpoint cannot truncate the record
+				minUndoLSN = taMgr.getLog().getNextLSN();
+			}
+
 			long LSN = taMgr.getLog().append(loggable);
 
 			if (updatePrevLSN) {
@@ -535,6 +650,7 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 	}
 
 	public void addPreCommitHook(PreCommitHook hook, String name) {
+		upgrade();
 		preHooks.add(hook);
 
 		if (name != null) {
@@ -543,10 +659,13 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 	}
 
 	public void addPostCommitHook(PostCommitHook hook) {
+		upgrade();
 		postHooks.add(hook);
 	}
 
 	public void addFlushHook(int containerNo) {
+		upgrade();
+
 		if (flushHook == null) {
 			flushHook = new FlushBufferHook();
 			preHooks.add(flushHook);
@@ -557,6 +676,7 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 	
 	@Override
 	public void addDeletedPage(PageReleaser pr) {
+		upgrade();
 		pagesToRelease.add(pr);
 	}
 	
@@ -607,7 +727,7 @@ public class TX extends TxControlBlock implements org.brackit.server.tx.Tx {
 	@Override
 	public String toString() {
 		return String.format("TX[ID=%s, CID=%s, IL=%s, LD=%s, RO=%s]", txID,
-				session, isolationLevel, lockDepth, readOnly);
+				session, isolationLevel, lockDepth, isReadOnly());
 	}
 
 	@Override
@@ -27,6 +27,7 @@
  */
 package org.brackit.server.tx.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -64,6 +65,8 @@ public class TaMgrImpl implements TxMgr {
 
 	protected final TxTable txTable;
 
+	protected final TxTable readOnlyTxTable;
+
 	protected final int maxTransactions;
 
 	protected final AtomicLong TSNSequence;
@@ -78,6 +81,7 @@ public class TaMgrImpl implements TxMgr {
 		this.txLog = transactionLog;
 		this.bufferMgr = bufferMgr;
 		this.txTable = new TxTable(this);
+		this.readOnlyTxTable = new TxTable(this);
 		this.TSNSequence = new AtomicLong(0);
 
 		maxTransactions = Cfg.asInt(TxMgr.MAX_TX, 100);
@@ -99,6 +103,14 @@ public class TaMgrImpl implements TxMgr {
 		return txTable;
 	}
 
+	/**
+	 * Read-only transactions are kept in a separate table, which is neither
+	 * scanned by checkpoints nor by the restart procedure.
+	 */
+	TxTable getReadOnlyTxTable() {
+		return readOnlyTxTable;
+	}
+
 	public Log getLog() {
 		return txLog;
 	}
@@ -278,7 +290,7 @@ public class TaMgrImpl implements TxMgr {
 		long nextTSN = TSNSequence.incrementAndGet();
 		TxID txID = new TxID(nextTSN);
 		TX tx = new TX(this, txID, isolationLevel, readOnly, session, timeout);
-		txTable.put(txID, tx);
+		((readOnly) ? readOnlyTxTable : txTable).put(txID, tx);
 		tx.join();
 
 		if (log.isDebugEnabled()) {
@@ -289,7 +301,18 @@ public class TaMgrImpl implements TxMgr {
 	}
 
 	public Collection<TX> getTransactions() {
-		return txTable.getTransactions();
+		Collection<TX> transactions = txTable.getTransactions();
+		Collection<TX> readOnly = readOnlyTxTable.getTransactions();
+
+		if (readOnly.isEmpty()) {
+			return transactions;
+		}
+
+		ArrayList<TX> all = new ArrayList<TX>(transactions.size()
+				+ readOnly.size());
+		all.addAll(transactions);
+		all.addAll(readOnly);
+		return all;
 	}
 
 	public void shutdown() throws TxException {
@@ -319,16 +342,27 @@ public class TaMgrImpl implements TxMgr {
 	 * the log will still contain all entries required to a) redo all changes to
 	 * current dirty pages, and b) undo all changes of the currently running
 	 * transactions.
+	 * 
+	 * Transactions that did not write any log record yet are ignored. A
+	 * transaction publishes a lower bound of its first LSN before it appends
+	 * its first log record. Thus, if it is not visible here, its first log
+	 * record will not precede the end of log at the beginning of the
+	 * checkpoint, which bounds the truncation.
 	 */
 	@Override
 	public void checkpoint() throws TxException {
-		long minUndoLSN = Long.MAX_VALUE;
+		long minUndoLSN = txLog.getNextLSN();
 		long minRedoLSN = Long.MAX_VALUE;
 
 		minRedoLSN = bufferMgr.checkMinRedoLSN();
 
-		for (TX transaction : getTransactions()) {
-			minUndoLSN = Math.min(transaction.checkMinUndoLSN(), minUndoLSN);
+		for (TX transaction : txTable.getTransactions()) {
+			long txMinUndoLSN = transaction.checkMinUndoLSN();
+
+			if ((txMinUndoLSN >= 0) || (transaction.checkPrevLSN() != -1)) {
+				// a tx resurrected by restart has no known first LSN
+				minUndoLSN = Math.min(txMinUndoLSN, minUndoLSN);
+			}
 		}
 
 		if (log.isDebugEnabled()) {
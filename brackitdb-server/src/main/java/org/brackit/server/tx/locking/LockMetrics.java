@@ -0,0 +1,399 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.locking;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.brackit.server.xquery.function.bdb.statistics.InfoContributor;
+import org.brackit.server.xquery.function.bdb.statistics.LockStatistics;
+import org.brackit.xquery.util.Cfg;
+import org.brackit.xquery.util.log.Logger;
+
+/**
+ * Continuous metrics of a lock service: acquisitions per mode, conversions,
+ * a histogram of wait times, timeouts, deadlock victims and the hottest lock
+ * names. Lock names are sampled only for every n-th request and for every
+ * request that had to wait, so the hot lock report is cheap but approximate.
+ */
+public class LockMetrics implements LockMetricsMBean, InfoContributor {
+	private static final Logger log = Logger.getLogger(LockMetrics.class);
+
+	public static final String SAMPLE_RATE = "org.brackit.server.tx.locking.metrics.sampleRate";
+
+	public static final String HOT_LOCKS = "org.brackit.server.tx.locking.metrics.hotLocks";
+
+	public static final String JMX = "org.brackit.server.tx.locking.metrics.jmx";
+
+	private static final int SAMPLE_MASK = sampleMask(Cfg.asInt(SAMPLE_RATE,
+			64));
+
+	private static final int TOP_N = Cfg.asInt(HOT_LOCKS, 20);
+
+	private static final boolean REGISTER_MBEAN = Cfg.asBool(JMX, true);
+
+	/**
+	 * Bucket <code>i</code> counts waits of less than <code>2^i</code> ms.
+	 */
+	private static final int BUCKETS = 16;
+
+	private static final class Counter {
+		Object name;
+		long count;
+		long waits;
+		long error;
+	}
+
+	private final String name;
+
+	private final ConcurrentMap<Object, AtomicLong> acquisitions;
+
+	private final AtomicLong requests;
+
+	private final AtomicLong conversions;
+
+	private final AtomicLong waitTime;
+
+	private final AtomicLong timeouts;
+
+	private final AtomicLong victims;
+
+	private final AtomicLong validationFailures;
+
+	private final AtomicLongArray waitHistogram;
+
+	private final HashMap<Object, Counter> hotLocks;
+
+	private int sampleCounter;
+
+	public LockMetrics(String name) {
+		this.name = name;
+		this.acquisitions = new ConcurrentHashMap<Object, AtomicLong>();
+		this.requests = new AtomicLong();
+		this.conversions = new AtomicLong();
+		this.waitTime = new AtomicLong();
+		this.timeouts = new AtomicLong();
+		this.victims = new AtomicLong();
+		this.validationFailures = new AtomicLong();
+		this.waitHistogram = new AtomicLongArray(BUCKETS);
+		this.hotLocks = new HashMap<Object, Counter>();
+	}
+
+	private static int sampleMask(int rate) {
+		int mask = 1;
+		while (mask < rate) {
+			mask <<= 1;
+		}
+		return mask - 1;
+	}
+
+	/**
+	 * Makes the metrics visible through <code>bdb:lock-statistics()</code>
+	 * and JMX.
+	 */
+	public void register() {
+		LockStatistics.add(this);
+
+		if (REGISTER_MBEAN) {
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName on = objectName();
+				if (server.isRegistered(on)) {
+					server.unregisterMBean(on);
+				}
+				server.registerMBean(this, on);
+			} catch (JMException e) {
+				log.warn(String.format("Could not register lock metrics "
+						+ "of %s at JMX server.", name), e);
+			}
+		}
+	}
+
+	public void unregister() {
+		LockStatistics.remove(this);
+
+		if (REGISTER_MBEAN) {
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName on = objectName();
+				if (server.isRegistered(on)) {
+					server.unregisterMBean(on);
+				}
+			} catch (JMException e) {
+				log.warn(String.format("Could not unregister lock metrics "
+						+ "of %s at JMX server.", name), e);
+			}
+		}
+	}
+
+	private ObjectName objectName() throws JMException {
+		return new ObjectName("org.brackit.server:type=LockService,name="
+				+ ObjectName.quote(name));
+	}
+
+	public void acquired(Object lockName, Object mode, boolean conversion) {
+		requests.incrementAndGet();
+		AtomicLong count = acquisitions.get(mode);
+		if (count == null) {
+			AtomicLong newCount = new AtomicLong();
+			count = acquisitions.putIfAbsent(mode, newCount);
+			if (count == null) {
+				count = newCount;
+			}
+		}
+		count.incrementAndGet();
+
+		if (conversion) {
+			conversions.incrementAndGet();
+		}
+
+		// racy counter is sufficient for sampling
+		if ((++sampleCounter & SAMPLE_MASK) == 0) {
+			sample(lockName, false);
+		}
+	}
+
+	public void waited(Object lockName, long time) {
+		waitTime.addAndGet(time);
+		int bucket = 0;
+		while ((bucket < BUCKETS - 1) && (time >= (1L << bucket))) {
+			bucket++;
+		}
+		waitHistogram.incrementAndGet(bucket);
+		sample(lockName, true);
+	}
+
+	public void timedOut() {
+		timeouts.incrementAndGet();
+	}
+
+	public void deadlockVictim() {
+		victims.incrementAndGet();
+	}
+
+	public void validationFailed() {
+		validationFailures.incrementAndGet();
+	}
+
+	private synchronized void sample(Object lockName, boolean waited) {
+		// space-saving top-k sketch with a few spare slots
+		Counter counter = hotLocks.get(lockName);
+
+		if (counter == null) {
+			if (hotLocks.size() < 4 * TOP_N) {
+				counter = new Counter();
+			} else {
+				for (Counter c : hotLocks.values()) {
+					if ((counter == null) || (c.count < counter.count)) {
+						counter = c;
+					}
+				}
+				hotLocks.remove(counter.name);
+				counter.error = counter.count;
+				counter.waits = 0;
+			}
+			counter.name = lockName;
+			hotLocks.put(lockName, counter);
+		}
+
+		counter.count++;
+		if (waited) {
+			counter.waits++;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	@Override
+	public long getConversionCount() {
+		return conversions.get();
+	}
+
+	@Override
+	public long getWaitCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += waitHistogram.get(i);
+		}
+		return count;
+	}
+
+	@Override
+	public long getWaitTime() {
+		return waitTime.get();
+	}
+
+	@Override
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	@Override
+	public long getDeadlockVictimCount() {
+		return victims.get();
+	}
+
+	@Override
+	public long getValidationFailureCount() {
+		return validationFailures.get();
+	}
+
+	@Override
+	public String[] getWaitHistogram() {
+		String[] histogram = new String[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			histogram[i] = String.format("%s%sms: %s",
+					(i < BUCKETS - 1) ? "<" : ">=", 1L << Math.min(i,
+							BUCKETS - 2), waitHistogram.get(i));
+		}
+		return histogram;
+	}
+
+	@Override
+	public String[] getAcquisitions() {
+		List<String> list = new ArrayList<String>();
+		for (Map.Entry<Object, AtomicLong> e : acquisitions.entrySet()) {
+			list.add(String.format("%s: %s", e.getKey(), e.getValue().get()));
+		}
+		Collections.sort(list);
+		return list.toArray(new String[list.size()]);
+	}
+
+	@Override
+	public String[] getHotLocks() {
+		List<Counter> list;
+		synchronized (this) {
+			list = new ArrayList<Counter>(hotLocks.size());
+			for (Counter c : hotLocks.values()) {
+				Counter copy = new Counter();
+				copy.name = c.name;
+				copy.count = c.count;
+				copy.waits = c.waits;
+				copy.error = c.error;
+				list.add(copy);
+			}
+		}
+		Collections.sort(list, new Comparator<Counter>() {
+			@Override
+			public int compare(Counter o1, Counter o2) {
+				return (o1.count > o2.count) ? -1 : (o1.count < o2.count) ? 1
+						: 0;
+			}
+		});
+		int size = Math.min(TOP_N, list.size());
+		String[] top = new String[size];
+		for (int i = 0; i < size; i++) {
+			Counter c = list.get(i);
+			top[i] = String.format("%s: samples=%s (+/-%s) waits=%s", c.name,
+					c.count, c.error, c.waits);
+		}
+		return top;
+	}
+
+	@Override
+	public void reset() {
+		acquisitions.clear();
+		requests.set(0);
+		conversions.set(0);
+		waitTime.set(0);
+		timeouts.set(0);
+		victims.set(0);
+		validationFailures.set(0);
+		for (int i = 0; i < BUCKETS; i++) {
+			waitHistogram.set(i, 0);
+		}
+		synchronized (this) {
+			hotLocks.clear();
+		}
+	}
+
+	@Override
+	public int getInfoID() {
+		return NO_ID;
+	}
+
+	@Override
+	public String getInfo() {
+		StringBuilder out = new StringBuilder();
+		out.append(name);
+		out.append(": requests=");
+		out.append(getRequestCount());
+		out.append(", conversions=");
+		out.append(getConversionCount());
+		out.append(", waits=");
+		out.append(getWaitCount());
+		out.append(", wait time=");
+		out.append(getWaitTime());
+		out.append("ms, timeouts=");
+		out.append(getTimeoutCount());
+		out.append(", deadlock victims=");
+		out.append(getDeadlockVictimCount());
+		if (validationFailures.get() > 0) {
+			out.append(", validation failures=");
+			out.append(getValidationFailureCount());
+		}
+		out.append("\n  acquisitions:");
+		for (String s : getAcquisitions()) {
+			out.append("\n    ");
+			out.append(s);
+		}
+		out.append("\n  wait histogram:");
+		for (String s : getWaitHistogram()) {
+			out.append("\n    ");
+			out.append(s);
+		}
+		out.append("\n  hot locks:");
+		for (String s : getHotLocks()) {
+			out.append("\n    ");
+			out.append(s);
+		}
+		out.append("\n");
+		return out.toString();
+	}
+}
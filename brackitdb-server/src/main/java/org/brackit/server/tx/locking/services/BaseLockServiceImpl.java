@@ -28,6 +28,7 @@
 package org.brackit.server.tx.locking.services;
 
 import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.locking.LockMetrics;
 import org.brackit.server.tx.locking.protocol.LockMode;
 import org.brackit.server.tx.locking.table.LockTable;
 import org.brackit.server.tx.locking.table.LockTableClient;
@@ -49,6 +50,13 @@ public abstract class BaseLockServiceImpl<T extends LockMode<T>> implements
 		this.name = name;
 		this.table = table;
 		ListLocks.add(this);
+		LockMetrics metrics = new LockMetrics(name);
+		table.setMetrics(metrics);
+		metrics.register();
+	}
+
+	public LockMetrics getMetrics() {
+		return table.getMetrics();
 	}
 
 	public final String listLocks() {
@@ -39,10 +39,21 @@ import org.brackit.server.tx.locking.LockClass;
 import org.brackit.server.tx.locking.LockName;
 import org.brackit.server.tx.locking.protocol.URIX;
 import org.brackit.server.tx.locking.protocol.URIX.Mode;
+import org.brackit.server.tx.locking.table.LockTable;
+import org.brackit.server.tx.locking.table.TreeLockNameFactory;
+import org.brackit.server.tx.locking.table.TreeLockTableClient;
 import org.brackit.server.tx.locking.util.DefaultLockName;
+import org.brackit.server.tx.locking.util.KeyRangeLockNameFactory;
 import org.brackit.xquery.util.Cfg;
 
 /**
+ * Key-value locking for B+-trees. Key locks are organized in a hierarchy
+ * index -> key range -> key, where a key range comprises all keys sharing
+ * the same short prefix. A scan which reads many keys of a range is
+ * escalated to a single range lock (and eventually to an index lock) by
+ * the usual lock escalation of the tree lock table. Inserts and deletes
+ * still acquire intention locks on the ranges and the index, so phantom
+ * protection is preserved.
  * 
  * @author Sebastian Baechle
  * 
@@ -51,6 +62,66 @@ public class KVLLockService extends GenericLockServiceImpl<URIX.Mode> implements
 		IndexLockService {
 	private static final Logger log = Logger.getLogger(KVLLockService.class);
 
+	public static final String ESCALATION_COUNT = "org.brackit.server.tx.locking.services.kvl.escalationCount";
+
+	public static final String RANGE_PREFIX_LENGTH = "org.brackit.server.tx.locking.services.kvl.rangePrefixLength";
+
+	private static final class RangeLockName implements LockName {
+		private final int unitID;
+
+		private final int range;
+
+		private final boolean isIndex;
+
+		RangeLockName(int unitID, int range, boolean isIndex) {
+			this.unitID = unitID;
+			this.range = range;
+			this.isIndex = isIndex;
+		}
+
+		@Override
+		public int hashCode() {
+			return (unitID * 31 + range) * 2 + ((isIndex) ? 1 : 0);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof RangeLockName)) {
+				return false;
+			}
+			RangeLockName name = (RangeLockName) obj;
+			return (unitID == name.unitID) && (range == name.range)
+					&& (isIndex == name.isIndex);
+		}
+
+		@Override
+		public String toString() {
+			return (isIndex) ? String.format("%s", unitID) : String.format(
+					"%s[%s]", unitID, range);
+		}
+	}
+
+	/**
+	 * The lock depth of a tx only applies to document locks. Index key locks
+	 * are escalated on the basis of lock counts only.
+	 */
+	private static final class IndexLockTableClient extends
+			TreeLockTableClient<Mode> {
+		IndexLockTableClient(KVLLockService ls, Tx tx, LockTable<Mode> table,
+				int escalationCount) {
+			super(ls, tx, table, escalationCount, -1);
+		}
+
+		@Override
+		protected int getLockDepth() {
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	private final int escalationCount;
+
+	private final int rangePrefixLength;
+
 	public KVLLockService(String name) {
 		this(name, Cfg.asInt(TxMgr.MAX_LOCKS, 20000), Cfg.asInt(TxMgr.MAX_TX,
 				100));
@@ -58,6 +129,21 @@ public class KVLLockService extends GenericLockServiceImpl<URIX.Mode> implements
 
 	public KVLLockService(String name, int maxLocks, int maxTransactions) {
 		super(name, maxLocks, maxTransactions);
+		this.escalationCount = Cfg.asInt(ESCALATION_COUNT, 64);
+		this.rangePrefixLength = Cfg.asInt(RANGE_PREFIX_LENGTH, 3);
+	}
+
+	@Override
+	protected TreeLockTableClient<Mode> getClient(Tx tx) {
+		TreeLockTableClient<Mode> client = (TreeLockTableClient<Mode>) tx
+				.getLockCB().get(this);
+
+		if (client == null) {
+			client = new IndexLockTableClient(this, tx, table, escalationCount);
+			tx.getLockCB().add(this, client);
+		}
+
+		return client;
 	}
 
 	@Override
@@ -76,7 +162,8 @@ public class KVLLockService extends GenericLockServiceImpl<URIX.Mode> implements
 		 * delete key to assure that no other tx read it or uses it as a
 		 * boundary of a range lock.
 		 */
-		LockName nextKeyLockName = createLockName(unitID, nextKey, nextValue);
+		TreeLockNameFactory nextKeyLockName = createLockNames(unitID,
+				nextKey, nextValue);
 		Mode grantedMode = getClient(tx).request(nextKeyLockName,
 				LockClass.COMMIT_DURATION, Mode.X, conditional);
 
@@ -90,7 +177,7 @@ public class KVLLockService extends GenericLockServiceImpl<URIX.Mode> implements
 			return false;
 		}
 
-		LockName keyLockName = createLockName(unitID, key, value);
+		TreeLockNameFactory keyLockName = createLockNames(unitID, key, value);
 		grantedMode = getClient(tx).request(keyLockName,
 				LockClass.INSTANT_DURATION, Mode.X, conditional);
 
@@ -117,7 +204,8 @@ public class KVLLockService extends GenericLockServiceImpl<URIX.Mode> implements
 		 * locked) then IX is sufficient for key else propagate read lock on new
 		 * interval (key, nextKey] to (currentKey, key] with an X lock
 		 */
-		LockName nextKeyLockName = createLockName(unitID, nextKey, nextValue);
+		TreeLockNameFactory nextKeyLockName = createLockNames(unitID,
+				nextKey, nextValue);
 		Mode grantedMode = getClient(tx).request(nextKeyLockName,
 				LockClass.INSTANT_DURATION, Mode.IX, conditional);
 
@@ -131,7 +219,7 @@ public class KVLLockService extends GenericLockServiceImpl<URIX.Mode> implements
 			return false;
 		}
 
-		LockName keyLockName = createLockName(unitID, key, value);
+		TreeLockNameFactory keyLockName = createLockNames(unitID, key, value);
 		Mode requestMode = (grantedMode.isCompatible(Mode.IX)) ? Mode.IX
 				: Mode.X;
 		grantedMode = getClient(tx).request(keyLockName,
@@ -153,7 +241,8 @@ public class KVLLockService extends GenericLockServiceImpl<URIX.Mode> implements
 	@Override
 	public boolean lockRead(Tx tx, int unitID, PageID rootPageID, byte[] key,
 			byte[] value, boolean conditional) throws IndexOperationException {
-		LockName readKeyLockName = createLockName(unitID, key, value);
+		TreeLockNameFactory readKeyLockName = createLockNames(unitID, key,
+				value);
 		Mode grantedMode = getClient(tx).request(readKeyLockName,
 				LockClass.COMMIT_DURATION, Mode.R, conditional);
 
@@ -176,6 +265,32 @@ public class KVLLockService extends GenericLockServiceImpl<URIX.Mode> implements
 		return lockRead(tx, unitID, rootPageID, key, value, conditional);
 	}
 
+	protected TreeLockNameFactory createLockNames(int unitID, byte[] key,
+			byte[] value) {
+		LockName index = new RangeLockName(unitID, 0, true);
+		LockName range = new RangeLockName(unitID, createRange(key), false);
+		return new KeyRangeLockNameFactory(index, range, createLockName(unitID,
+				key, value));
+	}
+
+	/**
+	 * Maps a key to its key range. All keys sharing the first
+	 * <code>rangePrefixLength</code> bytes (but at least the last byte is
+	 * ignored) belong to the same range. The EOF pseudo key forms a range of
+	 * its own.
+	 */
+	protected int createRange(byte[] key) {
+		if (key == null) {
+			return -1;
+		}
+		int length = Math.min(rangePrefixLength, key.length - 1);
+		int hash = 1;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + key[i];
+		}
+		return hash & Integer.MAX_VALUE;
+	}
+
 	protected LockName createLockName(int unitID, byte[] key, byte[] value) {
 		return new DefaultLockName((((long) unitID) << 32)
 				| ((key != null) ? Arrays.hashCode(key) : 0));
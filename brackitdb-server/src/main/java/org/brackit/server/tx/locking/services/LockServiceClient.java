@@ -54,6 +54,14 @@ public interface LockServiceClient {
 	 */
 	public Collection<Blocking> blockedAt();
 
+	/**
+	 * Checks at commit whether the accesses of the tx at this lock service
+	 * are still valid. Pessimistic lock services always succeed.
+	 * 
+	 * @return <code>true</code> iff the tx may commit
+	 */
+	public boolean validate();
+
 	/**
 	 * Removes all locks of the tx from the lock service.
 	 */
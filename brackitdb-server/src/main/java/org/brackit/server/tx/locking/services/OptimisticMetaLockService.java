@@ -0,0 +1,535 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.locking.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.XTClock;
+import org.brackit.server.tx.locking.Blocking;
+import org.brackit.server.tx.locking.LockClass;
+import org.brackit.server.tx.locking.LockException;
+import org.brackit.server.tx.locking.LockMetrics;
+import org.brackit.server.tx.locking.LockServiceClientCB;
+import org.brackit.server.tx.locking.protocol.TreeLockMode;
+import org.brackit.xquery.util.log.Logger;
+
+/**
+ * Optimistic variant of a {@link MetaLockService}. Shared requests of
+ * transactions with long read locks do not acquire any locks but are only
+ * recorded in the read set of the requesting transaction. Update and exclusive
+ * requests are passed to a pessimistic delegate, because nodes are updated in
+ * place and the undo of a transaction must not interfere with concurrent
+ * writers. All write requests are additionally recorded in the write set of
+ * the transaction.
+ * <p>
+ * Because of the in-place updates, isolation levels with short read locks
+ * cannot skip locking: their shared requests are passed to the delegate as
+ * well, so that they wait for uncommitted writers instead of reading dirty
+ * data. Only levels without any read locks skip shared requests.
+ * <p>
+ * At commit, a transaction is validated backwards against the write sets of
+ * all transactions which were active or committed since its first access.
+ */
+public class OptimisticMetaLockService<T extends TreeLockMode<T>> implements
+		MetaLockService<T> {
+	private static final Logger log = Logger
+			.getLogger(OptimisticMetaLockService.class);
+
+	enum Scope {
+		NODE, LEVEL, TREE, EDGE
+	};
+
+	static final class Access {
+		final XTCdeweyID deweyID;
+
+		final Scope scope;
+
+		final int edge;
+
+		Access(XTCdeweyID deweyID, Scope scope, int edge) {
+			this.deweyID = deweyID;
+			this.scope = scope;
+			this.edge = edge;
+		}
+
+		boolean conflicts(Access write) {
+			if (!deweyID.getDocID().equals(write.deweyID.getDocID())) {
+				return false;
+			}
+			if ((scope == Scope.TREE)
+					&& (deweyID.isAncestorOrSelfOf(write.deweyID))) {
+				return true;
+			}
+			if ((write.scope == Scope.TREE)
+					&& (write.deweyID.isAncestorOrSelfOf(deweyID))) {
+				return true;
+			}
+			if ((scope == Scope.EDGE) || (write.scope == Scope.EDGE)) {
+				return (scope == write.scope) && (edge == write.edge)
+						&& (deweyID.equals(write.deweyID));
+			}
+			if (scope == Scope.LEVEL) {
+				return deweyID.isParentOf(write.deweyID)
+						|| deweyID.equals(write.deweyID);
+			}
+			if (write.scope == Scope.LEVEL) {
+				return write.deweyID.isParentOf(deweyID)
+						|| write.deweyID.equals(deweyID);
+			}
+			return deweyID.equals(write.deweyID);
+		}
+
+		@Override
+		public String toString() {
+			return (scope == Scope.EDGE) ? String.format("%s(%s#%s)", scope,
+					deweyID, edge) : String.format("%s(%s)", scope, deweyID);
+		}
+	}
+
+	static final class CommittedWrites {
+		final long commitSeq;
+
+		final List<Access> writes;
+
+		CommittedWrites(long commitSeq, List<Access> writes) {
+			this.commitSeq = commitSeq;
+			this.writes = writes;
+		}
+	}
+
+	final class Client implements LockServiceClient {
+		final Tx tx;
+
+		final LockServiceClientCB lscb;
+
+		final long startSeq;
+
+		final List<Access> reads = new ArrayList<Access>();
+
+		final List<Access> writes = new ArrayList<Access>();
+
+		Client(Tx tx, long startSeq) {
+			this.tx = tx;
+			this.startSeq = startSeq;
+			this.lscb = new LockServiceClientCB(OptimisticMetaLockService.this,
+					tx);
+		}
+
+		@Override
+		public LockServiceClientCB getLockServiceCB() {
+			return lscb;
+		}
+
+		@Override
+		public Collection<Blocking> blockedAt() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean validate() {
+			return OptimisticMetaLockService.this.validate(this);
+		}
+
+		@Override
+		public void freeResources() {
+			finish(this);
+		}
+
+		@Override
+		public List<XTClock> getLocks() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public String listLocks() {
+			synchronized (OptimisticMetaLockService.this) {
+				return String.format("%s reads=%s writes=%s", tx
+						.toShortString(), reads, writes);
+			}
+		}
+
+		@Override
+		public void unblock() {
+		}
+
+		@Override
+		public String toString() {
+			return OptimisticMetaLockService.this.toString();
+		}
+	}
+
+	private final String name;
+
+	private final MetaLockService<T> delegate;
+
+	private final Map<Tx, Client> active = new IdentityHashMap<Tx, Client>();
+
+	private final LinkedList<CommittedWrites> committed = new LinkedList<CommittedWrites>();
+
+	private long commitSeq;
+
+	private final LockMetrics metrics;
+
+	public OptimisticMetaLockService(String name, MetaLockService<T> delegate) {
+		this.name = name;
+		this.delegate = delegate;
+		this.metrics = new LockMetrics(name);
+		metrics.register();
+	}
+
+	public LockMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public synchronized String listLocks() {
+		StringBuilder out = new StringBuilder();
+		for (Client client : active.values()) {
+			out.append(client.listLocks());
+			out.append("\n");
+		}
+		return out.toString() + delegate.listLocks();
+	}
+
+	private synchronized Client getClient(Tx tx) {
+		Client client = active.get(tx);
+
+		if (client == null) {
+			client = new Client(tx, commitSeq);
+			active.put(tx, client);
+			tx.getLockCB().add(this, client);
+		}
+
+		return client;
+	}
+
+	private XTCdeweyID target(Tx tx, XTCdeweyID deweyID, boolean[] tree) {
+		int lockDepth = tx.getLockDepth();
+
+		if (lockDepth < 0) {
+			tree[0] = true;
+			return deweyID.getAncestor(0);
+		}
+		if (lockDepth < deweyID.level) {
+			tree[0] = true;
+			return deweyID.getAncestor(lockDepth);
+		}
+		return deweyID;
+	}
+
+	private boolean shortReadLocks(Tx tx) {
+		return tx.getIsolationLevel().shortReadLocks();
+	}
+
+	private void read(Tx tx, XTCdeweyID deweyID, Scope scope, int edge) {
+		if (!tx.getIsolationLevel().longReadLocks()) {
+			// validation of reads is only required for repeatable reads
+			return;
+		}
+
+		boolean[] tree = new boolean[1];
+		XTCdeweyID target = target(tx, deweyID, tree);
+		Access access = (tree[0]) ? new Access(target, Scope.TREE, 0)
+				: new Access(target, scope, edge);
+		Client client = getClient(tx);
+
+		synchronized (this) {
+			client.reads.add(access);
+		}
+		metrics.acquired(access.deweyID, access.scope, false);
+	}
+
+	private void write(Tx tx, XTCdeweyID deweyID, Scope scope, int edge) {
+		boolean[] tree = new boolean[1];
+		XTCdeweyID target = target(tx, deweyID, tree);
+		Access access = (tree[0]) ? new Access(target, Scope.TREE, 0)
+				: new Access(target, scope, edge);
+		Client client = getClient(tx);
+
+		synchronized (this) {
+			client.writes.add(access);
+		}
+	}
+
+	synchronized boolean validate(Client client) {
+		if (client.reads.isEmpty()) {
+			return true;
+		}
+
+		for (CommittedWrites cw : committed) {
+			if ((cw.commitSeq > client.startSeq)
+					&& (conflicts(client.reads, cw.writes))) {
+				metrics.validationFailed();
+				return false;
+			}
+		}
+
+		for (Client other : active.values()) {
+			if ((other != client) && (conflicts(client.reads, other.writes))) {
+				metrics.validationFailed();
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean conflicts(List<Access> reads, List<Access> writes) {
+		for (Access read : reads) {
+			for (Access write : writes) {
+				if (read.conflicts(write)) {
+					if (log.isDebugEnabled()) {
+						log.debug(String.format(
+								"Validation conflict: %s vs. %s", read,
+								write));
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	synchronized void finish(Client client) {
+		if (active.remove(client.tx) == null) {
+			return;
+		}
+
+		// keep writes also of aborted transactions because
+		// concurrent readers may have seen their effects
+		if (!client.writes.isEmpty()) {
+			committed.add(new CommittedWrites(++commitSeq, client.writes));
+		}
+
+		long minStartSeq = commitSeq;
+		for (Client other : active.values()) {
+			minStartSeq = Math.min(minStartSeq, other.startSeq);
+		}
+
+		for (Iterator<CommittedWrites> it = committed.iterator(); it.hasNext();) {
+			if (it.next().commitSeq > minStartSeq) {
+				break;
+			}
+			it.remove();
+		}
+	}
+
+	@Override
+	public boolean supportsSharedLevelLock(Tx tx) {
+		return (shortReadLocks(tx)) ? delegate.supportsSharedLevelLock(tx)
+				: true;
+	}
+
+	@Override
+	public boolean supportsSharedTreeLock(Tx tx) {
+		return (shortReadLocks(tx)) ? delegate.supportsSharedTreeLock(tx)
+				: true;
+	}
+
+	@Override
+	public boolean supportsExclusiveTreeLock(Tx tx) {
+		return delegate.supportsExclusiveTreeLock(tx);
+	}
+
+	@Override
+	public T lockNodeShared(Tx tx, XTCdeweyID deweyID, LockClass lockClass,
+			boolean conditional) throws LockException {
+		if (shortReadLocks(tx)) {
+			return delegate.lockNodeShared(tx, deweyID, lockClass,
+					conditional);
+		}
+		read(tx, deweyID, Scope.NODE, 0);
+		return null;
+	}
+
+	@Override
+	public T lockNodeUpdate(Tx tx, XTCdeweyID deweyID, LockClass lockClass,
+			boolean conditional) throws LockException {
+		write(tx, deweyID, Scope.NODE, 0);
+		return delegate.lockNodeUpdate(tx, deweyID, lockClass, conditional);
+	}
+
+	@Override
+	public T lockNodeExclusive(Tx tx, XTCdeweyID deweyID, LockClass lockClass,
+			boolean conditional) throws LockException {
+		write(tx, deweyID, Scope.NODE, 0);
+		return delegate.lockNodeExclusive(tx, deweyID, lockClass, conditional);
+	}
+
+	@Override
+	public T lockLevelShared(Tx tx, XTCdeweyID deweyID, LockClass lockClass,
+			boolean conditional) throws LockException {
+		if (shortReadLocks(tx)) {
+			return delegate.lockLevelShared(tx, deweyID, lockClass,
+					conditional);
+		}
+		read(tx, deweyID, Scope.LEVEL, 0);
+		return null;
+	}
+
+	@Override
+	public T lockLevelPartExclusive(Tx tx, XTCdeweyID deweyID,
+			LockClass lockClass, boolean conditional) throws LockException {
+		write(tx, deweyID, Scope.LEVEL, 0);
+		return delegate.lockLevelPartExclusive(tx, deweyID, lockClass,
+				conditional);
+	}
+
+	@Override
+	public T lockTreeShared(Tx tx, XTCdeweyID deweyID, LockClass lockClass,
+			boolean conditional) throws LockException {
+		if (shortReadLocks(tx)) {
+			return delegate.lockTreeShared(tx, deweyID, lockClass,
+					conditional);
+		}
+		read(tx, deweyID, Scope.TREE, 0);
+		return null;
+	}
+
+	@Override
+	public T lockTreeUpdate(Tx tx, XTCdeweyID deweyID, LockClass lockClass,
+			boolean conditional) throws LockException {
+		write(tx, deweyID, Scope.TREE, 0);
+		return delegate.lockTreeUpdate(tx, deweyID, lockClass, conditional);
+	}
+
+	@Override
+	public T lockTreeExclusive(Tx tx, XTCdeweyID deweyID, LockClass lockClass,
+			boolean conditional) throws LockException {
+		write(tx, deweyID, Scope.TREE, 0);
+		return delegate.lockTreeExclusive(tx, deweyID, lockClass, conditional);
+	}
+
+	@Override
+	public void unlockNode(Tx tx, XTCdeweyID deweyID) throws LockException {
+		// long reads are not locked and writes are held until commit
+		if (shortReadLocks(tx)) {
+			delegate.unlockNode(tx, deweyID);
+		}
+	}
+
+	@Override
+	public List<XTClock> getLocks(XTCdeweyID deweyID) throws LockException {
+		return delegate.getLocks(deweyID);
+	}
+
+	@Override
+	public void lockEdgeShared(Tx tx, XTCdeweyID deweyID, Edge edge)
+			throws LockException {
+		if (shortReadLocks(tx)) {
+			delegate.lockEdgeShared(tx, deweyID, edge);
+			return;
+		}
+		read(tx, deweyID, Scope.EDGE, edge.getID());
+	}
+
+	@Override
+	public void lockEdgeUpdate(Tx tx, XTCdeweyID deweyID, Edge edge)
+			throws LockException {
+		write(tx, deweyID, Scope.EDGE, edge.getID());
+		delegate.lockEdgeUpdate(tx, deweyID, edge);
+	}
+
+	@Override
+	public void lockEdgeExclusive(Tx tx, XTCdeweyID deweyID, Edge edge)
+			throws LockException {
+		write(tx, deweyID, Scope.EDGE, edge.getID());
+		delegate.lockEdgeExclusive(tx, deweyID, edge);
+	}
+
+	@Override
+	public void lockEdgeShared(Tx tx, XTCdeweyID deweyID, String edgeName)
+			throws LockException {
+		if (shortReadLocks(tx)) {
+			delegate.lockEdgeShared(tx, deweyID, edgeName);
+			return;
+		}
+		read(tx, deweyID, Scope.EDGE, edgeName.hashCode());
+	}
+
+	@Override
+	public void lockEdgeUpdate(Tx tx, XTCdeweyID deweyID, String edgeName)
+			throws LockException {
+		write(tx, deweyID, Scope.EDGE, edgeName.hashCode());
+		delegate.lockEdgeUpdate(tx, deweyID, edgeName);
+	}
+
+	@Override
+	public void lockEdgeExclusive(Tx tx, XTCdeweyID deweyID, String edgeName)
+			throws LockException {
+		write(tx, deweyID, Scope.EDGE, edgeName.hashCode());
+		delegate.lockEdgeExclusive(tx, deweyID, edgeName);
+	}
+
+	@Override
+	public void unlockEdge(Tx tx, XTCdeweyID deweyID, Edge edge)
+			throws LockException {
+		// long reads are not locked and writes are held until commit
+		if (shortReadLocks(tx)) {
+			delegate.unlockEdge(tx, deweyID, edge);
+		}
+	}
+
+	@Override
+	public void unlockEdge(Tx tx, XTCdeweyID deweyID, String edgeName)
+			throws LockException {
+		// long reads are not locked and writes are held until commit
+		if (shortReadLocks(tx)) {
+			delegate.unlockEdge(tx, deweyID, edgeName);
+		}
+	}
+
+	@Override
+	public List<XTClock> getLocks(XTCdeweyID deweyID, Edge edge) {
+		return delegate.getLocks(deweyID, edge);
+	}
+
+	@Override
+	public List<XTClock> getLocks(XTCdeweyID deweyID, String edgeName) {
+		return delegate.getLocks(deweyID, edgeName);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
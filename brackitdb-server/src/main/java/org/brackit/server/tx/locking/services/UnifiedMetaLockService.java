@@ -35,6 +35,8 @@ import org.brackit.server.tx.XTClock;
 import org.brackit.server.tx.TxMgr;
 import org.brackit.server.tx.locking.LockException;
 import org.brackit.server.tx.locking.protocol.TaDOM3Plus;
+import org.brackit.server.tx.locking.protocol.TreeLockMode;
+import org.brackit.server.tx.locking.protocol.TreeLockProtocol;
 import org.brackit.xquery.util.Cfg;
 
 /**
@@ -42,23 +44,27 @@ import org.brackit.xquery.util.Cfg;
  * @author Sebastian Baechle
  * 
  */
-public class UnifiedMetaLockService extends
-		NodeLockServiceImpl<TaDOM3Plus.Mode> implements
-		MetaLockService<TaDOM3Plus.Mode> {
+public class UnifiedMetaLockService<T extends TreeLockMode<T>> extends
+		NodeLockServiceImpl<T> implements MetaLockService<T> {
 	private final static boolean DEBUG = false;
 
 	private double escalationGain = 1.0;
 
 	private int maxEscalationCount = -1;
 
-	public UnifiedMetaLockService() {
-		this(UnifiedMetaLockService.class.getName(), Cfg.asInt(TxMgr.MAX_LOCKS,
-				TxMgr.DEFAULT_MAX_LOCKS), Cfg.asInt(TxMgr.MAX_TX,
-				TxMgr.DEFAULT_MAX_TX));
+	public static UnifiedMetaLockService<TaDOM3Plus.Mode> create() {
+		return new UnifiedMetaLockService<TaDOM3Plus.Mode>(new TaDOM3Plus());
 	}
 
-	public UnifiedMetaLockService(String name, int maxLocks, int maxTransactions) {
-		super(new TaDOM3Plus(), name, maxLocks, maxTransactions);
+	public UnifiedMetaLockService(TreeLockProtocol<T> protocol) {
+		this(protocol, UnifiedMetaLockService.class.getName(), Cfg.asInt(
+				TxMgr.MAX_LOCKS, TxMgr.DEFAULT_MAX_LOCKS), Cfg.asInt(
+				TxMgr.MAX_TX, TxMgr.DEFAULT_MAX_TX));
+	}
+
+	public UnifiedMetaLockService(TreeLockProtocol<T> protocol, String name,
+			int maxLocks, int maxTransactions) {
+		super(protocol, name, maxLocks, maxTransactions);
 		this.escalationGain = Cfg.asDouble(LOCK_ESCALATION_GAIN, 2);
 		this.maxEscalationCount = Cfg.asInt(LOCK_MAX_ESCALATION_COUNT, 1920);
 	}
@@ -78,7 +84,7 @@ public class UnifiedMetaLockService extends
 	@Override
 	public void lockEdgeExclusive(Tx tx, XTCdeweyID deweyID, Edge edge)
 			throws LockException {
-		TaDOM3Plus.Mode mode = protocol.getNodeExclusiveMode();
+		T mode = protocol.getNodeExclusiveMode();
 		lockNode(tx, deweyID, edge.getID(), mode, tx.getIsolationLevel()
 				.lockClass(true), false);
 	}
@@ -86,7 +92,7 @@ public class UnifiedMetaLockService extends
 	@Override
 	public void lockEdgeExclusive(Tx tx, XTCdeweyID deweyID, String edgeName)
 			throws LockException {
-		TaDOM3Plus.Mode mode = protocol.getNodeExclusiveMode();
+		T mode = protocol.getNodeExclusiveMode();
 		lockNode(tx, deweyID, edgeName.hashCode(), mode, tx.getIsolationLevel()
 				.lockClass(true), false);
 	}
@@ -94,7 +100,7 @@ public class UnifiedMetaLockService extends
 	@Override
 	public void lockEdgeShared(Tx tx, XTCdeweyID deweyID, Edge edge)
 			throws LockException {
-		TaDOM3Plus.Mode mode = protocol.getNodeSharedMode();
+		T mode = protocol.getNodeSharedMode();
 		lockNode(tx, deweyID, edge.getID(), mode, tx.getIsolationLevel()
 				.lockClass(true), false);
 	}
@@ -102,14 +108,14 @@ public class UnifiedMetaLockService extends
 	@Override
 	public void lockEdgeShared(Tx tx, XTCdeweyID deweyID, String edgeName)
 			throws LockException {
-		TaDOM3Plus.Mode mode = protocol.getNodeSharedMode();
+		T mode = protocol.getNodeSharedMode();
 		lockNode(tx, deweyID, edgeName.hashCode(), mode, tx.getIsolationLevel()
 				.lockClass(true), false);
 	}
 
 	public void lockEdgeUpdate(Tx tx, XTCdeweyID deweyID, Edge edge)
 			throws LockException {
-		TaDOM3Plus.Mode mode = protocol.getNodeUpdateMode();
+		T mode = protocol.getNodeUpdateMode();
 		lockNode(tx, deweyID, edge.getID(), mode, tx.getIsolationLevel()
 				.lockClass(true), false);
 	}
@@ -117,7 +123,7 @@ public class UnifiedMetaLockService extends
 	@Override
 	public void lockEdgeUpdate(Tx tx, XTCdeweyID deweyID, String edgeName)
 			throws LockException {
-		TaDOM3Plus.Mode mode = protocol.getNodeUpdateMode();
+		T mode = protocol.getNodeUpdateMode();
 		lockNode(tx, deweyID, edgeName.hashCode(), mode, tx.getIsolationLevel()
 				.lockClass(true), false);
 	}
@@ -34,6 +34,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 import org.brackit.xquery.util.log.Logger;
 import org.brackit.server.tx.XTClock;
+import org.brackit.server.tx.locking.LockMetrics;
 import org.brackit.server.tx.locking.LockName;
 import org.brackit.server.tx.locking.protocol.LockMode;
 
@@ -86,7 +87,8 @@ public class LockTable<T extends LockMode<T>> {
 				LockEntry<T> e = tab[hash & (tab.length - 1)];
 
 				while (e != null) {
-					if ((e.hash == hash) && (key.equals(e.name))) {
+					if ((e.hash == hash)
+							&& ((key == e.name) || (key.equals(e.name)))) {
 						e.latchX();
 						// check if header is still valid
 						if (e.getQueue() == null) {
@@ -115,7 +117,8 @@ public class LockTable<T extends LockMode<T>> {
 				LockEntry<T> first = tab[index];
 				LockEntry<T> e = first;
 				while (e != null) {
-					if ((e.hash == hash) && (key.equals(e.name))) {
+					if ((e.hash == hash)
+							&& ((key == e.name) || (key.equals(e.name)))) {
 						e.latchX();
 						return e;
 					}
@@ -208,6 +211,9 @@ public class LockTable<T extends LockMode<T>> {
 
 	final LockSegment<T>[] segments;
 
+	private LockMetrics metrics = new LockMetrics(LockTable.class
+			.getSimpleName());
+
 	public LockTable(int maxLocks, int maxTransactions) {
 		this(16, Math.min(maxLocks / 16, 1024), 0.75f);
 	}
@@ -230,6 +236,14 @@ public class LockTable<T extends LockMode<T>> {
 		}
 	}
 
+	public LockMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(LockMetrics metrics) {
+		this.metrics = metrics;
+	}
+
 	private int hash(int h) {
 		// spread bits with Wang/Jenkins hash
 		// borrowed from
@@ -159,6 +159,11 @@ public class LockTableClient<T extends LockMode<T>> implements
 		}
 	}
 
+	public boolean validate() {
+		// all accesses are protected by locks
+		return true;
+	}
+
 	public void freeResources() {
 		lscb.latchX();
 
@@ -419,6 +424,9 @@ public class LockTableClient<T extends LockMode<T>> implements
 
 		// save granted mode before giving up the latch
 		T result = request.getMode();
+		table.getMetrics().acquired(header.getName(), mode,
+				(currentRequestState == LockState.GRANTED)
+						&& (result != currentRequestMode));
 
 		if ((DEBUG) && (log.isTraceEnabled())) {
 			log.trace(String.format("%s granted mode %s for request of %s.", tx
@@ -450,6 +458,7 @@ public class LockTableClient<T extends LockMode<T>> implements
 				long waitEnd = System.currentTimeMillis();
 				blockTime = (waitEnd - waitBegin);
 				lscb.addBlockTime(blockTime);
+				table.getMetrics().waited(header.getName(), blockTime);
 			}
 		} finally {
 			lscb.latchX();
@@ -464,6 +473,7 @@ public class LockTableClient<T extends LockMode<T>> implements
 								.toShortString(), request, this));
 			}
 
+			table.getMetrics().deadlockVictim();
 			return false;
 		}
 
@@ -474,6 +484,7 @@ public class LockTableClient<T extends LockMode<T>> implements
 								.toShortString(), blockTime, request, this));
 			}
 
+			table.getMetrics().timedOut();
 			return false;
 		}
 
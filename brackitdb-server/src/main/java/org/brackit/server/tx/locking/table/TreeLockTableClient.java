@@ -91,6 +91,14 @@ public class TreeLockTableClient<T extends TreeLockMode<T>> extends
 			return (int) (maxEscalationCount / ((1 << level) * escalationGain));
 	}
 
+	/**
+	 * Returns the maximum level at which locks are requested. Deeper requests
+	 * are escalated to the ancestor at this level.
+	 */
+	protected int getLockDepth() {
+		return tx.getLockDepth();
+	}
+
 	public T request(TreeLockNameFactory factory, LockClass lockClass, T mode,
 			boolean conditional) {
 		long start = System.currentTimeMillis();
@@ -98,14 +106,15 @@ public class TreeLockTableClient<T extends TreeLockMode<T>> extends
 
 		try {
 			int level = factory.getTargetLevel();
+			int lockDepth = getLockDepth();
 
-			while ((level > tx.getLockDepth()) && (level > 0)) {
+			while ((level > lockDepth) && (level > 0)) {
 				if ((DEBUG) && (log.isTraceEnabled())) {
 					log.trace(String.format(
 							"%s Lock request exceeds maximum lock depth %s."
 									+ " Escalating from %s for %s at "
 									+ "level %s to %s for %s at level %s.", tx
-									.toShortString(), tx.getLockDepth(), mode,
+									.toShortString(), lockDepth, mode,
 							factory.getLockName(level), level,
 							mode.escalate(0), factory.getLockName(level - 1),
 							level - 1));
@@ -32,8 +32,8 @@ import org.brackit.server.tx.locking.table.TreeLockNameFactory;
 import org.brackit.xquery.util.Cfg;
 
 /**
- * Silly-named utility to allow for easy switching between hashed and explicit
- * lock names for debugging.
+ * Silly-named utility to allow for easy switching between packed, hashed and
+ * explicit lock names for debugging. Packed lock names are the default.
  * 
  * @author Sebastian Baechle
  * 
@@ -41,15 +41,21 @@ import org.brackit.xquery.util.Cfg;
 public final class DeweyIDLockNameFactoryFactory {
 	public static final String DEWEYID_LOCKS = "org.brackit.server.tx.taMgr.locking.util.deweyIDLocks";
 
+	private final boolean explicit;
+
 	private final boolean hashed;
 
 	public DeweyIDLockNameFactoryFactory() {
 		String useType = Cfg.check(DeweyIDLockNameFactoryFactory.DEWEYID_LOCKS);
-		hashed = ((useType == null) || (!"explicit".equals(useType)));
+		explicit = "explicit".equals(useType);
+		hashed = "hashed".equals(useType);
 	}
 
 	public final TreeLockNameFactory create(XTCdeweyID deweyID, int tail) {
+		if (explicit) {
+			return new DeweyIDLockNameFactory(deweyID, tail);
+		}
 		return (hashed) ? new HashLockNameFactory(deweyID, tail)
-				: new DeweyIDLockNameFactory(deweyID, tail);
+				: new PackedLockNameFactory(deweyID, tail);
 	}
 }
@@ -0,0 +1,82 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.locking.util;
+
+import org.brackit.server.tx.locking.LockName;
+import org.brackit.server.tx.locking.table.TreeLockNameFactory;
+
+/**
+ * Lock name hierarchy for key-value locks in an index: the index itself at
+ * level 0, a key range at level 1 and the key at level 2. Lock escalation
+ * from keys to their key range (and from ranges to the whole index) allows
+ * range scans to cover the scanned interval with few coarse locks.
+ */
+public class KeyRangeLockNameFactory implements TreeLockNameFactory {
+	public static final int INDEX_LEVEL = 0;
+
+	public static final int RANGE_LEVEL = 1;
+
+	public static final int KEY_LEVEL = 2;
+
+	private final LockName index;
+
+	private final LockName range;
+
+	private final LockName key;
+
+	public KeyRangeLockNameFactory(LockName index, LockName range, LockName key) {
+		this.index = index;
+		this.range = range;
+		this.key = key;
+	}
+
+	@Override
+	public LockName getLockName(int level) {
+		switch (level) {
+		case INDEX_LEVEL:
+			return index;
+		case RANGE_LEVEL:
+			return range;
+		case KEY_LEVEL:
+			return key;
+		default:
+			throw new IllegalArgumentException(String.format(
+					"Invalid lock level: %s", level));
+		}
+	}
+
+	@Override
+	public int getTargetLevel() {
+		return KEY_LEVEL;
+	}
+
+	@Override
+	public String toString() {
+		return key.toString();
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.locking.util;
+
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.tx.locking.LockName;
+import org.brackit.server.tx.locking.table.TreeLockNameFactory;
+
+/**
+ * Lock name factory that packs (DocID, DeweyID prefix, tail) into two longs.
+ * 
+ * The first long holds the DocID. The second long holds the varint-encoded
+ * divisions of the prefix if they fit into 7 bytes (the top byte then stores
+ * the number of encoded bytes) and a 64 bit fingerprint otherwise (the top
+ * byte is then {@link #FINGERPRINT}). Exactly packed names are compared by
+ * their primitives only. Fingerprinted names fall back to a comparison of the
+ * shared division array to stay collision-safe.
+ * 
+ * All lock names of a path are computed in a single pass over the division
+ * values of the DeweyID, i.e., no intermediate DeweyIDs are created.
+ */
+public class PackedLockNameFactory implements TreeLockNameFactory {
+	private static final long FINGERPRINT = 0xFFL;
+
+	private static final int MAX_PACKED_BYTES = 7;
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	static final class PackedLockName implements LockName {
+		final long doc;
+
+		final long prefix;
+
+		final int tail;
+
+		final int hash;
+
+		final int[] divisions;
+
+		final int length;
+
+		PackedLockName(long doc, long prefix, int tail, int[] divisions,
+				int length) {
+			this.doc = doc;
+			this.prefix = prefix;
+			this.tail = tail;
+			this.divisions = divisions;
+			this.length = length;
+			long h = doc * 31 + prefix;
+			h = h * 31 + tail;
+			this.hash = (int) (h ^ (h >>> 32));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof PackedLockName)) {
+				return false;
+			}
+
+			PackedLockName name = (PackedLockName) obj;
+
+			if ((name.prefix != prefix) || (name.doc != doc)
+					|| (name.tail != tail)) {
+				return false;
+			}
+
+			if ((prefix >>> 56) != FINGERPRINT) {
+				return true;
+			}
+
+			// collision-safe fallback for fingerprinted prefixes
+			if (name.length != length) {
+				return false;
+			}
+
+			if (name.divisions == divisions) {
+				return true;
+			}
+
+			for (int i = 0; i < length; i++) {
+				if (name.divisions[i] != divisions[i]) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder out = new StringBuilder();
+			out.append((int) (doc >>> 32));
+			out.append('_');
+			out.append((int) doc);
+			out.append(XTCdeweyID.documentSeparator);
+
+			for (int i = 0; i < length; i++) {
+				if (i > 0) {
+					out.append(XTCdeweyID.divisionSeparator);
+				}
+				out.append(divisions[i]);
+			}
+
+			if (tail != 0) {
+				out.append('#');
+				out.append(tail);
+			}
+
+			return out.toString();
+		}
+	}
+
+	private final XTCdeweyID deweyID;
+
+	private final LockName[] lockNames;
+
+	private final long doc;
+
+	private final int tail;
+
+	private int level;
+
+	private int division;
+
+	private long packed;
+
+	private int packedBytes;
+
+	private long fingerprint = FNV_OFFSET;
+
+	public PackedLockNameFactory(XTCdeweyID deweyID, int tail) {
+		int deweyIDLevel = deweyID.getLevel();
+
+		if (deweyIDLevel == 0) {
+			deweyID = deweyID.getNewChildID();
+			deweyIDLevel = 1;
+		}
+
+		this.deweyID = deweyID;
+		this.tail = tail;
+		this.doc = (((long) deweyID.docID.getCollectionID()) << 32)
+				| (deweyID.docID.getDocNumber() & 0xFFFFFFFFL);
+		lockNames = new LockName[deweyIDLevel + 1];
+	}
+
+	public PackedLockNameFactory(XTCdeweyID deweyID) {
+		this(deweyID, 0);
+	}
+
+	@Override
+	public LockName getLockName(int level) {
+		if ((level == lockNames.length - 1) && (tail != 0)) {
+			if (lockNames[level] == null) {
+				while (this.level < level) {
+					foldNext();
+				}
+				lockNames[level] = new PackedLockName(doc, prefix(), tail,
+						deweyID.divisionValues, division);
+			}
+			return lockNames[level];
+		}
+
+		while (lockNames[level] == null) {
+			foldNext();
+		}
+		return lockNames[level];
+	}
+
+	@Override
+	public int getTargetLevel() {
+		return (tail == 0) ? deweyID.getLevel() - 1 : deweyID.getLevel();
+	}
+
+	private void foldNext() {
+		int[] divisions = deweyID.divisionValues;
+		int value;
+
+		// consume all even (overflow) divisions and the
+		// next odd division which completes the next level
+		do {
+			value = divisions[division++];
+			fingerprint = (fingerprint ^ value) * FNV_PRIME;
+
+			if (packedBytes <= MAX_PACKED_BYTES) {
+				pack(value);
+			}
+		} while ((value % 2 == 0) && (division > 1)
+				&& (division < divisions.length));
+
+		lockNames[level++] = new PackedLockName(doc, prefix(), 0, divisions,
+				division);
+	}
+
+	private void pack(int value) {
+		if (value < 0) {
+			packedBytes = MAX_PACKED_BYTES + 1;
+			return;
+		}
+
+		while (true) {
+			if (++packedBytes > MAX_PACKED_BYTES) {
+				return;
+			}
+			if ((value & ~0x7F) == 0) {
+				packed = (packed << 8) | value;
+				return;
+			}
+			packed = (packed << 8) | (value & 0x7F) | 0x80;
+			value >>>= 7;
+		}
+	}
+
+	private long prefix() {
+		if (packedBytes <= MAX_PACKED_BYTES) {
+			return (((long) packedBytes) << 56) | packed;
+		}
+		return (FINGERPRINT << 56) | (fingerprint & 0x00FFFFFFFFFFFFFFL);
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter over byte sequences. Bits are set with atomic
+ * operations so that concurrent additions never get lost, i.e., the filter
+ * never reports a false negative for a sequence that was added before.
+ * 
+ * The filter is sized for an expected number of entries and a target false
+ * positive rate. It remains correct if more entries are added, but the false
+ * positive rate degrades.
+ */
+public class BloomFilter {
+	private static final int MAX_HASH_COUNT = 16;
+
+	private static final double LN2 = Math.log(2);
+
+	private final AtomicLongArray words;
+
+	private final long bitCount;
+
+	private final int hashCount;
+
+	private final long capacity;
+
+	private final AtomicLong count = new AtomicLong();
+
+	public BloomFilter(long expectedEntries, double falsePositiveRate) {
+		capacity = Math.max(1, expectedEntries);
+		long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate)
+				/ (LN2 * LN2));
+		bits = Math.max(Long.SIZE, Math.min(bits, Integer.MAX_VALUE));
+		words = new AtomicLongArray((int) ((bits + Long.SIZE - 1) / Long.SIZE));
+		bitCount = (long) words.length() * Long.SIZE;
+		int k = (int) Math.round((double) bitCount / capacity * LN2);
+		hashCount = Math.max(1, Math.min(MAX_HASH_COUNT, k));
+	}
+
+	public void add(byte[] b) {
+		long hash = hash(b);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < hashCount; i++) {
+			long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long old;
+
+			while (((old = words.get(word)) & mask) == 0) {
+				if (words.compareAndSet(word, old, old | mask)) {
+					break;
+				}
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Returns <code>false</code> iff the given sequence was definitely not
+	 * added to this filter.
+	 */
+	public boolean mightContain(byte[] b) {
+		long hash = hash(b);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+
+		for (int i = 0; i < hashCount; i++) {
+			long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+
+			if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of additions.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the number of entries the filter was sized for.
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	private static long hash(byte[] b) {
+		// FNV-1a followed by the MurmurHash3 finalizer
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < b.length; i++) {
+			h ^= (b[i] & 0xFF);
+			h *= 0x100000001b3L;
+		}
+		h ^= (h >>> 33);
+		h *= 0xff51afd7ed558ccdL;
+		h ^= (h >>> 33);
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= (h >>> 33);
+		return h;
+	}
+}
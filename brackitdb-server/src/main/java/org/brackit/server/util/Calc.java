@@ -275,6 +275,116 @@ public final class Calc {
 		fromInt(Float.floatToRawIntBits(i), b, off);
 	}
 
+	/*
+	 * Normalized encodings: the unsigned lexicographic order of the encoded
+	 * values equals the natural order of the values. They can be compared
+	 * with compareU() without decoding.
+	 */
+
+	private static final byte DECIMAL_NEGATIVE = (byte) 0x40;
+
+	private static final byte DECIMAL_ZERO = (byte) 0x80;
+
+	private static final byte DECIMAL_POSITIVE = (byte) 0xC0;
+
+	public static byte[] fromNormalizedInt(int i) {
+		return fromInt(i ^ Integer.MIN_VALUE);
+	}
+
+	public static int toNormalizedInt(byte[] b) {
+		return toInt(b) ^ Integer.MIN_VALUE;
+	}
+
+	public static byte[] fromNormalizedLong(long i) {
+		return fromLong(i ^ Long.MIN_VALUE);
+	}
+
+	public static long toNormalizedLong(byte[] b) {
+		return toLong(b) ^ Long.MIN_VALUE;
+	}
+
+	public static byte[] fromNormalizedFloat(float f) {
+		// flip all bits of negative values and only the sign of positive ones
+		int bits = Float.floatToIntBits(f);
+		return fromInt((bits < 0) ? ~bits : bits ^ Integer.MIN_VALUE);
+	}
+
+	public static float toNormalizedFloat(byte[] b) {
+		int bits = toInt(b);
+		return Float.intBitsToFloat((bits < 0) ? bits ^ Integer.MIN_VALUE
+				: ~bits);
+	}
+
+	public static byte[] fromNormalizedDouble(double d) {
+		// flip all bits of negative values and only the sign of positive ones
+		long bits = Double.doubleToLongBits(d);
+		return fromLong((bits < 0) ? ~bits : bits ^ Long.MIN_VALUE);
+	}
+
+	public static double toNormalizedDouble(byte[] b) {
+		long bits = toLong(b);
+		return Double.longBitsToDouble((bits < 0) ? bits ^ Long.MIN_VALUE
+				: ~bits);
+	}
+
+	/**
+	 * Encodes the value as sign byte, followed by the exponent <i>e</i> (4
+	 * bytes) and the digits <i>d</i> of <i>0.d * 10^e</i> without trailing
+	 * zeros, packed into pairs (1 byte per pair). For negative values, the
+	 * exponent and the digit pairs are inverted and a terminator is appended,
+	 * so that longer digit sequences sort first.
+	 */
+	public static byte[] fromNormalizedBigDecimal(BigDecimal d) {
+		int signum = d.signum();
+		if (signum == 0) {
+			return new byte[] { DECIMAL_ZERO };
+		}
+		String digits = d.unscaledValue().abs().toString();
+		int exponent = digits.length() - d.scale();
+		int length = digits.length();
+		while (digits.charAt(length - 1) == '0') {
+			length--;
+		}
+
+		int pairs = (length + 1) / 2;
+		byte[] b = new byte[5 + pairs + ((signum < 0) ? 1 : 0)];
+		int e = exponent ^ Integer.MIN_VALUE;
+		b[0] = (signum > 0) ? DECIMAL_POSITIVE : DECIMAL_NEGATIVE;
+		fromInt((signum > 0) ? e : ~e, b, 1);
+		for (int i = 0; i < pairs; i++) {
+			int high = digits.charAt(2 * i) - '0';
+			int low = (2 * i + 1 < length) ? digits.charAt(2 * i + 1) - '0' : 0;
+			// shift by one to keep the negative terminator the greatest byte
+			int pair = high * 10 + low + 1;
+			b[5 + i] = (byte) ((signum > 0) ? pair : ~pair);
+		}
+		if (signum < 0) {
+			b[b.length - 1] = (byte) 0xFF;
+		}
+		return b;
+	}
+
+	public static BigDecimal toNormalizedBigDecimal(byte[] b) {
+		if (b[0] == DECIMAL_ZERO) {
+			return BigDecimal.ZERO;
+		}
+		boolean negative = (b[0] == DECIMAL_NEGATIVE);
+		int e = toInt(b, 1);
+		int exponent = ((negative) ? ~e : e) ^ Integer.MIN_VALUE;
+		int end = (negative) ? b.length - 1 : b.length;
+
+		char[] digits = new char[2 * (end - 5)];
+		for (int i = 5; i < end; i++) {
+			int pair = (((negative) ? ~b[i] : b[i]) & 0xFF) - 1;
+			digits[2 * (i - 5)] = (char) ('0' + pair / 10);
+			digits[2 * (i - 5) + 1] = (char) ('0' + pair % 10);
+		}
+		BigInteger unscaled = new BigInteger(new String(digits));
+		BigDecimal d = new BigDecimal((negative) ? unscaled.negate()
+				: unscaled, digits.length - exponent).stripTrailingZeros();
+		return (d.scale() < 0) ? d.setScale(0) : d;
+	}
+
 	public static int compare(byte[] v1, byte[] v2) {
 		// a null value is interpreted as EOF (= highest possible value)
 		if (v1 != null) {
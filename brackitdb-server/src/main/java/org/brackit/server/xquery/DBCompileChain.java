@@ -50,6 +50,9 @@ public class DBCompileChain extends CompileChain {
 
 	public static final boolean OPTIMIZE = Cfg.asBool(
 			"org.brackit.server.xquery.optimize.multichild", false);
+
+	public static final boolean DETECT_READ_ONLY = Cfg.asBool(
+			"org.brackit.server.xquery.detectReadOnly", true);
 	
 	static {
 		// define function namespaces and functions in these namespaces		
@@ -61,6 +64,8 @@ public class DBCompileChain extends CompileChain {
 
 	private final Tx tx;
 
+	private DBTranslator translator;
+
 	public DBCompileChain(MetaDataMgr mdm, Tx tx) {
 		this.mdm = mdm;
 		this.tx = tx;
@@ -68,7 +73,16 @@ public class DBCompileChain extends CompileChain {
 
 	@Override
 	protected Translator getTranslator(Map<QNm, Str> options) {
-		return new DBTranslator(options);
+		translator = new DBTranslator(options);
+		return translator;
+	}
+
+	/**
+	 * Returns <code>true</code> if the compiled query may contain updating
+	 * expressions.
+	 */
+	public boolean isUpdating() {
+		return ((translator == null) || (translator.isUpdating()));
 	}
 
 	@Override
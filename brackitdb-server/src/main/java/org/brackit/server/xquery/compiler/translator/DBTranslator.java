@@ -72,15 +72,31 @@ public class DBTranslator extends TopDownTranslator {
 	public static final boolean OPTIMIZE = Cfg.asBool(
 			"org.brackit.server.xquery.optimize.accessor", false);
 
+	private boolean updating;
+
 	public DBTranslator(Map<QNm, Str> options) {
 		super(options);
 	}
 
+	/**
+	 * Returns <code>true</code> if any of the translated expressions is an
+	 * updating expression.
+	 */
+	public boolean isUpdating() {
+		return updating;
+	}
+
 	protected Expr anyExpr(AST node) throws QueryException {
+		Expr expr;
 		if (node.getType() == XQExt.MultiStepExpr) {
-			return multiStepExpr(node);
+			expr = multiStepExpr(node);
+		} else {
+			expr = super.anyExpr(node);
+		}
+		if ((!updating) && (expr.isUpdating())) {
+			updating = true;
 		}
-		return super.anyExpr(node);
+		return expr;
 	}
 
 	private Expr multiStepExpr(AST node) throws QueryException {
@@ -46,15 +46,20 @@ import org.brackit.server.xquery.function.bdb.statistics.ListConnections;
 import org.brackit.server.xquery.function.bdb.statistics.ListContainers;
 import org.brackit.server.xquery.function.bdb.statistics.ListLocks;
 import org.brackit.server.xquery.function.bdb.statistics.ListVocabulary;
+import org.brackit.server.xquery.function.bdb.statistics.LockStatistics;
 import org.brackit.server.xquery.function.bdb.util.DotIndex;
 import org.brackit.server.xquery.function.bdb.util.DumpIndex;
+import org.brackit.server.xquery.function.bdb.util.Reorganize;
 import org.brackit.server.xquery.function.bdb.workload.DocumentScan;
+import org.brackit.server.xquery.function.bdb.workload.ParallelDescendants;
+import org.brackit.server.xquery.function.bdb.workload.ParallelScan;
 import org.brackit.server.xquery.function.bdb.workload.SaxScan;
 import org.brackit.server.xquery.function.bdb.workload.Traverse;
 import org.brackit.xquery.atomic.QNm;
 import org.brackit.xquery.module.Functions;
 import org.brackit.xquery.module.Namespaces;
 import org.brackit.xquery.xdm.Signature;
+import org.brackit.xquery.xdm.type.AnyNodeType;
 import org.brackit.xquery.xdm.type.AtomicType;
 import org.brackit.xquery.xdm.type.Cardinality;
 import org.brackit.xquery.xdm.type.SequenceType;
@@ -84,6 +89,7 @@ public class BDBFun {
 		Namespaces.predefine(BDBFun.BDB_PREFIX, BDBFun.BDB_NSURI);
 		Functions.predefine(new DumpIndex());
 		Functions.predefine(new DotIndex());
+		Functions.predefine(new Reorganize());
 		Functions.predefine(new Traverse());
 		Functions.predefine(new SaxScan());
 		Functions.predefine(new ClearBuffers());
@@ -95,9 +101,32 @@ public class BDBFun {
 		Functions.predefine(new ListContainers());
 		Functions.predefine(new ListLocks());
 		Functions.predefine(new ListVocabulary());
+		Functions.predefine(new LockStatistics(LockStatistics.DEFAULT_NAME,
+				new Signature(new SequenceType(AtomicType.STR,
+						Cardinality.One))));
+		Functions.predefine(new LockStatistics(LockStatistics.DEFAULT_NAME,
+				new Signature(new SequenceType(AtomicType.STR,
+						Cardinality.One), new SequenceType(AtomicType.BOOL,
+						Cardinality.ZeroOrOne))));
 		Functions.predefine(new DocumentScan());
+		Functions.predefine(new ParallelScan(ParallelScan.DEFAULT_NAME,
+				new Signature(new SequenceType(AtomicType.STR,
+						Cardinality.One), new SequenceType(AtomicType.STR,
+						Cardinality.One))));
+		Functions.predefine(new ParallelScan(ParallelScan.DEFAULT_NAME,
+				new Signature(new SequenceType(AtomicType.STR,
+						Cardinality.One), new SequenceType(AtomicType.STR,
+						Cardinality.One), new SequenceType(AtomicType.BOOL,
+						Cardinality.ZeroOrOne))));
+		Functions.predefine(new ParallelDescendants(
+				ParallelDescendants.DEFAULT_NAME, new Signature(
+						new SequenceType(AnyNodeType.ANY_NODE,
+								Cardinality.ZeroOrMany), new SequenceType(
+								AnyNodeType.ANY_NODE, Cardinality.One))));
+		Functions.predefine(new ParallelDescendants());
 		Functions.predefine(new SetIsolation());
 		Functions.predefine(new SetLockdepth());
+		Functions.predefine(new SetLockProtocol());
 		Functions.predefine(new CreatePathIndex(CREATE_PATH_INDEX,
 				new Signature(SequenceType.NODE, new SequenceType(
 						AtomicType.STR, Cardinality.One), new SequenceType(
@@ -0,0 +1,90 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.xquery.function.bdb;
+
+import org.brackit.server.metadata.TXQueryContext;
+import org.brackit.server.node.bracket.BracketCollection;
+import org.brackit.xquery.QueryContext;
+import org.brackit.xquery.QueryException;
+import org.brackit.xquery.atomic.QNm;
+import org.brackit.xquery.atomic.Str;
+import org.brackit.xquery.function.AbstractFunction;
+import org.brackit.xquery.module.StaticContext;
+import org.brackit.xquery.xdm.Collection;
+import org.brackit.xquery.xdm.DocumentException;
+import org.brackit.xquery.xdm.Sequence;
+import org.brackit.xquery.xdm.Signature;
+import org.brackit.xquery.xdm.type.AtomicType;
+import org.brackit.xquery.xdm.type.Cardinality;
+import org.brackit.xquery.xdm.type.SequenceType;
+
+/**
+ * Function for switching the concurrency control protocol of a stored
+ * collection. Supported protocols are <code>tadom3+</code> (default),
+ * <code>rix</code>, <code>urix</code>, <code>irix</code> and
+ * <code>optimistic</code>. The function returns the previous protocol:
+ * </br>
+ * <code>bdb:set-lock-protocol($coll as xs:string, $protocol as xs:string) 
+ * as xs:string</code>
+ */
+public class SetLockProtocol extends AbstractFunction {
+
+	public static final QNm SET_LOCK_PROTOCOL = new QNm(BDBFun.BDB_NSURI,
+			BDBFun.BDB_PREFIX, "set-lock-protocol");
+
+	public SetLockProtocol() {
+		super(SET_LOCK_PROTOCOL, new Signature(new SequenceType(
+				AtomicType.STR, Cardinality.One), new SequenceType(
+				AtomicType.STR, Cardinality.One), new SequenceType(
+				AtomicType.STR, Cardinality.One)), true);
+	}
+
+	@Override
+	public Sequence execute(StaticContext sctx, QueryContext ctx,
+			Sequence[] args) throws QueryException {
+		String name = ((Str) args[0]).str;
+		String protocol = ((Str) args[1]).str.toLowerCase();
+		Collection<?> col = ((TXQueryContext) ctx).getStore().lookup(name);
+
+		if (!(col instanceof BracketCollection)) {
+			throw new QueryException(BDBFun.ERR_INVALID_ARGUMENT,
+					"Collection %s does not support lock protocols", name);
+		}
+
+		BracketCollection bcol = (BracketCollection) col;
+		String previous = bcol.getLockProtocol();
+		bcol.setLockProtocol(protocol);
+		try {
+			bcol.persist();
+		} catch (DocumentException e) {
+			bcol.setLockProtocol(previous);
+			throw e;
+		}
+		return new Str(previous);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.xquery.function.bdb.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.brackit.server.tx.locking.LockMetrics;
+import org.brackit.server.xquery.function.FunUtil;
+import org.brackit.server.xquery.function.bdb.BDBFun;
+import org.brackit.xquery.QueryContext;
+import org.brackit.xquery.QueryException;
+import org.brackit.xquery.atomic.QNm;
+import org.brackit.xquery.atomic.Str;
+import org.brackit.xquery.function.AbstractFunction;
+import org.brackit.xquery.module.StaticContext;
+import org.brackit.xquery.util.annotation.FunctionAnnotation;
+import org.brackit.xquery.xdm.Sequence;
+import org.brackit.xquery.xdm.Signature;
+
+/**
+ * Dumps the continuous metrics of all lock services, i.e., acquisitions per
+ * mode, conversions, wait time histograms, timeouts, deadlock victims and the
+ * hottest lock names. Supported signatures are:</br>
+ * <ul>
+ * <li><code>bdb:lock-statistics() as xs:string</code></li>
+ * <li><code>bdb:lock-statistics($reset as xs:boolean?) as xs:string</code></li>
+ * </ul>
+ */
+@FunctionAnnotation(description = "Dumps the lock metrics of all lock services.", parameters = { "$reset" })
+public class LockStatistics extends AbstractFunction {
+
+	public static final QNm DEFAULT_NAME = new QNm(BDBFun.BDB_NSURI,
+			BDBFun.BDB_PREFIX, "lock-statistics");
+
+	public LockStatistics(QNm name, Signature signature) {
+		super(name, signature, true);
+	}
+
+	protected static final List<LockMetrics> metrics = new ArrayList<LockMetrics>();
+
+	public static synchronized void add(LockMetrics m) {
+		metrics.add(m);
+	}
+
+	public static synchronized void remove(LockMetrics m) {
+		metrics.remove(m);
+	}
+
+	private static synchronized List<LockMetrics> getMetrics() {
+		return new ArrayList<LockMetrics>(metrics);
+	}
+
+	@Override
+	public Sequence execute(StaticContext sctx, QueryContext ctx,
+			Sequence[] args) throws QueryException {
+		boolean reset = (args.length > 0)
+				&& FunUtil.getBoolean(args, 0, "reset", false, false);
+		StringBuilder out = new StringBuilder();
+		for (LockMetrics m : getMetrics()) {
+			out.append(m.getInfo());
+			if (reset) {
+				m.reset();
+			}
+		}
+		return new Str(out.toString());
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.xquery.function.bdb.util;
+
+import org.brackit.server.node.bracket.BracketCollection;
+import org.brackit.server.xquery.function.FunUtil;
+import org.brackit.server.xquery.function.bdb.BDBFun;
+import org.brackit.xquery.QueryContext;
+import org.brackit.xquery.QueryException;
+import org.brackit.xquery.atomic.QNm;
+import org.brackit.xquery.atomic.Str;
+import org.brackit.xquery.function.AbstractFunction;
+import org.brackit.xquery.module.StaticContext;
+import org.brackit.xquery.util.annotation.FunctionAnnotation;
+import org.brackit.xquery.xdm.Collection;
+import org.brackit.xquery.xdm.Sequence;
+import org.brackit.xquery.xdm.Signature;
+import org.brackit.xquery.xdm.type.AtomicType;
+import org.brackit.xquery.xdm.type.Cardinality;
+import org.brackit.xquery.xdm.type.SequenceType;
+
+/**
+ * Merges sparsely filled leaves of a stored document. The optional second
+ * parameter is the occupancy (in percent) below which leaves are merged.
+ */
+@FunctionAnnotation(description = "Merges sparsely filled leaves of the given document.", parameters = {
+		"$document", "$minFill" })
+public class Reorganize extends AbstractFunction {
+
+	public static final QNm DEFAULT_NAME = new QNm(BDBFun.BDB_NSURI,
+			BDBFun.BDB_PREFIX, "reorganize");
+
+	private static final int DEFAULT_MIN_FILL = 50;
+
+	public Reorganize() {
+		super(DEFAULT_NAME, new Signature(new SequenceType(AtomicType.STR,
+				Cardinality.One), new SequenceType(AtomicType.STR,
+				Cardinality.One), new SequenceType(AtomicType.INR,
+				Cardinality.ZeroOrOne)), true);
+	}
+
+	@Override
+	public Sequence execute(StaticContext sctx, QueryContext ctx,
+			Sequence[] args) throws QueryException {
+		String storedNamePath = FunUtil.getString(args, 0, "$document",
+				null, null, true);
+		int minFill = FunUtil.getInt(args, 1, "$minFill", DEFAULT_MIN_FILL,
+				null, false);
+		if ((minFill < 0) || (minFill > 100)) {
+			throw new QueryException(BDBFun.ERR_INVALID_ARGUMENT,
+					"Invalid fill percentage: %s", minFill);
+		}
+
+		Collection<?> coll = ctx.getStore().lookup(storedNamePath);
+		if (!(coll instanceof BracketCollection)) {
+			throw new QueryException(BDBFun.ERR_INVALID_ARGUMENT,
+					"Document %s is not stored in a bracket index.",
+					storedNamePath);
+		}
+
+		long start = System.nanoTime();
+		int released = ((BracketCollection) coll)
+				.reorganize(minFill / 100f);
+		long end = System.nanoTime();
+
+		return new Str(String.format("Released %s leaves in %s ms",
+				released, ((end - start) / 1000000)));
+	}
+}
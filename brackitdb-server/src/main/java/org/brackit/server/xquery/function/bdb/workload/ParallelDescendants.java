@@ -0,0 +1,133 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.xquery.function.bdb.workload;
+
+import org.brackit.server.node.bracket.BracketNode;
+import org.brackit.server.xquery.function.FunUtil;
+import org.brackit.server.xquery.function.bdb.BDBFun;
+import org.brackit.xquery.QueryContext;
+import org.brackit.xquery.QueryException;
+import org.brackit.xquery.atomic.QNm;
+import org.brackit.xquery.function.AbstractFunction;
+import org.brackit.xquery.module.StaticContext;
+import org.brackit.xquery.sequence.BaseIter;
+import org.brackit.xquery.sequence.LazySequence;
+import org.brackit.xquery.util.annotation.FunctionAnnotation;
+import org.brackit.xquery.xdm.Item;
+import org.brackit.xquery.xdm.Iter;
+import org.brackit.xquery.xdm.Kind;
+import org.brackit.xquery.xdm.Node;
+import org.brackit.xquery.xdm.Sequence;
+import org.brackit.xquery.xdm.Signature;
+import org.brackit.xquery.xdm.Stream;
+import org.brackit.xquery.xdm.type.AnyNodeType;
+import org.brackit.xquery.xdm.type.AtomicType;
+import org.brackit.xquery.xdm.type.Cardinality;
+import org.brackit.xquery.xdm.type.SequenceType;
+
+/**
+ * Returns the descendant elements of a node, optionally restricted to a
+ * name, using a partitioned scan with several threads. The nodes are
+ * <em>not</em> returned in document order, i.e., the function is meant as
+ * input for order-insensitive aggregations like <code>fn:count()</code> or
+ * <code>fn:sum()</code>. For nodes that are not stored in a bracket index,
+ * the function falls back to a sequential scan.
+ * 
+ */
+@FunctionAnnotation(description = "Returns the descendant elements of "
+		+ "$node (with name $name, if given) in arbitrary order. The "
+		+ "subtree is scanned with several threads.", parameters = {
+		"$node", "$name" })
+public class ParallelDescendants extends AbstractFunction {
+
+	public static final QNm DEFAULT_NAME = new QNm(BDBFun.BDB_NSURI,
+			BDBFun.BDB_PREFIX, "parallel-descendants");
+
+	public ParallelDescendants(QNm name, Signature signature) {
+		super(name, signature, true);
+	}
+
+	public ParallelDescendants() {
+		this(DEFAULT_NAME, new Signature(new SequenceType(
+				AnyNodeType.ANY_NODE, Cardinality.ZeroOrMany),
+				new SequenceType(AnyNodeType.ANY_NODE, Cardinality.One),
+				new SequenceType(AtomicType.STR, Cardinality.ZeroOrOne)));
+	}
+
+	@Override
+	public Sequence execute(StaticContext sctx, QueryContext ctx,
+			Sequence[] args) throws QueryException {
+		final Node<?> node = (Node<?>) args[0];
+		String name = FunUtil.getString(args, 1, "$name", null, null, false);
+		final QNm qname = (name != null) ? new QNm(name) : null;
+
+		return new LazySequence() {
+			@Override
+			public Iter iterate() {
+				return new BaseIter() {
+					Stream<? extends Node<?>> s;
+
+					@Override
+					public Item next() throws QueryException {
+						if (s == null) {
+							s = open(node, qname);
+						}
+						if (node instanceof BracketNode) {
+							return s.next();
+						}
+						Node<?> next;
+						while ((next = s.next()) != null) {
+							if ((next.getKind() == Kind.ELEMENT)
+									&& (!next.isSelfOf(node))
+									&& ((qname == null) || (qname.equals(next
+											.getName())))) {
+								return next;
+							}
+						}
+						return null;
+					}
+
+					@Override
+					public void close() {
+						if (s != null) {
+							s.close();
+						}
+					}
+				};
+			}
+		};
+	}
+
+	private static Stream<? extends Node<?>> open(Node<?> node, QNm name)
+			throws QueryException {
+		if (node instanceof BracketNode) {
+			return ((BracketNode) node).getDescendantElementsPartitioned(name);
+		}
+		return node.getDescendantOrSelf();
+	}
+}
@@ -97,7 +97,7 @@ public class SysMockup {
 				containerName, initialSize, extendSize);
 		buffer = bufferManager.getBuffer(containerNo);
 		dictionary = new DictionaryMgr03(bufferManager);
-		mls = new UnifiedMetaLockService();
+		mls = UnifiedMetaLockService.create();
 		if (createDictionary) {
 			Tx tx = taMgr.begin();
 			dictionary.create(tx);
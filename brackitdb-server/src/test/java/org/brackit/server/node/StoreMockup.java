@@ -117,7 +117,7 @@ public abstract class StoreMockup<E extends TXNode<E>> {
 
 		buffer = bufferMgr.getBuffer(CONTAINER_NO);
 		dictionary = new DictionaryMgr03(bufferMgr);
-		mls = new UnifiedMetaLockService();
+		mls = UnifiedMetaLockService.create();
 
 		Tx tx = taMgr.begin();
 		dictionary.create(tx);
@@ -28,20 +28,28 @@
 package org.brackit.server.node.bracket;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import org.brackit.server.ServerException;
+import org.brackit.server.SysMockup;
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.metadata.pathSynopsis.PSNode;
 import org.brackit.server.node.DocID;
 import org.brackit.server.node.XTCdeweyID;
 import org.brackit.server.node.txnode.StorageSpec;
@@ -51,7 +59,12 @@ import org.brackit.server.node.util.NavigationStatistics;
 import org.brackit.server.node.util.Traverser;
 import org.brackit.server.store.index.bracket.BracketTree;
 import org.brackit.server.store.index.bracket.MultiChildStreamMockup;
+import org.brackit.server.store.index.bracket.PartitionedSubtreeStream;
+import org.brackit.server.store.index.bracket.StreamIterator;
 import org.brackit.server.store.index.bracket.filter.BracketFilter;
+import org.brackit.server.store.index.bracket.filter.MultiFilter;
+import org.brackit.server.store.index.bracket.filter.PSNodeFilter;
+import org.brackit.server.store.page.bracket.RecordInterpreter;
 import org.brackit.server.tx.IsolationLevel;
 import org.brackit.xquery.atomic.QNm;
 import org.brackit.xquery.node.d2linked.D2Node;
@@ -241,12 +254,351 @@ public class BracketNodeTest extends TXNodeTest<BracketNode> {
 		verifyAgainstDOM(bigDocument, CheckType.SUBTREE_NOATTR);
 	}
 
+	@Ignore
+	@Test
+	public void scanSubtreePartitioned() throws Exception {
+		verifyAgainstDOM(bigDocument, CheckType.SUBTREE_PARTITIONED);
+	}
+
+	@Test
+	public void partitionedScanMatchesSequentialScan() throws Exception {
+		// use small pages to spread the document over many leaves
+		sm = new SysMockup(4096);
+		tx = sm.taMgr.begin(IsolationLevel.NONE, null, false);
+		store = new BracketStore(sm.bufferManager, sm.dictionary, sm.mls);
+
+		StringBuilder xml = new StringBuilder("<root>");
+		for (int i = 0; i < 3000; i++) {
+			xml.append("<item><id>").append(i).append("</id>value ").append(i)
+					.append("</item>");
+		}
+		xml.append("</root>");
+		BracketCollection coll = (BracketCollection) createDocument(new DocumentParser(
+				xml.toString()));
+		BracketNode document = coll.getDocument();
+
+		Stream<? extends BracketNode> partitioned = document
+				.getDescendantsPartitioned(true, null, true);
+		assertTrue(partitioned instanceof PartitionedSubtreeStream);
+		Stream<? extends BracketNode> sequential = document.getDescendants(
+				true, null);
+		int count = 0;
+		try {
+			BracketNode node;
+			while ((node = sequential.next()) != null) {
+				BracketNode other = partitioned.next();
+				assertNotNull(other);
+				assertEquals(node.getDeweyID(), other.getDeweyID());
+				assertEquals(node.getKind(), other.getKind());
+				count++;
+			}
+			assertNull(partitioned.next());
+		} finally {
+			sequential.close();
+			partitioned.close();
+		}
+
+		// unordered delivery returns the same set of nodes
+		Set<XTCdeweyID> seen = new HashSet<XTCdeweyID>();
+		partitioned = document.getDescendantsPartitioned(true, null, false);
+		try {
+			BracketNode node;
+			while ((node = partitioned.next()) != null) {
+				assertTrue(seen.add(node.getDeweyID()));
+			}
+		} finally {
+			partitioned.close();
+		}
+		assertEquals(count, seen.size());
+
+		partitioned = document.getDescendantElementsPartitioned(new QNm("id"));
+		try {
+			int ids = 0;
+			while (partitioned.next() != null) {
+				ids++;
+			}
+			assertEquals(3000, ids);
+		} finally {
+			partitioned.close();
+		}
+
+		// a stream closed early stops its workers before the tx finishes
+		partitioned = document.getDescendantsPartitioned(true, null, false);
+		assertNotNull(partitioned.next());
+		partitioned.close();
+		assertNull(partitioned.next());
+		tx.commit();
+	}
+
 	@Ignore
 	@Test
 	public void traverseBigDocumentInPostorder() throws Exception {
 		verifyAgainstDOM(bigDocument, CheckType.POSTORDER);
 	}
 
+	@Test
+	public void cursorMatchesStream() throws Exception {
+		BracketCollection coll = (BracketCollection) createDocument(new DocumentParser(
+				DOCUMENT));
+		BracketLocator locator = coll.getDocument().locator;
+		XTCdeweyID rootID = XTCdeweyID.newRootID(locator.docID);
+
+		StreamIterator stream = store.index.openSubtreeStream(locator, rootID,
+				null, null, true, false);
+		StreamIterator cursor = store.index.openSubtreeStream(locator, rootID,
+				null, null, true, false);
+		try {
+			BracketNode node = null;
+			while ((node = stream.next()) != null) {
+				assertTrue(cursor.moveNext());
+				assertEquals(node.getDeweyID(), cursor.getDeweyID()
+						.getDeweyID());
+				assertEquals(node.getDeweyID().getLevel(), cursor.getLevel());
+				assertEquals(node.getKind().ID, cursor.getKind());
+				assertEquals(node.getPCR(), cursor.getPCR());
+				if ((node.getKind() == Kind.TEXT)
+						|| (node.getKind() == Kind.ATTRIBUTE)) {
+					RecordInterpreter record = cursor.getRecord();
+					assertEquals(node.getValue().stringValue(), new String(
+							record.getBuffer(), record.getValueOffset(), record
+									.getValueLength(), "UTF-8"));
+				}
+			}
+			assertFalse(cursor.moveNext());
+		} finally {
+			stream.close();
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void valueCompression() throws Exception {
+		StringBuilder xml = new StringBuilder("<root>");
+		for (int i = 0; i < 20; i++) {
+			xml.append("<item status=\"active\">");
+			xml.append((i % 2 == 0) ? "even" : "odd-" + i);
+			xml.append("</item>");
+		}
+		xml.append("</root>");
+
+		StorageSpec spec = new StorageSpec("test", sm.dictionary);
+		spec.setValueCompression(true);
+		BracketCollection coll = new BracketCollection(tx, store);
+		coll.create(spec, new DocumentParser(xml.toString()));
+		assertTrue(coll.isValueCompression());
+
+		BracketNode root = coll.getDocument().getFirstChild();
+		BracketNode item = root.getFirstChild();
+		int i = 0;
+		while (item != null) {
+			assertEquals("active", item.getAttribute(new QNm("status"))
+					.getValue().stringValue());
+			assertEquals((i % 2 == 0) ? "even" : "odd-" + i, item
+					.getFirstChild().getValue().stringValue());
+			item = item.getNextSibling();
+			i++;
+		}
+		assertEquals(20, i);
+
+		// only frequent values are coded in the collection's own dictionary
+		ValueDictionary valueDict = coll.getValueDictionary();
+		assertEquals(2, valueDict.size());
+		assertTrue(sm.dictionary.translateIfExists("active") < 0);
+
+		ValueDictionary loaded = ValueDictionary.load(tx, store.stdIndex,
+				valueDict.getRootPageID());
+		assertEquals(2, loaded.size());
+		for (int code = 0; code < loaded.size(); code++) {
+			assertEquals(valueDict.resolve(code), loaded.resolve(code));
+		}
+
+		// coded records remain readable after the coding was disabled
+		coll.setValueCompression(false);
+		assertFalse(coll.isValueCompression());
+		assertEquals("active", root.getFirstChild().getAttribute(
+				new QNm("status")).getValue().stringValue());
+	}
+
+	@Test
+	public void valueFilterComparesCodes() throws Exception {
+		StringBuilder xml = new StringBuilder("<root>");
+		for (int i = 0; i < 20; i++) {
+			xml.append("<item status=\"active\">");
+			// a single char, but three bytes long
+			xml.append((i % 2 == 0) ? "\u20ac" : "odd-" + i);
+			xml.append("</item>");
+		}
+		xml.append("</root>");
+
+		StorageSpec spec = new StorageSpec("test", sm.dictionary);
+		spec.setValueCompression(true);
+		BracketCollection coll = new BracketCollection(tx, store);
+		coll.create(spec, new DocumentParser(xml.toString()));
+		BracketNode root = coll.getDocument().getFirstChild();
+
+		// the code is shorter than the UTF-8 encoding of the value
+		ValueDictionary valueDict = coll.getValueDictionary();
+		assertEquals(2, valueDict.size());
+		assertTrue(valueDict.getCode(tx, "\u20ac") >= 0);
+
+		assertEquals(10, countMatches(root, coll.createValueFilter("\u20ac")));
+		assertEquals(1, countMatches(root, coll.createValueFilter("odd-3")));
+		assertEquals(0, countMatches(root, coll.createValueFilter("odd")));
+
+		// value equality on a given attribute path
+		PSNode status = root.getFirstChild().getAttribute(new QNm("status"))
+				.getPSNode();
+		BracketFilter filter = new MultiFilter(MultiFilter.Type.CONJUNCTION,
+				new PSNodeFilter(root.getPathSynopsis(), status, true), coll
+						.createValueFilter("active"));
+		assertEquals(20, countMatches(root, filter));
+	}
+
+	private int countMatches(BracketNode root, BracketFilter filter)
+			throws DocumentException {
+		StreamIterator cursor = store.index.openSubtreeStream(root.locator,
+				root.getDeweyID(), null, filter, true, false);
+		int count = 0;
+		try {
+			while (cursor.moveNext()) {
+				count++;
+			}
+		} finally {
+			cursor.close();
+		}
+		return count;
+	}
+
+	@Test
+	public void streamExternalValue() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; text.length() < 20000; i++) {
+			text.append("large text value ").append(i).append(' ');
+		}
+		BracketCollection coll = (BracketCollection) createDocument(new DocumentParser(
+				"<root><small>x</small><large>" + text + "</large></root>"));
+		BracketNode large = coll.getDocument().getFirstChild()
+				.getLastChild();
+
+		// read twice: the second access is served from the value cache
+		assertEquals(text.toString(), large.getValue().stringValue());
+		assertEquals(text.toString(), large.getFirstChild().getValue()
+				.stringValue());
+
+		StreamIterator cursor = store.index.openSubtreeStream(large.locator,
+				large.getDeweyID(), null, null, false, false);
+		try {
+			assertTrue(cursor.moveNext());
+			assertEquals(Kind.TEXT.ID, cursor.getKind());
+			InputStream in = cursor.openValueStream();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				byte[] buf = new byte[1000];
+				for (int n = in.read(buf); n > 0; n = in.read(buf)) {
+					out.write(buf, 0, n);
+				}
+			} finally {
+				in.close();
+			}
+			assertEquals(text.toString(), out.toString("UTF-8"));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void streamInlineValueAfterMove() throws Exception {
+		BracketCollection coll = (BracketCollection) createDocument(new DocumentParser(
+				"<root><small>x</small><other>y</other></root>"));
+		BracketNode root = coll.getDocument().getFirstChild();
+
+		InputStream in;
+		StreamIterator cursor = store.index.openSubtreeStream(root.locator,
+				root.getDeweyID(), null, null, false, false);
+		try {
+			while ((cursor.moveNext()) && (cursor.getKind() != Kind.TEXT.ID)) {
+			}
+			in = cursor.openValueStream();
+			// the stream must not depend on the cursor position or latches
+			while (cursor.moveNext()) {
+			}
+		} finally {
+			cursor.close();
+		}
+
+		try {
+			assertEquals('x', in.read());
+			assertEquals(-1, in.read());
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void reorganizeAfterDeletes() throws Exception {
+		StringBuilder xml = new StringBuilder("<root>");
+		for (int i = 0; i < 5000; i++) {
+			xml.append("<item>value ").append(i).append("</item>");
+		}
+		xml.append("</root>");
+		BracketCollection coll = (BracketCollection) createDocument(new DocumentParser(
+				xml.toString()));
+		assertTrue(countLeaves(coll) > 1);
+
+		// delete all items except every tenth
+		BracketNode root = coll.getDocument().getFirstChild();
+		BracketNode item = root.getFirstChild();
+		for (int i = 0; item != null; i++) {
+			BracketNode next = item.getNextSibling();
+			if (i % 10 != 0) {
+				item.delete();
+			}
+			item = next;
+		}
+
+		assertTrue(coll.reorganize(0.5f) > 0);
+
+		item = root.getFirstChild();
+		int i = 0;
+		while (item != null) {
+			assertEquals("value " + i, item.getValue().stringValue());
+			item = item.getNextSibling();
+			i += 10;
+		}
+		assertEquals(5000, i);
+
+		// delete a trailing range but keep the last item, which leaves the
+		// last leaf sparsely filled
+		item = root.getFirstChild();
+		for (i = 0; item != null; i += 10) {
+			BracketNode next = item.getNextSibling();
+			if ((i >= 100) && (next != null)) {
+				item.delete();
+			}
+			item = next;
+		}
+
+		assertTrue(coll.reorganize(0.5f) > 0);
+		assertEquals("value 4990", root.getLastChild().getValue()
+				.stringValue());
+		assertEquals(1, countLeaves(coll));
+	}
+
+	private int countLeaves(BracketCollection coll) throws DocumentException {
+		Set<PageID> leaves = new HashSet<PageID>();
+		Stream<? extends BracketNode> nodes = coll.getDocument()
+				.getDescendants(true, null);
+		try {
+			BracketNode node;
+			while ((node = nodes.next()) != null) {
+				leaves.add(node.hintPageInfo.pageID);
+			}
+		} finally {
+			nodes.close();
+		}
+		return leaves.size();
+	}
+
 	@Override
 	public void setUp() throws Exception {
 		super.setUp();
@@ -356,6 +708,17 @@ public class BracketNodeTest extends TXNodeTest<BracketNode> {
 				testInstance.checkSubtree(first, nodes, domRoot, true);
 				nodes.close();
 			}
+		},
+		SUBTREE_PARTITIONED {
+			@Override
+			public void doCheck(BracketNode root, Node domRoot,
+					BracketNodeTest testInstance) throws Exception {
+				Stream<? extends BracketNode> nodes = root
+						.getDescendantsPartitioned(true, null, true);
+				BracketNode first = nodes.next();
+				testInstance.checkSubtree(first, nodes, domRoot, true);
+				nodes.close();
+			}
 		};
 
 		public abstract void doCheck(BracketNode root, Node domRoot,
@@ -27,8 +27,14 @@
  */
 package org.brackit.server.store.blob.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
 import org.brackit.server.io.manager.BufferMgr;
 import org.brackit.server.store.blob.BlobStore;
+import org.junit.Test;
 
 /**
  * 
@@ -41,4 +47,18 @@ public class SimpleBlobTest extends AbstractBlobStoreTest {
 		return new SimpleBlobStore(bufferMgr);
 	}
 
+	@Test
+	public void testReadPrefix() throws Exception {
+		byte[] original = new byte[20000];
+		rand.nextBytes(original);
+		blobStore.write(t1, blobID, original, false);
+
+		byte[] prefix = ((SimpleBlobStore) blobStore).readPrefix(t1, blobID,
+				5);
+
+		assertEquals("Number of read bytes", 5, prefix.length);
+		assertTrue("Read same bytes as written", Arrays.equals(Arrays
+				.copyOf(original, 5), prefix));
+	}
+
 }
\ No newline at end of file
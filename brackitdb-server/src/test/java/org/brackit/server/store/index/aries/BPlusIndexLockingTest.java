@@ -64,7 +64,8 @@ public class BPlusIndexLockingTest extends AbstractBPlusIndexTest {
 
 		@Override
 		public boolean equals(Object obj) {
-			return Arrays.equals(name, ((IntegerByteArrayLockName) obj).name);
+			return (obj instanceof IntegerByteArrayLockName)
+					&& Arrays.equals(name, ((IntegerByteArrayLockName) obj).name);
 		}
 
 		@Override
@@ -45,16 +45,26 @@ import org.brackit.server.SysMockup;
 import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.node.DocID;
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.node.index.external.IndexStatistics;
 import org.brackit.server.store.Field;
 import org.brackit.server.store.OpenMode;
 import org.brackit.server.store.SearchMode;
+import org.brackit.server.store.index.DuplicateKeyException;
 import org.brackit.server.store.index.IndexAccessException;
 import org.brackit.server.store.index.IndexIterator;
 import org.brackit.server.store.index.aries.page.PageContext;
 import org.brackit.server.store.index.aries.page.PageContextFactory;
+import org.brackit.server.store.index.aries.visitor.IndexStatisticsVisitor;
+import org.brackit.server.tx.Tx;
 import org.brackit.server.tx.TxException;
 import org.brackit.server.util.Calc;
+import org.brackit.server.util.sort.MergeSort;
+import org.brackit.server.util.sort.SortItem;
 import org.brackit.xquery.util.log.Logger;
+import org.brackit.xquery.xdm.DocumentException;
+import org.brackit.xquery.xdm.Stream;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -1432,4 +1442,344 @@ public class BPlusIndexStandardTest extends AbstractBPlusIndexTest {
 		}
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testBulkLoadNonUniqueIndex() throws ServerException {
+		LinkedList<Entry> entries = generateEntries(LOAD_SIZE, 0);
+		List<Entry> all = new ArrayList<Entry>(entries);
+		for (int i = 0; i < LOAD_SIZE; i += 100) {
+			all.addAll(generateDuplicates(entries.get(i),
+					NUMBER_OF_DUPLICATES));
+		}
+		Collections.shuffle(all, rand);
+
+		MergeSort sort = new MergeSort(Field.UINTEGER, Field.UINTEGER);
+		for (Entry entry : all) {
+			sort.add(new SortItem(entry.key, entry.value));
+		}
+		Stream<? extends SortItem> sorted = sort.sort();
+		IndexStatistics statistics = null;
+		try {
+			statistics = index.load(t2, nonuniqueRootPageID, sorted);
+		} finally {
+			sorted.close();
+		}
+		assertEquals("fixed pages after load", 0, sm.buffer.getFixCount());
+		assertEquals("loaded entries", all.size(), statistics
+				.getIndexTuples());
+		assertTrue("index has more than one level", statistics
+				.getIndexHeight() > 1);
+		indexPageHelper.checkIndexConsistency(t2, sm.buffer,
+				nonuniqueRootPageID);
+
+		IndexIterator it = index.open(t2, nonuniqueRootPageID,
+				SearchMode.FIRST, null, null, OpenMode.READ);
+		int count = 0;
+		byte[] previous = null;
+		do {
+			assertTrue("entries in ascending order", (previous == null)
+					|| (Field.UINTEGER.compare(previous, it.getKey()) <= 0));
+			previous = it.getKey();
+			count++;
+		} while (it.next());
+		it.close();
+		assertEquals("all entries found", all.size(), count);
+
+		for (Entry entry : entries) {
+			assertNotNull("value for loaded key found", index.read(t2,
+					nonuniqueRootPageID, entry.key));
+		}
+	}
+
+	@Test
+	public void testInsertUniqueIndexLongStringKeys() throws ServerException {
+		uniqueRootPageID = index.createIndex(t2, SysMockup.CONTAINER_NO,
+				Field.STRING, Field.UINTEGER, true, true);
+		String prefix = "/site/regions/europe/item/description/parlist/";
+		List<Entry> entries = new ArrayList<Entry>();
+		for (int i = 1; i <= REDUCED_LOAD_SIZE; i++) {
+			String suffix = Integer.toString(rand.nextInt(1000000)) + "/" + i;
+			entries.add(new Entry(Field.STRING.fromString(prefix + suffix),
+					Calc.fromUIntVar(i)));
+		}
+		Collections.shuffle(entries, rand);
+		loadIndex(t2, entries, uniqueRootPageID);
+
+		for (Entry entry : entries) {
+			byte[] readValue = index.read(t2, uniqueRootPageID, entry.key);
+			assertNotNull("value for inserted key found", readValue);
+			assertTrue("read value is same as written value", (Field.UINTEGER
+					.compare(readValue, entry.value) == 0));
+		}
+	}
+
+	@Test
+	public void testKeyFilterUniqueIndex() throws ServerException {
+		BPlusIndex filtered = new BPlusIndex(sm.bufferManager, null, true);
+		LinkedList<Entry> entries = generateEntries(REDUCED_LOAD_SIZE, 0);
+		int i = 0;
+		for (Entry entry : entries) {
+			if (i++ % 2 == 0) {
+				filtered.insert(t2, uniqueRootPageID, entry.key, entry.value);
+			}
+		}
+
+		// first probe builds the filter from the index content
+		assertNotNull("value for inserted key found", filtered.read(t2,
+				uniqueRootPageID, entries.getFirst().key));
+
+		// inserts through other index instances maintain the filter, too
+		i = 0;
+		for (Entry entry : entries) {
+			if (i++ % 2 == 1) {
+				index.insert(t2, uniqueRootPageID, entry.key, entry.value);
+			}
+		}
+
+		for (Entry entry : entries) {
+			assertTrue("key may be contained", filtered.mayContain(t2,
+					uniqueRootPageID, entry.key));
+			assertNotNull("value for inserted key found", filtered.read(t2,
+					uniqueRootPageID, entry.key));
+		}
+
+		sm.buffer.resetCounters();
+		int misses = 0;
+		for (Entry entry : entries) {
+			byte[] missingKey = Calc.fromUIntVar(Calc.toUIntVar(entry.key) + 1);
+			assertNull("no value for missing key", filtered.read(t2,
+					uniqueRootPageID, missingKey));
+			if (!filtered.mayContain(t2, uniqueRootPageID, missingKey)) {
+				misses++;
+			}
+		}
+		assertTrue("most missing keys rejected by filter",
+				misses > 0.9 * entries.size());
+		int fixes = sm.buffer.getHitCount() + sm.buffer.getMissCount();
+		assertTrue("index rarely accessed for missing keys",
+				fixes < 0.5 * entries.size());
+		assertEquals("fixed pages after probes", 0, sm.buffer.getFixCount());
+	}
+
+	@Test
+	public void testKeyFilterConcurrentInsertAndBuild() throws Exception {
+		final BPlusIndex filtered = new BPlusIndex(sm.bufferManager, null, true);
+		final LinkedList<Entry> entries = generateEntries(REDUCED_LOAD_SIZE, 0);
+		final Throwable[] failure = new Throwable[1];
+		int i = 0;
+		for (Entry entry : entries) {
+			if (i++ % 2 == 0) {
+				filtered.insert(t2, uniqueRootPageID, entry.key, entry.value);
+			}
+		}
+		t2.commit();
+		t2 = sm.taMgr.begin();
+
+		Thread inserter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Tx tx = sm.taMgr.begin();
+					int n = 0;
+					for (Entry entry : entries) {
+						if (n++ % 2 == 1) {
+							index.insert(tx, uniqueRootPageID, entry.key,
+									entry.value);
+						}
+					}
+					tx.commit();
+				} catch (Throwable e) {
+					failure[0] = e;
+				}
+			}
+		};
+		inserter.start();
+
+		// rebuild the filter over and over while the inserts are running
+		byte[] missingKey = Calc.fromUIntVar(Integer.MAX_VALUE);
+		while (inserter.isAlive()) {
+			BPlusTree.keyFilters.remove(uniqueRootPageID);
+			filtered.mayContain(t2, uniqueRootPageID, missingKey);
+		}
+		inserter.join();
+		assertNull("inserts succeeded", failure[0]);
+
+		for (Entry entry : entries) {
+			assertTrue("key may be contained", filtered.mayContain(t2,
+					uniqueRootPageID, entry.key));
+		}
+	}
+
+	@Test
+	public void testBatchScanWithPrevious() throws ServerException {
+		LinkedList<Entry> entries = generateEntries(LOAD_SIZE, 0);
+		for (Entry entry : entries) {
+			index.insert(t2, uniqueRootPageID, entry.key, entry.value);
+		}
+
+		IndexIterator it = index.open(t2, uniqueRootPageID, SearchMode.FIRST,
+				null, null, OpenMode.READ);
+		assertTrue("batch iterator used for read-only scan",
+				it instanceof BPlusIndexBatchIterator);
+		int count = 0;
+		try {
+			for (Entry entry : entries) {
+				assertTrue("key found", (Field.UINTEGER.compare(entry.key, it
+						.getKey()) == 0));
+				count++;
+
+				if (count % 1000 == 0) {
+					// step back and forth in the middle of a batch
+					assertTrue("moved to previous", it.previous());
+					assertTrue("moved to next", it.next());
+					assertTrue("same key after previous/next", (Field.UINTEGER
+							.compare(entry.key, it.getKey()) == 0));
+				}
+
+				assertTrue("has next", it.next() || (count == LOAD_SIZE));
+			}
+			assertNull("iterator at end", it.getKey());
+		} finally {
+			it.close();
+		}
+		assertEquals("fixed pages after scan", 0, sm.buffer.getFixCount());
+		assertEquals("scanned entries", LOAD_SIZE, count);
+	}
+
+	@Test
+	public void testSampleStatisticsNonUniqueIndex() throws ServerException {
+		LinkedList<Entry> entries = generateEntries(LOAD_SIZE, 0);
+		List<Entry> all = new ArrayList<Entry>(entries);
+		for (int i = 0; i < LOAD_SIZE; i += 100) {
+			all.addAll(generateDuplicates(entries.get(i),
+					NUMBER_OF_DUPLICATES));
+		}
+
+		MergeSort sort = new MergeSort(Field.UINTEGER, Field.UINTEGER);
+		for (Entry entry : all) {
+			sort.add(new SortItem(entry.key, entry.value));
+		}
+		Stream<? extends SortItem> sorted = sort.sort();
+		try {
+			index.load(t2, nonuniqueRootPageID, sorted);
+		} finally {
+			sorted.close();
+		}
+
+		IndexStatisticsVisitor visitor = new IndexStatisticsVisitor();
+		index.traverse(t2, nonuniqueRootPageID, visitor);
+		IndexStatistics exact = visitor.getIndexStatistics();
+		IndexStatistics sampled = index.sample(t2, nonuniqueRootPageID, 0.02);
+		assertEquals("fixed pages after sampling", 0, sm.buffer
+				.getFixCount());
+
+		assertEquals("index height", exact.getIndexHeight(), sampled
+				.getIndexHeight());
+		assertEstimate("tuples", all.size(), sampled.getIndexTuples());
+		assertEstimate("leaves", exact.getIndexLeaveCount(), sampled
+				.getIndexLeaveCount());
+		assertEstimate("pages", exact.getIndexPageCount(), sampled
+				.getIndexPageCount());
+		assertEstimate("distinct keys", LOAD_SIZE, sampled.getDistinctKeys());
+		assertEquals("min key", Field.UINTEGER.toString(entries.getFirst().key),
+				sampled.getMinKey());
+		assertEquals("max key", Field.UINTEGER.toString(entries.getLast().key),
+				sampled.getMaxKey());
+
+		String[] bounds = sampled.getHistogramBounds();
+		long[] counts = sampled.getHistogramCounts();
+		assertNotNull("histogram available", bounds);
+		assertEquals("bucket count", bounds.length, counts.length);
+		assertEquals("last bucket bound", sampled.getMaxKey(),
+				bounds[bounds.length - 1]);
+		long histogramTuples = 0;
+		for (int i = 0; i < bounds.length; i++) {
+			histogramTuples += counts[i];
+			assertTrue("bucket bounds ascending", (i == 0)
+					|| (Long.parseLong(bounds[i - 1]) < Long
+							.parseLong(bounds[i])));
+		}
+		assertEstimate("histogram tuples", sampled.getIndexTuples(),
+				histogramTuples);
+	}
+
+	private void assertEstimate(String message, long expected, long estimate) {
+		assertTrue(String.format("%s: estimate %s too far off %s", message,
+				estimate, expected),
+				Math.abs(estimate - expected) <= 0.15 * expected);
+	}
+
+	@Test
+	public void testBatchInsertUniqueIndex() throws ServerException {
+		LinkedList<Entry> entries = generateEntries(LOAD_SIZE, 0);
+		byte[][] keys = new byte[entries.size()][];
+		byte[][] values = new byte[entries.size()][];
+		int i = 0;
+		for (Entry entry : entries) {
+			keys[i] = entry.key;
+			values[i++] = entry.value;
+		}
+
+		index.insert(t2, uniqueRootPageID, keys, values);
+		assertEquals("fixed pages after insert", 0, sm.buffer.getFixCount());
+		indexPageHelper.checkIndexConsistency(t2, sm.buffer, uniqueRootPageID);
+
+		for (i = 0; i < keys.length; i++) {
+			byte[] readValue = index.read(t2, uniqueRootPageID, keys[i]);
+			assertNotNull("value for inserted key found", readValue);
+			assertTrue("read value is same as written value", (Field.UINTEGER
+					.compare(values[i], readValue) == 0));
+			assertNull("no value for missing key", index.read(t2,
+					uniqueRootPageID, Calc.fromUIntVar((i + 1) * 100 + 1)));
+		}
+	}
+
+	@Test
+	public void testShortestSeparator() throws DocumentException {
+		byte[] left = Field.STRING.fromString("/site/regions/africa/item");
+		byte[] right = Field.STRING.fromString("/site/regions/europe/item");
+		byte[] separator = Field.STRING.shortestSeparator(left, right);
+		assertEquals("/site/regions/e", Field.STRING.toString(separator));
+		assertTrue(Field.STRING.compare(left, separator) <= 0);
+		assertTrue(Field.STRING.compare(separator, right) < 0);
+
+		// no shorter separator exists for a prefix of the right key
+		byte[] prefix = Field.STRING.fromString("/site/regions");
+		assertTrue(prefix == Field.STRING.shortestSeparator(prefix, right));
+
+		XTCdeweyID leftID = new XTCdeweyID(new DocID(1, 1), "1.3.5.7.9");
+		XTCdeweyID rightID = new XTCdeweyID(new DocID(1, 1), "1.5.3.3");
+		byte[] deweySeparator = Field.COLLECTIONDEWEYID.shortestSeparator(
+				Field.COLLECTIONDEWEYID.encode(leftID),
+				Field.COLLECTIONDEWEYID.encode(rightID));
+		assertEquals(new XTCdeweyID(new DocID(1, 1), "1.5"),
+				Field.COLLECTIONDEWEYID.decode(1, deweySeparator));
+	}
+
+	@Test(expected = IndexAccessException.class)
+	public void testBulkLoadNonEmptyIndex() throws ServerException {
+		index.insert(t2, uniqueRootPageID, Calc.fromUIntVar(1), Calc
+				.fromUIntVar(1));
+		MergeSort sort = new MergeSort(Field.UINTEGER, Field.UINTEGER);
+		sort.add(new SortItem(Calc.fromUIntVar(2), Calc.fromUIntVar(2)));
+		index.load(t2, uniqueRootPageID, sort.sort());
+	}
+
+	@Test(expected = DuplicateKeyException.class)
+	public void testBulkLoadDuplicateKeyUniqueIndex() throws ServerException {
+		MergeSort sort = new MergeSort(Field.UINTEGER, Field.UINTEGER);
+		sort.add(new SortItem(Calc.fromUIntVar(1), Calc.fromUIntVar(1)));
+		sort.add(new SortItem(Calc.fromUIntVar(2), Calc.fromUIntVar(2)));
+		sort.add(new SortItem(Calc.fromUIntVar(2), Calc.fromUIntVar(3)));
+		index.load(t2, uniqueRootPageID, sort.sort());
+	}
+
+	@Test(expected = DuplicateKeyException.class)
+	public void testBulkLoadDuplicateEntryNonUniqueIndex()
+			throws ServerException {
+		MergeSort sort = new MergeSort(Field.UINTEGER, Field.UINTEGER);
+		sort.add(new SortItem(Calc.fromUIntVar(1), Calc.fromUIntVar(1)));
+		sort.add(new SortItem(Calc.fromUIntVar(1), Calc.fromUIntVar(2)));
+		sort.add(new SortItem(Calc.fromUIntVar(1), Calc.fromUIntVar(2)));
+		index.load(t2, nonuniqueRootPageID, sort.sort());
+	}
+}
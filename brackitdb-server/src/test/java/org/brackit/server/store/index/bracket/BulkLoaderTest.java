@@ -0,0 +1,233 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.bracket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.io.manager.BufferMgr;
+import org.brackit.server.node.DocID;
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.store.OpenMode;
+import org.brackit.server.store.SearchMode;
+import org.brackit.server.store.index.bracket.page.BPContext;
+import org.brackit.server.store.index.bracket.page.Branch;
+import org.brackit.server.store.index.bracket.page.Leaf;
+import org.brackit.server.store.page.bracket.DeweyIDBuffer;
+import org.brackit.server.store.page.bracket.navigation.NavigationStatus;
+import org.brackit.server.tx.IsolationLevel;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxMgr;
+import org.brackit.server.tx.impl.TaMgrMockup;
+import org.brackit.xquery.util.Cfg;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkLoaderTest {
+
+	protected static final String CONTAINER_NAME = BulkLoaderTest.class
+			.getSimpleName() + ".cnt";
+	protected static final int CONTAINER_NO = 0;
+	protected static final int BUFFER_SIZE = 500;
+	protected static final int EXTEND_SIZE = 300;
+	protected static final int BLOCK_SIZE = 4096;
+	protected static final int INITIAL_SIZE = 20;
+
+	private static final int NODE_COUNT = 20000;
+
+	private TxMgr txMgr;
+	private Tx tx;
+
+	private BracketTree tree;
+	private BracketIndex index;
+
+	@Test
+	public void loadEmptyIndex() throws Exception {
+		PageID rootPageID = index.createIndex(tx, CONTAINER_NO);
+		DocID docID = new DocID(rootPageID.value(), 0);
+		load(rootPageID, docID);
+
+		BPContext root = tree.getPage(tx, rootPageID, false, false);
+		try {
+			assertFalse("root converted to branch", root.isLeaf());
+		} finally {
+			root.cleanup();
+		}
+
+		// scan leaf chain
+		Leaf page = tree.descend(tx, rootPageID, SearchMode.FIRST, null,
+				false);
+		page.assignDeweyIDBuffer(new DeweyIDBuffer());
+		assertTrue(page.moveFirst());
+		XTCdeweyID previous = null;
+		int count = 0;
+		while (page != null) {
+			XTCdeweyID key = page.getKey();
+			if (previous != null) {
+				assertTrue("document order", previous.compareTo(key) < 0);
+			}
+			if (!key.isRoot()) {
+				count++;
+			}
+			previous = key;
+			if (page.moveNextInDocument() != NavigationStatus.FOUND) {
+				page = tree.getNextPage(tx, rootPageID, page, OpenMode.READ,
+						true);
+				if ((page != null)
+						&& (page.moveNextInDocument() != NavigationStatus.FOUND)) {
+					page.cleanup();
+					page = null;
+				}
+			}
+		}
+		assertEquals("all nodes loaded", NODE_COUNT, count);
+
+		// point lookups via branch levels
+		for (int i = 0; i < NODE_COUNT; i += 997) {
+			Leaf leaf = tree.openInternal(tx, rootPageID,
+					NavigationMode.TO_KEY, child(docID, i), OpenMode.READ,
+					null, null);
+			assertNotNull("node found", leaf);
+			leaf.cleanup();
+		}
+	}
+
+	@Test
+	public void loadWithoutCounts() throws Exception {
+		PageID rootPageID = index.createIndex(tx, CONTAINER_NO);
+		DocID docID = new DocID(rootPageID.value(), 0);
+		load(rootPageID, docID);
+
+		assertFalse("root not counted", isCounted(rootPageID));
+		checkCounts(rootPageID, docID);
+	}
+
+	@Test
+	public void countLoadedIndex() throws Exception {
+		Cfg.set(BulkLoader.SUBTREE_COUNTS, true);
+		PageID rootPageID = index.createIndex(tx, CONTAINER_NO);
+		DocID docID = new DocID(rootPageID.value(), 0);
+		load(rootPageID, docID);
+
+		assertTrue("root counted", isCounted(rootPageID));
+		checkCounts(rootPageID, docID);
+
+		// opening the index for update drops the counts
+		Leaf leaf = tree.openInternal(tx, rootPageID, NavigationMode.TO_KEY,
+				child(docID, 0), OpenMode.UPDATE, null, null);
+		leaf.cleanup();
+
+		assertFalse("root not counted", isCounted(rootPageID));
+		checkCounts(rootPageID, docID);
+
+		// the counts can be rebuilt
+		assertEquals("records", NODE_COUNT + 1, index.buildSubtreeCounts(tx,
+				rootPageID));
+		assertTrue("root counted", isCounted(rootPageID));
+		checkCounts(rootPageID, docID);
+	}
+
+	@Test
+	public void dropCountsSurvivesRollback() throws Exception {
+		Cfg.set(BulkLoader.SUBTREE_COUNTS, true);
+		PageID rootPageID = index.createIndex(tx, CONTAINER_NO);
+		DocID docID = new DocID(rootPageID.value(), 0);
+		load(rootPageID, docID);
+		tx.commit();
+		assertTrue("root counted", isCounted(rootPageID));
+
+		tx = txMgr.begin(IsolationLevel.NONE, null, false);
+		Leaf leaf = tree.openInternal(tx, rootPageID, NavigationMode.TO_KEY,
+				child(docID, 0), OpenMode.UPDATE, null, null);
+		leaf.cleanup();
+		tx.rollback();
+
+		// concurrent updates might have changed the index in the meantime
+		tx = txMgr.begin(IsolationLevel.NONE, null, false);
+		assertFalse("root not counted", isCounted(rootPageID));
+		checkCounts(rootPageID, docID);
+	}
+
+	private void checkCounts(PageID rootPageID, DocID docID)
+			throws Exception {
+		for (int i = 0; i < NODE_COUNT; i += 1999) {
+			int j = Math.min(NODE_COUNT, i + 4999);
+			assertEquals("range count", j - i, tree.countRange(tx,
+					rootPageID, child(docID, i), child(docID, j)));
+			assertEquals("positional lookup", child(docID, j - 1), tree
+					.selectInRange(tx, rootPageID, child(docID, i), child(
+							docID, j), j - i - 1));
+		}
+		assertNull("position out of range", tree.selectInRange(tx,
+				rootPageID, child(docID, 0), child(docID, 10), 10));
+	}
+
+	private boolean isCounted(PageID rootPageID) throws Exception {
+		BPContext root = tree.getPage(tx, rootPageID, false, false);
+		try {
+			return ((Branch) root).isCounted();
+		} finally {
+			root.cleanup();
+		}
+	}
+
+	private void load(PageID rootPageID, DocID docID) throws Exception {
+		InsertController insertCtrl = index.openForInsert(tx, rootPageID,
+				OpenMode.LOAD, null);
+		for (int i = 0; i < NODE_COUNT; i++) {
+			insertCtrl.insert(child(docID, i), ("text" + i).getBytes(),
+					(i == 0) ? 1 : 0);
+		}
+		insertCtrl.close();
+	}
+
+	private static XTCdeweyID child(DocID docID, int i) {
+		return new XTCdeweyID(docID, new int[] { 1, 2 * i + 3 });
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Cfg.set(BulkLoader.SUBTREE_COUNTS, false);
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		txMgr = new TaMgrMockup();
+		BufferMgr bufferManager = txMgr.getBufferManager();
+		bufferManager.createBuffer(BUFFER_SIZE, BLOCK_SIZE, CONTAINER_NO,
+				CONTAINER_NAME, INITIAL_SIZE, EXTEND_SIZE);
+		tx = txMgr.begin(IsolationLevel.NONE, null, false);
+		tree = new BracketTree(bufferManager);
+		index = new BracketIndexImpl(tree, bufferManager);
+	}
+}
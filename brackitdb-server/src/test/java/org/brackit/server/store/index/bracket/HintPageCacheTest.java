@@ -0,0 +1,97 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.index.bracket;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.node.XTCdeweyID;
+import org.junit.Test;
+
+public class HintPageCacheTest {
+
+	private static final PageID ROOT = new PageID(1, 2);
+
+	private static final PageID OTHER_ROOT = new PageID(1, 3);
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		HintPageCache cache = new HintPageCache(16);
+		XTCdeweyID deweyID = new XTCdeweyID("2:1.3.5");
+		HintPageInformation hint = new HintPageInformation(new PageID(1, 7),
+				42, 100);
+
+		assertNull(cache.get(ROOT, deweyID));
+		cache.put(ROOT, deweyID, hint);
+		assertSame(hint, cache.get(ROOT, new XTCdeweyID("2:1.3.5")));
+		assertNull(cache.get(OTHER_ROOT, deweyID));
+		assertNull(cache.get(ROOT, new XTCdeweyID("2:1.3.7")));
+		assertNull(cache.get(ROOT, new XTCdeweyID("3:1.3.5")));
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		HintPageCache cache = new HintPageCache(16);
+		XTCdeweyID deweyID = new XTCdeweyID("2:1.3.5");
+		HintPageInformation stale = new HintPageInformation(new PageID(1, 7),
+				42, 100);
+		HintPageInformation hint = new HintPageInformation(new PageID(1, 7),
+				43, 100);
+
+		cache.put(ROOT, deweyID, hint);
+		// an outdated hint must not remove the current entry
+		cache.remove(ROOT, deweyID, stale);
+		assertSame(hint, cache.get(ROOT, deweyID));
+		cache.remove(ROOT, deweyID, hint);
+		assertNull(cache.get(ROOT, deweyID));
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		HintPageCache cache = new HintPageCache(16);
+		XTCdeweyID deweyID = new XTCdeweyID("2:1.3.5");
+		HintPageInformation hint = new HintPageInformation(new PageID(1, 7),
+				42, 100);
+
+		cache.put(ROOT, deweyID, hint);
+		cache.clear();
+		assertNull(cache.get(ROOT, deweyID));
+		cache.put(ROOT, deweyID, hint);
+		assertSame(hint, cache.get(ROOT, deweyID));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		HintPageCache cache = new HintPageCache(0);
+		XTCdeweyID deweyID = new XTCdeweyID("2:1.3.5");
+		cache.put(ROOT, deweyID, new HintPageInformation(new PageID(1, 7), 42,
+				100));
+		assertNull(cache.get(ROOT, deweyID));
+	}
+}
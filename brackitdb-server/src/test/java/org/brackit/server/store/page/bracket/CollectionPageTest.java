@@ -624,6 +624,27 @@ public class CollectionPageTest {
 		}
 	}
 
+	@Test
+	public void skipDirectoryTest() throws DocumentException {
+
+		// wide documents with enough nodes for navigation checkpoints
+		generateWideDocument();
+		page.format(new PageID(collectionID));
+
+		DeweyIDBuffer deweyIDBuffer = new DeweyIDBuffer();
+		docIDs = new int[] { 0, 2 };
+		for (int docID : docIDs) {
+			insertSampleDocument(docID, deweyIDBuffer);
+		}
+
+		// repeat to navigate with and without the skip directory
+		for (int i = 0; i < 2; i++) {
+			navigateToKeyTest();
+			navigateNextSiblingTest();
+			navigateLastChildTest();
+		}
+	}
+
 	private int insertSampleDocument(int docNumber, DeweyIDBuffer deweyIDBuffer)
 			throws DocumentException {
 
@@ -676,6 +697,31 @@ public class CollectionPageTest {
 		}
 	}
 	
+	private void generateWideDocument() throws DocumentException {
+
+		DocID docID = new DocID(-1, 0);
+
+		int blocks = 8;
+		int children = 10;
+		records = new Record[blocks * children];
+
+		for (int i = 0; i < blocks; i++) {
+			for (int j = 0; j < children; j++) {
+				String deweyID = String.format("1.%s.%s.3", 2 * i + 3,
+						2 * j + 3);
+				int ancestors = (j > 0) ? 1 : (i > 0) ? 2 : 3;
+				records[i * children + j] = new Record(new XTCdeweyID(docID,
+						deweyID), ancestors, "text" + i + "." + j);
+			}
+		}
+
+		document = new XMLDoc();
+
+		for (Record record : records) {
+			document.addRecord(record);
+		}
+	}
+
 	@Test
 	public void emptyPageTest() throws DocumentException {
 		
@@ -0,0 +1,98 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.store.page.bracket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.brackit.server.io.buffer.PageID;
+import org.junit.Test;
+
+public class ExternalValueCacheTest {
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		ExternalValueCache cache = new ExternalValueCache(1024);
+		PageID pageID = new PageID(1, 7);
+		byte[] value = new byte[100];
+
+		assertNull(cache.get(pageID, 42));
+		cache.put(pageID, 42, value);
+		assertSame(value, cache.get(new PageID(1, 7), 42));
+		assertNull(cache.get(new PageID(1, 8), 42));
+		assertEquals(100, cache.getSize());
+	}
+
+	@Test
+	public void testLSNChange() throws Exception {
+		ExternalValueCache cache = new ExternalValueCache(1024);
+		PageID pageID = new PageID(1, 7);
+
+		cache.put(pageID, 42, new byte[100]);
+		// the page was reused for another value
+		assertNull(cache.get(pageID, 43));
+		assertNull(cache.get(pageID, 42));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		ExternalValueCache cache = new ExternalValueCache(1024);
+		PageID pageID = new PageID(1, 7);
+
+		cache.put(pageID, 42, new byte[100]);
+		cache.remove(pageID);
+		assertNull(cache.get(pageID, 42));
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		ExternalValueCache cache = new ExternalValueCache(1000);
+		PageID hot = new PageID(1, 1);
+		cache.put(hot, 1, new byte[200]);
+
+		for (int i = 2; i < 50; i++) {
+			cache.get(hot, 1);
+			cache.put(new PageID(1, i), 1, new byte[200]);
+			assertTrue(cache.getSize() <= 1000);
+		}
+		// the frequently accessed value survived
+		assertEquals(200, cache.get(hot, 1).length);
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		ExternalValueCache cache = new ExternalValueCache(0);
+		PageID pageID = new PageID(1, 7);
+		cache.put(pageID, 42, new byte[100]);
+		assertNull(cache.get(pageID, 42));
+	}
+}
@@ -30,6 +30,7 @@ package org.brackit.server.store.page.keyvalue;
 import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.store.page.PageCache;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -76,4 +77,53 @@ public class CachingKeyValuePageImplTest extends KeyValuePageImplTest {
 		page.setKey(0, updateKey);
 //		System.out.println(Arrays.toString(page.getKey(1)));
 	}
+
+	@Test
+	public void testCacheSharedAndRebuiltOnBypass() {
+		Handle handle = page.getHandle();
+		Entry a = new Entry(new byte[] { 1 }, new byte[] { 1 });
+		Entry b = new Entry(new byte[] { 2 }, new byte[] { 2 });
+		page.format(handle.getPageID());
+		verifiedWrite(0, a, false);
+		page.setLSN(1);
+		Object cache = handle.getCache();
+		Assert.assertTrue(((PageCache) cache).isCurrent(handle));
+
+		// a page created for the same frame reuses the decoded slots
+		KeyValuePageImpl shared = new CachingKeyValuePageImpl(null, handle);
+		Assert.assertSame(cache, handle.getCache());
+		Assert.assertArrayEquals(a.getKey(), shared.getKey(0));
+
+		// an unlogged modification that bypassed the cache is detected, too
+		KeyValuePageImpl plain = new KeyValuePageImpl(null, handle);
+		plain.insert(0, b.getKey(), b.getValue(), false);
+		KeyValuePageImpl reloaded = new CachingKeyValuePageImpl(null, handle);
+		Assert.assertEquals(2, reloaded.getRecordCount());
+		Assert.assertArrayEquals(b.getKey(), reloaded.getKey(0));
+		Assert.assertArrayEquals(a.getKey(), reloaded.getKey(1));
+		Assert.assertArrayEquals(a.getValue(), reloaded.getValue(1));
+	}
+
+	@Test
+	public void testRestartKeysAfterBypass() {
+		Handle handle = page.getHandle();
+		page.format(handle.getPageID());
+
+		// compressed keys written behind the cache's back
+		KeyValuePageImpl plain = new KeyValuePageImpl(null, handle);
+		for (int no = 0; no < KeyValuePageImpl.restartInterval; no++) {
+			Entry entry = generateRandomEntry(1, 6);
+			Assert.assertTrue(plain.insert(no, entry.getKey(), entry
+					.getValue(), true));
+		}
+
+		// the rebuilt cache must know the chain they form
+		page = new CachingKeyValuePageImpl(null, handle);
+		for (int no = 0; no < 3 * KeyValuePageImpl.restartInterval; no++) {
+			int writeToPos = rand.nextInt(page.getRecordCount() + 1);
+			Assert.assertTrue(verifiedWrite(writeToPos, generateRandomEntry(
+					1, 6), true));
+			assertChainsBounded();
+		}
+	}
 }
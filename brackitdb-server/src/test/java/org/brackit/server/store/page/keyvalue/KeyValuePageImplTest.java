@@ -27,11 +27,14 @@
  */
 package org.brackit.server.store.page.keyvalue;
 
+import static org.junit.Assert.assertTrue;
+
 import java.util.ArrayList;
 
 import org.brackit.server.io.buffer.BufferException;
 import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.store.page.RecordFlag;
 import org.brackit.server.util.Calc;
 import org.junit.Test;
 
@@ -54,6 +57,39 @@ public class KeyValuePageImplTest extends KeyValuePageTest {
 		testWriteUntilFullLarge(true, true, false);
 	}
 
+	@Test
+	public void testRestartKeys() {
+		page.format(page.getHandle().getPageID());
+
+		for (int no = 0; no < 120; no++) {
+			int writeToPos = (no % 3 == 0) ? 0 : rand.nextInt(no + 1);
+			assertTrue("entry written", verifiedWrite(writeToPos,
+					generateRandomEntry(1, 6), true));
+			assertChainsBounded();
+		}
+
+		int restarts = 0;
+		for (int pos = page.getRecordCount() - 2; pos > 0; pos--) {
+			if (!page.checkFlag(pos, RecordFlag.PREFIX_COMPRESSION)) {
+				restarts++;
+				verifiedDelete(pos);
+				assertChainsBounded();
+			}
+		}
+		assertTrue("restart keys written", restarts > 0);
+	}
+
+	protected void assertChainsBounded() {
+		int chainLength = 0;
+
+		for (int pos = 1; pos < page.getRecordCount(); pos++) {
+			chainLength = (page.checkFlag(pos, RecordFlag.PREFIX_COMPRESSION)) ? chainLength + 1
+					: 0;
+			assertTrue("chain of compressed keys is bounded",
+					chainLength <= KeyValuePageImpl.restartInterval);
+		}
+	}
+
 	protected void testWriteUntilFullLarge(boolean compressed, boolean prepend,
 			boolean random) {
 		ArrayList<Entry> entries = new ArrayList<Entry>();
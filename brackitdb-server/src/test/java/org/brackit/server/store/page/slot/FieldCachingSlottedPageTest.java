@@ -29,6 +29,8 @@ package org.brackit.server.store.page.slot;
 
 import org.brackit.server.io.buffer.Handle;
 import org.brackit.server.io.buffer.PageID;
+import org.brackit.server.store.page.PageCache;
+import org.junit.Assert;
 import org.junit.Test;
 
 /**
@@ -63,4 +65,31 @@ public class FieldCachingSlottedPageTest extends SlottedPageTest {
 		updatedField[0] = 8; // directly use returned field for update
 		verifiedFieldUpdate(0, 0, updatedField);
 	}
+
+	@Test
+	public void testCacheSharedAndRebuiltOnBypass() {
+		Handle handle = page.getHandle();
+		Tuple a = new ArrayTuple(new byte[][] { new byte[] { 1 },
+				new byte[] { 1 } });
+		Tuple b = new ArrayTuple(new byte[][] { new byte[] { 2 },
+				new byte[] { 2 } });
+		page.format(handle.getPageID());
+		verifiedWrite(0, a, false);
+		page.setLSN(1);
+		Object cache = handle.getCache();
+		Assert.assertTrue(((PageCache) cache).isCurrent(handle));
+
+		// a page created for the same frame reuses the decoded fields
+		SlottedPage shared = new FieldCachingSlottedPage(null, handle);
+		Assert.assertSame(cache, handle.getCache());
+		Assert.assertArrayEquals(a.get(0), shared.readField(0, 0));
+
+		// an unlogged modification that bypassed the cache is detected, too
+		SlottedPage plain = new SlottedPage(null, handle);
+		plain.write(0, b, false);
+		SlottedPage reloaded = new FieldCachingSlottedPage(null, handle);
+		Assert.assertEquals(2, reloaded.getRecordCount());
+		Assert.assertArrayEquals(b.get(0), reloaded.readField(0, 0));
+		Assert.assertArrayEquals(a.get(0), reloaded.readField(1, 0));
+	}
 }
@@ -56,6 +56,11 @@ public class DummyTX implements Tx {
 	public void addPreCommitHook(PreCommitHook hook, String name) {
 	}
 
+	@Override
+	public boolean markReadOnly() {
+		return false;
+	}
+
 	@Override
 	public long checkPrevLSN() {
 		return 0;
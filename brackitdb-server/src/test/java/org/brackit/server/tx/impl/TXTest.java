@@ -0,0 +1,139 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.brackit.server.ServerException;
+import org.brackit.server.tx.IsolationLevel;
+import org.brackit.server.tx.PreCommitHook;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxState;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TXTest {
+	private TaMgrMockup taMgr;
+
+	@Test
+	public void testMarkReadOnly() throws Exception {
+		TX tx = (TX) taMgr.begin();
+		assertFalse(tx.isReadOnly());
+		assertTrue(tx.markReadOnly());
+		assertTrue(tx.isReadOnly());
+		assertNull(taMgr.getTxTable().get(tx.getID()));
+		assertNotNull(taMgr.getReadOnlyTxTable().get(tx.getID()));
+		tx.commit();
+	}
+
+	@Test
+	public void testMarkReadOnlyAfterLogWrite() throws Exception {
+		TX tx = (TX) taMgr.begin();
+		tx.logDummyCLR(-1);
+		assertFalse(tx.markReadOnly());
+		assertFalse(tx.isReadOnly());
+		tx.commit();
+	}
+
+	@Test
+	public void testUpgradeOnFirstLogWrite() throws Exception {
+		TX tx = (TX) taMgr.begin();
+		assertTrue(tx.markReadOnly());
+		long nextLSN = taMgr.getLog().getNextLSN();
+		long LSN = tx.logDummyCLR(-1);
+		assertFalse(tx.isReadOnly());
+		assertNotNull(taMgr.getTxTable().get(tx.getID()));
+		assertNull(taMgr.getReadOnlyTxTable().get(tx.getID()));
+		assertTrue(tx.checkMinUndoLSN() >= nextLSN);
+		assertTrue(tx.checkMinUndoLSN() <= LSN);
+		tx.commit();
+		assertTrue(taMgr.getLog().getNextLSN() > LSN);
+		assertNull(taMgr.getTxTable().get(tx.getID()));
+	}
+
+	@Test
+	public void testUpgradeOnHook() throws Exception {
+		TX tx = (TX) taMgr.begin();
+		assertTrue(tx.markReadOnly());
+		tx.addPreCommitHook(new PreCommitHook() {
+			@Override
+			public void prepare(Tx t) throws ServerException {
+			}
+
+			@Override
+			public void abort(Tx t) throws ServerException {
+			}
+		}, null);
+		assertFalse(tx.isReadOnly());
+		assertNotNull(taMgr.getTxTable().get(tx.getID()));
+		assertNull(taMgr.getReadOnlyTxTable().get(tx.getID()));
+		tx.commit();
+		assertEquals(TxState.COMMITTED, tx.getState());
+	}
+
+	@Test
+	public void testReadOnlyCommitWritesNoLog() throws Exception {
+		TX tx = (TX) taMgr.begin(IsolationLevel.SERIALIZABLE, null, true);
+		assertTrue(tx.isReadOnly());
+		assertNotNull(taMgr.getReadOnlyTxTable().get(tx.getID()));
+		long nextLSN = taMgr.getLog().getNextLSN();
+		tx.commit();
+		assertEquals(TxState.COMMITTED, tx.getState());
+		assertEquals(nextLSN, taMgr.getLog().getNextLSN());
+		assertNull(taMgr.getReadOnlyTxTable().get(tx.getID()));
+	}
+
+	@Test
+	public void testInferredReadOnlyCommitWritesNoLog() throws Exception {
+		TX tx = (TX) taMgr.begin();
+		assertTrue(tx.markReadOnly());
+		long nextLSN = taMgr.getLog().getNextLSN();
+		tx.commit();
+		assertEquals(TxState.COMMITTED, tx.getState());
+		assertEquals(nextLSN, taMgr.getLog().getNextLSN());
+		assertNull(taMgr.getReadOnlyTxTable().get(tx.getID()));
+	}
+
+	@Test
+	public void testCheckpointKeepsFirstLogRecord() throws Exception {
+		TX tx = (TX) taMgr.begin();
+		long LSN = tx.logDummyCLR(-1);
+		taMgr.checkpoint();
+		assertEquals(LSN, taMgr.getLog().get(LSN).getLSN());
+		tx.commit();
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		taMgr = new TaMgrMockup();
+	}
+}
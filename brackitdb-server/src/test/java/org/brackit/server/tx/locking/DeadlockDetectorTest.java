@@ -87,6 +87,11 @@ public class DeadlockDetectorTest {
 			return blockedAt;
 		}
 
+		@Override
+		public boolean validate() {
+			return true;
+		}
+
 		@Override
 		public void freeResources() {
 		}
@@ -0,0 +1,84 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.locking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LockMetricsTest {
+
+	@Test
+	public void countAcquisitionsAndConversions() {
+		LockMetrics metrics = new LockMetrics("test");
+		metrics.acquired("a", "S", false);
+		metrics.acquired("a", "S", false);
+		metrics.acquired("a", "X", true);
+		assertEquals("requests", 3, metrics.getRequestCount());
+		assertEquals("conversions", 1, metrics.getConversionCount());
+		String[] acquisitions = metrics.getAcquisitions();
+		assertEquals("modes", 2, acquisitions.length);
+		assertEquals("S: 2", acquisitions[0]);
+		assertEquals("X: 1", acquisitions[1]);
+	}
+
+	@Test
+	public void waitHistogram() {
+		LockMetrics metrics = new LockMetrics("test");
+		metrics.waited("a", 0);
+		metrics.waited("a", 3);
+		metrics.waited("b", 1000000);
+		metrics.timedOut();
+		metrics.deadlockVictim();
+		assertEquals("waits", 3, metrics.getWaitCount());
+		assertEquals("wait time", 1000003, metrics.getWaitTime());
+		assertEquals("timeouts", 1, metrics.getTimeoutCount());
+		assertEquals("victims", 1, metrics.getDeadlockVictimCount());
+		String[] histogram = metrics.getWaitHistogram();
+		assertEquals("<1ms: 1", histogram[0]);
+		assertEquals("<4ms: 1", histogram[2]);
+		assertTrue(histogram[histogram.length - 1].endsWith(": 1"));
+	}
+
+	@Test
+	public void hotLocks() {
+		LockMetrics metrics = new LockMetrics("test");
+		for (int i = 0; i < 10; i++) {
+			metrics.waited("hot", 1);
+		}
+		metrics.waited("cold", 1);
+		String[] hot = metrics.getHotLocks();
+		assertEquals("hot locks", 2, hot.length);
+		assertTrue(hot[0], hot[0].startsWith("hot: samples=10"));
+
+		metrics.reset();
+		assertEquals("hot locks after reset", 0, metrics.getHotLocks().length);
+		assertEquals("waits after reset", 0, metrics.getWaitCount());
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.locking.services;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxMgr;
+import org.brackit.server.tx.impl.TaMgrMockup;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KVLLockServiceTest {
+	private final static String SERVICE_NAME = "KVL_TEST_SERVICE";
+
+	private final static int MAX_LOCKS = 10000;
+
+	private final static int MAX_TRANSACTIONS = 3;
+
+	private final static int UNIT_ID = 4711;
+
+	private final static int SCAN_SIZE = 200;
+
+	private TxMgr taMgr;
+
+	private KVLLockService lockService;
+
+	@Test
+	public void rangeScanEscalates() throws Exception {
+		Tx t1 = taMgr.begin();
+
+		for (int i = 0; i < SCAN_SIZE; i++) {
+			assertTrue("read lock granted", lockService.lockRead(t1, UNIT_ID,
+					null, key(i), null, true));
+		}
+
+		assertTrue("key locks coalesced",
+				t1.getLockCB().getTotalCount() < SCAN_SIZE / 2);
+		t1.commit();
+	}
+
+	@Test
+	public void escalatedRangeBlocksPhantomInsert() throws Exception {
+		Tx t1 = taMgr.begin();
+		Tx t2 = taMgr.begin();
+
+		for (int i = 0; i < SCAN_SIZE; i += 2) {
+			lockService.lockRead(t1, UNIT_ID, null, key(i), null, true);
+		}
+
+		assertFalse("phantom insert blocked", lockService.lockInsert(t2,
+				UNIT_ID, null, key(101), null, key(102), null, true));
+		t1.commit();
+		assertTrue("insert granted after commit", lockService.lockInsert(t2,
+				UNIT_ID, null, key(101), null, key(102), null, true));
+		t2.commit();
+	}
+
+	@Test
+	public void disjointRangesDoNotConflict() throws Exception {
+		Tx t1 = taMgr.begin();
+		Tx t2 = taMgr.begin();
+
+		for (int i = 0; i < SCAN_SIZE; i++) {
+			lockService.lockRead(t1, UNIT_ID, null, key(i), null, true);
+		}
+
+		int other = 1 << 16;
+		assertTrue("insert in other range granted", lockService.lockInsert(
+				t2, UNIT_ID, null, key(other), null, key(other + 1), null,
+				true));
+		t1.commit();
+		t2.commit();
+	}
+
+	@Test
+	public void lockDepthDoesNotEscalateKeyLocks() throws Exception {
+		Tx t1 = taMgr.begin();
+		Tx t2 = taMgr.begin();
+		t1.setLockDepth(0);
+		t2.setLockDepth(0);
+
+		assertTrue("insert granted", lockService.lockInsert(t1, UNIT_ID, null,
+				key(1), null, key(2), null, true));
+		assertTrue("insert of other key granted", lockService.lockInsert(t2,
+				UNIT_ID, null, key(5), null, key(6), null, true));
+		t1.commit();
+		t2.commit();
+	}
+
+	private static byte[] key(int i) {
+		return new byte[] { (byte) (i >>> 24), (byte) (i >>> 16),
+				(byte) (i >>> 8), (byte) i };
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		taMgr = new TaMgrMockup();
+		lockService = new KVLLockService(SERVICE_NAME, MAX_LOCKS,
+				MAX_TRANSACTIONS);
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.locking.services;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.tx.IsolationLevel;
+import org.brackit.server.tx.Tx;
+import org.brackit.server.tx.TxException;
+import org.brackit.server.tx.TxMgr;
+import org.brackit.server.tx.impl.TaMgrMockup;
+import org.brackit.server.tx.locking.LockClass;
+import org.brackit.server.tx.locking.ValidationException;
+import org.brackit.server.tx.locking.protocol.TaDOM3Plus;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OptimisticMetaLockServiceTest {
+	private final static String SERVICE_NAME = "OPTIMISTIC_TEST_SERVICE";
+
+	private final static int MAX_LOCKS = 1000;
+
+	private final static int MAX_TRANSACTIONS = 3;
+
+	private TxMgr taMgr;
+
+	private MetaLockService<TaDOM3Plus.Mode> lockService;
+
+	@Test
+	public void readWriteConflict() throws Exception {
+		Tx t1 = taMgr.begin();
+		Tx t2 = taMgr.begin();
+		XTCdeweyID deweyID = new XTCdeweyID("4:1.3.5");
+		lockService.lockNodeShared(t1, deweyID, LockClass.COMMIT_DURATION,
+				false);
+		lockService.lockNodeExclusive(t2, deweyID,
+				LockClass.COMMIT_DURATION, false);
+		t2.commit();
+		assertValidationFails(t1);
+	}
+
+	@Test
+	public void readActiveWriterConflict() throws Exception {
+		Tx t1 = taMgr.begin();
+		Tx t2 = taMgr.begin();
+		XTCdeweyID deweyID = new XTCdeweyID("4:1.3.5");
+		lockService.lockNodeExclusive(t2, deweyID,
+				LockClass.COMMIT_DURATION, false);
+		lockService.lockNodeShared(t1, deweyID, LockClass.COMMIT_DURATION,
+				false);
+		assertValidationFails(t1);
+		t2.commit();
+	}
+
+	@Test
+	public void levelReadChildWriteConflict() throws Exception {
+		Tx t1 = taMgr.begin();
+		Tx t2 = taMgr.begin();
+		lockService.lockLevelShared(t1, new XTCdeweyID("4:1.3"),
+				LockClass.COMMIT_DURATION, false);
+		lockService.lockNodeExclusive(t2, new XTCdeweyID("4:1.3.5"),
+				LockClass.COMMIT_DURATION, false);
+		t2.commit();
+		assertValidationFails(t1);
+	}
+
+	@Test
+	public void disjointSubtrees() throws Exception {
+		Tx t1 = taMgr.begin();
+		Tx t2 = taMgr.begin();
+		lockService.lockTreeShared(t1, new XTCdeweyID("4:1.3"),
+				LockClass.COMMIT_DURATION, false);
+		lockService.lockTreeExclusive(t2, new XTCdeweyID("4:1.5"),
+				LockClass.COMMIT_DURATION, false);
+		t2.commit();
+		t1.commit();
+	}
+
+	@Test
+	public void writeCommittedBeforeRead() throws Exception {
+		Tx t1 = taMgr.begin();
+		Tx t2 = taMgr.begin();
+		XTCdeweyID deweyID = new XTCdeweyID("4:1.3.5");
+		lockService.lockNodeExclusive(t2, deweyID,
+				LockClass.COMMIT_DURATION, false);
+		t2.commit();
+		lockService.lockTreeShared(t1, new XTCdeweyID("4:1"),
+				LockClass.COMMIT_DURATION, false);
+		t1.commit();
+	}
+
+	@Test
+	public void committedReadWaitsForUncommittedWrite() throws Exception {
+		final Tx t1 = taMgr.begin(IsolationLevel.COMMITTED, null, false);
+		t1.leave();
+		Tx t2 = taMgr.begin();
+		final XTCdeweyID deweyID = new XTCdeweyID("4:1.3.5");
+		lockService.lockNodeExclusive(t2, deweyID,
+				LockClass.COMMIT_DURATION, false);
+
+		final CountDownLatch granted = new CountDownLatch(1);
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+		Thread reader = new Thread() {
+			public void run() {
+				try {
+					t1.join();
+					lockService.lockNodeShared(t1, deweyID,
+							LockClass.SHORT_DURATION, false);
+					granted.countDown();
+					lockService.unlockNode(t1, deweyID);
+					t1.commit();
+				} catch (Exception e) {
+					error.set(e);
+				}
+			}
+		};
+		reader.start();
+
+		assertFalse("read of uncommitted update", granted.await(500,
+				TimeUnit.MILLISECONDS));
+		t2.commit();
+		assertTrue("read after commit", granted.await(5, TimeUnit.SECONDS));
+		reader.join();
+		assertNull("reader failed", error.get());
+	}
+
+	private void assertValidationFails(Tx tx) {
+		try {
+			tx.commit();
+			fail("Validation did not fail");
+		} catch (TxException e) {
+			assertTrue("validation exception", ValidationException.isCause(e));
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		taMgr = new TaMgrMockup();
+		lockService = new OptimisticMetaLockService<TaDOM3Plus.Mode>(
+				SERVICE_NAME, new UnifiedMetaLockService<TaDOM3Plus.Mode>(
+						new TaDOM3Plus(), SERVICE_NAME + "#write", MAX_LOCKS,
+						MAX_TRANSACTIONS));
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.tx.locking.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.brackit.server.node.DocID;
+import org.brackit.server.node.XTCdeweyID;
+import org.brackit.server.tx.locking.LockName;
+import org.junit.Test;
+
+public class PackedLockNameFactoryTest {
+
+	private static final DocID DOC = new DocID(4711, 3);
+
+	@Test
+	public void testAncestorNamesMatchExplicitPaths() {
+		XTCdeweyID node = new XTCdeweyID(DOC, new int[] { 1, 3, 4, 5, 7 });
+		PackedLockNameFactory factory = new PackedLockNameFactory(node);
+		assertEquals(node.getLevel() - 1, factory.getTargetLevel());
+
+		for (int level = 0; level <= factory.getTargetLevel(); level++) {
+			XTCdeweyID ancestor = node.getAncestor(level + 1);
+			LockName expected = new PackedLockNameFactory(ancestor)
+					.getLockName(level);
+			LockName actual = factory.getLockName(level);
+			assertEquals(expected, actual);
+			assertEquals(expected.hashCode(), actual.hashCode());
+		}
+	}
+
+	@Test
+	public void testDistinctNames() {
+		XTCdeweyID a = new XTCdeweyID(DOC, new int[] { 1, 3, 5 });
+		XTCdeweyID b = new XTCdeweyID(DOC, new int[] { 1, 3, 7 });
+		XTCdeweyID c = new XTCdeweyID(new DocID(4711, 4), new int[] { 1, 3, 5 });
+		LockName nameA = new PackedLockNameFactory(a).getLockName(2);
+		assertFalse(nameA.equals(new PackedLockNameFactory(b).getLockName(2)));
+		assertFalse(nameA.equals(new PackedLockNameFactory(c).getLockName(2)));
+		assertFalse(nameA.equals(new PackedLockNameFactory(a, 1)
+				.getLockName(3)));
+		assertTrue(nameA.equals(new PackedLockNameFactory(a, 1).getLockName(2)));
+	}
+
+	@Test
+	public void testFingerprintFallback() {
+		int[] divisions = new int[] { 1, 1234567, 7654321, 99999999, 3 };
+		int[] other = divisions.clone();
+		XTCdeweyID a = new XTCdeweyID(DOC, divisions);
+		XTCdeweyID b = new XTCdeweyID(DOC, other);
+		other[3] = 99999997;
+		XTCdeweyID c = new XTCdeweyID(DOC, other);
+		int level = a.getLevel() - 1;
+		LockName nameA = new PackedLockNameFactory(a).getLockName(level);
+		assertEquals(nameA, new PackedLockNameFactory(b).getLockName(level));
+		assertFalse(nameA.equals(new PackedLockNameFactory(c)
+				.getLockName(level)));
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * [New BSD License]
+ * Copyright (c) 2011-2012, Brackit Project Team <info@brackit.org>  
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Brackit Project Team nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.brackit.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.brackit.server.store.Field;
+import org.junit.Test;
+
+public class CalcTest {
+
+	private final Random rand = new Random(12345678);
+
+	@Test
+	public void testNormalizedInt() {
+		int[] values = { Integer.MIN_VALUE, -65536, -1, 0, 1, 255, 256,
+				Integer.MAX_VALUE };
+		for (int i = 0; i < values.length; i++) {
+			byte[] b = Calc.fromNormalizedInt(values[i]);
+			assertEquals(values[i], Calc.toNormalizedInt(b));
+			if (i > 0) {
+				assertTrue(Calc.compareU(Calc
+						.fromNormalizedInt(values[i - 1]), b) < 0);
+			}
+		}
+	}
+
+	@Test
+	public void testNormalizedLong() {
+		for (int i = 0; i < 1000; i++) {
+			long v1 = rand.nextLong();
+			long v2 = rand.nextLong();
+			byte[] b1 = Calc.fromNormalizedLong(v1);
+			byte[] b2 = Calc.fromNormalizedLong(v2);
+			assertEquals(v1, Calc.toNormalizedLong(b1));
+			assertEquals(Long.signum(Long.valueOf(v1).compareTo(v2)), Integer
+					.signum(Calc.compareU(b1, b2)));
+		}
+	}
+
+	@Test
+	public void testNormalizedDouble() {
+		double[] values = { Double.NEGATIVE_INFINITY, -Double.MAX_VALUE,
+				-1.5, -Double.MIN_VALUE, -0.0, 0.0, Double.MIN_VALUE, 0.25,
+				1.5, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NaN };
+		for (int i = 0; i < values.length; i++) {
+			byte[] b = Calc.fromNormalizedDouble(values[i]);
+			assertEquals(0, Double.compare(values[i], Calc
+					.toNormalizedDouble(b)));
+			if (i > 0) {
+				assertTrue(Calc.compareU(Calc
+						.fromNormalizedDouble(values[i - 1]), b) < 0);
+			}
+		}
+		for (int i = 0; i < 1000; i++) {
+			float v1 = (float) rand.nextGaussian();
+			float v2 = (float) rand.nextGaussian();
+			byte[] b1 = Calc.fromNormalizedFloat(v1);
+			byte[] b2 = Calc.fromNormalizedFloat(v2);
+			assertEquals(0, Float.compare(v1, Calc.toNormalizedFloat(b1)));
+			assertEquals(Float.compare(v1, v2), Integer.signum(Calc.compareU(
+					b1, b2)));
+		}
+	}
+
+	@Test
+	public void testNormalizedBigDecimal() {
+		String[] values = { "-123456789012345678901234567890.5", "-1000",
+				"-100.5", "-100.05", "-100", "-99.99", "-1", "-0.105", "-0.1",
+				"-0.00001", "0", "0.00001", "0.1", "0.105", "0.15", "1", "10",
+				"99.99", "100", "100.05", "100.5", "1000",
+				"123456789012345678901234567890.5" };
+		for (int i = 0; i < values.length; i++) {
+			BigDecimal d = new BigDecimal(values[i]);
+			byte[] b = Calc.fromNormalizedBigDecimal(d);
+			assertEquals(0, d.compareTo(Calc.toNormalizedBigDecimal(b)));
+			if (i > 0) {
+				byte[] prev = Calc.fromNormalizedBigDecimal(new BigDecimal(
+						values[i - 1]));
+				assertTrue(values[i - 1] + " < " + values[i], Calc.compareU(
+						prev, b) < 0);
+			}
+		}
+		assertEquals(new BigDecimal("100"), Calc
+				.toNormalizedBigDecimal(Calc
+						.fromNormalizedBigDecimal(new BigDecimal("100.000"))));
+	}
+
+	@Test
+	public void testNormalizedString() {
+		String[] values = { "", "A", "AB", "Z", "a", "z", "\u00e9", "\u20ac",
+				"\u20ac1", "\u4e2d" };
+		for (int i = 0; i < values.length; i++) {
+			byte[] b = Field.NSTRING.fromString(values[i]);
+			assertEquals(values[i], Field.NSTRING.toString(b));
+			if (i > 0) {
+				byte[] prev = Field.NSTRING.fromString(values[i - 1]);
+				assertTrue(values[i - 1] + " < " + values[i], Field.NSTRING
+						.compare(prev, b) < 0);
+				byte[] sep = Field.NSTRING.shortestSeparator(prev, b);
+				assertTrue(Field.NSTRING.compare(prev, sep) <= 0);
+				assertTrue(Field.NSTRING.compare(sep, b) <= 0);
+			}
+		}
+		assertEquals(0, Field.NSTRING.compareAsPrefix(Field.NSTRING
+				.fromString("\u20ac"), Field.NSTRING.fromString("\u20ac1")));
+	}
+}